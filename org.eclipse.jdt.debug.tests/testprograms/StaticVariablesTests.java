@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -39,4 +39,17 @@ public class StaticVariablesTests {
 		run();
 		(new StaticVariablesTests()).fcn();
 	}
+
+	private static volatile int volCount = 3;
+
+	static final byte B = 7;
+	static final short S = 300;
+
+	static int narrow(byte b) {
+		return b;
+	}
+
+	static int narrow(short s) {
+		return s;
+	}
 }
@@ -125,6 +125,7 @@ import org.eclipse.jdt.debug.tests.refactoring.MemberParser;
 import org.eclipse.jdt.debug.ui.IJavaDebugUIConstants;
 import org.eclipse.jdt.internal.debug.core.model.JDIDebugTarget;
 import org.eclipse.jdt.internal.debug.eval.ast.engine.ASTEvaluationEngine;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.InstructionSequence;
 import org.eclipse.jdt.internal.debug.ui.BreakpointUtils;
 import org.eclipse.jdt.internal.debug.ui.IJDIPreferencesConstants;
 import org.eclipse.jdt.internal.debug.ui.JDIDebugUIPlugin;
@@ -2737,6 +2738,24 @@ public abstract class AbstractDebugTest extends TestCase implements  IEvaluation
 		throw e;
 	}
 
+	/**
+	 * Compiles the given snippet in the context of the top stack frame of the
+	 * given thread, with the evaluation engine of its debug target
+	 * @param thread
+	 * @param snippet
+	 * @return the compiled snippet
+	 * @throws Exception
+	 */
+	protected InstructionSequence doCompile(IJavaThread thread, String snippet) throws Exception {
+		IJavaStackFrame frame = (IJavaStackFrame) thread.getTopStackFrame();
+		assertNotNull("There should be a stackframe", frame);
+		JDIDebugTarget target = (JDIDebugTarget) thread.getDebugTarget();
+		InstructionSequence expression = (InstructionSequence) target.getEvaluationEngine(getProjectContext()).getCompiledExpression(snippet, frame);
+		String firstError = expression.hasErrors() ? expression.getErrorMessages()[0] : "";
+		assertFalse("The snippet should compile : " + firstError, expression.hasErrors());
+		return expression;
+	}
+
 	/**
 	 * Perform the actual evaluation (inspect)
 	 * @param thread
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.debug.tests.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.jdi.internal.connect.IntHashMap;
+import org.eclipse.jdi.internal.connect.IntHashSet;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the primitive keyed map and set used to correlate JDWP replies.
+ */
+public class IntHashMapTests extends TestCase {
+
+	public IntHashMapTests(String name) {
+		super(name);
+	}
+
+	public void testPutGetRemove() {
+		IntHashMap<String> map = new IntHashMap<>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "one"));
+		assertNull(map.put(-1, "minus one"));
+		assertNull(map.put(0, "zero"));
+		assertEquals("one", map.put(1, "uno"));
+		assertEquals(3, map.size());
+		assertEquals("uno", map.get(1));
+		assertEquals("minus one", map.get(-1));
+		assertEquals("zero", map.get(0));
+		assertNull(map.get(2));
+		assertEquals("zero", map.remove(0));
+		assertNull(map.remove(0));
+		assertNull(map.get(0));
+		assertEquals(2, map.size());
+	}
+
+	public void testExtremeKeys() {
+		IntHashMap<String> map = new IntHashMap<>();
+		map.put(Integer.MIN_VALUE, "min");
+		map.put(Integer.MAX_VALUE, "max");
+		assertEquals("min", map.get(Integer.MIN_VALUE));
+		assertEquals("max", map.get(Integer.MAX_VALUE));
+		assertEquals("min", map.remove(Integer.MIN_VALUE));
+		assertEquals("max", map.get(Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Keys that are multiples of a large power of two all land in few slots
+	 * of a small table, so lookups and removals walk probe sequences.
+	 */
+	public void testCollisions() {
+		IntHashMap<Integer> map = new IntHashMap<>();
+		for (int i = 0; i < 7; i++) {
+			map.put(i << 20, Integer.valueOf(i));
+		}
+		// removing from the middle of a probe sequence must keep the
+		// following entries reachable
+		assertEquals(Integer.valueOf(3), map.remove(3 << 20));
+		assertEquals(Integer.valueOf(0), map.remove(0));
+		for (int i = 0; i < 7; i++) {
+			Integer expected = (i == 0 || i == 3) ? null : Integer.valueOf(i);
+			assertEquals("key " + (i << 20), expected, map.get(i << 20));
+		}
+		assertEquals(5, map.size());
+	}
+
+	public void testResize() {
+		IntHashMap<Integer> map = new IntHashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			map.put(i * 31, Integer.valueOf(i));
+		}
+		assertEquals(1000, map.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(Integer.valueOf(i), map.get(i * 31));
+		}
+		assertNull(map.get(1));
+	}
+
+	/**
+	 * Compares random operations with a {@link HashMap}.
+	 */
+	public void testRandomOperations() {
+		Random random = new Random(4711);
+		IntHashMap<Integer> map = new IntHashMap<>();
+		Map<Integer, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 20000; i++) {
+			int key = random.nextInt(512) - 256;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				Integer value = Integer.valueOf(i);
+				assertEquals(expected.put(key, value), map.put(key, value));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (int key = -256; key < 256; key++) {
+			assertEquals(expected.get(key), map.get(key));
+		}
+	}
+
+	public void testClear() {
+		IntHashMap<Integer> map = new IntHashMap<>();
+		for (int i = 0; i < 100; i++) {
+			map.put(i, Integer.valueOf(i));
+		}
+		List<Integer> values = map.clear();
+		assertEquals(100, values.size());
+		assertEquals(100, new HashSet<>(values).size());
+		assertTrue(map.isEmpty());
+		assertNull(map.get(5));
+		map.put(5, Integer.valueOf(5));
+		assertEquals(Integer.valueOf(5), map.get(5));
+	}
+
+	public void testSet() {
+		IntHashSet set = new IntHashSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(42));
+		assertFalse(set.add(42));
+		assertTrue(set.add(42 << 20));
+		assertTrue(set.contains(42));
+		assertTrue(set.contains(42 << 20));
+		assertFalse(set.contains(43));
+		assertTrue(set.remove(42));
+		assertFalse(set.remove(42));
+		assertFalse(set.contains(42));
+		assertTrue(set.contains(42 << 20));
+		assertTrue(set.remove(42 << 20));
+		assertTrue(set.isEmpty());
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.debug.tests.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.util.Arrays;
+
+import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
+import org.eclipse.jdi.internal.jdwp.JdwpID;
+import org.eclipse.jdi.internal.jdwp.JdwpPacket;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketReader;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
+import org.eclipse.jdi.internal.jdwp.JdwpString;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that what the pooled packet writer encodes is decoded by the packet
+ * reader, and that both agree with the generic stream encoding.
+ */
+public class JdwpPacketStreamTests extends TestCase {
+
+	private static final String[] STRINGS = new String[] { "", "Ljava/lang/String;",
+			"caf\u00E9", "\u20AC 100", "nul\u0000", "\uD83D\uDE00" };
+
+	/**
+	 * An id of a given size, like the ids whose size is given by the virtual
+	 * machine.
+	 */
+	private static final class TestID extends JdwpID {
+		private final int fSize;
+
+		TestID(int size, long value) {
+			super(null);
+			fSize = size;
+			fValue = value;
+		}
+
+		@Override
+		protected int getSize() {
+			return fSize;
+		}
+
+		@Override
+		public boolean isNull() {
+			return fValue == VALUE_NULL;
+		}
+	}
+
+	public JdwpPacketStreamTests(String name) {
+		super(name);
+	}
+
+	private static JdwpPacketReader reader(JdwpPacketWriter writer) {
+		byte[] data = writer.toDataArray();
+		return new JdwpPacketReader(data, 0, data.length);
+	}
+
+	public void testPrimitives() throws Exception {
+		JdwpPacketWriter writer = JdwpPacketWriter.acquire();
+		writer.writeByte(-7);
+		writer.writeBoolean(true);
+		writer.writeShort(Short.MIN_VALUE);
+		writer.writeInt(0xCAFEBABE);
+		writer.writeLong(Long.MIN_VALUE + 1);
+		writer.writeChar('\u20AC');
+		assertEquals(1 + 1 + 2 + 4 + 8 + 2, writer.dataLength());
+
+		JdwpPacketReader reader = reader(writer);
+		assertEquals(-7, reader.getByte());
+		assertTrue(reader.readBoolean());
+		assertEquals(Short.MIN_VALUE, reader.getShort());
+		assertEquals(0xCAFEBABE, reader.getInt());
+		assertEquals(Long.MIN_VALUE + 1, reader.getLong());
+		assertEquals('\u20AC', reader.readChar());
+		assertEquals(0, reader.available());
+	}
+
+	public void testStrings() throws Exception {
+		JdwpPacketWriter writer = JdwpPacketWriter.acquire();
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(expected);
+		for (String string : STRINGS) {
+			JdwpString.write(string, writer);
+			JdwpString.write(string, out);
+		}
+		// same bytes as the generic encoding
+		assertTrue(Arrays.equals(expected.toByteArray(), writer.toDataArray()));
+
+		JdwpPacketReader reader = reader(writer);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(expected.toByteArray()));
+		for (String string : STRINGS) {
+			assertEquals(string, JdwpString.read(reader));
+			assertEquals(string, JdwpString.read(in));
+		}
+	}
+
+	public void testIds() throws Exception {
+		JdwpPacketWriter writer = JdwpPacketWriter.acquire();
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(expected);
+		long[] values = new long[] { 0, 1, 0x7F, 0xFF, 0x1234, 0xFFFFFFFFL, Long.MAX_VALUE, -1 };
+		for (int size = 1; size <= 8; size++) {
+			for (long value : values) {
+				new TestID(size, value).write(writer);
+				new TestID(size, value).write(out);
+			}
+		}
+		assertTrue(Arrays.equals(expected.toByteArray(), writer.toDataArray()));
+
+		JdwpPacketReader reader = reader(writer);
+		for (int size = 1; size <= 8; size++) {
+			for (long value : values) {
+				TestID id = new TestID(size, 0);
+				id.read(reader);
+				// ids are unsigned and only keep their lowest bytes
+				long mask = size == 8 ? -1 : (1L << 8 * size) - 1;
+				assertEquals("size " + size, value & mask, id.value());
+			}
+		}
+	}
+
+	public void testReaderBounds() throws Exception {
+		byte[] bytes = new byte[] { 9, 0, 0, 0, 42, 9 };
+		JdwpPacketReader reader = new JdwpPacketReader(bytes, 1, 4);
+		assertEquals(42, reader.getInt());
+		try {
+			reader.getByte();
+			fail("the reader must not read past its range");
+		} catch (EOFException e) {
+			// expected
+		}
+		reader = new JdwpPacketReader(new byte[] { 0, 0, 0, 5, 'a' }, 0, 5);
+		try {
+			reader.getString();
+			fail("a truncated string must not be read");
+		} catch (EOFException e) {
+			// expected
+		}
+	}
+
+	public void testPacketRoundTrip() throws Exception {
+		JdwpPacketWriter writer = JdwpPacketWriter.acquire();
+		writer.writeInt(4711);
+		JdwpString.write("main", writer);
+		byte[] data = writer.toDataArray();
+
+		JdwpCommandPacket packet = new JdwpCommandPacket(JdwpCommandPacket.TR_NAME);
+		packet.setData(writer);
+		assertEquals(data.length, packet.getDataLength());
+		byte[] bytes = packet.getPacketAsBytes();
+		// the writer's buffer may be larger than the packet
+		JdwpPacket received = JdwpPacket.build(Arrays.copyOf(bytes, packet.getLength()));
+		assertTrue(received instanceof JdwpCommandPacket);
+		assertEquals(packet.getId(), received.getId());
+		assertEquals(JdwpCommandPacket.TR_NAME, ((JdwpCommandPacket) received).getCommand());
+		assertTrue(Arrays.equals(data, received.data()));
+		DataInputStream in = received.dataInStream();
+		assertEquals(4711, in.readInt());
+		assertEquals("main", JdwpString.read(in));
+
+		// the data stays readable once the writer is back in the pool
+		packet.releaseDataWriter();
+		JdwpPacketWriter reused = JdwpPacketWriter.acquire();
+		reused.writeInt(-1);
+		reused.writeInt(-1);
+		assertTrue(Arrays.equals(data, packet.data()));
+	}
+
+	public void testReleasedWriterIsEmpty() throws Exception {
+		JdwpPacketWriter writer = JdwpPacketWriter.acquire();
+		writer.writeLong(1);
+		JdwpCommandPacket packet = new JdwpCommandPacket(JdwpCommandPacket.TR_SUSPEND_COUNT);
+		packet.setData(writer);
+		packet.getPacketAsBytes();
+		packet.releaseDataWriter();
+		for (int i = 0; i < 20; i++) {
+			assertEquals(0, JdwpPacketWriter.acquire().dataLength());
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.debug.tests.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdi.internal.LocationImpl;
+import org.eclipse.jdi.internal.LocationList;
+import org.eclipse.jdi.internal.MethodImpl;
+
+import com.sun.jdi.Location;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the compact list of locations used to cache line locations.
+ */
+public class LocationListTests extends TestCase {
+
+	public LocationListTests(String name) {
+		super(name);
+	}
+
+	private static MethodImpl newMethod(String name) {
+		return new MethodImpl(null, null, null, name, "()V", null, 0);
+	}
+
+	private static void assertLocation(Location location, MethodImpl method, long codeIndex) {
+		assertSame(method, location.method());
+		assertEquals(codeIndex, location.codeIndex());
+	}
+
+	public void testSingleMethod() {
+		MethodImpl method = newMethod("m");
+		long[] codeIndexes = new long[] { 0, 4, 9, 0 };
+		List<Location> locations = new LocationList(method, codeIndexes, 3);
+		assertEquals(3, locations.size());
+		for (int i = 0; i < 3; i++) {
+			assertLocation(locations.get(i), method, codeIndexes[i]);
+		}
+		// the list does not depend on the array it was created from
+		codeIndexes[1] = 5;
+		assertLocation(locations.get(1), method, 4);
+	}
+
+	public void testUnmodifiable() {
+		List<Location> locations = new LocationList(newMethod("m"), new long[] { 1 }, 1);
+		try {
+			locations.add(locations.get(0));
+			fail("locations must not be added");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			locations.remove(0);
+			fail("locations must not be removed");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	public void testConcat() {
+		MethodImpl first = newMethod("first");
+		MethodImpl second = newMethod("second");
+		MethodImpl third = newMethod("third");
+		List<Location> firstLocations = new LocationList(first, new long[] { 0, 2 }, 2);
+		List<Location> secondLocations = new LocationList(second, new long[] { 7 }, 1);
+		// a list that is not a location list
+		List<Location> thirdLocations = new ArrayList<>();
+		thirdLocations.add(new LocationImpl(null, third, 3));
+		thirdLocations.add(new LocationImpl(null, third, 8));
+
+		List<Location> concatenated = LocationList.concat(null,
+				Arrays.asList(firstLocations, secondLocations, thirdLocations));
+		assertEquals(5, concatenated.size());
+		assertLocation(concatenated.get(0), first, 0);
+		assertLocation(concatenated.get(1), first, 2);
+		assertLocation(concatenated.get(2), second, 7);
+		assertLocation(concatenated.get(3), third, 3);
+		assertLocation(concatenated.get(4), third, 8);
+
+		// concatenating a concatenated list copies the method of each location
+		List<Location> again = LocationList.concat(null,
+				Arrays.asList(secondLocations, concatenated));
+		assertEquals(6, again.size());
+		assertLocation(again.get(0), second, 7);
+		assertLocation(again.get(1), first, 0);
+		assertLocation(again.get(5), third, 8);
+	}
+
+	public void testConcatEmpty() {
+		List<Location> empty = new LocationList(newMethod("m"), new long[0], 0);
+		List<List<Location>> lists = new ArrayList<>();
+		assertTrue(LocationList.concat(null, lists).isEmpty());
+		lists.add(empty);
+		assertTrue(LocationList.concat(null, lists).isEmpty());
+	}
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.debug.tests.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdi.internal.MirrorCache;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the segmented cache of mirrors keyed by JDWP id.
+ */
+public class MirrorCacheTests extends TestCase {
+
+	public MirrorCacheTests(String name) {
+		super(name);
+	}
+
+	public void testPutGetRemove() {
+		MirrorCache<String> cache = new MirrorCache<>();
+		String one = "one";
+		String max = "max";
+		cache.put(1, one);
+		cache.put(Long.MAX_VALUE, max);
+		cache.put(0, "zero");
+		assertSame(one, cache.get(1));
+		assertSame(max, cache.get(Long.MAX_VALUE));
+		assertNull(cache.get(2));
+		String uno = "uno";
+		cache.put(1, uno);
+		assertSame(uno, cache.get(1));
+		assertSame(uno, cache.remove(1));
+		assertNull(cache.remove(1));
+		assertNull(cache.get(1));
+		assertSame(max, cache.get(Long.MAX_VALUE));
+	}
+
+	/**
+	 * Ids that only differ in their high bits must not collide in a way that
+	 * loses entries, neither on lookup nor after removals.
+	 */
+	public void testRemoveKeepsOtherEntriesReachable() {
+		MirrorCache<Long> cache = new MirrorCache<>();
+		List<Long> values = new ArrayList<>();
+		for (long i = 0; i < 200; i++) {
+			Long value = Long.valueOf(i << 40);
+			values.add(value);
+			cache.put(value.longValue(), value);
+		}
+		for (int i = 0; i < values.size(); i += 3) {
+			assertSame(values.get(i), cache.remove(values.get(i).longValue()));
+		}
+		for (int i = 0; i < values.size(); i++) {
+			Long value = values.get(i);
+			assertSame("id " + value, i % 3 == 0 ? null : value, cache.get(value.longValue()));
+		}
+	}
+
+	/**
+	 * Compares random operations with a {@link HashMap}.
+	 */
+	public void testRandomOperations() {
+		Random random = new Random(4711);
+		MirrorCache<Integer> cache = new MirrorCache<>();
+		Map<Long, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 20000; i++) {
+			long key = random.nextInt(1024);
+			if (random.nextInt(3) == 0) {
+				assertSame(expected.remove(key), cache.remove(key));
+			} else {
+				Integer value = new Integer(i);
+				expected.put(key, value);
+				cache.put(key, value);
+			}
+		}
+		for (long key = 0; key < 1024; key++) {
+			assertSame(expected.get(key), cache.get(key));
+		}
+		Set<Integer> values = new HashSet<>();
+		for (Integer value : cache.values()) {
+			assertTrue(values.add(value));
+		}
+		assertEquals(new HashSet<>(expected.values()), values);
+	}
+
+	public void testValuesWithType() {
+		MirrorCache<Object> cache = new MirrorCache<>();
+		String string = "string";
+		Integer integer = Integer.valueOf(42);
+		cache.put(1, string);
+		cache.put(2, integer);
+		List<String> strings = cache.valuesWithType(String.class);
+		assertEquals(1, strings.size());
+		assertSame(string, strings.get(0));
+		assertTrue(cache.valuesWithType(Long.class).isEmpty());
+	}
+
+	/**
+	 * Lookups from other threads while entries are added and removed must
+	 * never miss an entry that is not modified, iterations must not fail.
+	 */
+	public void testConcurrentAccess() throws Exception {
+		final MirrorCache<Long> cache = new MirrorCache<>();
+		final List<Long> stable = new ArrayList<>();
+		for (long i = 0; i < 1000; i++) {
+			Long value = Long.valueOf(i * 2);
+			stable.add(value);
+			cache.put(value.longValue(), value);
+		}
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final boolean writer = t % 2 == 0;
+			final int seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random(seed);
+						for (int i = 0; i < 20000; i++) {
+							if (writer) {
+								// odd ids are added and removed
+								long key = random.nextInt(2000) * 2 + 1;
+								if (random.nextBoolean()) {
+									cache.put(key, Long.valueOf(key));
+								} else {
+									cache.remove(key);
+								}
+							} else {
+								Long value = stable.get(random.nextInt(stable.size()));
+								assertSame(value, cache.get(value.longValue()));
+								if (i % 1000 == 0) {
+									// weakly consistent, but never fails
+									for (Long cached : cache.values()) {
+										assertNotNull(cached);
+									}
+								}
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+}
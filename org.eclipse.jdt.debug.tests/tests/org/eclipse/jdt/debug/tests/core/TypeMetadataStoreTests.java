@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.debug.tests.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.eclipse.jdi.internal.MethodImpl;
+import org.eclipse.jdi.internal.TypeMetadataStore;
+import org.eclipse.jdi.internal.TypeMetadataStore.TypeMetadata;
+import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
+import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the on-disk store of type metadata: what is flushed is read back by
+ * the next session, later records replace earlier ones, and invalid or
+ * truncated files do not prevent the store from being used.
+ */
+public class TypeMetadataStoreTests extends TestCase {
+
+	private static final String FILE_NAME = "typemetadata.bin";
+	private static final String TYPE_KEY = "Ljava/lang/Object; Java HotSpot(TM) 64-Bit Server VM 25.0";
+
+	private File fDirectory;
+
+	public TypeMetadataStoreTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		fDirectory = Files.createTempDirectory("typemetadata").toFile();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = fDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		fDirectory.delete();
+		super.tearDown();
+	}
+
+	private static JdwpReplyPacket reply(short errorCode, byte[] data) {
+		JdwpReplyPacket reply = new JdwpReplyPacket();
+		reply.setErrorCode(errorCode);
+		reply.setData(data);
+		return reply;
+	}
+
+	private static void assertReply(JdwpReplyPacket expected, JdwpReplyPacket actual) {
+		assertNotNull(actual);
+		assertEquals(expected.errorCode(), actual.errorCode());
+		byte[] expectedData = expected.data() == null ? new byte[0] : expected.data();
+		assertTrue(Arrays.equals(expectedData, actual.data()));
+	}
+
+	private TypeMetadataStore open() {
+		TypeMetadataStore store = TypeMetadataStore.open(fDirectory);
+		assertNotNull(store);
+		return store;
+	}
+
+	public void testRoundTrip() {
+		MethodImpl method = new MethodImpl(null, null, null, "run", "()V", null, 0);
+		JdwpReplyPacket sourceFile = reply(JdwpReplyPacket.NONE, new byte[] { 0, 0, 0, 1, 'A' });
+		JdwpReplyPacket lineTable = reply(JdwpReplyPacket.NONE, new byte[] { 1, 2, 3 });
+		JdwpReplyPacket variables = reply(JdwpReplyPacket.ABSENT_INFORMATION, null);
+
+		TypeMetadataStore store = open();
+		TypeMetadata metadata = store.get(TYPE_KEY);
+		assertNull(metadata.reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+		metadata.setReply(JdwpCommandPacket.RT_SOURCE_FILE, null, sourceFile);
+		metadata.setReply(JdwpCommandPacket.M_LINE_TABLE, method, lineTable);
+		metadata.setReply(JdwpCommandPacket.M_VARIABLE_TABLE, method, variables);
+		assertReply(sourceFile, metadata.reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+		store.flush(true);
+
+		metadata = open().get(TYPE_KEY);
+		assertReply(sourceFile, metadata.reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+		assertReply(lineTable, metadata.reply(JdwpCommandPacket.M_LINE_TABLE, method));
+		assertReply(variables, metadata.reply(JdwpCommandPacket.M_VARIABLE_TABLE, method));
+		// method replies are kept by method
+		MethodImpl other = new MethodImpl(null, null, null, "run", "(I)V", null, 0);
+		assertNull(metadata.reply(JdwpCommandPacket.M_LINE_TABLE, other));
+	}
+
+	public void testTypesOfOtherVMsAreSeparate() {
+		TypeMetadataStore store = open();
+		store.get(TYPE_KEY).setReply(JdwpCommandPacket.RT_SOURCE_FILE, null,
+				reply(JdwpReplyPacket.NONE, new byte[] { 7 }));
+		store.flush(true);
+		store = open();
+		assertNotNull(store.get(TYPE_KEY).reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+		assertNull(store.get(TYPE_KEY + ".1").reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+	}
+
+	public void testErrorRepliesAreNotStored() {
+		TypeMetadataStore store = open();
+		TypeMetadata metadata = store.get(TYPE_KEY);
+		metadata.setReply(JdwpCommandPacket.RT_SOURCE_FILE, null,
+				reply(JdwpReplyPacket.INVALID_OBJECT, null));
+		assertNull(metadata.reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+		store.flush(true);
+		assertFalse(new File(fDirectory, FILE_NAME).exists());
+	}
+
+	public void testLaterRecordReplacesEarlier() {
+		TypeMetadataStore store = open();
+		store.get(TYPE_KEY).setReply(JdwpCommandPacket.RT_SOURCE_FILE, null,
+				reply(JdwpReplyPacket.NONE, new byte[] { 1 }));
+		store.flush(true);
+
+		JdwpReplyPacket changed = reply(JdwpReplyPacket.NONE, new byte[] { 2, 2 });
+		store = open();
+		store.get(TYPE_KEY).setReply(JdwpCommandPacket.RT_SOURCE_FILE, null, changed);
+		store.flush(true);
+		// unmodified metadata is not written again
+		long length = new File(fDirectory, FILE_NAME).length();
+		store.flush(true);
+		assertEquals(length, new File(fDirectory, FILE_NAME).length());
+
+		assertReply(changed, open().get(TYPE_KEY).reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+	}
+
+	/**
+	 * Metadata that cannot be written while another store holds the file is
+	 * kept, even when released, and written by the next flush.
+	 */
+	public void testLockedFileKeepsMetadata() throws IOException {
+		TypeMetadataStore store = open();
+		JdwpReplyPacket sourceFile = reply(JdwpReplyPacket.NONE, new byte[] { 5 });
+		store.get(TYPE_KEY).setReply(JdwpCommandPacket.RT_SOURCE_FILE, null, sourceFile);
+		try (RandomAccessFile file = new RandomAccessFile(new File(fDirectory, FILE_NAME), "rw");
+				FileLock lock = file.getChannel().lock()) {
+			store.flush(true);
+		}
+		assertNull(open().get(TYPE_KEY).reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+		assertReply(sourceFile, store.get(TYPE_KEY).reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+
+		store.flush(true);
+		assertReply(sourceFile, open().get(TYPE_KEY).reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+	}
+
+	public void testInvalidFileIsReplaced() throws IOException {
+		try (OutputStream out = new FileOutputStream(new File(fDirectory, FILE_NAME))) {
+			out.write("not a type metadata store".getBytes("UTF-8"));
+		}
+		TypeMetadataStore store = open();
+		TypeMetadata metadata = store.get(TYPE_KEY);
+		assertNull(metadata.reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+		JdwpReplyPacket sourceFile = reply(JdwpReplyPacket.NONE, new byte[] { 3 });
+		metadata.setReply(JdwpCommandPacket.RT_SOURCE_FILE, null, sourceFile);
+		store.flush(true);
+
+		assertReply(sourceFile, open().get(TYPE_KEY).reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+	}
+
+	public void testTruncatedRecordIsIgnored() throws IOException {
+		TypeMetadataStore store = open();
+		JdwpReplyPacket sourceFile = reply(JdwpReplyPacket.NONE, new byte[] { 4 });
+		store.get(TYPE_KEY).setReply(JdwpCommandPacket.RT_SOURCE_FILE, null, sourceFile);
+		store.flush(true);
+		// a record whose length exceeds the file, as left by a crash
+		try (OutputStream out = new FileOutputStream(new File(fDirectory, FILE_NAME), true)) {
+			out.write(new byte[] { 0, 0, 1, 0, 0, 3, 'a' });
+		}
+		assertReply(sourceFile, open().get(TYPE_KEY).reply(JdwpCommandPacket.RT_SOURCE_FILE, null));
+	}
+}
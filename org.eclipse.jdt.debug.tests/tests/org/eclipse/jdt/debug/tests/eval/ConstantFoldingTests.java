@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.debug.tests.eval;
+
+import org.eclipse.debug.core.model.IValue;
+import org.eclipse.jdt.debug.core.IJavaPrimitiveValue;
+import org.eclipse.jdt.debug.core.IJavaThread;
+import org.eclipse.jdt.debug.tests.AbstractDebugTest;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.Instruction;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.PushInt;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.PushLocalVariable;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.PushString;
+
+/**
+ * Tests that constant expressions evaluate to the values the Java compiler
+ * computes for them, that they are compiled to a single push, and that
+ * constant conditions only compile the branch they take.
+ */
+public class ConstantFoldingTests extends AbstractDebugTest {
+
+	private IJavaThread fThread;
+
+	public ConstantFoldingTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		removeAllBreakpoints();
+		if (fThread != null) {
+			terminateAndRemove(fThread);
+		}
+		super.tearDown();
+	}
+
+	/**
+	 * Suspends the given test program at the given line.
+	 */
+	private void launchTo(String typeName, int lineNumber) throws Exception {
+		createLineBreakpoint(lineNumber, typeName);
+		fThread = launchToBreakpoint(typeName);
+		assertNotNull("The program did not suspend", fThread);
+	}
+
+	/**
+	 * Suspends the test program whose locals the snippets read.
+	 */
+	private void launchToLocals() throws Exception {
+		launchTo("EvalSimpleTests", 37);
+	}
+
+	private int count(String snippet, Class<? extends Instruction> type) throws Exception {
+		int count = 0;
+		for (Instruction instruction : doCompile(fThread, snippet).getInstructions()) {
+			if (type.isInstance(instruction)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of reads of the local variable with the given name.
+	 */
+	private int countReads(String snippet, String name) throws Exception {
+		int count = 0;
+		for (Instruction instruction : doCompile(fThread, snippet).getInstructions()) {
+			if (instruction instanceof PushLocalVariable && instruction.toString().contains('"' + name + '"')) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private IJavaPrimitiveValue evalPrimitive(String snippet) throws Exception {
+		IValue value = doEval(fThread, snippet);
+		assertTrue("The result should be a primitive: " + snippet, value instanceof IJavaPrimitiveValue);
+		return (IJavaPrimitiveValue) value;
+	}
+
+	private void assertResult(String snippet, String signature, String valueString) throws Exception {
+		IJavaPrimitiveValue value = evalPrimitive(snippet);
+		assertEquals("Wrong type: " + snippet, signature, value.getSignature());
+		assertEquals("Wrong value: " + snippet, valueString, value.getValueString());
+	}
+
+	/**
+	 * Folded values have the type and the value the Java compiler gives the
+	 * same constant expressions.
+	 */
+	public void testResults() throws Exception {
+		launchToLocals();
+		assertResult("1 + 2 * 3 - (8 >> 1)", "I", String.valueOf(1 + 2 * 3 - (8 >> 1)));
+		assertResult("Integer.MAX_VALUE + 1", "I", String.valueOf(Integer.MAX_VALUE + 1));
+		assertResult("1L << 40", "J", String.valueOf(1L << 40));
+		assertResult("7 / 2", "I", String.valueOf(7 / 2));
+		assertResult("7 / 2.0", "D", String.valueOf(7 / 2.0));
+		assertResult("-7 % 3", "I", String.valueOf(-7 % 3));
+		assertResult("'a' + 1", "I", String.valueOf('a' + 1));
+		assertResult("(char) ('a' + 1)", "C", String.valueOf((char) ('a' + 1)));
+		assertResult("(byte) 200", "B", String.valueOf((byte) 200));
+		assertResult("(short) 70000", "S", String.valueOf((short) 70000));
+		assertResult("0.1f + 0.2f", "F", String.valueOf(0.1f + 0.2f));
+		assertResult("!(1 < 2) ^ true", "Z", String.valueOf(!(1 < 2) ^ true));
+		assertEquals("con" + "cat" + 1 + 'c' + 1.5, doEval(fThread, "\"con\" + \"cat\" + 1 + 'c' + 1.5").getValueString());
+	}
+
+	/**
+	 * Byte and short constants are passed where their own type is expected,
+	 * the target does not narrow an int.
+	 */
+	public void testByteAndShortConstants() throws Exception {
+		launchTo("StaticVariablesTests", 40);
+		assertResult("B", "B", "7");
+		assertResult("S", "S", "300");
+		assertResult("narrow(B)", "I", "7");
+		assertResult("narrow(S)", "I", "300");
+		assertResult("narrow((byte) (B + 1))", "I", "8");
+		assertResult("Byte.valueOf(B).intValue()", "I", "7");
+		assertResult("Short.valueOf(S).intValue()", "I", "300");
+		assertResult("(new byte[] { B, 2 })[0]", "B", "7");
+	}
+
+	public void testSinglePush() throws Exception {
+		launchToLocals();
+		assertEquals(1, count("1 + 2 * 3 - (8 >> 1)", PushInt.class));
+		String snippet = "\"con\" + \"cat\" + 1";
+		assertEquals(1, count(snippet, PushString.class));
+		assertEquals(0, count(snippet, PushInt.class));
+	}
+
+	public void testVariablesAreNotFolded() throws Exception {
+		launchToLocals();
+		String snippet = "xVarInt + 2 * 3";
+		assertEquals(1, count(snippet, PushLocalVariable.class));
+		assertEquals(1, count(snippet, PushInt.class));
+		assertEquals(-5 + 2 * 3, evalPrimitive(snippet).getIntValue());
+	}
+
+	public void testConstantConditionalExpression() throws Exception {
+		launchToLocals();
+		String snippet = "1 > 2 ? xVarInt : 7";
+		assertEquals(0, count(snippet, PushLocalVariable.class));
+		assertEquals(7, evalPrimitive(snippet).getIntValue());
+
+		snippet = "1 < 2 ? xVarInt : yVarInt";
+		assertEquals(0, countReads(snippet, "yVarInt"));
+		assertEquals(-5, evalPrimitive(snippet).getIntValue());
+	}
+
+	public void testDecidingOperand() throws Exception {
+		launchToLocals();
+		// the operands after a deciding constant are not compiled
+		String snippet = "true || xVarBoolean";
+		assertEquals(0, count(snippet, PushLocalVariable.class));
+		assertTrue(evalPrimitive(snippet).getBooleanValue());
+
+		snippet = "yVarBoolean && false && xVarBoolean";
+		assertEquals(0, countReads(snippet, "xVarBoolean"));
+		assertFalse(evalPrimitive(snippet).getBooleanValue());
+
+		snippet = "xVarBoolean && false";
+		assertFalse(evalPrimitive(snippet).getBooleanValue());
+	}
+
+	public void testNonDecidingOperand() throws Exception {
+		launchToLocals();
+		// constant operands that do not decide the result are dropped
+		String snippet = "true && xVarBoolean && 1 < 2";
+		assertEquals(1, count(snippet, PushLocalVariable.class));
+		assertTrue(evalPrimitive(snippet).getBooleanValue());
+
+		snippet = "false || yVarBoolean";
+		assertEquals(1, count(snippet, PushLocalVariable.class));
+		assertFalse(evalPrimitive(snippet).getBooleanValue());
+
+		snippet = "true && false == yVarBoolean";
+		assertTrue(evalPrimitive(snippet).getBooleanValue());
+	}
+
+	public void testConstantIfStatement() throws Exception {
+		launchToLocals();
+		String snippet = "int result = 1; if (2 > 3) { result = xVarInt; } else { result = yVarInt; } return result;";
+		assertEquals(0, countReads(snippet, "xVarInt"));
+		assertEquals(1, countReads(snippet, "yVarInt"));
+		assertEquals(7, evalPrimitive(snippet).getIntValue());
+
+		snippet = "int result = 1; if (2 < 3) { result = xVarInt; } return result;";
+		assertEquals(-5, evalPrimitive(snippet).getIntValue());
+	}
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.debug.tests.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.debug.core.model.IValue;
+import org.eclipse.jdt.debug.core.IJavaPrimitiveValue;
+import org.eclipse.jdt.debug.core.IJavaThread;
+import org.eclipse.jdt.debug.tests.AbstractDebugTest;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.Instruction;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.PushFieldVariable;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.PushLocalVariable;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.PushStaticFieldVariable;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.VariablePrefetch;
+
+/**
+ * Tests that the variables read by an evaluation without side effects are
+ * read once per execution, that volatile fields and evaluations with side
+ * effects read the variables on each access, and that the results do not
+ * depend on it.
+ */
+public class VariablePrefetchTests extends AbstractDebugTest {
+
+	private static final String TYPE_NAME = "StaticVariablesTests";
+
+	private IJavaThread fThread;
+
+	public VariablePrefetchTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		removeAllBreakpoints();
+		if (fThread != null) {
+			terminateAndRemove(fThread);
+		}
+		super.tearDown();
+	}
+
+	/**
+	 * Suspends the test program at the given line.
+	 */
+	private void launchTo(int lineNumber) throws Exception {
+		createLineBreakpoint(lineNumber, TYPE_NAME);
+		fThread = launchToBreakpoint(TYPE_NAME);
+		assertNotNull("The program did not suspend", fThread);
+	}
+
+	/**
+	 * Returns the instructions of the given type the given snippet compiles
+	 * to in the top frame of the suspended thread.
+	 */
+	private <T extends Instruction> List<T> compile(String snippet, Class<T> type) throws Exception {
+		List<T> instructions = new ArrayList<>();
+		for (Instruction instruction : doCompile(fThread, snippet).getInstructions()) {
+			if (type.isInstance(instruction)) {
+				instructions.add(type.cast(instruction));
+			}
+		}
+		assertFalse("The snippet should read variables: " + snippet, instructions.isEmpty());
+		return instructions;
+	}
+
+	private int evalInt(String snippet) throws Exception {
+		IValue value = doEval(fThread, snippet);
+		return ((IJavaPrimitiveValue) value).getIntValue();
+	}
+
+	public void testLocalVariables() throws Exception {
+		launchTo(40);
+		String snippet = "args.length + args.length";
+		for (PushLocalVariable local : compile(snippet, PushLocalVariable.class)) {
+			assertTrue(local.isReadOnce());
+		}
+		assertEquals(0, evalInt(snippet));
+	}
+
+	public void testStaticFields() throws Exception {
+		launchTo(40);
+		String snippet = "pubStr + protStr + pubStr";
+		for (PushStaticFieldVariable field : compile(snippet, PushStaticFieldVariable.class)) {
+			assertTrue(field.isReadOnce());
+		}
+		assertEquals("publicprotectedpublic", doEval(fThread, snippet).getValueString());
+	}
+
+	public void testFieldsOfThis() throws Exception {
+		launchTo(35);
+		String snippet = "i + this.i";
+		for (PushFieldVariable field : compile(snippet, PushFieldVariable.class)) {
+			assertEquals(VariablePrefetch.THIS, field.getReadOnceReceiver());
+		}
+		assertEquals(2, evalInt(snippet));
+	}
+
+	public void testVolatileFields() throws Exception {
+		launchTo(40);
+		String snippet = "volCount + volCount";
+		for (PushStaticFieldVariable field : compile(snippet, PushStaticFieldVariable.class)) {
+			assertFalse(field.isReadOnce());
+		}
+		assertEquals(6, evalInt(snippet));
+	}
+
+	public void testSideEffects() throws Exception {
+		launchTo(40);
+		// a method invocation may change any variable
+		String snippet = "pubStr.length() + defStr.length()";
+		for (PushStaticFieldVariable field : compile(snippet, PushStaticFieldVariable.class)) {
+			assertFalse(field.isReadOnce());
+		}
+		assertEquals(13, evalInt(snippet));
+
+		snippet = "pubStr = defStr";
+		for (PushStaticFieldVariable field : compile(snippet, PushStaticFieldVariable.class)) {
+			assertFalse(field.isReadOnce());
+		}
+	}
+
+	/**
+	 * The values read once are not kept from one execution of a compiled
+	 * expression to the next.
+	 */
+	public void testValuesAreReadForEachExecution() throws Exception {
+		launchTo(40);
+		String snippet = "pubStr + pubStr";
+		assertEquals("publicpublic", doEval(fThread, snippet).getValueString());
+		doEval(fThread, "pubStr = defStr");
+		assertEquals("defaultdefault", doEval(fThread, snippet).getValueString());
+
+		snippet = "args.length + args.length";
+		assertEquals(0, evalInt(snippet));
+		doEval(fThread, "args = new String[2]");
+		assertEquals(4, evalInt(snippet));
+
+		snippet = "volCount + volCount";
+		doEval(fThread, "volCount = 5");
+		assertEquals(10, evalInt(snippet));
+	}
+
+	/**
+	 * Variables assigned by an evaluation are read again after the
+	 * assignment.
+	 */
+	public void testValuesAssignedByTheEvaluation() throws Exception {
+		launchTo(40);
+		assertEquals("publicdefault", doEval(fThread, "String before = pubStr; pubStr = defStr; return before + pubStr;").getValueString());
+		assertEquals(9, evalInt("int before = volCount; volCount = before * 2; return before + volCount;"));
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -233,6 +233,7 @@ public class DebugUIMessages extends NLS {
 	public static String JDIModelPresentation__unknown_arguements___7;
 	public static String JDIModelPresentation__unknown_line_number__8;
 	public static String JDIModelPresentation_instance_1;
+	public static String JDIModelPresentation_trace_1;
 	public static String NoLineNumberAttributesStatusHandler_Java_Breakpoint_1;
 	public static String NoLineNumberAttributesStatusHandler_2;
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2017 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -67,6 +67,7 @@ import org.eclipse.jdt.debug.core.IJavaValue;
 import org.eclipse.jdt.debug.core.IJavaVariable;
 import org.eclipse.jdt.debug.core.IJavaWatchpoint;
 import org.eclipse.jdt.internal.debug.core.breakpoints.JavaExceptionBreakpoint;
+import org.eclipse.jdt.internal.debug.core.breakpoints.JavaTracepoint;
 import org.eclipse.jdt.internal.debug.core.logicalstructures.JDIAllInstancesValue;
 import org.eclipse.jdt.internal.debug.core.logicalstructures.JDIReturnValueVariable;
 import org.eclipse.jdt.internal.debug.core.model.JDIDebugModelMessages;
@@ -1666,6 +1667,7 @@ public class JDIModelPresentation extends LabelProvider implements IDebugModelPr
 		appendSuspendPolicy(breakpoint,label);
 		appendThreadFilter(breakpoint, label);
 		appendConditional(breakpoint, label);
+		appendTraceVariables(breakpoint, label);
 		appendInstanceFilter(breakpoint, label);
 
 		if (member != null) {
@@ -2040,6 +2042,18 @@ public class JDIModelPresentation extends LabelProvider implements IDebugModelPr
 		}
 	}
 
+	/**
+	 * Appends the variables recorded by the given breakpoint, if it is a
+	 * tracepoint.
+	 */
+	protected void appendTraceVariables(IJavaLineBreakpoint breakpoint, StringBuffer buffer) throws CoreException {
+		if (breakpoint instanceof JavaTracepoint) {
+			buffer.append(' ');
+			buffer.append(NLS.bind(DebugUIMessages.JDIModelPresentation_trace_1,
+					new String[] { String.join(", ", ((JavaTracepoint) breakpoint).getVariables()) })); //$NON-NLS-1$
+		}
+	}
+
 	protected void appendInstanceFilter(IJavaBreakpoint breakpoint, StringBuffer buffer) throws CoreException {
 		IJavaObject[] instances = breakpoint.getInstanceFilters();
 		for (int i = 0; i < instances.length; i++) {
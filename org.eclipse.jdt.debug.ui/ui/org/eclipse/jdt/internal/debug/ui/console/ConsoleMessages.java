@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -33,6 +33,7 @@ public class ConsoleMessages extends NLS {
 	public static String JavaStackTraceHyperlink_Unable_to_parse_type_name_from_hyperlink__5;
 	public static String JavaStackTraceHyperlink_Unable_to_parse_line_number_from_hyperlink__6;
 	public static String JavaStackTraceHyperlink_Unable_to_retrieve_hyperlink_text__8;
+	public static String TracepointConsoleWriter_0;
 
 	static {
 		// load message values from bundle file
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.debug.ui.console;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.debug.core.ILaunch;
+import org.eclipse.debug.core.model.IProcess;
+import org.eclipse.debug.ui.DebugUITools;
+import org.eclipse.jdt.internal.debug.core.breakpoints.TracepointSink;
+import org.eclipse.jdt.internal.debug.ui.JDIDebugUIPlugin;
+import org.eclipse.ui.console.ConsolePlugin;
+import org.eclipse.ui.console.IConsole;
+import org.eclipse.ui.console.IOConsole;
+import org.eclipse.ui.console.IOConsoleOutputStream;
+import org.eclipse.ui.console.MessageConsole;
+
+/**
+ * Writes the hits of tracepoints to the console of the process of their
+ * launch. Hits of launches without process console, like remote debug
+ * sessions, are written to a shared tracepoint console.
+ */
+public class TracepointConsoleWriter implements TracepointSink.ConsoleWriter {
+
+	/**
+	 * Output streams by console. The streams are never closed, closing the
+	 * last stream of a process console would mark it as terminated.
+	 */
+	private final Map<IOConsole, IOConsoleOutputStream> fStreams = new WeakHashMap<>();
+
+	private MessageConsole fTracepointConsole;
+
+	@Override
+	public void write(ILaunch launch, String text) {
+		IOConsoleOutputStream stream = getStream(getConsole(launch));
+		try {
+			stream.write(text);
+		} catch (IOException e) {
+			JDIDebugUIPlugin.log(e);
+		}
+	}
+
+	/**
+	 * Returns the console of the first process of the given launch, or the
+	 * shared tracepoint console if there is none.
+	 */
+	private IOConsole getConsole(ILaunch launch) {
+		if (launch != null) {
+			for (IProcess process : launch.getProcesses()) {
+				IConsole console = DebugUITools.getConsole(process);
+				if (console instanceof IOConsole) {
+					return (IOConsole) console;
+				}
+			}
+		}
+		synchronized (this) {
+			if (fTracepointConsole == null) {
+				fTracepointConsole = new MessageConsole(ConsoleMessages.TracepointConsoleWriter_0, null);
+				ConsolePlugin.getDefault().getConsoleManager().addConsoles(new IConsole[] { fTracepointConsole });
+			}
+			return fTracepointConsole;
+		}
+	}
+
+	private synchronized IOConsoleOutputStream getStream(IOConsole console) {
+		IOConsoleOutputStream stream = fStreams.get(console);
+		if (stream == null) {
+			stream = console.newOutputStream();
+			fStreams.put(console, stream);
+		}
+		return stream;
+	}
+}
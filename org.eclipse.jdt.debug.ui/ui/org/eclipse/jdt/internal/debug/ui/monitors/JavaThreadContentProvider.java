@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2006, 2012 IBM Corporation and others.
+ *  Copyright (c) 2006, 2018 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -65,6 +65,18 @@ public class JavaThreadContentProvider extends JavaElementContentProvider {
 		if (!thread.isSuspended()) {
 			return EMPTY;
 		}
+		if (thread instanceof JDIThread && !isDisplayMonitors()) {
+			// only retrieve the frames of the stack down to the requested range
+			JDIThread jThread = (JDIThread) thread;
+			if (!jThread.getDebugTarget().isSuspended() && jThread.isSuspendVoteInProgress()) {
+				return EMPTY;
+			}
+			try {
+				return jThread.getStackFrames(index, length);
+			} catch (DebugException e) {
+				return EMPTY;
+			}
+		}
 		return getElements(getChildren(thread), index, length);
 	}
 
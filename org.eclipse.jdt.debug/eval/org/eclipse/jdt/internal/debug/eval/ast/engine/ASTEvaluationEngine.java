@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@ package org.eclipse.jdt.internal.debug.eval.ast.engine;
 
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -56,11 +57,17 @@ import org.eclipse.jdt.internal.debug.core.JDIDebugOptions;
 import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
 import org.eclipse.jdt.internal.debug.core.model.JDIDebugTarget;
 import org.eclipse.jdt.internal.debug.core.model.JDIThread;
+import org.eclipse.jdt.internal.debug.core.model.JDIType;
 import org.eclipse.jdt.internal.debug.core.model.JDIValue;
 import org.eclipse.jdt.internal.debug.eval.EvaluationResult;
 import org.eclipse.jdt.internal.debug.eval.ast.instructions.InstructionSequence;
 
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.Field;
 import com.sun.jdi.InvocationException;
+import com.sun.jdi.LocalVariable;
+import com.sun.jdi.Location;
+import com.sun.jdi.Method;
 import com.sun.jdi.ObjectReference;
 
 public class ASTEvaluationEngine implements IAstEvaluationEngine {
@@ -275,63 +282,39 @@ public class ASTEvaluationEngine implements IAstEvaluationEngine {
 	@Override
 	public ICompiledExpression getCompiledExpression(String snippet,
 			IJavaStackFrame frame) {
-		IJavaProject javaProject = getJavaProject();
-		RuntimeContext context = new RuntimeContext(javaProject, frame);
-
-		EvaluationSourceGenerator mapper = null;
-		CompilationUnit unit = null;
 		try {
-			IJavaVariable[] localsVar = context.getLocals();
-			IJavaObject thisClass = context.getThis();
+			IJavaVariable[] localsVar = frame.getLocalVariables();
+			IJavaObject thisClass = frame.getThis();
 			IVariable[] innerClassFields; // For anonymous classes, getting variables from outer class
 			if (null != thisClass) {
 				innerClassFields = thisClass.getVariables();
 			} else {
 				innerClassFields = new IVariable[0];
 			}
-			int numLocalsVar = localsVar.length;
-			Set<String> names = new HashSet<>();
+			// local variable names mapped to their type names, in the order
+			// of declaration
+			Map<String, String> locals = new LinkedHashMap<>();
 			// ******
 			// to hide problems with local variable declare as instance of Local
 			// Types
 			// and to remove locals with duplicate names
-			// IJavaVariable[] locals = new IJavaVariable[numLocalsVar];
-			IJavaVariable[] locals = new IJavaVariable[numLocalsVar + innerClassFields.length];
-			String[] localVariablesWithNull = new String[numLocalsVar + innerClassFields.length];
-			int numLocals = 0;
-			for (int i = 0; i < numLocalsVar; i++) {
-				if (!isLocalType(localsVar[i].getSignature())
-						&& !names.contains(localsVar[i].getName())) {
-					locals[numLocals] = localsVar[i];
-					names.add(localsVar[i].getName());
-					localVariablesWithNull[numLocals++] = localsVar[i].getName();
+			for (IJavaVariable local : localsVar) {
+				if (!isLocalType(local.getSignature())
+						&& !locals.containsKey(local.getName())) {
+					locals.put(local.getName(), getTypeName(local.getGenericSignature()));
 				}
 			}
 			// Adding outer class variables to inner class scope
-			for (int i = 0; i < innerClassFields.length; i++) {
-				IVariable var = innerClassFields[i];
+			for (IVariable var : innerClassFields) {
 				if (var instanceof IJavaVariable && var.getName().startsWith(ANONYMOUS_VAR_PREFIX)) {
 					String name = var.getName().substring(ANONYMOUS_VAR_PREFIX.length());
-					if (!names.contains(name)) {
-						locals[numLocals] = (IJavaVariable) var;
-						names.add(name);
-						localVariablesWithNull[numLocals++] = name;
+					if (!locals.containsKey(name)) {
+						locals.put(name, getTypeName(((IJavaVariable) var).getGenericSignature()));
 					}
 				}
 			}
 			// to solve and remove
 			// ******
-			String[] localTypesNames = new String[numLocals];
-			for (int i = 0; i < numLocals; i++) {
-				localTypesNames[i] = Signature.toString(
-						locals[i].getGenericSignature()).replace('/', '.');
-			}
-			// Copying local variables removing the nulls in the last
-			// String[] localVariables = Arrays.clonesub(localVariablesWithNull, names.size());
-			String[] localVariables = new String[names.size()];
-			System.arraycopy(localVariablesWithNull, 0, localVariables, 0, localVariables.length);
-			mapper = new EvaluationSourceGenerator(localTypesNames,
-					localVariables, snippet, getJavaProject());
 			// Compile in context of declaring type to get proper visibility of
 			// locals and members.
 			// Compiling in context of receiving type potentially provides
@@ -347,9 +330,121 @@ public class ASTEvaluationEngine implements IAstEvaluationEngine {
 			// frame.getThis().getJavaType();
 			// }
 
+			return getCompiledExpression(snippet, receivingType,
+					frame.getLineNumber(), frame.isStatic(), locals);
+		} catch (CoreException e) {
+			InstructionSequence expression = new InstructionSequence(snippet);
+			expression.addError(e.getStatus().getMessage());
+			return expression;
+		}
+	}
+
+	/**
+	 * Returns a compiled expression for an evaluation in a stack frame at the
+	 * given location, compiled the same way
+	 * {@link #getCompiledExpression(String, IJavaStackFrame)} compiles it for
+	 * a frame at this location. This allows to compile an expression before
+	 * a thread reaches the location.
+	 * <p>
+	 * Without a frame, JDI cannot tell which local variables are visible at
+	 * the location, only the arguments of the method are. An expression that
+	 * names another local variable of the method is not compiled.
+	 * </p>
+	 *
+	 * @param snippet
+	 *            the code snippet to compile
+	 * @param location
+	 *            the location of the frames the expression will be evaluated
+	 *            in
+	 * @return the compiled expression, which may have compilation errors
+	 * @throws DebugException
+	 *             if the local variables of the method cannot be retrieved,
+	 *             or the expression names a local variable that is not an
+	 *             argument; the expression must then be compiled in the
+	 *             context of a frame
+	 */
+	public ICompiledExpression getCompiledExpression(String snippet,
+			Location location) throws DebugException {
+		try {
+			Method method = location.method();
+			Set<String> identifiers = getIdentifiers(snippet);
+			Map<String, String> locals = new LinkedHashMap<>();
+			for (LocalVariable local : method.variables()) {
+				if (!local.isArgument()) {
+					if (identifiers.contains(local.name())) {
+						throw new DebugException(new Status(IStatus.ERROR,
+								JDIDebugPlugin.getUniqueIdentifier(), DebugException.NOT_SUPPORTED,
+								EvaluationEngineMessages.ASTEvaluationEngine_2, null));
+					}
+					continue;
+				}
+				if (!isLocalType(local.signature())
+						&& !locals.containsKey(local.name())) {
+					locals.put(local.name(), getTypeName(local.genericSignature() != null ? local.genericSignature() : local.signature()));
+				}
+			}
+			if (!method.isStatic()) {
+				for (Field field : location.declaringType().allFields()) {
+					if (!field.isStatic() && field.name().startsWith(ANONYMOUS_VAR_PREFIX)) {
+						String name = field.name().substring(ANONYMOUS_VAR_PREFIX.length());
+						if (!locals.containsKey(name)) {
+							locals.put(name, getTypeName(field.genericSignature() != null ? field.genericSignature() : field.signature()));
+						}
+					}
+				}
+			}
+			IJavaReferenceType receivingType = (IJavaReferenceType) JDIType.createType(
+					(JDIDebugTarget) getDebugTarget(), location.declaringType());
+			return getCompiledExpression(snippet, receivingType,
+					location.lineNumber(), method.isStatic(), locals);
+		} catch (AbsentInformationException e) {
+			throw new DebugException(new Status(IStatus.ERROR,
+					JDIDebugPlugin.getUniqueIdentifier(), DebugException.REQUEST_FAILED,
+					e.getMessage(), e));
+		} catch (RuntimeException e) {
+			throw new DebugException(new Status(IStatus.ERROR,
+					JDIDebugPlugin.getUniqueIdentifier(), DebugException.TARGET_REQUEST_FAILED,
+					e.toString(), e));
+		}
+	}
+
+	/**
+	 * Returns the Java identifiers occurring in the given snippet, including
+	 * those in comments and string literals.
+	 */
+	private static Set<String> getIdentifiers(String snippet) {
+		Set<String> identifiers = new HashSet<>();
+		int length = snippet.length();
+		for (int i = 0; i < length; i++) {
+			if (Character.isJavaIdentifierStart(snippet.charAt(i))) {
+				int start = i;
+				while (i + 1 < length && Character.isJavaIdentifierPart(snippet.charAt(i + 1))) {
+					i++;
+				}
+				identifiers.add(snippet.substring(start, i + 1));
+			}
+		}
+		return identifiers;
+	}
+
+	/**
+	 * Returns a compiled expression for an evaluation in the given type, at
+	 * the given line, with the given local variables in scope.
+	 */
+	private ICompiledExpression getCompiledExpression(String snippet,
+			IJavaReferenceType receivingType, int lineNumber, boolean isStatic,
+			Map<String, String> locals) {
+		IJavaProject javaProject = getJavaProject();
+		EvaluationSourceGenerator mapper = null;
+		CompilationUnit unit = null;
+		try {
+			String[] localTypesNames = locals.values().toArray(new String[locals.size()]);
+			String[] localVariables = locals.keySet().toArray(new String[locals.size()]);
+			mapper = new EvaluationSourceGenerator(localTypesNames,
+					localVariables, snippet, javaProject);
 			unit = parseCompilationUnit(
-					mapper.getSource(receivingType, frame.getLineNumber(), javaProject,
-							frame.isStatic()).toCharArray(),
+					mapper.getSource(receivingType, lineNumber, javaProject,
+							isStatic).toCharArray(),
 					mapper.getCompilationUnitName(), javaProject);
 		} catch (CoreException e) {
 			InstructionSequence expression = new InstructionSequence(snippet);
@@ -360,6 +455,10 @@ public class ASTEvaluationEngine implements IAstEvaluationEngine {
 		return createExpressionFromAST(snippet, mapper, unit);
 	}
 
+	private static String getTypeName(String signature) {
+		return Signature.toString(signature).replace('/', '.');
+	}
+
 	private CompilationUnit parseCompilationUnit(char[] source,
 			String unitName, IJavaProject project) {
 		ASTParser parser = ASTParser.newParser(AST.JLS8);
@@ -608,6 +707,12 @@ public class ASTEvaluationEngine implements IAstEvaluationEngine {
 	 */
 	@Override
 	public void dispose() {
+		// engines are also created and disposed for single evaluations, the
+		// types resolved by other engines are only forgotten with the target
+		IJavaDebugTarget target = getDebugTarget();
+		if (target.isTerminated() || target.isDisconnected()) {
+			InstructionSequence.forgetResolvedTypes(target);
+		}
 	}
 
 	class EvalRunnable implements Runnable {
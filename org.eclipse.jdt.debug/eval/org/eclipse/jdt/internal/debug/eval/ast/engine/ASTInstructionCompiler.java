@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -95,6 +95,7 @@ import org.eclipse.jdt.internal.debug.eval.ast.instructions.UnaryPlusOperator;
 import org.eclipse.jdt.internal.debug.eval.ast.instructions.UnsignedRightShiftAssignmentOperator;
 import org.eclipse.jdt.internal.debug.eval.ast.instructions.UnsignedRightShiftOperator;
 import org.eclipse.jdt.internal.debug.eval.ast.instructions.Value;
+import org.eclipse.jdt.internal.debug.eval.ast.instructions.VariablePrefetch;
 import org.eclipse.jdt.internal.debug.eval.ast.instructions.XorAssignmentOperator;
 import org.eclipse.jdt.internal.debug.eval.ast.instructions.XorOperator;
 import org.eclipse.osgi.util.NLS;
@@ -149,6 +150,13 @@ public class ASTInstructionCompiler extends ASTVisitor {
 	// internal index used to create unique variable name
 	private int fUniqueIdIndex = 0;
 
+	/**
+	 * Whether the evaluated code may have side effects, see
+	 * {@link SideEffectFinder}. Variables are read once per evaluation, and
+	 * prefetched, only if it has none.
+	 */
+	private boolean fHasSideEffects = true;
+
 	/**
 	 * Create a new AST instruction compiler
 	 */
@@ -392,6 +400,187 @@ public class ASTInstructionCompiler extends ASTVisitor {
 		storeInstruction();
 	}
 
+	/**
+	 * Pushes the value of the given expression when it is a constant
+	 * expression (JLS 15.28), instead of the instructions computing it. The
+	 * value of a constant variable of type <code>String</code> is not pushed,
+	 * as the variable holds the interned string rather than a new one.
+	 *
+	 * @param expression
+	 *            the expression to fold
+	 * @return whether the value of the expression was pushed
+	 */
+	private boolean pushConstantValue(Expression expression) {
+		Object value = expression.resolveConstantExpressionValue();
+		if (value == null) {
+			return false;
+		}
+		int typeId = getTypeId(expression);
+		switch (typeId) {
+		case Instruction.T_boolean:
+			push(new PushBoolean(((Boolean) value).booleanValue()));
+			break;
+		case Instruction.T_char:
+			push(new PushChar(((Character) value).charValue()));
+			break;
+		case Instruction.T_byte:
+		case Instruction.T_short:
+			// the target only widens values, the int is narrowed to the
+			// type of the constant
+			push(new Cast(typeId, getTypeName(resolveTypeBinding(expression)), 0, fCounter));
+			push(new PushInt(((Number) value).intValue()));
+			storeInstruction();
+			break;
+		case Instruction.T_int:
+			push(new PushInt(((Number) value).intValue()));
+			break;
+		case Instruction.T_long:
+			push(new PushLong(((Number) value).longValue()));
+			break;
+		case Instruction.T_float:
+			push(new PushFloat(((Number) value).floatValue()));
+			break;
+		case Instruction.T_double:
+			push(new PushDouble(((Number) value).doubleValue()));
+			break;
+		case Instruction.T_String:
+			if (expression instanceof Name) {
+				return false;
+			}
+			push(new PushString((String) value));
+			break;
+		default:
+			return false;
+		}
+		verbose("Fold " + expression + " to " + value); //$NON-NLS-1$ //$NON-NLS-2$
+		return true;
+	}
+
+	/**
+	 * Returns the value of the given condition if it is a constant expression,
+	 * <code>null</code> otherwise.
+	 */
+	private static Boolean getConstantCondition(Expression condition) {
+		Object value = condition.resolveConstantExpressionValue();
+		return value instanceof Boolean ? (Boolean) value : null;
+	}
+
+	/**
+	 * Returns the operands of the given conditional and or conditional or
+	 * expression that have to be evaluated: constant operands that do not
+	 * decide the result are dropped, and the operands following a constant
+	 * that decides the result are never evaluated.
+	 *
+	 * @param node
+	 *            a conditional and or conditional or expression
+	 * @param isOrOr
+	 *            whether the operator is conditional or
+	 * @return the operands to evaluate
+	 */
+	private List<Expression> getLiveOperands(InfixExpression node, boolean isOrOr) {
+		List<Expression> operands = new ArrayList<>(node.extendedOperands().size() + 2);
+		operands.add(node.getLeftOperand());
+		operands.add(node.getRightOperand());
+		operands.addAll(node.extendedOperands());
+		List<Expression> liveOperands = new ArrayList<>(operands.size());
+		for (Expression operand : operands) {
+			Boolean value = getConstantCondition(operand);
+			if (value == null) {
+				liveOperands.add(operand);
+			} else if (value.booleanValue() == isOrOr) {
+				liveOperands.add(operand);
+				break;
+			}
+		}
+		return liveOperands;
+	}
+
+	/**
+	 * Compiles the operands of a conditional and or conditional or expression.
+	 * Each operand is evaluated only if the previous ones did not decide the
+	 * result.
+	 *
+	 * @param operands
+	 *            the operands to evaluate, see
+	 *            {@link #getLiveOperands(InfixExpression, boolean)}
+	 * @param isOrOr
+	 *            whether the operator is conditional or
+	 */
+	private void compileConditionalOperands(List<Expression> operands, boolean isOrOr) {
+		int operandNumber = operands.size();
+		if (operandNumber == 0) {
+			// all the operands are constants that do not decide the result
+			push(new PushBoolean(!isOrOr));
+			storeInstruction();
+			return;
+		}
+		if (operandNumber == 1) {
+			Expression operand = operands.get(0);
+			ITypeBinding typeBinding = resolveTypeBinding(operand);
+			if (typeBinding == null) {
+				return;
+			}
+			boolean storeRequired = unBoxing(typeBinding);
+			operand.accept(this);
+			if (storeRequired) {
+				storeInstruction();
+			}
+			return;
+		}
+
+		for (int i = 1; i < operandNumber; i++) {
+			push(new NoOp(fCounter));
+		}
+
+		ConditionalJump[] conditionalJumps = new ConditionalJump[operandNumber - 1];
+		int[] conditionalJumpAddresses = new int[operandNumber - 1];
+
+		for (int i = 0; i < operandNumber; i++) {
+			if (i > 0) {
+				ConditionalJump conditionalJump = new ConditionalJump(isOrOr);
+				conditionalJumps[i - 1] = conditionalJump;
+				conditionalJumpAddresses[i - 1] = fCounter;
+				push(conditionalJump);
+				storeInstruction();
+			}
+			Expression operand = operands.get(i);
+			ITypeBinding typeBinding = resolveTypeBinding(operand);
+			if (typeBinding == null) {
+				return;
+			}
+			boolean storeRequired = unBoxing(typeBinding);
+			operand.accept(this);
+			if (storeRequired) {
+				storeInstruction();
+			}
+		}
+
+		Jump jump = new Jump();
+		jump.setOffset(1);
+		push(jump);
+		storeInstruction();
+
+		for (int i = 0; i < operandNumber - 1; i++) {
+			conditionalJumps[i].setOffset(fCounter
+					- conditionalJumpAddresses[i] - 1);
+		}
+
+		push(new PushBoolean(isOrOr));
+		storeInstruction();
+
+		// store the no-op
+		storeInstruction();
+	}
+
+	/**
+	 * Returns whether the value of the given variable cannot change during
+	 * the evaluation, and can be read once per evaluation.
+	 */
+	private boolean isReadOnce(IVariableBinding variableBinding) {
+		return !fHasSideEffects
+				&& !Modifier.isVolatile(variableBinding.getModifiers());
+	}
+
 	/**
 	 * Check the current type of a value and the requested type to decide if
 	 * boxing/un-boxing is required. If needed, the correct instruction is added
@@ -678,6 +867,12 @@ public class ASTInstructionCompiler extends ASTVisitor {
 		if (!isActive() || hasErrors())
 			return;
 
+		if (getConstantCondition(node.getExpression()) != null) {
+			// only the value or the branch taken was compiled
+			storeInstruction();
+			return;
+		}
+
 		// Get the instructions
 		int ifFalseAddress = fInstructions.getEnd();
 		Instruction ifFalse = fInstructions.get(ifFalseAddress);
@@ -977,6 +1172,12 @@ public class ASTInstructionCompiler extends ASTVisitor {
 		if (!isActive() || hasErrors())
 			return;
 
+		if (getConstantCondition(node.getExpression()) != null) {
+			// only the branch taken was compiled
+			storeInstruction();
+			return;
+		}
+
 		boolean hasElseStatement = node.getElseStatement() != null;
 
 		// Get the instructions
@@ -1819,6 +2020,7 @@ public class ASTInstructionCompiler extends ASTVisitor {
 		int start = node.getStartPosition();
 		if (start == fStartPosition || start == (fStartPosition + 1)) {
 			setActive(true);
+			fHasSideEffects = SideEffectFinder.hasSideEffects(node);
 		}
 		if (!isActive()) {
 			return true;
@@ -2047,8 +2249,19 @@ public class ASTInstructionCompiler extends ASTVisitor {
 			return true;
 		}
 
+		if (pushConstantValue(node)) {
+			return false;
+		}
+
 		push(new NoOp(fCounter));
 
+		Boolean condition = getConstantCondition(node.getExpression());
+		if (condition != null) {
+			(condition.booleanValue() ? node.getThenExpression() : node
+					.getElseExpression()).accept(this);
+			return false;
+		}
+
 		return true;
 	}
 
@@ -2332,7 +2545,8 @@ public class ASTInstructionCompiler extends ASTVisitor {
 
 			if (Modifier.isStatic(fieldBinding.getModifiers())) {
 				push(new PushStaticFieldVariable(fieldId,
-						getTypeName(declaringTypeBinding), fCounter));
+						getTypeName(declaringTypeBinding),
+						isReadOnce(fieldBinding), fCounter));
 				expression.accept(this);
 				addPopInstruction();
 			} else {
@@ -2347,8 +2561,12 @@ public class ASTInstructionCompiler extends ASTVisitor {
 						addErrorMessage(EvaluationEngineMessages.ASTInstructionCompiler_Qualified_local_type_field_access_cannot_be_used_in_an_evaluation_expression_31);
 						return false;
 					}
+					boolean isThis = expression instanceof ThisExpression
+							&& ((ThisExpression) expression).getQualifier() == null;
 					push(new PushFieldVariable(fieldId,
-							getTypeSignature(declaringTypeBinding), fCounter));
+							getTypeSignature(declaringTypeBinding),
+							isThis && isReadOnce(fieldBinding) ? VariablePrefetch.THIS : null,
+							fCounter));
 				}
 				expression.accept(this);
 			}
@@ -2414,6 +2632,16 @@ public class ASTInstructionCompiler extends ASTVisitor {
 
 		push(new NoOp(fCounter));
 
+		Boolean condition = getConstantCondition(node.getExpression());
+		if (condition != null) {
+			Statement statement = condition.booleanValue() ? node
+					.getThenStatement() : node.getElseStatement();
+			if (statement != null) {
+				statement.accept(this);
+			}
+			return false;
+		}
+
 		return true;
 	}
 
@@ -2436,6 +2664,19 @@ public class ASTInstructionCompiler extends ASTVisitor {
 			return false;
 		}
 
+		if (pushConstantValue(node)) {
+			storeInstruction();
+			return false;
+		}
+
+		InfixExpression.Operator operator = node.getOperator();
+		if (operator == InfixExpression.Operator.CONDITIONAL_AND
+				|| operator == InfixExpression.Operator.CONDITIONAL_OR) {
+			boolean isOrOr = operator == InfixExpression.Operator.CONDITIONAL_OR;
+			compileConditionalOperands(getLiveOperands(node, isOrOr), isOrOr);
+			return false;
+		}
+
 		String opToken = node.getOperator().toString();
 		int opTokenLength = opToken.length();
 		char char0 = opToken.charAt(0);
@@ -2614,7 +2855,7 @@ public class ASTInstructionCompiler extends ASTVisitor {
 						fCounter));
 			}
 			break;
-		case '|': // or or or or
+		case '|': // or
 			switch (char1) {
 			case '\0': // or
 				for (int i = operatorNumber - 1; i >= 0; i--) {
@@ -2622,17 +2863,12 @@ public class ASTInstructionCompiler extends ASTVisitor {
 							fCounter));
 				}
 				break;
-			case '|': // or or
-				for (int i = operatorNumber - 1; i >= 0; i--) {
-					push(new NoOp(fCounter));
-				}
-				break;
 			default:
 				unrecognized = true;
 				break;
 			}
 			break;
-		case '&': // and or and and
+		case '&': // and
 			switch (char1) {
 			case '\0': // and
 				for (int i = operatorNumber - 1; i >= 0; i--) {
@@ -2640,11 +2876,6 @@ public class ASTInstructionCompiler extends ASTVisitor {
 							fCounter));
 				}
 				break;
-			case '&': // and and
-				for (int i = operatorNumber - 1; i >= 0; i--) {
-					push(new NoOp(fCounter));
-				}
-				break;
 			default:
 				unrecognized = true;
 				break;
@@ -2665,98 +2896,37 @@ public class ASTInstructionCompiler extends ASTVisitor {
 
 		iterator = extendedOperands.iterator();
 
-		if ((char0 == '&' && char1 == '&') || (char0 == '|' && char1 == '|')) {
-			boolean isOrOr = char0 == '|';
-
-			ConditionalJump[] conditionalJumps = new ConditionalJump[operatorNumber];
-			int[] conditionalJumpAddresses = new int[operatorNumber];
-
-			boolean storeRequired = unBoxing(leftBinding);
-			leftOperand.accept(this);
-			if (storeRequired) {
-				storeInstruction();
-			}
-
-			ConditionalJump conditionalJump = new ConditionalJump(isOrOr);
-			conditionalJumps[0] = conditionalJump;
-			conditionalJumpAddresses[0] = fCounter;
-			push(conditionalJump);
+		boolean storeRequired = false;
+		if (unbox) {
+			storeRequired = unBoxing(leftBinding);
+		}
+		leftOperand.accept(this);
+		if (storeRequired) {
 			storeInstruction();
-
+		}
+		if (unbox) {
 			storeRequired = unBoxing(rightBinding);
-			rightOperand.accept(this);
-			if (storeRequired) {
-				storeInstruction();
-			}
+		}
+		rightOperand.accept(this);
+		if (storeRequired) {
+			storeInstruction();
+		}
 
-			for (int i = 1; i < operatorNumber; i++) {
-				conditionalJump = new ConditionalJump(isOrOr);
-				conditionalJumps[i] = conditionalJump;
-				conditionalJumpAddresses[i] = fCounter;
-				push(conditionalJump);
-				storeInstruction();
-				Expression operand = iterator.next();
+		storeInstruction();
+		for (int i = 1; i < operatorNumber; i++) {
+			Expression operand = iterator.next();
+			if (unbox) {
 				ITypeBinding typeBinding = resolveTypeBinding(operand);
 				if (typeBinding == null) {
 					return false;
 				}
 				storeRequired = unBoxing(typeBinding);
-				operand.accept(this);
-				if (storeRequired) {
-					storeInstruction();
-				}
-			}
-
-			Jump jump = new Jump();
-			jump.setOffset(1);
-			push(jump);
-			storeInstruction();
-
-			for (int i = 0; i < operatorNumber; i++) {
-				conditionalJumps[i].setOffset(fCounter
-						- conditionalJumpAddresses[i] - 1);
 			}
-
-			push(new PushBoolean(isOrOr));
-			storeInstruction();
-
-			// store the no-op
-			storeInstruction();
-
-		} else { // other operators
-
-			boolean storeRequired = false;
-			if (unbox) {
-				storeRequired = unBoxing(leftBinding);
-			}
-			leftOperand.accept(this);
-			if (storeRequired) {
-				storeInstruction();
-			}
-			if (unbox) {
-				storeRequired = unBoxing(rightBinding);
-			}
-			rightOperand.accept(this);
+			operand.accept(this);
 			if (storeRequired) {
 				storeInstruction();
 			}
-
 			storeInstruction();
-			for (int i = 1; i < operatorNumber; i++) {
-				Expression operand = iterator.next();
-				if (unbox) {
-					ITypeBinding typeBinding = resolveTypeBinding(operand);
-					if (typeBinding == null) {
-						return false;
-					}
-					storeRequired = unBoxing(typeBinding);
-				}
-				operand.accept(this);
-				if (storeRequired) {
-					storeInstruction();
-				}
-				storeInstruction();
-			}
 		}
 
 		return false;
@@ -3361,6 +3531,10 @@ public class ASTInstructionCompiler extends ASTVisitor {
 			return false;
 		}
 
+		if (pushConstantValue(node)) {
+			return false;
+		}
+
 		Expression operand = node.getOperand();
 		int expressionTypeId = getTypeId(operand);
 
@@ -3537,6 +3711,10 @@ public class ASTInstructionCompiler extends ASTVisitor {
 			node.getName().accept(this);
 			break;
 		case IBinding.VARIABLE:
+			if (pushConstantValue(node)) {
+				storeInstruction();
+				break;
+			}
 			SimpleName fieldName = node.getName();
 			IVariableBinding fieldBinding = (IVariableBinding) resolveBinding(fieldName);
 			if (fieldBinding == null) {
@@ -3548,13 +3726,26 @@ public class ASTInstructionCompiler extends ASTVisitor {
 
 			if (Modifier.isStatic(fieldBinding.getModifiers())) {
 				push(new PushStaticFieldVariable(fieldId,
-						getTypeName(declaringTypeBinding), fCounter));
+						getTypeName(declaringTypeBinding),
+						isReadOnce(fieldBinding), fCounter));
 			} else {
 				if (declaringTypeBinding == null) {
 					push(new PushArrayLength(fCounter));
 				} else {
+					// the fields of an object held by a local variable are
+					// prefetched with the variable
+					Name qualifier = node.getQualifier();
+					IBinding qualifierBinding = qualifier.resolveBinding();
+					String receiver = null;
+					if (qualifier instanceof SimpleName
+							&& qualifierBinding instanceof IVariableBinding
+							&& !((IVariableBinding) qualifierBinding).isField()
+							&& isReadOnce(fieldBinding)) {
+						receiver = ((SimpleName) qualifier).getIdentifier();
+					}
 					push(new PushFieldVariable(fieldId,
-							getTypeSignature(declaringTypeBinding), fCounter));
+							getTypeSignature(declaringTypeBinding), receiver,
+							fCounter));
 				}
 				node.getQualifier().accept(this);
 			}
@@ -3612,6 +3803,9 @@ public class ASTInstructionCompiler extends ASTVisitor {
 		if (binding == null) {
 			return true;
 		}
+		if (binding.getKind() == IBinding.VARIABLE && pushConstantValue(node)) {
+			return false;
+		}
 		String variableId = node.getIdentifier();
 
 		switch (binding.getKind()) {
@@ -3626,16 +3820,21 @@ public class ASTInstructionCompiler extends ASTVisitor {
 			if (variableBinding.isField()) {
 				if (Modifier.isStatic(variableBinding.getModifiers())) {
 					push(new PushStaticFieldVariable(variableId,
-							getTypeName(declaringTypeBinding), fCounter));
+							getTypeName(declaringTypeBinding),
+							isReadOnce(variableBinding), fCounter));
 				} else {
+					int enclosingLevel = getEnclosingLevel(node,
+							declaringTypeBinding);
 					push(new PushFieldVariable(variableId,
-							getTypeSignature(declaringTypeBinding), fCounter));
-					push(new PushThis(getEnclosingLevel(node,
-							declaringTypeBinding)));
+							getTypeSignature(declaringTypeBinding),
+							enclosingLevel == 0 && isReadOnce(variableBinding) ? VariablePrefetch.THIS : null,
+							fCounter));
+					push(new PushThis(enclosingLevel));
 					storeInstruction();
 				}
 			} else {
-				push(new PushLocalVariable(variableId));
+				push(new PushLocalVariable(variableId,
+						isReadOnce(variableBinding)));
 			}
 			break;
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2015 IBM Corporation and others.
+ * Copyright (c) 2005, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,10 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.debug.eval.ast.engine;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -69,7 +73,8 @@ public abstract class AbstractRuntimeContext implements IRuntimeContext {
 	 * @throws CoreException
 	 *             if unable to resolve a class loader
 	 */
-	protected IJavaObject getClassLoaderObject() throws CoreException {
+	@Override
+	public IJavaObject getClassLoaderObject() throws CoreException {
 		if (fClassLoader == null) {
 			fClassLoader = getReceivingType().getClassLoaderObject();
 		}
@@ -186,6 +191,16 @@ public abstract class AbstractRuntimeContext implements IRuntimeContext {
 		return fProject;
 	}
 
+	/**
+	 * Contexts without a stack frame have no local variables.
+	 *
+	 * @see IRuntimeContext#getLocalValues(Collection)
+	 */
+	@Override
+	public Map<String, IJavaValue> getLocalValues(Collection<String> names) throws CoreException {
+		return Collections.emptyMap();
+	}
+
 	/**
 	 * Returns whether the class loaded by the <code>otherLoader</code> is
 	 * compatible with the receiver's class loader. To be compatible, the
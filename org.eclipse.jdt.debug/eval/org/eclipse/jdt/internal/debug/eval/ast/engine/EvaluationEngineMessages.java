@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -65,5 +65,6 @@ public class EvaluationEngineMessages extends NLS {
 	}
 
 	public static String ASTEvaluationEngine_1;
+	public static String ASTEvaluationEngine_2;
 	public static String ArrayRuntimeContext_0;
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.debug.eval.ast.engine;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.debug.core.IJavaClassObject;
@@ -17,6 +20,7 @@ import org.eclipse.jdt.debug.core.IJavaDebugTarget;
 import org.eclipse.jdt.debug.core.IJavaObject;
 import org.eclipse.jdt.debug.core.IJavaReferenceType;
 import org.eclipse.jdt.debug.core.IJavaThread;
+import org.eclipse.jdt.debug.core.IJavaValue;
 import org.eclipse.jdt.debug.core.IJavaVariable;
 
 /**
@@ -84,6 +88,20 @@ public interface IRuntimeContext {
 	 */
 	IJavaVariable[] getLocals() throws CoreException;
 
+	/**
+	 * Returns the values of the visible local variables with the given names,
+	 * read in as few requests to the target as possible. Names that are not
+	 * visible are ignored.
+	 *
+	 * @param names
+	 *            the names of the local variables to read
+	 * @return the values of the local variables, by name, empty if this
+	 *         context has no local variables
+	 * @throws CoreException
+	 *             if the values cannot be read
+	 */
+	Map<String, IJavaValue> getLocalValues(Collection<String> names) throws CoreException;
+
 	/**
 	 * Returns the Java project context in which this expression should be
 	 * compiled.
@@ -127,4 +145,14 @@ public interface IRuntimeContext {
 	 */
 	public IJavaClassObject classForName(String name) throws CoreException;
 
+	/**
+	 * Returns the class loader used to load classes for this runtime context or
+	 * <code>null</code> when loaded by the bootstrap loader.
+	 *
+	 * @return class loader or <code>null</code>
+	 * @throws CoreException
+	 *             if unable to resolve a class loader
+	 */
+	public IJavaObject getClassLoaderObject() throws CoreException;
+
 }
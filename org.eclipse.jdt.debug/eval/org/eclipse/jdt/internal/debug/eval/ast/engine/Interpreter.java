@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,11 +11,12 @@
 package org.eclipse.jdt.internal.debug.eval.ast.engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EmptyStackException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
@@ -33,10 +34,18 @@ import org.eclipse.jdt.internal.debug.eval.ast.instructions.InstructionSequence;
 import com.sun.jdi.VMDisconnectedException;
 
 public class Interpreter {
+	private InstructionSequence fSequence;
 	private Instruction[] fInstructions;
 	private int fInstructionCounter;
 	private IRuntimeContext fContext;
-	private Stack<Object> fStack;
+
+	/**
+	 * The operand stack, <code>fStackSize</code> objects from the bottom.
+	 * Evaluations are single threaded, so the stack is not synchronized, and
+	 * it is reused by successive executions.
+	 */
+	private Object[] fStack = new Object[16];
+	private int fStackSize;
 	private IJavaValue fLastValue;
 
 	/**
@@ -44,6 +53,12 @@ public class Interpreter {
 	 */
 	private Map<String, IVariable> fInternalVariables;
 
+	/**
+	 * Values stored by the instructions for the rest of the execution, or
+	 * <code>null</code> if none
+	 */
+	private Map<String, IJavaValue> fEvaluationValues;
+
 	/**
 	 * List of objects for which GC has been disabled
 	 */
@@ -52,25 +67,27 @@ public class Interpreter {
 	private boolean fStopped = false;
 
 	public Interpreter(InstructionSequence instructions, IRuntimeContext context) {
+		fSequence = instructions;
 		fInstructions = instructions.getInstructions();
 		fContext = context;
 		fInternalVariables = new HashMap<>();
 	}
 
 	public void execute() throws CoreException {
+		Interpreter previous = Instruction.setInterpreter(this);
 		try {
 			reset();
+			fSequence.getVariablePrefetch().prefetch(this);
 			while (fInstructionCounter < fInstructions.length && !fStopped) {
 				Instruction instruction = fInstructions[fInstructionCounter++];
-				instruction.setInterpreter(this);
 				instruction.execute();
-				instruction.setInterpreter(null);
 			}
 		} catch (VMDisconnectedException e) {
 			throw new CoreException(new Status(IStatus.ERROR,
 					JDIDebugModel.getPluginIdentifier(), e.getMessage(), e));
 		} finally {
 			releaseObjects();
+			Instruction.setInterpreter(previous);
 		}
 	}
 
@@ -79,8 +96,10 @@ public class Interpreter {
 	}
 
 	private void reset() {
-		fStack = new Stack<>();
+		Arrays.fill(fStack, 0, fStackSize, null);
+		fStackSize = 0;
 		fInstructionCounter = 0;
+		fEvaluationValues = null;
 	}
 
 	/**
@@ -96,7 +115,10 @@ public class Interpreter {
 	 * evaluation completes.
 	 */
 	public void push(Object object) {
-		fStack.push(object);
+		if (fStackSize == fStack.length) {
+			fStack = Arrays.copyOf(fStack, fStackSize * 2);
+		}
+		fStack[fStackSize++] = object;
 		if (object instanceof IJavaObject) {
 			disableCollection((IJavaObject) object);
 		}
@@ -146,14 +168,22 @@ public class Interpreter {
 	 * Peeks at the top object of the stack
 	 */
 	public Object peek() {
-		return fStack.peek();
+		if (fStackSize == 0) {
+			throw new EmptyStackException();
+		}
+		return fStack[fStackSize - 1];
 	}
 
 	/**
 	 * Pops an object off of the stack
 	 */
 	public Object pop() {
-		return fStack.pop();
+		if (fStackSize == 0) {
+			throw new EmptyStackException();
+		}
+		Object object = fStack[--fStackSize];
+		fStack[fStackSize] = null;
+		return object;
 	}
 
 	/**
@@ -163,14 +193,44 @@ public class Interpreter {
 		return fContext;
 	}
 
+	/**
+	 * Returns the type resolved for the given key by a previous execution of
+	 * the instructions in the class loader of this interpreter's context, or
+	 * <code>null</code> if none.
+	 *
+	 * @param key
+	 *            the name or signature of the type
+	 * @return the resolved type or <code>null</code>
+	 * @throws CoreException
+	 *             if unable to resolve the class loader of the context
+	 */
+	public IJavaType getResolvedType(String key) throws CoreException {
+		return fSequence.getResolvedType(fContext.getVM(), fContext.getClassLoaderObject(), key);
+	}
+
+	/**
+	 * Remembers the type resolved for the given key in the class loader of
+	 * this interpreter's context, for the next executions of the instructions.
+	 *
+	 * @param key
+	 *            the name or signature of the type
+	 * @param type
+	 *            the resolved type
+	 * @throws CoreException
+	 *             if unable to resolve the class loader of the context
+	 */
+	public void setResolvedType(String key, IJavaType type) throws CoreException {
+		fSequence.setResolvedType(fContext.getVM(), fContext.getClassLoaderObject(), key, type);
+	}
+
 	public IJavaValue getResult() {
-		if (fStack == null || fStack.isEmpty()) {
+		if (fStackSize == 0) {
 			if (fLastValue == null) {
 				return getContext().getVM().voidValue();
 			}
 			return fLastValue;
 		}
-		Object top = fStack.peek();
+		Object top = fStack[fStackSize - 1];
 		if (top instanceof IJavaVariable) {
 			try {
 				return (IJavaValue) ((IJavaVariable) top).getValue();
@@ -190,6 +250,34 @@ public class Interpreter {
 		fLastValue = value;
 	}
 
+	/**
+	 * Returns the value stored for the given key during the current
+	 * execution, or <code>null</code> if none.
+	 *
+	 * @param key
+	 *            the key of the value
+	 * @return the stored value or <code>null</code>
+	 */
+	public IJavaValue getEvaluationValue(String key) {
+		return fEvaluationValues == null ? null : fEvaluationValues.get(key);
+	}
+
+	/**
+	 * Stores a value for the rest of the current execution, for example the
+	 * value of a field read more than once.
+	 *
+	 * @param key
+	 *            the key of the value
+	 * @param value
+	 *            the value to store
+	 */
+	public void setEvaluationValue(String key, IJavaValue value) {
+		if (fEvaluationValues == null) {
+			fEvaluationValues = new HashMap<>(4);
+		}
+		fEvaluationValues.put(key, value);
+	}
+
 	/**
 	 * Create a new variable in the interpreter with the given name and the
 	 * given type.
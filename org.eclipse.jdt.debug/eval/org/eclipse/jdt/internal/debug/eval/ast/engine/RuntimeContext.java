@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.debug.eval.ast.engine;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.debug.core.IJavaDebugTarget;
@@ -17,7 +20,9 @@ import org.eclipse.jdt.debug.core.IJavaObject;
 import org.eclipse.jdt.debug.core.IJavaReferenceType;
 import org.eclipse.jdt.debug.core.IJavaStackFrame;
 import org.eclipse.jdt.debug.core.IJavaThread;
+import org.eclipse.jdt.debug.core.IJavaValue;
 import org.eclipse.jdt.debug.core.IJavaVariable;
+import org.eclipse.jdt.internal.debug.core.model.JDIStackFrame;
 
 public class RuntimeContext extends AbstractRuntimeContext {
 
@@ -76,6 +81,18 @@ public class RuntimeContext extends AbstractRuntimeContext {
 		return getFrame().getLocalVariables();
 	}
 
+	/**
+	 * @see IRuntimeContext#getLocalValues(Collection)
+	 */
+	@Override
+	public Map<String, IJavaValue> getLocalValues(Collection<String> names) throws CoreException {
+		IJavaStackFrame frame = getFrame();
+		if (frame instanceof JDIStackFrame) {
+			return ((JDIStackFrame) frame).getLocalValues(names);
+		}
+		return super.getLocalValues(names);
+	}
+
 	/**
 	 * Sets the stack frame context used to compile/run expressions
 	 *
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.debug.eval.ast.engine;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+
+/**
+ * Finds whether an evaluation has side effects: whether it invokes methods
+ * (explicitly or through string conversion), creates objects or assigns
+ * variables. Nothing in an evaluation without side effects can change the
+ * variables it reads, so each variable is read at most once per evaluation,
+ * and the variables are prefetched in batches before the evaluation runs.
+ */
+class SideEffectFinder extends ASTVisitor {
+
+	private boolean fHasSideEffects;
+
+	/**
+	 * Returns whether the given evaluation may have side effects.
+	 *
+	 * @param node
+	 *            the evaluation
+	 * @return whether the evaluation may have side effects
+	 */
+	static boolean hasSideEffects(ASTNode node) {
+		SideEffectFinder finder = new SideEffectFinder();
+		node.accept(finder);
+		return finder.fHasSideEffects;
+	}
+
+	@Override
+	public boolean visit(MethodInvocation node) {
+		fHasSideEffects = true;
+		return false;
+	}
+
+	@Override
+	public boolean visit(SuperMethodInvocation node) {
+		fHasSideEffects = true;
+		return false;
+	}
+
+	@Override
+	public boolean visit(ClassInstanceCreation node) {
+		fHasSideEffects = true;
+		return false;
+	}
+
+	@Override
+	public boolean visit(LambdaExpression node) {
+		fHasSideEffects = true;
+		return false;
+	}
+
+	@Override
+	public boolean visit(Assignment node) {
+		fHasSideEffects = true;
+		return false;
+	}
+
+	@Override
+	public boolean visit(PostfixExpression node) {
+		fHasSideEffects = true;
+		return false;
+	}
+
+	@Override
+	public boolean visit(PrefixExpression node) {
+		PrefixExpression.Operator operator = node.getOperator();
+		if (operator == PrefixExpression.Operator.INCREMENT
+				|| operator == PrefixExpression.Operator.DECREMENT) {
+			fHasSideEffects = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Iterating invokes <code>Iterable.iterator()</code>.
+	 */
+	@Override
+	public boolean visit(EnhancedForStatement node) {
+		fHasSideEffects = true;
+		return false;
+	}
+
+	/**
+	 * Converting an object to a string invokes its <code>toString()</code>
+	 * method.
+	 */
+	@Override
+	public boolean visit(InfixExpression node) {
+		if (node.getOperator() == InfixExpression.Operator.PLUS
+				&& isString(node.resolveTypeBinding())) {
+			if (isObject(node.getLeftOperand()) || isObject(node.getRightOperand())) {
+				fHasSideEffects = true;
+				return false;
+			}
+			for (Object operand : node.extendedOperands()) {
+				if (isObject((Expression) operand)) {
+					fHasSideEffects = true;
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isString(ITypeBinding binding) {
+		return binding != null && "java.lang.String".equals(binding.getQualifiedName()); //$NON-NLS-1$
+	}
+
+	private static boolean isObject(Expression expression) {
+		ITypeBinding binding = expression.resolveTypeBinding();
+		return binding == null || !(binding.isPrimitive() || isString(binding));
+	}
+}
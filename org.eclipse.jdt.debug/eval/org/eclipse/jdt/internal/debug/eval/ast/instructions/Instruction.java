@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -33,20 +33,39 @@ import org.eclipse.osgi.util.NLS;
  */
 public abstract class Instruction {
 
-	private Interpreter fInterpreter;
+	/**
+	 * The interpreter executing instructions in the current thread. Compiled
+	 * expressions are shared by threads, so the interpreter is not stored in
+	 * the instructions.
+	 */
+	private static final ThreadLocal<Interpreter> fgInterpreter = new ThreadLocal<>();
 
 	public abstract int getSize();
 
-	public void setInterpreter(Interpreter interpreter) {
-		fInterpreter = interpreter;
+	/**
+	 * Sets the interpreter executing instructions in the current thread.
+	 *
+	 * @param interpreter
+	 *            the interpreter, or <code>null</code>
+	 * @return the interpreter that was executing instructions in the current
+	 *         thread, or <code>null</code>
+	 */
+	public static Interpreter setInterpreter(Interpreter interpreter) {
+		Interpreter previous = fgInterpreter.get();
+		if (interpreter == null) {
+			fgInterpreter.remove();
+		} else {
+			fgInterpreter.set(interpreter);
+		}
+		return previous;
 	}
 
 	public void setLastValue(IJavaValue value) {
-		fInterpreter.setLastValue(value);
+		fgInterpreter.get().setLastValue(value);
 	}
 
 	public void stop() {
-		fInterpreter.stop();
+		fgInterpreter.get().stop();
 	}
 
 	public static int getBinaryPromotionType(int left, int right) {
@@ -56,7 +75,7 @@ public abstract class Instruction {
 	public abstract void execute() throws CoreException;
 
 	protected IRuntimeContext getContext() {
-		return fInterpreter.getContext();
+		return fgInterpreter.get().getContext();
 	}
 
 	protected IJavaDebugTarget getVM() {
@@ -69,7 +88,7 @@ public abstract class Instruction {
 	 * @see Interpreter#getInternalVariable(String)
 	 */
 	protected IVariable getInternalVariable(String name) {
-		return fInterpreter.getInternalVariable(name);
+		return fgInterpreter.get().getInternalVariable(name);
 	}
 
 	/**
@@ -80,7 +99,7 @@ public abstract class Instruction {
 	 */
 	protected IVariable createInternalVariable(String name,
 			IJavaType referencType) {
-		return fInterpreter.createInternalVariable(name, referencType);
+		return fgInterpreter.get().createInternalVariable(name, referencType);
 	}
 
 	/**
@@ -94,19 +113,34 @@ public abstract class Instruction {
 	}
 
 	protected void jump(int offset) {
-		fInterpreter.jump(offset);
+		fgInterpreter.get().jump(offset);
+	}
+
+	/**
+	 * Returns the value stored for the given key during the current
+	 * evaluation, or <code>null</code> if none.
+	 */
+	protected IJavaValue getEvaluationValue(String key) {
+		return fgInterpreter.get().getEvaluationValue(key);
+	}
+
+	/**
+	 * Stores a value for the rest of the current evaluation.
+	 */
+	protected void setEvaluationValue(String key, IJavaValue value) {
+		fgInterpreter.get().setEvaluationValue(key, value);
 	}
 
 	protected void push(Object object) {
-		fInterpreter.push(object);
+		fgInterpreter.get().push(object);
 	}
 
 	protected Object pop() {
-		return fInterpreter.pop();
+		return fgInterpreter.get().pop();
 	}
 
 	protected IJavaValue popValue() throws CoreException {
-		Object element = fInterpreter.pop();
+		Object element = fgInterpreter.get().pop();
 		if (element instanceof IJavaVariable) {
 			return (IJavaValue) ((IJavaVariable) element).getValue();
 		}
@@ -114,7 +148,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNewValue(boolean value) {
-		fInterpreter.push(newValue(value));
+		fgInterpreter.get().push(newValue(value));
 	}
 
 	protected IJavaValue newValue(boolean value) {
@@ -122,7 +156,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNewValue(byte value) {
-		fInterpreter.push(newValue(value));
+		fgInterpreter.get().push(newValue(value));
 	}
 
 	protected IJavaValue newValue(byte value) {
@@ -130,7 +164,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNewValue(short value) {
-		fInterpreter.push(newValue(value));
+		fgInterpreter.get().push(newValue(value));
 	}
 
 	protected IJavaValue newValue(short value) {
@@ -138,7 +172,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNewValue(int value) {
-		fInterpreter.push(newValue(value));
+		fgInterpreter.get().push(newValue(value));
 	}
 
 	protected IJavaValue newValue(int value) {
@@ -146,7 +180,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNewValue(long value) {
-		fInterpreter.push(newValue(value));
+		fgInterpreter.get().push(newValue(value));
 	}
 
 	protected IJavaValue newValue(long value) {
@@ -154,7 +188,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNewValue(char value) {
-		fInterpreter.push(newValue(value));
+		fgInterpreter.get().push(newValue(value));
 	}
 
 	protected IJavaValue newValue(char value) {
@@ -162,7 +196,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNewValue(float value) {
-		fInterpreter.push(newValue(value));
+		fgInterpreter.get().push(newValue(value));
 	}
 
 	protected IJavaValue newValue(float value) {
@@ -170,7 +204,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNewValue(double value) {
-		fInterpreter.push(newValue(value));
+		fgInterpreter.get().push(newValue(value));
 	}
 
 	protected IJavaValue newValue(double value) {
@@ -178,7 +212,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNewValue(String value) {
-		fInterpreter.push(newValue(value));
+		fgInterpreter.get().push(newValue(value));
 	}
 
 	protected IJavaValue newValue(String value) {
@@ -186,7 +220,7 @@ public abstract class Instruction {
 	}
 
 	protected void pushNullValue() {
-		fInterpreter.push(nullValue());
+		fgInterpreter.get().push(nullValue());
 	}
 
 	protected IJavaValue nullValue() {
@@ -197,7 +231,21 @@ public abstract class Instruction {
 		return fTypeTable[typeId][T_int];
 	}
 
+	/**
+	 * Returns the type with the given name in the class loader of the context,
+	 * resolving it at the first execution only.
+	 */
 	protected IJavaType getType(String qualifiedName) throws CoreException {
+		Interpreter interpreter = fgInterpreter.get();
+		IJavaType type = interpreter.getResolvedType(qualifiedName);
+		if (type == null) {
+			type = resolveType(qualifiedName);
+			interpreter.setResolvedType(qualifiedName, type);
+		}
+		return type;
+	}
+
+	private IJavaType resolveType(String qualifiedName) throws CoreException {
 		// Force the class to be loaded, and record the class reference
 		// for later use if there are multiple classes with the same name.
 		IJavaClassObject classReference = getContext().classForName(
@@ -222,6 +270,16 @@ public abstract class Instruction {
 	 * @throws CoreException
 	 */
 	protected IJavaType getPrimitiveType(String name) throws CoreException {
+		Interpreter interpreter = fgInterpreter.get();
+		IJavaType type = interpreter.getResolvedType(name);
+		if (type == null) {
+			type = resolvePrimitiveType(name);
+			interpreter.setResolvedType(name, type);
+		}
+		return type;
+	}
+
+	private IJavaType resolvePrimitiveType(String name) throws CoreException {
 		IJavaReferenceType type = null;
 		if ("boolean".equals(name)) { //$NON-NLS-1$
 			type = (IJavaReferenceType) getType("java.lang.Boolean"); //$NON-NLS-1$
@@ -254,8 +312,29 @@ public abstract class Instruction {
 						new String[] { name }), null));
 	}
 
+	/**
+	 * Returns the array type with the given component type signature and
+	 * dimension in the class loader of the context, resolving it at the first
+	 * execution only.
+	 */
 	protected IJavaArrayType getArrayType(String typeSignature, int dimension)
 			throws CoreException {
+		StringBuilder key = new StringBuilder(dimension + typeSignature.length());
+		for (int i = 0; i < dimension; i++) {
+			key.append('[');
+		}
+		String signature = key.append(typeSignature).toString();
+		Interpreter interpreter = fgInterpreter.get();
+		IJavaArrayType type = (IJavaArrayType) interpreter.getResolvedType(signature);
+		if (type == null) {
+			type = resolveArrayType(typeSignature, dimension);
+			interpreter.setResolvedType(signature, type);
+		}
+		return type;
+	}
+
+	private IJavaArrayType resolveArrayType(String typeSignature, int dimension)
+			throws CoreException {
 		String qualifiedName = RuntimeSignature.toString(typeSignature);
 		String braces = ""; //$NON-NLS-1$
 		for (int i = 0; i < dimension; i++) {
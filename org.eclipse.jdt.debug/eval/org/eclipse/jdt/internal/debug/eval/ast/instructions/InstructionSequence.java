@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,16 +11,75 @@
 package org.eclipse.jdt.internal.debug.eval.ast.instructions;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.dom.Message;
+import org.eclipse.jdt.debug.core.IJavaDebugTarget;
+import org.eclipse.jdt.debug.core.IJavaObject;
+import org.eclipse.jdt.debug.core.IJavaType;
 import org.eclipse.jdt.debug.eval.ICompiledExpression;
 
 public class InstructionSequence implements ICompiledExpression {
 
+	/**
+	 * The class loader context types are resolved in: a debug target and a
+	 * class loader, <code>null</code> for the bootstrap loader.
+	 */
+	private static final class TypeScope {
+		final IJavaDebugTarget fTarget;
+		final IJavaObject fLoader;
+
+		TypeScope(IJavaDebugTarget target, IJavaObject loader) {
+			fTarget = target;
+			fLoader = loader;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * fTarget.hashCode() + (fLoader == null ? 0 : fLoader.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TypeScope)) {
+				return false;
+			}
+			TypeScope scope = (TypeScope) obj;
+			return fTarget.equals(scope.fTarget)
+					&& (fLoader == null ? scope.fLoader == null : fLoader.equals(scope.fLoader));
+		}
+	}
+
 	private List<Instruction> fInstructions;
+	/**
+	 * The instructions as an array, linked once for all executions, or
+	 * <code>null</code> if instructions were added since.
+	 */
+	private volatile Instruction[] fLinkedInstructions;
+	/**
+	 * The variables read once by the instructions, collected once for all
+	 * executions, or <code>null</code> if instructions were added since.
+	 */
+	private volatile VariablePrefetch fVariablePrefetch;
+	/**
+	 * Types resolved by executions of the instructions, by name or signature,
+	 * in each class loader context. Compiled expressions are shared by threads
+	 * and debug targets, so accesses are synchronized.
+	 */
+	private final Map<TypeScope, Map<String, IJavaType>> fResolvedTypes = new HashMap<>(2);
+	/**
+	 * The sequences that hold resolved types, so that the types of a debug
+	 * target can be forgotten when it terminates. Compiled expressions are
+	 * cached beyond the life of the targets they are executed in.
+	 */
+	private static final Set<InstructionSequence> fgSequencesWithTypes = Collections.newSetFromMap(new WeakHashMap<InstructionSequence, Boolean>());
 	/**
 	 * A collection of error messages (<code>String</code>) that occurred while
 	 * creating this expression
@@ -91,17 +150,107 @@ public class InstructionSequence implements ICompiledExpression {
 	}
 
 	/**
-	 * Answers the array of instructions, or an empty array.
+	 * Answers the array of instructions, or an empty array. The array is
+	 * shared by all executions and must not be modified.
 	 */
 	public Instruction[] getInstructions() {
-		int size = fInstructions.size();
-		Instruction[] instructions = new Instruction[size];
-		if (size > 0) {
-			fInstructions.toArray(instructions);
+		Instruction[] instructions = fLinkedInstructions;
+		if (instructions == null) {
+			instructions = fInstructions.toArray(new Instruction[fInstructions.size()]);
+			fLinkedInstructions = instructions;
 		}
 		return instructions;
 	}
 
+	/**
+	 * Answers the prefetch of the variables the instructions read at most
+	 * once per execution.
+	 */
+	public VariablePrefetch getVariablePrefetch() {
+		VariablePrefetch prefetch = fVariablePrefetch;
+		if (prefetch == null) {
+			prefetch = new VariablePrefetch(getInstructions());
+			fVariablePrefetch = prefetch;
+		}
+		return prefetch;
+	}
+
+	/**
+	 * Returns the type resolved for the given key by a previous execution in
+	 * the given class loader context, or <code>null</code> if none.
+	 *
+	 * @param target
+	 *            the debug target of the execution
+	 * @param loader
+	 *            the class loader of the execution context, or
+	 *            <code>null</code> for the bootstrap loader
+	 * @param key
+	 *            the name or signature of the type
+	 * @return the resolved type or <code>null</code>
+	 */
+	public IJavaType getResolvedType(IJavaDebugTarget target, IJavaObject loader, String key) {
+		synchronized (fResolvedTypes) {
+			Map<String, IJavaType> types = fResolvedTypes.get(new TypeScope(target, loader));
+			return types == null ? null : types.get(key);
+		}
+	}
+
+	/**
+	 * Remembers the type resolved for the given key in the given class loader
+	 * context.
+	 *
+	 * @param target
+	 *            the debug target of the execution
+	 * @param loader
+	 *            the class loader of the execution context, or
+	 *            <code>null</code> for the bootstrap loader
+	 * @param key
+	 *            the name or signature of the type
+	 * @param type
+	 *            the resolved type
+	 */
+	public void setResolvedType(IJavaDebugTarget target, IJavaObject loader, String key, IJavaType type) {
+		synchronized (fResolvedTypes) {
+			TypeScope scope = new TypeScope(target, loader);
+			Map<String, IJavaType> types = fResolvedTypes.get(scope);
+			if (types == null) {
+				// forget the types of the targets that are gone
+				fResolvedTypes.keySet().removeIf(s -> s.fTarget.isTerminated() || s.fTarget.isDisconnected());
+				types = new HashMap<>();
+				fResolvedTypes.put(scope, types);
+				synchronized (fgSequencesWithTypes) {
+					fgSequencesWithTypes.add(this);
+				}
+			}
+			types.put(key, type);
+		}
+	}
+
+	/**
+	 * Forgets the types resolved in the given debug target by all sequences.
+	 * Called when the target terminates or disconnects, so that cached
+	 * sequences do not retain it.
+	 *
+	 * @param target
+	 *            the debug target that is gone
+	 */
+	public static void forgetResolvedTypes(IJavaDebugTarget target) {
+		InstructionSequence[] sequences;
+		synchronized (fgSequencesWithTypes) {
+			sequences = fgSequencesWithTypes.toArray(new InstructionSequence[fgSequencesWithTypes.size()]);
+		}
+		for (InstructionSequence sequence : sequences) {
+			synchronized (sequence.fResolvedTypes) {
+				sequence.fResolvedTypes.keySet().removeIf(s -> s.fTarget.equals(target));
+				if (sequence.fResolvedTypes.isEmpty()) {
+					synchronized (fgSequencesWithTypes) {
+						fgSequencesWithTypes.remove(sequence);
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Answer the instruction at the given address
 	 */
@@ -114,6 +263,8 @@ public class InstructionSequence implements ICompiledExpression {
 	 */
 	public void add(Instruction instruction) {
 		fInstructions.add(instruction);
+		fLinkedInstructions = null;
+		fVariablePrefetch = null;
 	}
 
 	public int indexOf(Instruction instruction) {
@@ -136,6 +287,8 @@ public class InstructionSequence implements ICompiledExpression {
 	 */
 	public void insert(Instruction instruction, int index) {
 		fInstructions.add(index, instruction);
+		fLinkedInstructions = null;
+		fVariablePrefetch = null;
 	}
 
 	public Instruction get(int address) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.debug.core.IJavaFieldVariable;
 import org.eclipse.jdt.debug.core.IJavaObject;
+import org.eclipse.jdt.debug.core.IJavaValue;
 import org.eclipse.jdt.debug.core.IJavaVariable;
 import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
 import org.eclipse.jdt.internal.debug.core.model.JDINullValue;
@@ -34,6 +35,18 @@ public class PushFieldVariable extends CompoundInstruction {
 
 	private int fSuperClassLevel;
 
+	/**
+	 * The receiver of the field if its value is pushed rather than the field:
+	 * {@link VariablePrefetch#THIS} or the name of a local variable,
+	 * <code>null</code> otherwise.
+	 */
+	private String fReadOnceReceiver;
+
+	/**
+	 * Key of the value of the field in the evaluation, or <code>null</code>.
+	 */
+	private String fValueKey;
+
 	public PushFieldVariable(String name, int superClassLevel, int start) {
 		super(start);
 		fName = name;
@@ -47,6 +60,26 @@ public class PushFieldVariable extends CompoundInstruction {
 		fDeclaringTypeSignature = declaringTypeSignature;
 	}
 
+	/**
+	 * Creates an instruction pushing a field of the object on the stack. If
+	 * the field cannot change during the evaluation and its receiver is 'this'
+	 * or a local variable, its value is pushed instead, read at most once per
+	 * evaluation and possibly prefetched (see {@link VariablePrefetch}).
+	 *
+	 * @param readOnceReceiver
+	 *            {@link VariablePrefetch#THIS} or the name of the local
+	 *            variable holding the receiver, if the value of the field is
+	 *            read once, <code>null</code> otherwise
+	 */
+	public PushFieldVariable(String name, String declaringTypeSignature,
+			String readOnceReceiver, int start) {
+		this(name, declaringTypeSignature, start);
+		if (readOnceReceiver != null) {
+			fReadOnceReceiver = readOnceReceiver;
+			fValueKey = VariablePrefetch.getFieldKey(readOnceReceiver, declaringTypeSignature, name);
+		}
+	}
+
 	@Override
 	public void execute() throws CoreException {
 		Object value = popValue();
@@ -57,6 +90,14 @@ public class PushFieldVariable extends CompoundInstruction {
 		}
 		IJavaObject receiver = (IJavaObject) value;
 
+		if (fValueKey != null) {
+			IJavaValue fieldValue = getEvaluationValue(fValueKey);
+			if (fieldValue != null) {
+				push(fieldValue);
+				return;
+			}
+		}
+
 		IJavaVariable field = null;
 
 		if (fDeclaringTypeSignature == null) {
@@ -91,9 +132,34 @@ public class PushFieldVariable extends CompoundInstruction {
 													receiver.toString() }),
 							null)); //
 		}
+		if (fValueKey != null) {
+			IJavaValue fieldValue = (IJavaValue) field.getValue();
+			setEvaluationValue(fValueKey, fieldValue);
+			push(fieldValue);
+			return;
+		}
 		push(field);
 	}
 
+	/**
+	 * Returns the receiver whose field is read at most once per execution,
+	 * {@link VariablePrefetch#THIS} or the name of a local variable, or
+	 * <code>null</code> if the field is read on each access.
+	 *
+	 * @return the receiver of the field, or <code>null</code>
+	 */
+	public String getReadOnceReceiver() {
+		return fReadOnceReceiver;
+	}
+
+	String getDeclaringTypeSignature() {
+		return fDeclaringTypeSignature;
+	}
+
+	String getName() {
+		return fName;
+	}
+
 	@Override
 	public String toString() {
 		return NLS.bind(InstructionsEvaluationMessages.PushFieldVariable_push_field__0__2,
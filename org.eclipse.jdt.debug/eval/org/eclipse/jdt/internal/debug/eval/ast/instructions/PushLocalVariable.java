@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,6 +17,7 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.debug.core.model.IVariable;
 import org.eclipse.jdt.debug.core.IJavaFieldVariable;
 import org.eclipse.jdt.debug.core.IJavaObject;
+import org.eclipse.jdt.debug.core.IJavaValue;
 import org.eclipse.jdt.debug.core.IJavaVariable;
 import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
 import org.eclipse.jdt.internal.debug.eval.ast.engine.ASTEvaluationEngine;
@@ -33,10 +34,27 @@ public class PushLocalVariable extends SimpleInstruction {
 	 */
 	private String fName;
 
+	/**
+	 * Whether the value of the variable, rather than the variable, is pushed,
+	 * read at most once per evaluation.
+	 */
+	private boolean fReadOnce;
+
 	public PushLocalVariable(String name) {
 		fName = name;
 	}
 
+	/**
+	 * Creates an instruction pushing a local variable. If the variable cannot
+	 * change during the evaluation, its value is pushed instead, read at most
+	 * once per evaluation and possibly prefetched (see
+	 * {@link VariablePrefetch}).
+	 */
+	public PushLocalVariable(String name, boolean readOnce) {
+		fName = name;
+		fReadOnce = readOnce;
+	}
+
 	@Override
 	public void execute() throws CoreException {
 		IVariable internalVariable = getInternalVariable(fName);
@@ -44,10 +62,23 @@ public class PushLocalVariable extends SimpleInstruction {
 			push(internalVariable);
 			return;
 		}
+		if (fReadOnce) {
+			IJavaValue value = getEvaluationValue(fName);
+			if (value != null) {
+				push(value);
+				return;
+			}
+		}
 		IRuntimeContext context = getContext();
 		IJavaVariable[] locals = context.getLocals();
 		for (IJavaVariable local : locals) {
 			if (local.getName().equals(getName())) {
+				if (fReadOnce) {
+					IJavaValue value = (IJavaValue) local.getValue();
+					setEvaluationValue(fName, value);
+					push(value);
+					return;
+				}
 				push(local);
 				return;
 			}
@@ -79,6 +110,16 @@ public class PushLocalVariable extends SimpleInstruction {
 		return fName;
 	}
 
+	/**
+	 * Returns whether the value of the variable is read at most once per
+	 * execution, and can be prefetched.
+	 *
+	 * @return whether the variable is read once
+	 */
+	public boolean isReadOnce() {
+		return fReadOnce;
+	}
+
 	@Override
 	public String toString() {
 		return NLS.bind(
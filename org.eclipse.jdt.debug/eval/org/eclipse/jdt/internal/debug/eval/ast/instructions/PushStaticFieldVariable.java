@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.debug.core.IJavaClassType;
 import org.eclipse.jdt.debug.core.IJavaInterfaceType;
 import org.eclipse.jdt.debug.core.IJavaType;
+import org.eclipse.jdt.debug.core.IJavaValue;
 import org.eclipse.jdt.debug.core.IJavaVariable;
 import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
 import org.eclipse.osgi.util.NLS;
@@ -29,6 +30,12 @@ public class PushStaticFieldVariable extends CompoundInstruction {
 
 	private String fQualifiedTypeName;
 
+	/**
+	 * Key of the value of the field in the evaluation, if the value is pushed
+	 * rather than the field, <code>null</code> otherwise.
+	 */
+	private String fValueKey;
+
 	public PushStaticFieldVariable(String fieldName, String qualifiedTypeName,
 			int start) {
 		super(start);
@@ -36,8 +43,29 @@ public class PushStaticFieldVariable extends CompoundInstruction {
 		fQualifiedTypeName = qualifiedTypeName;
 	}
 
+	/**
+	 * Creates an instruction pushing a static field. If the field cannot
+	 * change during the evaluation, its value is pushed instead, read at most
+	 * once per evaluation and possibly prefetched (see
+	 * {@link VariablePrefetch}).
+	 */
+	public PushStaticFieldVariable(String fieldName, String qualifiedTypeName,
+			boolean readOnce, int start) {
+		this(fieldName, qualifiedTypeName, start);
+		if (readOnce) {
+			fValueKey = VariablePrefetch.getStaticFieldKey(qualifiedTypeName, fieldName);
+		}
+	}
+
 	@Override
 	public void execute() throws CoreException {
+		if (fValueKey != null) {
+			IJavaValue value = getEvaluationValue(fValueKey);
+			if (value != null) {
+				push(value);
+				return;
+			}
+		}
 		IJavaType receiver = getType(fQualifiedTypeName);
 
 		IJavaVariable field = null;
@@ -54,9 +82,33 @@ public class PushStaticFieldVariable extends CompoundInstruction {
 					JDIDebugPlugin.getUniqueIdentifier(), IStatus.OK, message,
 					null)); // couldn't find the field
 		}
+		if (fValueKey != null) {
+			IJavaValue value = (IJavaValue) field.getValue();
+			setEvaluationValue(fValueKey, value);
+			push(value);
+			return;
+		}
 		push(field);
 	}
 
+	/**
+	 * Returns whether the value of the field is read at most once per
+	 * execution, and can be prefetched.
+	 *
+	 * @return whether the field is read once
+	 */
+	public boolean isReadOnce() {
+		return fValueKey != null;
+	}
+
+	String getTypeName() {
+		return fQualifiedTypeName;
+	}
+
+	String getName() {
+		return fFieldName;
+	}
+
 	@Override
 	public String toString() {
 		return NLS.bind(InstructionsEvaluationMessages.PushStaticFieldVariable_push_static_field__0__2,
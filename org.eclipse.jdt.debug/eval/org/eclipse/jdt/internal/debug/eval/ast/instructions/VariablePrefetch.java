@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.debug.eval.ast.instructions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.debug.core.IJavaType;
+import org.eclipse.jdt.debug.core.IJavaValue;
+import org.eclipse.jdt.internal.debug.core.model.JDINullValue;
+import org.eclipse.jdt.internal.debug.core.model.JDIObjectValue;
+import org.eclipse.jdt.internal.debug.core.model.JDIReferenceType;
+import org.eclipse.jdt.internal.debug.eval.ast.engine.IRuntimeContext;
+import org.eclipse.jdt.internal.debug.eval.ast.engine.Interpreter;
+
+/**
+ * Reads the variables that the instructions of a sequence read at most once
+ * per execution, before the execution, in as few requests to the target as
+ * possible:
+ * <ul>
+ * <li>one request for the local variables of the frame,</li>
+ * <li>one request per object for the fields of 'this' and of the objects held
+ * by local variables,</li>
+ * <li>one request per type for static fields, once the type has been resolved
+ * by a previous execution, so that prefetching never loads or initializes a
+ * class.</li>
+ * </ul>
+ * The values are stored in the interpreter, where the instructions find them.
+ * Variables that cannot be prefetched are read by the instructions as usual.
+ */
+public class VariablePrefetch {
+
+	/**
+	 * The receiver of the fields of 'this'
+	 */
+	public static final String THIS = "this"; //$NON-NLS-1$
+
+	/**
+	 * Names of the local variables to read
+	 */
+	private final Set<String> fLocals = new LinkedHashSet<>();
+
+	/**
+	 * Fields to read by receiver, 'this' or the name of a local variable. A
+	 * field is a declaring type signature and a name.
+	 */
+	private final Map<String, List<String[]>> fFields = new LinkedHashMap<>();
+
+	/**
+	 * Names of the static fields to read by type name
+	 */
+	private final Map<String, Set<String>> fStaticFields = new LinkedHashMap<>();
+
+	/**
+	 * Collects the variables read once by the given instructions.
+	 */
+	VariablePrefetch(Instruction[] instructions) {
+		for (Instruction instruction : instructions) {
+			if (instruction instanceof PushLocalVariable) {
+				PushLocalVariable local = (PushLocalVariable) instruction;
+				if (local.isReadOnce()) {
+					fLocals.add(local.getName());
+				}
+			} else if (instruction instanceof PushFieldVariable) {
+				PushFieldVariable field = (PushFieldVariable) instruction;
+				String receiver = field.getReadOnceReceiver();
+				if (receiver != null) {
+					List<String[]> fields = fFields.get(receiver);
+					if (fields == null) {
+						fields = new ArrayList<>(4);
+						fFields.put(receiver, fields);
+					}
+					fields.add(new String[] { field.getDeclaringTypeSignature(), field.getName() });
+					if (!THIS.equals(receiver)) {
+						fLocals.add(receiver);
+					}
+				}
+			} else if (instruction instanceof PushStaticFieldVariable) {
+				PushStaticFieldVariable field = (PushStaticFieldVariable) instruction;
+				if (field.isReadOnce()) {
+					Set<String> names = fStaticFields.get(field.getTypeName());
+					if (names == null) {
+						names = new LinkedHashSet<>(4);
+						fStaticFields.put(field.getTypeName(), names);
+					}
+					names.add(field.getName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of the value of a field in the interpreter.
+	 */
+	static String getFieldKey(String receiver, String declaringTypeSignature, String name) {
+		return receiver + '#' + declaringTypeSignature + '.' + name;
+	}
+
+	/**
+	 * Returns the key of the value of a static field in the interpreter.
+	 */
+	static String getStaticFieldKey(String typeName, String name) {
+		return typeName + '.' + name;
+	}
+
+	/**
+	 * Reads the variables in the context of the given interpreter and stores
+	 * their values in the interpreter.
+	 *
+	 * @param interpreter
+	 *            the interpreter about to execute the instructions
+	 */
+	public void prefetch(Interpreter interpreter) {
+		if (fLocals.isEmpty() && fFields.isEmpty() && fStaticFields.isEmpty()) {
+			return;
+		}
+		IRuntimeContext context = interpreter.getContext();
+		try {
+			Map<String, IJavaValue> locals = Collections.emptyMap();
+			if (!fLocals.isEmpty()) {
+				locals = context.getLocalValues(fLocals);
+				for (Map.Entry<String, IJavaValue> entry : locals.entrySet()) {
+					interpreter.setEvaluationValue(entry.getKey(), entry.getValue());
+				}
+			}
+			for (Map.Entry<String, List<String[]>> entry : fFields.entrySet()) {
+				String receiver = entry.getKey();
+				IJavaValue object = THIS.equals(receiver) ? context.getThis() : locals.get(receiver);
+				if (object instanceof JDIObjectValue && !(object instanceof JDINullValue)) {
+					prefetchFields(interpreter, receiver, (JDIObjectValue) object, entry.getValue());
+				}
+			}
+			for (Map.Entry<String, Set<String>> entry : fStaticFields.entrySet()) {
+				IJavaType type = interpreter.getResolvedType(entry.getKey());
+				if (type instanceof JDIReferenceType) {
+					prefetchStaticFields(interpreter, entry.getKey(), (JDIReferenceType) type, entry.getValue());
+				}
+			}
+		} catch (CoreException e) {
+			// the instructions read the variables and report the failure
+		}
+	}
+
+	private static void prefetchFields(Interpreter interpreter, String receiver,
+			JDIObjectValue object, List<String[]> fields) throws CoreException {
+		String[] declaringTypeSignatures = new String[fields.size()];
+		String[] names = new String[fields.size()];
+		for (int i = 0; i < names.length; i++) {
+			declaringTypeSignatures[i] = fields.get(i)[0];
+			names[i] = fields.get(i)[1];
+		}
+		IJavaValue[] values = object.getFieldValues(names, declaringTypeSignatures);
+		for (int i = 0; i < names.length; i++) {
+			if (values[i] != null) {
+				interpreter.setEvaluationValue(getFieldKey(receiver,
+						declaringTypeSignatures[i], names[i]), values[i]);
+			}
+		}
+	}
+
+	private static void prefetchStaticFields(Interpreter interpreter,
+			String typeName, JDIReferenceType type, Set<String> fields)
+			throws CoreException {
+		String[] names = fields.toArray(new String[fields.size()]);
+		IJavaValue[] values = type.getStaticFieldValues(names);
+		for (int i = 0; i < names.length; i++) {
+			if (values[i] != null) {
+				interpreter.setEvaluationValue(getStaticFieldKey(typeName, names[i]), values[i]);
+			}
+		}
+	}
+}
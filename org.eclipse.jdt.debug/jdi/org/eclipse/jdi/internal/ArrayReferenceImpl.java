@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,9 +10,7 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -21,6 +19,7 @@ import java.util.List;
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpID;
 import org.eclipse.jdi.internal.jdwp.JdwpObjectID;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 
 import com.sun.jdi.ArrayReference;
@@ -115,14 +114,13 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl implements
 		// Note that this information should not be cached.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData); // arrayObject
 			writeInt(firstIndex, "firstIndex", outData); //$NON-NLS-1$
 			writeInt(length, "length", outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.AR_GET_VALUES, outBytes);
+					JdwpCommandPacket.AR_GET_VALUES, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_INDEX:
 				throw new IndexOutOfBoundsException(
@@ -349,8 +347,7 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl implements
 		// Note that this information should not be cached.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			writeInt(index, "index", outData); //$NON-NLS-1$
 			writeInt(length, "length", outData); //$NON-NLS-1$
@@ -365,7 +362,7 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl implements
 			}
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.AR_SET_VALUES, outBytes);
+					JdwpCommandPacket.AR_SET_VALUES, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.TYPE_MISMATCH:
 				throw new InvalidTypeException();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,9 +11,7 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -23,6 +21,7 @@ import org.eclipse.jdi.internal.jdwp.JdwpClassID;
 import org.eclipse.jdi.internal.jdwp.JdwpClassObjectID;
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpID;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 
 import com.sun.jdi.ClassNotLoadedException;
@@ -92,9 +91,9 @@ public class ClassTypeImpl extends ReferenceTypeImpl implements ClassType {
 
 		// For all classes that have this class cached as superclass, this cache
 		// must be undone.
-		Iterator<Object> itr = virtualMachineImpl().allCachedRefTypes();
+		Iterator<ReferenceTypeImpl> itr = virtualMachineImpl().allCachedRefTypes();
 		while (itr.hasNext()) {
-			ReferenceTypeImpl refType = (ReferenceTypeImpl) itr.next();
+			ReferenceTypeImpl refType = itr.next();
 			if (refType instanceof ClassTypeImpl) {
 				ClassTypeImpl classType = (ClassTypeImpl) refType;
 				if (classType.fSuperclass != null && classType.fSuperclass.equals(this)) {
@@ -173,8 +172,7 @@ public class ClassTypeImpl extends ReferenceTypeImpl implements ClassType {
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			threadImpl.write(this, outData);
 			methodImpl.write(this, outData);
@@ -195,7 +193,7 @@ public class ClassTypeImpl extends ReferenceTypeImpl implements ClassType {
 					"options", MethodImpl.getInvokeOptions(), outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.CT_NEW_INSTANCE, outBytes);
+					JdwpCommandPacket.CT_NEW_INSTANCE, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_METHODID:
 				throw new IllegalArgumentException();
@@ -221,6 +219,7 @@ public class ClassTypeImpl extends ReferenceTypeImpl implements ClassType {
 			defaultIOExceptionHandler(e);
 			return null;
 		} finally {
+			threadImpl.invocationComplete((options & INVOKE_SINGLE_THREADED) != 0);
 			handledJdwpRequest();
 		}
 	}
@@ -234,8 +233,7 @@ public class ClassTypeImpl extends ReferenceTypeImpl implements ClassType {
 		// Note that this information should not be cached.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			writeInt(1, "size", outData); // We only set one field //$NON-NLS-1$
 			checkVM(field);
@@ -253,7 +251,7 @@ public class ClassTypeImpl extends ReferenceTypeImpl implements ClassType {
 			}
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.CT_SET_VALUES, outBytes);
+					JdwpCommandPacket.CT_SET_VALUES, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.TYPE_MISMATCH:
 				throw new InvalidTypeException();
@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ReferenceType;
+
+/**
+ * Index of the types loaded in a virtual machine. The index is seeded with
+ * the result of a single {@link VirtualMachineImpl#allClasses()} and then kept
+ * current from class prepare and class unload events, so that queries by
+ * signature, name prefix and source name are answered without a round trip to
+ * the virtual machine.
+ * <p>
+ * Every change to the index increments its epoch. Consumers that remember the
+ * epoch of their last query can ask for the types added and removed since then
+ * with {@link #changesSince(long)}.
+ * </p>
+ * <p>
+ * Unlike {@link VirtualMachineImpl#allClasses()}, the index only learns about
+ * types when they are prepared, so types that are loaded but not prepared yet
+ * may be missing from it.
+ * </p>
+ *
+ * @see VirtualMachineImpl#loadedClassIndex()
+ */
+public class LoadedClassIndex {
+
+	/** Number of changes kept to answer {@link #changesSince(long)}. */
+	private static final int MAX_CHANGES = 4096;
+
+	/**
+	 * Types added to and removed from the index since an epoch.
+	 */
+	public static final class Delta {
+		private final long fEpoch;
+		private final List<ReferenceType> fAdded;
+		private final List<ReferenceType> fRemoved;
+
+		Delta(long epoch, List<ReferenceType> added, List<ReferenceType> removed) {
+			fEpoch = epoch;
+			fAdded = added;
+			fRemoved = removed;
+		}
+
+		/**
+		 * @return Returns the epoch of the index when the delta was computed.
+		 */
+		public long epoch() {
+			return fEpoch;
+		}
+
+		/**
+		 * @return Returns the types that were added and are still loaded.
+		 */
+		public List<ReferenceType> added() {
+			return fAdded;
+		}
+
+		/**
+		 * @return Returns the types that were removed.
+		 */
+		public List<ReferenceType> removed() {
+			return fRemoved;
+		}
+	}
+
+	/**
+	 * Addition or removal of a type.
+	 */
+	private static final class Change {
+		final long fEpoch;
+		final ReferenceTypeImpl fType;
+		final boolean fAdded;
+
+		Change(long epoch, ReferenceTypeImpl type, boolean added) {
+			fEpoch = epoch;
+			fType = type;
+			fAdded = added;
+		}
+	}
+
+	private final VirtualMachineImpl fVirtualMachineImpl;
+
+	/** Types by id. */
+	private final Map<Long, ReferenceTypeImpl> fTypes = new HashMap<>();
+	/** Types by signature. */
+	private final Map<String, List<ReferenceTypeImpl>> fBySignature = new HashMap<>();
+	/** Types by name, sorted to answer name prefix queries. */
+	private final TreeMap<String, List<ReferenceTypeImpl>> fByName = new TreeMap<>();
+	/**
+	 * Types by source name, only for the types in {@link #fSourceNameKnown}.
+	 * Source names are retrieved on the first source name query.
+	 */
+	private final Map<String, List<ReferenceTypeImpl>> fBySourceName = new HashMap<>();
+	private final Set<ReferenceTypeImpl> fSourceNameKnown = new HashSet<>();
+	private final Map<ReferenceTypeImpl, String> fSourceNames = new HashMap<>();
+
+	private long fEpoch;
+	private final ArrayDeque<Change> fChanges = new ArrayDeque<>();
+	/** Oldest epoch for which the changes are all known. */
+	private long fOldestEpoch;
+
+	/**
+	 * Signatures of the types unloaded while the index is seeded, or
+	 * <code>null</code> if the index is not being seeded.
+	 */
+	private Set<String> fUnloadedWhileSeeding = new HashSet<>();
+
+	LoadedClassIndex(VirtualMachineImpl vmImpl) {
+		fVirtualMachineImpl = vmImpl;
+	}
+
+	/**
+	 * Seeds the index with the types currently loaded in the virtual machine.
+	 * Class prepare and class unload events must already be requested, the
+	 * events received while seeding are taken into account.
+	 */
+	void seed() {
+		List<ReferenceType> classes = fVirtualMachineImpl.allClasses();
+		Set<String> unloaded;
+		synchronized (this) {
+			for (ReferenceType type : classes) {
+				add((ReferenceTypeImpl) type);
+			}
+			unloaded = fUnloadedWhileSeeding;
+			fUnloadedWhileSeeding = null;
+		}
+		// allClasses() may have returned types that have been unloaded since
+		for (String signature : unloaded) {
+			List<ReferenceType> loaded = fVirtualMachineImpl.classesBySignature(signature);
+			synchronized (this) {
+				for (ReferenceTypeImpl type : typesWithSignature(signature)) {
+					if (!loaded.contains(type)) {
+						remove(type);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a prepared type to the index.
+	 */
+	synchronized void classPrepared(ReferenceTypeImpl type) {
+		add(type);
+	}
+
+	/**
+	 * Removes the unloaded types with the given signature from the index.
+	 */
+	void classUnloaded(String signature) {
+		List<ReferenceTypeImpl> candidates;
+		synchronized (this) {
+			if (fUnloadedWhileSeeding != null) {
+				fUnloadedWhileSeeding.add(signature);
+			}
+			candidates = typesWithSignature(signature);
+			if (candidates.size() == 1) {
+				remove(candidates.get(0));
+				return;
+			}
+		}
+		// Several class loaders loaded a type with this signature, find the
+		// unloaded one(s). Note that the lock is not held while talking to
+		// the virtual machine.
+		for (ReferenceTypeImpl type : candidates) {
+			boolean prepared = false;
+			try {
+				prepared = type.isPrepared();
+			} catch (ObjectCollectedException exception) {
+				// The type is unloaded. Fall through
+			}
+			if (!prepared) {
+				synchronized (this) {
+					remove(type);
+				}
+			}
+		}
+	}
+
+	private List<ReferenceTypeImpl> typesWithSignature(String signature) {
+		List<ReferenceTypeImpl> types = fBySignature.get(signature);
+		return types == null ? Collections.<ReferenceTypeImpl> emptyList() : new ArrayList<>(types);
+	}
+
+	private void add(ReferenceTypeImpl type) {
+		if (type == null || fTypes.put(Long.valueOf(type.getRefTypeID().value()), type) != null) {
+			return;
+		}
+		addTo(fBySignature, type.signature(), type);
+		addTo(fByName, type.name(), type);
+		recordChange(type, true);
+	}
+
+	private void remove(ReferenceTypeImpl type) {
+		if (fTypes.remove(Long.valueOf(type.getRefTypeID().value())) == null) {
+			return;
+		}
+		removeFrom(fBySignature, type.signature(), type);
+		removeFrom(fByName, type.name(), type);
+		if (fSourceNameKnown.remove(type)) {
+			String sourceName = fSourceNames.remove(type);
+			if (sourceName != null) {
+				removeFrom(fBySourceName, sourceName, type);
+			}
+		}
+		recordChange(type, false);
+	}
+
+	private static void addTo(Map<String, List<ReferenceTypeImpl>> map, String key, ReferenceTypeImpl type) {
+		List<ReferenceTypeImpl> types = map.get(key);
+		if (types == null) {
+			types = new ArrayList<>(1);
+			map.put(key, types);
+		}
+		types.add(type);
+	}
+
+	private static void removeFrom(Map<String, List<ReferenceTypeImpl>> map, String key, ReferenceTypeImpl type) {
+		List<ReferenceTypeImpl> types = map.get(key);
+		if (types != null && types.remove(type) && types.isEmpty()) {
+			map.remove(key);
+		}
+	}
+
+	private void recordChange(ReferenceTypeImpl type, boolean added) {
+		fEpoch++;
+		fChanges.addLast(new Change(fEpoch, type, added));
+		if (fChanges.size() > MAX_CHANGES) {
+			fOldestEpoch = fChanges.removeFirst().fEpoch;
+		}
+	}
+
+	/**
+	 * @return Returns the current epoch of the index.
+	 */
+	public synchronized long epoch() {
+		return fEpoch;
+	}
+
+	/**
+	 * Returns the changes of the index since the given epoch. A type that was
+	 * added and removed since then is only reported as removed.
+	 *
+	 * @param epoch
+	 *            an epoch returned by {@link #epoch()} or
+	 *            {@link Delta#epoch()}
+	 * @return the changes since the given epoch, or <code>null</code> if the
+	 *         changes are not known anymore, in which case the index must be
+	 *         queried again
+	 */
+	public synchronized Delta changesSince(long epoch) {
+		if (epoch < fOldestEpoch) {
+			return null;
+		}
+		Set<ReferenceType> added = new HashSet<>();
+		Set<ReferenceType> removed = new HashSet<>();
+		for (Change change : fChanges) {
+			if (change.fEpoch <= epoch) {
+				continue;
+			}
+			if (change.fAdded) {
+				added.add(change.fType);
+			} else {
+				added.remove(change.fType);
+				removed.add(change.fType);
+			}
+		}
+		return new Delta(fEpoch, new ArrayList<>(added), new ArrayList<>(removed));
+	}
+
+	/**
+	 * @return Returns all the types of the index.
+	 */
+	public synchronized List<ReferenceType> allClasses() {
+		return new ArrayList<ReferenceType>(fTypes.values());
+	}
+
+	/**
+	 * @return Returns the types with the given signature.
+	 */
+	public synchronized List<ReferenceType> classesBySignature(String signature) {
+		return new ArrayList<ReferenceType>(typesWithSignature(signature));
+	}
+
+	/**
+	 * @return Returns the types whose fully qualified name starts with the
+	 *         given prefix.
+	 */
+	public synchronized List<ReferenceType> classesByNamePrefix(String prefix) {
+		List<ReferenceType> result = new ArrayList<>();
+		Map<String, List<ReferenceTypeImpl>> matches = prefix.isEmpty() ? fByName
+				: fByName.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+		for (List<ReferenceTypeImpl> types : matches.values()) {
+			result.addAll(types);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the types whose source name in the default stratum is the given
+	 * one. The source names of the types are retrieved from the virtual
+	 * machine the first time this method is called after they were added.
+	 *
+	 * @return Returns the types with the given source name.
+	 */
+	public List<ReferenceType> classesBySourceName(String sourceName) {
+		List<ReferenceTypeImpl> unknown;
+		synchronized (this) {
+			unknown = new ArrayList<>();
+			for (ReferenceTypeImpl type : fTypes.values()) {
+				if (!fSourceNameKnown.contains(type)) {
+					unknown.add(type);
+				}
+			}
+		}
+		// The lock is not held while talking to the virtual machine, the
+		// replies are read by the thread that updates the index.
+		for (ReferenceTypeImpl type : unknown) {
+			String name = null;
+			try {
+				name = type.sourceName();
+			} catch (AbsentInformationException e) {
+				// no source name
+			} catch (ObjectCollectedException e) {
+				// the type is unloaded
+				continue;
+			}
+			synchronized (this) {
+				if (fTypes.containsKey(Long.valueOf(type.getRefTypeID().value())) && fSourceNameKnown.add(type)
+						&& name != null) {
+					fSourceNames.put(type, name);
+					addTo(fBySourceName, name, type);
+				}
+			}
+		}
+		synchronized (this) {
+			List<ReferenceTypeImpl> types = fBySourceName.get(sourceName);
+			return types == null ? new ArrayList<ReferenceType>() : new ArrayList<ReferenceType>(types);
+		}
+	}
+}
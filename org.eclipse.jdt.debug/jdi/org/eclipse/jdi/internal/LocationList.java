@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.sun.jdi.Location;
+
+/**
+ * An unmodifiable list of locations, stored as code indexes and the methods
+ * they belong to. The {@link LocationImpl} objects are created when the list
+ * is accessed. Used to cache the line locations of methods and types.
+ */
+public final class LocationList extends AbstractList<Location> implements RandomAccess {
+
+	private final VirtualMachineImpl fVirtualMachineImpl;
+	/**
+	 * Method of each location, or a single method shared by all locations.
+	 */
+	private final MethodImpl[] fMethods;
+	private final long[] fCodeIndexes;
+
+	private LocationList(VirtualMachineImpl vmImpl, MethodImpl[] methods, long[] codeIndexes) {
+		fVirtualMachineImpl = vmImpl;
+		fMethods = methods;
+		fCodeIndexes = codeIndexes;
+	}
+
+	/**
+	 * Creates a list of locations in the given method.
+	 *
+	 * @param method
+	 *            the method of the locations
+	 * @param codeIndexes
+	 *            the code indexes of the locations
+	 * @param count
+	 *            the number of code indexes to use
+	 */
+	public LocationList(MethodImpl method, long[] codeIndexes, int count) {
+		this(method.virtualMachineImpl(), new MethodImpl[] { method },
+				count == codeIndexes.length ? codeIndexes : Arrays.copyOf(codeIndexes, count));
+	}
+
+	/**
+	 * Returns a list of all the locations of the given lists.
+	 *
+	 * @param vmImpl
+	 *            the virtual machine of the locations
+	 * @param lists
+	 *            the lists to concatenate
+	 * @return the concatenated list
+	 */
+	public static List<Location> concat(VirtualMachineImpl vmImpl, List<List<Location>> lists) {
+		int size = 0;
+		for (List<Location> list : lists) {
+			size += list.size();
+		}
+		MethodImpl[] methods = new MethodImpl[size];
+		long[] codeIndexes = new long[size];
+		int index = 0;
+		for (List<Location> list : lists) {
+			if (list instanceof LocationList) {
+				LocationList locations = (LocationList) list;
+				int length = locations.fCodeIndexes.length;
+				System.arraycopy(locations.fCodeIndexes, 0, codeIndexes, index, length);
+				if (locations.fMethods.length == 1) {
+					Arrays.fill(methods, index, index + length, locations.fMethods[0]);
+				} else {
+					System.arraycopy(locations.fMethods, 0, methods, index, length);
+				}
+				index += length;
+			} else {
+				for (Location location : list) {
+					methods[index] = (MethodImpl) location.method();
+					codeIndexes[index] = location.codeIndex();
+					index++;
+				}
+			}
+		}
+		return new LocationList(vmImpl, methods, codeIndexes);
+	}
+
+	@Override
+	public Location get(int index) {
+		MethodImpl method = fMethods.length == 1 ? fMethods[0] : fMethods[index];
+		return new LocationImpl(fVirtualMachineImpl, method, fCodeIndexes[index]);
+	}
+
+	@Override
+	public int size() {
+		return fCodeIndexes.length;
+	}
+}
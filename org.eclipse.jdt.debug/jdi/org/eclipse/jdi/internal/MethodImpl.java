@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,7 +11,6 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -24,11 +23,10 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpMethodID;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 
 import com.ibm.icu.text.MessageFormat;
@@ -59,8 +57,18 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 	private List<LocalVariable> fVariables = null;
 	private long fLowestValidCodeIndex = -1;
 	private long fHighestValidCodeIndex = -1;
-	private Map<Long, Integer> fCodeIndexToLine = null;
-	private Map<Integer, List<Long>> fLineToCodeIndexes = null;
+	/**
+	 * Line table sorted by code index, without duplicate code indexes. Used to
+	 * look up the line of a code index.
+	 */
+	private long[] fSortedCodeIndexes = null;
+	private int[] fSortedCodeIndexLines = null;
+	/**
+	 * Line table sorted by line number. Used to look up the code indexes of a
+	 * line.
+	 */
+	private int[] fSortedLines = null;
+	private long[] fSortedLineCodeIndexes = null;
 	private Map<String, Map<String, List<Location>>> fStratumAllLineLocations = null;
 	private int fArgumentSlotsCount = -1;
 	private List<LocalVariable> fArguments = null;
@@ -92,8 +100,10 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 		fVariables = null;
 		fLowestValidCodeIndex = -1;
 		fHighestValidCodeIndex = -1;
-		fCodeIndexToLine = null;
-		fLineToCodeIndexes = null;
+		fSortedCodeIndexes = null;
+		fSortedCodeIndexLines = null;
+		fSortedLines = null;
+		fSortedLineCodeIndexes = null;
 		fStratumAllLineLocations = null;
 		fCodeIndexTable = null;
 		fJavaStratumLineNumberTable = null;
@@ -113,27 +123,109 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 	}
 
 	/**
-	 * @return Returns map of location to line number.
+	 * @return Returns the position of the given code index in the sorted line
+	 *         table, or a negative value if the code index is not in the line
+	 *         table (see {@link Arrays#binarySearch(long[], long)}).
 	 */
-	protected Map<Long, Integer> javaStratumCodeIndexToLine()
+	private int javaStratumCodeIndexPosition(long codeIndex)
 			throws AbsentInformationException {
 		if (isAbstract()) {
-			return Collections.EMPTY_MAP;
+			return -1;
 		}
 		getLineTable();
-		return fCodeIndexToLine;
+		if (fSortedCodeIndexes == null) {
+			return -1;
+		}
+		return Arrays.binarySearch(fSortedCodeIndexes, codeIndex);
 	}
 
 	/**
-	 * @return Returns map of line number to locations.
+	 * Returns the positions of the given keys, stably sorted by key.
 	 */
-	protected List<Long> javaStratumLineToCodeIndexes(int line) throws AbsentInformationException {
-		if (isAbstract() || isNative()) {
-			return null;
+	private static int[] sortedPositions(long[] keys) {
+		int length = keys.length;
+		int[] positions = new int[length];
+		boolean sorted = true;
+		boolean packable = true;
+		for (int i = 0; i < length; i++) {
+			positions[i] = i;
+			if (i > 0 && keys[i - 1] > keys[i]) {
+				sorted = false;
+			}
+			if (keys[i] != (int) keys[i]) {
+				packable = false;
+			}
+		}
+		if (sorted) {
+			return positions;
+		}
+		if (packable) {
+			// sort the keys together with their positions, in one long
+			long[] packed = new long[length];
+			for (int i = 0; i < length; i++) {
+				packed[i] = keys[i] << 32 | i;
+			}
+			Arrays.sort(packed);
+			for (int i = 0; i < length; i++) {
+				positions[i] = (int) packed[i];
+			}
+			return positions;
+		}
+		Integer[] boxed = new Integer[length];
+		for (int i = 0; i < length; i++) {
+			boxed[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(boxed, (a, b) -> Long.compare(keys[a.intValue()], keys[b.intValue()]));
+		for (int i = 0; i < length; i++) {
+			positions[i] = boxed[i].intValue();
+		}
+		return positions;
+	}
+
+	/**
+	 * Builds the sorted line tables from the line table received from the VM.
+	 */
+	private void sortLineTable() {
+		long[] codeIndexTable = fCodeIndexTable;
+		int[] lineTable = fJavaStratumLineNumberTable;
+		int length = codeIndexTable.length;
+
+		// code index to line, a later entry for a code index wins
+		int[] positions = sortedPositions(codeIndexTable);
+		long[] codeIndexes = new long[length];
+		int[] codeIndexLines = new int[length];
+		int count = 0;
+		for (int position : positions) {
+			long codeIndex = codeIndexTable[position];
+			if (count > 0 && codeIndexes[count - 1] == codeIndex) {
+				count--;
+			}
+			codeIndexes[count] = codeIndex;
+			codeIndexLines[count] = lineTable[position];
+			count++;
+		}
+		if (count < length) {
+			codeIndexes = Arrays.copyOf(codeIndexes, count);
+			codeIndexLines = Arrays.copyOf(codeIndexLines, count);
+		}
+
+		// line to code indexes
+		long[] lineKeys = new long[length];
+		for (int i = 0; i < length; i++) {
+			lineKeys[i] = lineTable[i];
+		}
+		positions = sortedPositions(lineKeys);
+		int[] lines = new int[length];
+		long[] lineCodeIndexes = new long[length];
+		for (int i = 0; i < length; i++) {
+			lines[i] = lineTable[positions[i]];
+			lineCodeIndexes[i] = codeIndexTable[positions[i]];
 		}
-		getLineTable();
 
-		return fLineToCodeIndexes.get(new Integer(line));
+		fSortedCodeIndexes = codeIndexes;
+		fSortedCodeIndexLines = codeIndexLines;
+		fSortedLines = lines;
+		fSortedLineCodeIndexes = lineCodeIndexes;
 	}
 
 	/**
@@ -143,8 +235,8 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 		if (isObsolete()) {
 			return;
 		}
-		if (fCodeIndexToLine != null) {
-			if (fCodeIndexToLine.isEmpty()) {
+		if (fSortedCodeIndexes != null) {
+			if (fSortedCodeIndexes.length == 0) {
 				throw new AbsentInformationException(
 						JDIMessages.MethodImpl_Got_empty_line_number_table_for_this_method_1);
 			}
@@ -153,12 +245,14 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
-			writeWithReferenceType(this, outData);
-
-			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.M_LINE_TABLE, outBytes);
+			JdwpReplyPacket replyPacket = referenceTypeImpl().storedMetadataReply(
+					JdwpCommandPacket.M_LINE_TABLE, this);
+			if (replyPacket == null) {
+				JdwpPacketWriter outData = JdwpPacketWriter.acquire();
+				writeWithReferenceType(this, outData);
+				replyPacket = requestVM(JdwpCommandPacket.M_LINE_TABLE, outData);
+				referenceTypeImpl().storeMetadataReply(JdwpCommandPacket.M_LINE_TABLE, this, replyPacket);
+			}
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.ABSENT_INFORMATION:
 				throw new AbsentInformationException(
@@ -173,36 +267,23 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 			fLowestValidCodeIndex = readLong("lowest index", replyData); //$NON-NLS-1$
 			fHighestValidCodeIndex = readLong("highest index", replyData); //$NON-NLS-1$
 			int nrOfElements = readInt("elements", replyData); //$NON-NLS-1$
-			fCodeIndexToLine = new HashMap<>();
-			fLineToCodeIndexes = new HashMap<>();
 			if (nrOfElements == 0) {
+				fSortedCodeIndexes = new long[0];
 				throw new AbsentInformationException(
 						JDIMessages.MethodImpl_Got_empty_line_number_table_for_this_method_3);
 			}
 			fCodeIndexTable = new long[nrOfElements];
 			fJavaStratumLineNumberTable = new int[nrOfElements];
 			for (int i = 0; i < nrOfElements; i++) {
-				long lineCodeIndex = readLong("code index", replyData); //$NON-NLS-1$
-				Long lineCodeIndexLong = new Long(lineCodeIndex);
-				int lineNr = readInt("line nr", replyData); //$NON-NLS-1$
-				Integer lineNrInt = new Integer(lineNr);
-
-				// Add entry to code-index to line mapping.
-				fCodeIndexToLine.put(lineCodeIndexLong, lineNrInt);
-
-				fCodeIndexTable[i] = lineCodeIndex;
-				fJavaStratumLineNumberTable[i] = lineNr;
-
-				List<Long> lineNrEntry = fLineToCodeIndexes.get(lineNrInt);
-				if (lineNrEntry == null) {
-					lineNrEntry = new ArrayList<>();
-					fLineToCodeIndexes.put(lineNrInt, lineNrEntry);
-				}
-				lineNrEntry.add(lineCodeIndexLong);
+				fCodeIndexTable[i] = readLong("code index", replyData); //$NON-NLS-1$
+				fJavaStratumLineNumberTable[i] = readInt("line nr", replyData); //$NON-NLS-1$
 			}
+			sortLineTable();
 		} catch (IOException e) {
-			fCodeIndexToLine = null;
-			fLineToCodeIndexes = null;
+			fSortedCodeIndexes = null;
+			fSortedCodeIndexLines = null;
+			fSortedLines = null;
+			fSortedLineCodeIndexes = null;
 			defaultIOExceptionHandler(e);
 		} finally {
 			handledJdwpRequest();
@@ -223,28 +304,22 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 			throw new AbsentInformationException(JDIMessages.MethodImpl_Invalid_code_index_of_a_location_given_4);
 		}
 
-		Long lineCodeIndexObj;
-		Integer lineNrObj;
-		long index = lineCodeIndex;
-		// Search for the line where this code index is located.
-		do {
-			lineCodeIndexObj = new Long(index);
-			lineNrObj = javaStratumCodeIndexToLine().get(lineCodeIndexObj);
-		} while (lineNrObj == null && --index >= fLowestValidCodeIndex);
-		if (lineNrObj == null) {
-			if (lineCodeIndex >= fLowestValidCodeIndex) {
-				index = lineCodeIndex;
-				do {
-					lineCodeIndexObj = new Long(index);
-					lineNrObj = javaStratumCodeIndexToLine().get(lineCodeIndexObj);
-				} while (lineNrObj == null && ++index <= fHighestValidCodeIndex);
-				if (lineNrObj != null) {
-					return lineNrObj.intValue();
-				}
+		int position = javaStratumCodeIndexPosition(lineCodeIndex);
+		if (position >= 0) {
+			return fSortedCodeIndexLines[position];
+		}
+		if (fSortedCodeIndexes != null && lineCodeIndex >= fLowestValidCodeIndex) {
+			// Search for the line where this code index is located: the
+			// closest preceding entry, or else the closest following one.
+			int insertion = -position - 1;
+			if (insertion > 0 && fSortedCodeIndexes[insertion - 1] >= fLowestValidCodeIndex) {
+				return fSortedCodeIndexLines[insertion - 1];
+			}
+			if (insertion < fSortedCodeIndexes.length && fSortedCodeIndexes[insertion] <= fHighestValidCodeIndex) {
+				return fSortedCodeIndexLines[insertion];
 			}
-			throw new AbsentInformationException(JDIMessages.MethodImpl_Invalid_code_index_of_a_location_given_4);
 		}
-		return lineNrObj.intValue();
+		throw new AbsentInformationException(JDIMessages.MethodImpl_Invalid_code_index_of_a_location_given_4);
 	}
 
 	/* (non-Javadoc)
@@ -341,12 +416,11 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeWithReferenceType(this, outData);
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.M_BYTECODES, outBytes);
+					JdwpCommandPacket.M_BYTECODES, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 
 			DataInputStream replyData = replyPacket.dataInStream();
@@ -462,8 +536,7 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 			return null;
 		}
 		try {
-			Integer lineNrInt = javaStratumCodeIndexToLine().get(new Long(index));
-			if (lineNrInt == null) {
+			if (javaStratumCodeIndexPosition(index) < 0) {
 				throw new AbsentInformationException(MessageFormat.format(JDIMessages.MethodImpl_No_valid_location_at_the_specified_code_index__0__2, new Object[] { Long.toString(index) }));
 			}
 		} catch (AbsentInformationException e) {
@@ -521,15 +594,17 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 		}
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
-			writeWithReferenceType(this, outData);
-
 			boolean withGenericSignature = virtualMachineImpl()
 					.isJdwpVersionGreaterOrEqual(1, 5);
 			int jdwpCommand = withGenericSignature ? JdwpCommandPacket.M_VARIABLE_TABLE_WITH_GENERIC
 					: JdwpCommandPacket.M_VARIABLE_TABLE;
-			JdwpReplyPacket replyPacket = requestVM(jdwpCommand, outBytes);
+			JdwpReplyPacket replyPacket = referenceTypeImpl().storedMetadataReply(jdwpCommand, this);
+			if (replyPacket == null) {
+				JdwpPacketWriter outData = JdwpPacketWriter.acquire();
+				writeWithReferenceType(this, outData);
+				replyPacket = requestVM(jdwpCommand, outData);
+				referenceTypeImpl().storeMetadataReply(jdwpCommand, this, replyPacket);
+			}
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.ABSENT_INFORMATION:
 				return inferArguments();
@@ -873,18 +948,48 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 	 * the specified lines.
 	 */
 	protected List<Location> javaStratumLocationsOfLines(List<Integer> javaLines)	throws AbsentInformationException {
-		Set<Long> tmpLocations = new TreeSet<>();
+		List<Location> locations = new ArrayList<>();
+		if (isAbstract() || isNative()) {
+			return locations;
+		}
+		getLineTable();
+		if (fSortedLines == null) {
+			return locations;
+		}
+		long[] indexes = new long[fSortedLines.length];
+		int count = 0;
 		for (Iterator<Integer> iter = javaLines.iterator(); iter.hasNext();) {
-			Integer key = iter.next();
-			List<Long> indexes = javaStratumLineToCodeIndexes(key.intValue());
-			if (indexes != null) {
-				tmpLocations.addAll(indexes);
+			int line = iter.next().intValue();
+			int position = Arrays.binarySearch(fSortedLines, line);
+			if (position < 0) {
+				continue;
 			}
+			// find the range of entries of this line
+			int start = position;
+			while (start > 0 && fSortedLines[start - 1] == line) {
+				start--;
+			}
+			int end = position + 1;
+			while (end < fSortedLines.length && fSortedLines[end] == line) {
+				end++;
+			}
+			if (count + end - start > indexes.length) {
+				indexes = Arrays.copyOf(indexes, count + end - start + indexes.length);
+			}
+			System.arraycopy(fSortedLineCodeIndexes, start, indexes, count, end - start);
+			count += end - start;
 		}
-		List<Location> locations = new ArrayList<>();
-		for (Iterator<Long> iter = tmpLocations.iterator(); iter.hasNext();) {
-			long index = iter.next().longValue();
-			int position = Arrays.binarySearch(fCodeIndexTable, index);
+		// sort and remove duplicates
+		Arrays.sort(indexes, 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || indexes[unique - 1] != indexes[i]) {
+				indexes[unique++] = indexes[i];
+			}
+		}
+		for (int i = 0; i < unique; i++) {
+			long index = indexes[i];
+			int position = Arrays.binarySearch(fSortedCodeIndexes, index);
 			if(position < 0) {
 				//https://bugs.eclipse.org/bugs/show_bug.cgi?id=388172
 				//the key is not in the code index, we should not insert it as the line table is supposed to be
@@ -892,7 +997,7 @@ public class MethodImpl extends TypeComponentImpl implements Method, Locatable {
 				//See http://docs.oracle.com/javase/6/docs/platform/jpda/jdwp/jdwp-protocol.html#JDWP_Method_LineTable for more information
 				continue;
 			}
-			if (position == 0 || !tmpLocations.contains(new Long(fCodeIndexTable[position - 1]))) {
+			if (position == 0 || Arrays.binarySearch(indexes, 0, i, fSortedCodeIndexes[position - 1]) < 0) {
 				locations.add(new LocationImpl(virtualMachineImpl(), this, index));
 			}
 		}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class is used to cache mirrors by their JDWP id. Like the cached values
+ * of the former <code>ValueCache</code>, mirrors are held by soft references
+ * and entries of garbage collected mirrors are removed on the next
+ * {@link #put(long, Object)}.
+ * <p>
+ * The cache is split in segments, each with its own lock, and the ids are
+ * used as primitive keys. Iterating over the values does not lock the cache;
+ * the iteration is weakly consistent: mirrors added or removed while iterating
+ * may or may not be returned.
+ * </p>
+ *
+ * @param <V>
+ *            the type of the cached mirrors
+ */
+public class MirrorCache<V> {
+
+	/** Number of segments, must be a power of two. */
+	private static final int SEGMENT_COUNT = 16;
+
+	/** Number of bits needed to select a segment. */
+	private static final int SEGMENT_SHIFT = 32 - Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Soft reference to a cached value, remembering its key so that the entry
+	 * can be removed once the value has been garbage collected.
+	 */
+	private static final class Entry<V> extends SoftReference<V> {
+		final long fKey;
+
+		Entry(long key, V value, ReferenceQueue<? super V> queue) {
+			super(value, queue);
+			fKey = key;
+		}
+	}
+
+	/**
+	 * Open addressing hash table with linear probing. Modifications hold the
+	 * segment's lock, lookups and iteration do not: entries are immutable,
+	 * the slots of the table are read and written with volatile semantics
+	 * and the table is only replaced as a whole.
+	 */
+	private static final class Segment<V> {
+		volatile AtomicReferenceArray<Entry<V>> fEntries = new AtomicReferenceArray<>(MIN_CAPACITY);
+		int fSize;
+
+		static <V> int indexOf(AtomicReferenceArray<Entry<V>> entries, long key, int hash) {
+			int mask = entries.length() - 1;
+			int index = hash & mask;
+			Entry<V> entry;
+			while ((entry = entries.get(index)) != null && entry.fKey != key) {
+				index = (index + 1) & mask;
+			}
+			return index;
+		}
+
+		Entry<V> get(long key, int hash) {
+			AtomicReferenceArray<Entry<V>> entries = fEntries;
+			int mask = entries.length() - 1;
+			int index = hash & mask;
+			// at most a full scan, the table may be modified concurrently
+			for (int i = 0; i <= mask; i++) {
+				Entry<V> entry = entries.get(index);
+				if (entry == null) {
+					break;
+				}
+				if (entry.fKey == key) {
+					return entry;
+				}
+				index = (index + 1) & mask;
+			}
+			// a concurrent removal may have moved the entry, check again
+			// under the lock
+			synchronized (this) {
+				entries = fEntries;
+				return entries.get(indexOf(entries, key, hash));
+			}
+		}
+
+		synchronized void put(Entry<V> entry, int hash) {
+			AtomicReferenceArray<Entry<V>> entries = fEntries;
+			int index = indexOf(entries, entry.fKey, hash);
+			if (entries.get(index) == null && ++fSize > (entries.length() >> 1)) {
+				entries = rehash(entries, entries.length() << 1);
+				index = indexOf(entries, entry.fKey, hash);
+			}
+			entries.set(index, entry);
+		}
+
+		/**
+		 * Removes the entry with the given key. If <code>expected</code> is not
+		 * <code>null</code>, the entry is only removed if it is the expected
+		 * one.
+		 */
+		synchronized Entry<V> remove(long key, int hash, Entry<V> expected) {
+			AtomicReferenceArray<Entry<V>> entries = fEntries;
+			int mask = entries.length() - 1;
+			int index = indexOf(entries, key, hash);
+			Entry<V> previous = entries.get(index);
+			if (previous == null || (expected != null && previous != expected)) {
+				return null;
+			}
+			entries.set(index, null);
+			fSize--;
+			// shift back following entries of the probe sequence
+			int next = (index + 1) & mask;
+			Entry<V> entry;
+			while ((entry = entries.get(next)) != null) {
+				int ideal = hash(entry.fKey) & mask;
+				if (((next - ideal) & mask) >= ((next - index) & mask)) {
+					entries.set(index, entry);
+					entries.set(next, null);
+					index = next;
+				}
+				next = (next + 1) & mask;
+			}
+			return previous;
+		}
+
+		private AtomicReferenceArray<Entry<V>> rehash(AtomicReferenceArray<Entry<V>> entries, int capacity) {
+			AtomicReferenceArray<Entry<V>> newEntries = new AtomicReferenceArray<>(capacity);
+			for (int i = 0; i < entries.length(); i++) {
+				Entry<V> entry = entries.get(i);
+				if (entry != null) {
+					newEntries.set(indexOf(newEntries, entry.fKey, hash(entry.fKey)), entry);
+				}
+			}
+			fEntries = newEntries;
+			return newEntries;
+		}
+	}
+
+	private final List<Segment<V>> fSegments = new ArrayList<>(SEGMENT_COUNT);
+
+	/**
+	 * The reference-queue that is registered with the soft references. The
+	 * garbage collector will enqueue soft references that are garbage
+	 * collected.
+	 */
+	private final ReferenceQueue<V> fRefQueue = new ReferenceQueue<>();
+
+	public MirrorCache() {
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			fSegments.add(new Segment<>());
+		}
+	}
+
+	static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private Segment<V> segmentFor(int hash) {
+		return fSegments.get(hash >>> SEGMENT_SHIFT);
+	}
+
+	/**
+	 * Clean up all entries from the cache for which the values were garbage
+	 * collected.
+	 */
+	@SuppressWarnings("unchecked")
+	private void cleanup() {
+		Reference<? extends V> ref;
+		while ((ref = fRefQueue.poll()) != null) {
+			Entry<V> entry = (Entry<V>) ref;
+			int hash = hash(entry.fKey);
+			segmentFor(hash).remove(entry.fKey, hash, entry);
+		}
+	}
+
+	/**
+	 * Put a new entry in the cache under the given id.
+	 */
+	public void put(long key, V value) {
+		cleanup();
+		int hash = hash(key);
+		segmentFor(hash).put(new Entry<>(key, value, fRefQueue), hash);
+	}
+
+	/**
+	 * Get entry from the cache.
+	 *
+	 * @return Returns value that is cached under the given id, or null if the
+	 *         value has not been cached or has been garbage collected.
+	 */
+	public V get(long key) {
+		int hash = hash(key);
+		Entry<V> entry = segmentFor(hash).get(key, hash);
+		return entry == null ? null : entry.get();
+	}
+
+	/**
+	 * Removes the id and its corresponding value from this cache.
+	 *
+	 * @return Returns the value to which the id had been mapped, or null if
+	 *         the id did not have a mapping.
+	 */
+	public V remove(long key) {
+		cleanup();
+		int hash = hash(key);
+		Entry<V> entry = segmentFor(hash).remove(key, hash, null);
+		return entry == null ? null : entry.get();
+	}
+
+	/**
+	 * Returns a weakly consistent view of the values contained in this cache.
+	 */
+	public Iterable<V> values() {
+		return ValueIterator::new;
+	}
+
+	/**
+	 * Returns the values contained in this cache that have the same runtime
+	 * class as the given Class.
+	 */
+	public <T extends V> List<T> valuesWithType(Class<T> type) {
+		List<T> returnValues = new ArrayList<>();
+		for (V value : values()) {
+			if (value.getClass().equals(type)) {
+				returnValues.add(type.cast(value));
+			}
+		}
+		return returnValues;
+	}
+
+	/**
+	 * Iterates over the live values of all segments.
+	 */
+	private final class ValueIterator implements Iterator<V> {
+		private int fSegment = -1;
+		private AtomicReferenceArray<Entry<V>> fEntries = new AtomicReferenceArray<>(0);
+		private int fIndex;
+		private V fNext;
+
+		@Override
+		public boolean hasNext() {
+			while (fNext == null) {
+				if (fIndex == fEntries.length()) {
+					if (++fSegment == SEGMENT_COUNT) {
+						return false;
+					}
+					fEntries = fSegments.get(fSegment).fEntries;
+					fIndex = 0;
+					continue;
+				}
+				Entry<V> entry = fEntries.get(fIndex++);
+				if (entry != null) {
+					fNext = entry.get();
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			V next = fNext;
+			fNext = null;
+			return next;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,12 +15,19 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.jdi.Bootstrap;
+import org.eclipse.jdi.TimeoutException;
+import org.eclipse.jdi.internal.connect.PacketReceiveManager;
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpPacket;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketReader;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpString;
 import org.eclipse.jdt.internal.debug.core.JDIDebugOptions;
@@ -183,6 +190,27 @@ public class MirrorImpl implements Mirror {
 	public JdwpReplyPacket requestVM(int command, byte[] outData) {
 		JdwpCommandPacket commandPacket = new JdwpCommandPacket(command);
 		commandPacket.setData(outData);
+		return requestVM(commandPacket);
+	}
+
+	/**
+	 * Performs a VM request. The data is sent straight from the buffer of the
+	 * given writer, which is taken over by the request.
+	 *
+	 * @return Returns reply data.
+	 */
+	public JdwpReplyPacket requestVM(int command, JdwpPacketWriter outData) {
+		JdwpCommandPacket commandPacket = new JdwpCommandPacket(command);
+		commandPacket.setData(outData);
+		return requestVM(commandPacket);
+	}
+
+	/**
+	 * Sends the given command packet and waits for its reply.
+	 *
+	 * @return Returns reply data.
+	 */
+	private JdwpReplyPacket requestVM(JdwpCommandPacket commandPacket) {
 		long sent = System.currentTimeMillis();
 		fVirtualMachineImpl.packetSendManager().sendPacket(commandPacket);
 		fPendingJdwpRequest = true;
@@ -190,6 +218,15 @@ public class MirrorImpl implements Mirror {
 
 		JdwpReplyPacket reply = fVirtualMachineImpl.packetReceiveManager()
 				.getReply(commandPacket);
+		handledReply(commandPacket, reply, sent);
+		return reply;
+	}
+
+	/**
+	 * Traces the time taken by a request and, if verbose is on, outputs the
+	 * reply header.
+	 */
+	private void handledReply(JdwpCommandPacket commandPacket, JdwpReplyPacket reply, long sent) {
 		long recieved = System.currentTimeMillis();
 		if (JDIDebugOptions.DEBUG_JDI_REQUEST_TIMES) {
 			StringBuffer buf = new StringBuffer();
@@ -214,8 +251,160 @@ public class MirrorImpl implements Mirror {
 					.println(
 							"error code", reply.errorCode(), JdwpReplyPacket.errorMap()); //$NON-NLS-1$
 		}
+	}
 
-		return reply;
+	/**
+	 * Sends a VM request without waiting for its reply, so that further
+	 * requests can be sent before the first reply has been received.
+	 * <p>
+	 * The returned future is completed with the reply packet when it arrives,
+	 * or exceptionally when the VM disconnects or when the reply has not
+	 * arrived within the request timeout, see
+	 * {@link VirtualMachineImpl#getRequestTimeout()}. As for synchronous
+	 * requests, the request must be enclosed by {@link #initJdwpRequest()} and
+	 * {@link #handledJdwpRequest()}.
+	 * </p>
+	 *
+	 * @return Returns a future for the reply data.
+	 */
+	public CompletableFuture<JdwpReplyPacket> requestVMAsync(int command, byte[] outData) {
+		JdwpCommandPacket commandPacket = new JdwpCommandPacket(command);
+		commandPacket.setData(outData);
+		return requestVMAsync(commandPacket);
+	}
+
+	/**
+	 * Sends a VM request without waiting for its reply. The data is sent
+	 * straight from the buffer of the given writer, which is taken over by the
+	 * request.
+	 *
+	 * @return Returns a future for the reply data.
+	 * @see #requestVMAsync(int, byte[])
+	 */
+	public CompletableFuture<JdwpReplyPacket> requestVMAsync(int command, JdwpPacketWriter outData) {
+		JdwpCommandPacket commandPacket = new JdwpCommandPacket(command);
+		commandPacket.setData(outData);
+		return requestVMAsync(commandPacket);
+	}
+
+	/**
+	 * Sends the given command packet without waiting for its reply.
+	 *
+	 * @return Returns a future for the reply data.
+	 */
+	private CompletableFuture<JdwpReplyPacket> requestVMAsync(JdwpCommandPacket commandPacket) {
+		PacketReceiveManager receiveManager = fVirtualMachineImpl.packetReceiveManager();
+		CompletableFuture<JdwpReplyPacket> future = receiveManager.getReplyFuture(
+				commandPacket, fVirtualMachineImpl.getRequestTimeout());
+		try {
+			fVirtualMachineImpl.packetSendManager().sendPacket(commandPacket);
+		} catch (RuntimeException e) {
+			receiveManager.discardReplyFuture(commandPacket);
+			throw e;
+		}
+		fPendingJdwpRequest = true;
+		writeVerboseCommandPacketHeader(commandPacket);
+		return future;
+	}
+
+	/**
+	 * Sends a VM request for a specified object without waiting for its reply.
+	 *
+	 * @return Returns a future for the reply data.
+	 * @see #requestVMAsync(int, byte[])
+	 */
+	public CompletableFuture<JdwpReplyPacket> requestVMAsync(int command, ObjectReferenceImpl object) {
+		JdwpPacketWriter outData = JdwpPacketWriter.acquire();
+		try {
+			object.write(this, outData);
+		} catch (IOException e) {
+			defaultIOExceptionHandler(e);
+		}
+		return requestVMAsync(command, outData);
+	}
+
+	/**
+	 * Sends a VM request for a specified reference type without waiting for
+	 * its reply.
+	 *
+	 * @return Returns a future for the reply data.
+	 * @see #requestVMAsync(int, byte[])
+	 */
+	public CompletableFuture<JdwpReplyPacket> requestVMAsync(int command, ReferenceTypeImpl refType) {
+		JdwpPacketWriter outData = JdwpPacketWriter.acquire();
+		try {
+			refType.write(this, outData);
+		} catch (IOException e) {
+			defaultIOExceptionHandler(e);
+		}
+		return requestVMAsync(command, outData);
+	}
+
+	/**
+	 * Performs several independent VM requests at once: all commands are sent
+	 * back to back before waiting for the first reply, so that the requests
+	 * take about a single round trip. The request timeout applies to the batch
+	 * as a whole.
+	 *
+	 * @param commands
+	 *            the commands to send
+	 * @param outData
+	 *            the writers holding the data of each command, which are
+	 *            taken over by the request; <code>null</code> entries denote
+	 *            commands without data
+	 * @return Returns the reply of each command, in the order of the commands.
+	 */
+	public JdwpReplyPacket[] requestVM(int[] commands, JdwpPacketWriter[] outData) {
+		int count = commands.length;
+		JdwpCommandPacket[] commandPackets = new JdwpCommandPacket[count];
+		List<CompletableFuture<JdwpReplyPacket>> futures = new ArrayList<>(count);
+		PacketReceiveManager receiveManager = fVirtualMachineImpl.packetReceiveManager();
+		for (int i = 0; i < count; i++) {
+			commandPackets[i] = new JdwpCommandPacket(commands[i]);
+			if (outData[i] != null) {
+				commandPackets[i].setData(outData[i]);
+			}
+			futures.add(receiveManager.getReplyFuture(commandPackets[i]));
+		}
+		long sent = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			try {
+				fVirtualMachineImpl.packetSendManager().sendPacket(commandPackets[i]);
+			} catch (RuntimeException e) {
+				// the VM is disconnected, no reply will arrive
+				for (JdwpCommandPacket commandPacket : commandPackets) {
+					receiveManager.discardReplyFuture(commandPacket);
+				}
+				// the packets that were not queued give their writers back
+				for (int j = i; j < count; j++) {
+					commandPackets[j].releaseDataWriter();
+				}
+				throw e;
+			}
+			fPendingJdwpRequest = true;
+			writeVerboseCommandPacketHeader(commandPackets[i]);
+		}
+
+		JdwpReplyPacket[] replies = new JdwpReplyPacket[count];
+		long deadline = sent + fVirtualMachineImpl.getRequestTimeout();
+		for (int i = 0; i < count; i++) {
+			long remaining = Math.max(deadline - System.currentTimeMillis(), 1);
+			try {
+				replies[i] = receiveManager.getReply(commandPackets[i].getId(), futures.get(i), remaining);
+			} catch (TimeoutException e) {
+				// give up on the remaining requests as well, so that their
+				// replies are discarded when they arrive
+				for (int j = i + 1; j < count; j++) {
+					try {
+						receiveManager.getReply(commandPackets[j].getId(), futures.get(j), 1);
+					} catch (TimeoutException e2) {
+					}
+				}
+				throw e;
+			}
+			handledReply(commandPackets[i], replies[i], sent);
+		}
+		return replies;
 	}
 
 	/**
@@ -233,14 +422,13 @@ public class MirrorImpl implements Mirror {
 	 * @return Returns reply data.
 	 */
 	public JdwpReplyPacket requestVM(int command, ObjectReferenceImpl object) {
-		ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
-		DataOutputStream dataOutStream = new DataOutputStream(byteOutStream);
+		JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 		try {
-			object.write(this, dataOutStream);
+			object.write(this, outData);
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
 		}
-		return requestVM(command, byteOutStream);
+		return requestVM(command, outData);
 	}
 
 	/**
@@ -249,14 +437,13 @@ public class MirrorImpl implements Mirror {
 	 * @return Returns reply data.
 	 */
 	public JdwpReplyPacket requestVM(int command, ReferenceTypeImpl refType) {
-		ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
-		DataOutputStream dataOutStream = new DataOutputStream(byteOutStream);
+		JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 		try {
-			refType.write(this, dataOutStream);
+			refType.write(this, outData);
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
 		}
-		return requestVM(command, byteOutStream);
+		return requestVM(command, outData);
 	}
 
 	/**
@@ -344,6 +531,26 @@ public class MirrorImpl implements Mirror {
 				.removeConnectedVM(fVirtualMachineImpl);
 	}
 
+	/**
+	 * Reads from the given stream, directly from the packet bytes if the
+	 * stream is a {@link JdwpPacketReader}.
+	 */
+	private static byte nextByte(DataInputStream in) throws IOException {
+		return in instanceof JdwpPacketReader ? ((JdwpPacketReader) in).getByte() : in.readByte();
+	}
+
+	private static short nextShort(DataInputStream in) throws IOException {
+		return in instanceof JdwpPacketReader ? ((JdwpPacketReader) in).getShort() : in.readShort();
+	}
+
+	private static int nextInt(DataInputStream in) throws IOException {
+		return in instanceof JdwpPacketReader ? ((JdwpPacketReader) in).getInt() : in.readInt();
+	}
+
+	private static long nextLong(DataInputStream in) throws IOException {
+		return in instanceof JdwpPacketReader ? ((JdwpPacketReader) in).getLong() : in.readLong();
+	}
+
 	/**
 	 * Reads Jdwp data and, if verbose is on, outputs verbose info.
 	 *
@@ -351,7 +558,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public byte readByte(String description, DataInputStream in)
 			throws IOException {
-		byte result = in.readByte();
+		byte result = nextByte(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result);
 		}
@@ -365,7 +572,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public short readShort(String description, DataInputStream in)
 			throws IOException {
-		short result = in.readShort();
+		short result = nextShort(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result);
 		}
@@ -379,7 +586,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public int readInt(String description, DataInputStream in)
 			throws IOException {
-		int result = in.readInt();
+		int result = nextInt(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result);
 		}
@@ -393,7 +600,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public long readLong(String description, DataInputStream in)
 			throws IOException {
-		long result = in.readLong();
+		long result = nextLong(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result);
 		}
@@ -407,7 +614,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public byte readByte(String description, Map<Integer, String> valueToString,
 			DataInputStream in) throws IOException {
-		byte result = in.readByte();
+		byte result = nextByte(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result, valueToString);
 		}
@@ -421,7 +628,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public short readShort(String description, Map<Integer, String> valueToString,
 			DataInputStream in) throws IOException {
-		short result = in.readShort();
+		short result = nextShort(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result, valueToString);
 		}
@@ -435,7 +642,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public int readInt(String description, Map<Integer, String> valueToString, DataInputStream in)
 			throws IOException {
-		int result = in.readInt();
+		int result = nextInt(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result, valueToString);
 		}
@@ -688,7 +895,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public byte readByte(String description, String[] bitNames,
 			DataInputStream in) throws IOException {
-		byte result = in.readByte();
+		byte result = nextByte(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result, bitNames);
 		}
@@ -702,7 +909,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public short readShort(String description, String[] bitNames,
 			DataInputStream in) throws IOException {
-		short result = in.readShort();
+		short result = nextShort(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result, bitNames);
 		}
@@ -716,7 +923,7 @@ public class MirrorImpl implements Mirror {
 	 */
 	public int readInt(String description, String[] bitNames, DataInputStream in)
 			throws IOException {
-		int result = in.readInt();
+		int result = nextInt(in);
 		if (fVerboseWriter != null) {
 			fVerboseWriter.println(description, result, bitNames);
 		}
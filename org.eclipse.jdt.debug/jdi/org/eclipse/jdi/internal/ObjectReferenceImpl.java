@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -23,6 +22,7 @@ import java.util.Map;
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpID;
 import org.eclipse.jdi.internal.jdwp.JdwpObjectID;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 
 import com.sun.jdi.ArrayType;
@@ -223,13 +223,12 @@ public class ObjectReferenceImpl extends ValueImpl implements ObjectReference {
 			if (maxReferrers >= Integer.MAX_VALUE) {
 				max = Integer.MAX_VALUE;
 			}
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			this.getObjectID().write(outData);
 			writeInt(max, "max referrers", outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.OR_REFERRING_OBJECTS, outBytes);
+					JdwpCommandPacket.OR_REFERRING_OBJECTS, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.NOT_IMPLEMENTED:
 				throw new UnsupportedOperationException(
@@ -276,8 +275,7 @@ public class ObjectReferenceImpl extends ValueImpl implements ObjectReference {
 		// Note that this information should not be cached.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 
 			/*
 			 * Distinguish static fields from non-static fields: For static
@@ -320,7 +318,7 @@ public class ObjectReferenceImpl extends ValueImpl implements ObjectReference {
 			}
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.OR_GET_VALUES, outBytes);
+					JdwpCommandPacket.OR_GET_VALUES, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 
 			DataInputStream replyData = replyPacket.dataInStream();
@@ -413,8 +411,7 @@ public class ObjectReferenceImpl extends ValueImpl implements ObjectReference {
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			threadImpl.write(this, outData);
 			((ReferenceTypeImpl) referenceType()).write(this, outData);
@@ -435,7 +432,7 @@ public class ObjectReferenceImpl extends ValueImpl implements ObjectReference {
 					"options", MethodImpl.getInvokeOptions(), outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.OR_INVOKE_METHOD, outBytes);
+					JdwpCommandPacket.OR_INVOKE_METHOD, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.TYPE_MISMATCH:
 				throw new InvalidTypeException();
@@ -461,6 +458,7 @@ public class ObjectReferenceImpl extends ValueImpl implements ObjectReference {
 			defaultIOExceptionHandler(e);
 			return null;
 		} finally {
+			threadImpl.invocationComplete((options & INVOKE_SINGLE_THREADED) != 0);
 			handledJdwpRequest();
 		}
 	}
@@ -554,8 +552,7 @@ public class ObjectReferenceImpl extends ValueImpl implements ObjectReference {
 		// Note that this information should not be cached.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			writeInt(1, "size", outData); // We only set one field //$NON-NLS-1$
 			checkVM(field);
@@ -573,7 +570,7 @@ public class ObjectReferenceImpl extends ValueImpl implements ObjectReference {
 			}
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.OR_SET_VALUES, outBytes);
+					JdwpCommandPacket.OR_SET_VALUES, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.TYPE_MISMATCH:
 				throw new InvalidTypeException();
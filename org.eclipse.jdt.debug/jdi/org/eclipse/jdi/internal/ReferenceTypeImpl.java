@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,7 +12,6 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -25,11 +24,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32;
 
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpFieldID;
 import org.eclipse.jdi.internal.jdwp.JdwpID;
 import org.eclipse.jdi.internal.jdwp.JdwpMethodID;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReferenceTypeID;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 import org.eclipse.osgi.util.NLS;
@@ -394,6 +395,13 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 	 */
 	private String fSmap; // JSR-045 addition
 
+	/**
+	 * The metadata of this type kept in the type metadata store, see
+	 * {@link #typeMetadata()}.
+	 */
+	private TypeMetadataStore.TypeMetadata fTypeMetadata;
+	private boolean fTypeMetadataKnown;
+
 	/**
 	 * Creates new instance.
 	 */
@@ -463,6 +471,10 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 		fStrata = null;
 		fSmap = null;
 
+		// the class may have been redefined
+		fTypeMetadata = null;
+		fTypeMetadataKnown = false;
+
 		// The following cached results are stored higher up in the class
 		// hierarchy.
 		fSignature = null;
@@ -629,6 +641,16 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 		// The methods of its own (own methods() command).
 		resultSet.addAll(methods());
 
+		// Fetch the methods of the direct super types in a single round trip.
+		List<ReferenceType> superTypes = new ArrayList<ReferenceType>(interfaces());
+		if (this instanceof ClassType) {
+			ClassType superclass = ((ClassType) this).superclass();
+			if (superclass != null) {
+				superTypes.add(superclass);
+			}
+		}
+		prefetchMethods(superTypes);
+
 		// All methods of the interfaces it implements.
 		Iterator<InterfaceType> interfaces = interfaces().iterator();
 		InterfaceType inter;
@@ -1016,8 +1038,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 		// Note that this information should not be cached.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			int fieldsSize = fields.size();
 			write(this, outData);
 			writeInt(fieldsSize, "size", outData); //$NON-NLS-1$
@@ -1028,7 +1049,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 			}
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.RT_GET_VALUES, outBytes);
+					JdwpCommandPacket.RT_GET_VALUES, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 
 			DataInputStream replyData = replyPacket.dataInStream();
@@ -1141,6 +1162,19 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 			int jdwpCommand = withGenericSignature ? JdwpCommandPacket.RT_METHODS_WITH_GENERIC
 					: JdwpCommandPacket.RT_METHODS;
 			JdwpReplyPacket replyPacket = requestVM(jdwpCommand, this);
+			return readMethods(replyPacket, withGenericSignature);
+		} finally {
+			handledJdwpRequest();
+		}
+	}
+
+	/**
+	 * Reads the reply of a methods command and stores the result.
+	 *
+	 * @return Returns the methods declared directly in this type.
+	 */
+	private List<Method> readMethods(JdwpReplyPacket replyPacket, boolean withGenericSignature) {
+		try {
 			defaultReplyErrorHandler(replyPacket.errorCode());
 			DataInputStream replyData = replyPacket.dataInStream();
 			List<Method> elements = new ArrayList<>();
@@ -1158,6 +1192,51 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
 			return null;
+		}
+	}
+
+	/**
+	 * Retrieves the methods of all given types whose methods are not known
+	 * yet, sending the requests for all types before waiting for the replies.
+	 *
+	 * @param types
+	 *            the types
+	 */
+	void prefetchMethods(List<? extends ReferenceType> types) {
+		List<ReferenceTypeImpl> toFetch = new ArrayList<>(types.size());
+		for (ReferenceType type : types) {
+			if (type instanceof ReferenceTypeImpl && !(type instanceof ArrayTypeImpl)
+					&& ((ReferenceTypeImpl) type).fMethods == null) {
+				toFetch.add((ReferenceTypeImpl) type);
+			}
+		}
+		if (toFetch.size() < 2) {
+			// nothing to gain
+			return;
+		}
+		initJdwpRequest();
+		try {
+			boolean withGenericSignature = virtualMachineImpl()
+					.isJdwpVersionGreaterOrEqual(1, 5);
+			int jdwpCommand = withGenericSignature ? JdwpCommandPacket.RT_METHODS_WITH_GENERIC
+					: JdwpCommandPacket.RT_METHODS;
+			int[] commands = new int[toFetch.size()];
+			JdwpPacketWriter[] outData = new JdwpPacketWriter[toFetch.size()];
+			for (int i = 0; i < commands.length; i++) {
+				outData[i] = JdwpPacketWriter.acquire();
+				toFetch.get(i).write(this, outData[i]);
+				commands[i] = jdwpCommand;
+			}
+			JdwpReplyPacket[] replies = requestVM(commands, outData);
+			for (int i = 0; i < replies.length; i++) {
+				ReferenceTypeImpl type = toFetch.get(i);
+				if (replies[i].errorCode() == JdwpReplyPacket.NONE) {
+					type.readMethods(replies[i], withGenericSignature);
+				}
+				// on error, leave it to methods() to report the failure
+			}
+		} catch (IOException e) {
+			defaultIOExceptionHandler(e);
 		} finally {
 			handledJdwpRequest();
 		}
@@ -1619,7 +1698,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 			allLineLocations = sourceNameAllLineLocations.get(sourceName);
 		}
 		if (allLineLocations == null) { // the line locations are not known, compute and store them
-			allLineLocations = new ArrayList<>();
+			List<List<Location>> methodLineLocations = new ArrayList<>();
 			boolean hasLineInformation = false;
 			AbsentInformationException exception = null;
 			while (allMethods.hasNext()) {
@@ -1628,7 +1707,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 					continue;
 				}
 				try {
-					allLineLocations.addAll(method.allLineLocations(stratum, sourceName));
+					methodLineLocations.add(method.allLineLocations(stratum, sourceName));
 					hasLineInformation = true;
 				} catch (AbsentInformationException e) {
 					exception = e;
@@ -1637,6 +1716,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 			if (!hasLineInformation && exception != null) {
 				throw exception;
 			}
+			allLineLocations = LocationList.concat(virtualMachineImpl(), methodLineLocations);
 			sourceNameAllLineLocations.put(sourceName, allLineLocations);
 		}
 		return allLineLocations;
@@ -1737,6 +1817,110 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 		return null;
 	}
 
+	/**
+	 * Returns the metadata of this type kept in the type metadata store.
+	 * <p>
+	 * Only types loaded by the bootstrap class loader are kept in the store:
+	 * their class files belong to the runtime of the target VM rather than to
+	 * the workspace, so they rarely change. Types are identified in the store
+	 * by their signature, the name and version of the target VM and a
+	 * fingerprint of their class file, see {@link #classFileFingerprint()},
+	 * so that classes appended to the boot class path or a runtime rebuilt
+	 * with the same version get their own metadata when their code changes.
+	 * A change that leaves the constant pool as it is, like moving code to
+	 * other lines, is not detected. Other types, and types of VMs that cannot
+	 * return a fingerprint, always get their metadata from the VM.
+	 * </p>
+	 *
+	 * @return the metadata of this type, or <code>null</code> if there is no
+	 *         store or this type is not kept in the store
+	 */
+	private TypeMetadataStore.TypeMetadata typeMetadata() {
+		synchronized (this) {
+			if (fTypeMetadataKnown) {
+				return fTypeMetadata;
+			}
+		}
+		TypeMetadataStore store = virtualMachineImpl().typeMetadataStore();
+		String key = null;
+		if (store != null && !(this instanceof ArrayTypeImpl)
+				&& classLoader() == null) {
+			String fingerprint = classFileFingerprint();
+			if (fingerprint != null) {
+				VirtualMachineImpl vm = virtualMachineImpl();
+				key = signature() + ' ' + vm.name() + ' ' + vm.version() + ' ' + fingerprint;
+			}
+		}
+		// the requests above are made without holding the lock of this type
+		TypeMetadataStore.TypeMetadata metadata = key == null ? null : store.get(key);
+		synchronized (this) {
+			if (!fTypeMetadataKnown) {
+				fTypeMetadata = metadata;
+				fTypeMetadataKnown = true;
+			}
+			return fTypeMetadata;
+		}
+	}
+
+	/**
+	 * Returns a fingerprint of the class file of this type: the size and a
+	 * checksum of its constant pool, which holds the names, signatures and
+	 * constants used by the code of the type.
+	 *
+	 * @return the fingerprint, or <code>null</code> if the VM cannot return
+	 *         the constant pool of this type
+	 */
+	private String classFileFingerprint() {
+		if (!virtualMachineImpl().canGetConstantPool()) {
+			return null;
+		}
+		byte[] constantPool;
+		try {
+			constantPool = constantPool();
+		} catch (RuntimeException e) {
+			return null;
+		}
+		if (constantPool == null || constantPool.length == 0) {
+			return null;
+		}
+		CRC32 checksum = new CRC32();
+		checksum.update(constantPool, 0, constantPool.length);
+		return Integer.toHexString(constantPool.length) + '-' + Long.toHexString(checksum.getValue());
+	}
+
+	/**
+	 * Returns the reply to the given metadata command for this type or one of
+	 * its methods, as kept in the type metadata store.
+	 *
+	 * @param command
+	 *            the JDWP command
+	 * @param method
+	 *            the method the command is about, or <code>null</code>
+	 * @return the stored reply, or <code>null</code> if there is none
+	 */
+	JdwpReplyPacket storedMetadataReply(int command, MethodImpl method) {
+		TypeMetadataStore.TypeMetadata metadata = typeMetadata();
+		return metadata == null ? null : metadata.reply(command, method);
+	}
+
+	/**
+	 * Keeps the reply to the given metadata command for this type or one of
+	 * its methods in the type metadata store, for later debug sessions.
+	 *
+	 * @param command
+	 *            the JDWP command
+	 * @param method
+	 *            the method the command is about, or <code>null</code>
+	 * @param reply
+	 *            the reply received from the VM
+	 */
+	void storeMetadataReply(int command, MethodImpl method, JdwpReplyPacket reply) {
+		TypeMetadataStore.TypeMetadata metadata = typeMetadata();
+		if (metadata != null) {
+			metadata.setReply(command, method, reply);
+		}
+	}
+
 	/**
 	 * Get the source debug extension from the VM.
 	 *
@@ -1745,8 +1929,13 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 	private void getSourceDebugExtension() throws AbsentInformationException {
 		initJdwpRequest();
 		try {
-			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.RT_SOURCE_DEBUG_EXTENSION, this);
+			JdwpReplyPacket replyPacket = storedMetadataReply(
+					JdwpCommandPacket.RT_SOURCE_DEBUG_EXTENSION, null);
+			if (replyPacket == null) {
+				replyPacket = requestVM(
+						JdwpCommandPacket.RT_SOURCE_DEBUG_EXTENSION, this);
+				storeMetadataReply(JdwpCommandPacket.RT_SOURCE_DEBUG_EXTENSION, null, replyPacket);
+			}
 			if (replyPacket.errorCode() == JdwpReplyPacket.ABSENT_INFORMATION) {
 				throw new AbsentInformationException(
 						JDIMessages.ReferenceTypeImpl_31);
@@ -1784,8 +1973,12 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 		}
 		initJdwpRequest();
 		try {
-			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.RT_SOURCE_FILE, this);
+			JdwpReplyPacket replyPacket = storedMetadataReply(
+					JdwpCommandPacket.RT_SOURCE_FILE, null);
+			if (replyPacket == null) {
+				replyPacket = requestVM(JdwpCommandPacket.RT_SOURCE_FILE, this);
+				storeMetadataReply(JdwpCommandPacket.RT_SOURCE_FILE, null, replyPacket);
+			}
 			if (replyPacket.errorCode() == JdwpReplyPacket.ABSENT_INFORMATION) {
 				throw new AbsentInformationException(
 						JDIMessages.ReferenceTypeImpl_Source_name_is_not_known_7);
@@ -2099,20 +2292,17 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 					}
 				}
 			}
-			List<Location> locations = new ArrayList<>();
+			long[] codeIndexes = new long[lineInfoTable.length];
+			int count = 0;
 			for (int i = 0, length = lineInfoTable.length; i < length; i++) {
 				if (lineInfoTable[i] != null) {
-					locations.add(new LocationImpl(virtualMachineImpl(), method, codeIndexTable[i]));
+					codeIndexes[count++] = codeIndexTable[i];
 				}
 			}
-			return locations;
+			return new LocationList(method, codeIndexes, count);
 		}
 		// Java stratum
-		List<Location> result = new ArrayList<>();
-		for (long element : codeIndexTable) {
-			result.add(new LocationImpl(virtualMachineImpl(), method, element));
-		}
-		return result;
+		return new LocationList(method, codeIndexTable, codeIndexTable.length);
 	}
 
 	/*
@@ -2184,13 +2374,12 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 			if (maxInstances >= Integer.MAX_VALUE) {
 				max = Integer.MAX_VALUE;
 			}
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			writeInt(max, "max instances", outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.RT_INSTANCES, outBytes);
+					JdwpCommandPacket.RT_INSTANCES, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_OBJECT:
 			case JdwpReplyPacket.INVALID_CLASS:
@@ -2232,12 +2421,11 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 	@Override
 	public int majorVersion() {
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			getRefTypeID().write(outData);
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.RT_CLASS_VERSION, outBytes);
+					JdwpCommandPacket.RT_CLASS_VERSION, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_CLASS:
 			case JdwpReplyPacket.INVALID_OBJECT:
@@ -2270,12 +2458,11 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 	@Override
 	public int minorVersion() {
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			getRefTypeID().write(outData);
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.RT_CLASS_VERSION, outBytes);
+					JdwpCommandPacket.RT_CLASS_VERSION, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_CLASS:
 			case JdwpReplyPacket.INVALID_OBJECT:
@@ -2309,12 +2496,11 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 	@Override
 	public int constantPoolCount() {
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			this.getRefTypeID().write(outData);
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.RT_CONSTANT_POOL, outBytes);
+					JdwpCommandPacket.RT_CONSTANT_POOL, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_CLASS:
 			case JdwpReplyPacket.INVALID_OBJECT:
@@ -2347,12 +2533,11 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 	@Override
 	public byte[] constantPool() {
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			this.getRefTypeID().write(outData);
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.RT_CONSTANT_POOL, outBytes);
+					JdwpCommandPacket.RT_CONSTANT_POOL, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_CLASS:
 			case JdwpReplyPacket.INVALID_OBJECT:
@@ -2438,8 +2623,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			threadImpl.write(this, outData);
 			methodImpl.write(this, outData);
@@ -2459,7 +2643,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 					"options", MethodImpl.getInvokeOptions(), outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					command, outBytes);
+					command, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_METHODID:
 				throw new IllegalArgumentException();
@@ -2488,6 +2672,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements
 			defaultIOExceptionHandler(e);
 			return null;
 		} finally {
+			threadImpl.invocationComplete((options & ClassType.INVOKE_SINGLE_THREADED) != 0);
 			handledJdwpRequest();
 		}
 	}
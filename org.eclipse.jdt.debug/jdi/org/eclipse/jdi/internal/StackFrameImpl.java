@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -23,6 +22,7 @@ import java.util.Map;
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpFrameID;
 import org.eclipse.jdi.internal.jdwp.JdwpID;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
 
@@ -51,6 +51,13 @@ public class StackFrameImpl extends MirrorImpl implements StackFrame, Locatable
 	private ThreadReferenceImpl fThread;
 	/** Location of the current instruction in the frame. */
 	private LocationImpl fLocation;
+	/**
+	 * The suspend cache of the thread when 'this' was retrieved, or
+	 * <code>null</code>. The object is cached until the thread is resumed.
+	 */
+	private ThreadReferenceImpl.SuspendCache fThisObjectCache;
+	/** The 'this' object of the frame, valid for its suspend cache. */
+	private ObjectReference fThisObject;
 
 	/**
 	 * Creates new StackFrameImpl.
@@ -121,8 +128,7 @@ public class StackFrameImpl extends MirrorImpl implements StackFrame, Locatable
 		// Request values for local variables other than 'this'.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeWithThread(this, outData);
 			writeInt(sizeNotThis, "size", outData); //$NON-NLS-1$
 			for (int i = 0; i < sizeAll; i++) {
@@ -135,7 +141,7 @@ public class StackFrameImpl extends MirrorImpl implements StackFrame, Locatable
 				}
 			}
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.SF_GET_VALUES, outBytes);
+					JdwpCommandPacket.SF_GET_VALUES, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 
 			DataInputStream replyData = replyPacket.dataInStream();
@@ -201,8 +207,7 @@ public class StackFrameImpl extends MirrorImpl implements StackFrame, Locatable
 		// Note that this information should not be cached.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			((ThreadReferenceImpl) thread()).write(this, outData);
 			write(this, outData);
 			writeInt(1, "size", outData); // We only set one field //$NON-NLS-1$
@@ -221,7 +226,7 @@ public class StackFrameImpl extends MirrorImpl implements StackFrame, Locatable
 			}
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.SF_SET_VALUES, outBytes);
+					JdwpCommandPacket.SF_SET_VALUES, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_CLASS:
 				throw new ClassNotLoadedException(var.typeName());
@@ -239,20 +244,32 @@ public class StackFrameImpl extends MirrorImpl implements StackFrame, Locatable
 	 */
 	@Override
 	public ObjectReference thisObject() throws InvalidStackFrameException {
-		// Note that this information should not be cached.
+		ThreadReferenceImpl.SuspendCache cache = fThread.suspendCache();
+		if (cache != null) {
+			synchronized (this) {
+				if (fThisObjectCache == cache) {
+					return fThisObject;
+				}
+			}
+		}
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeWithThread(this, outData);
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.SF_THIS_OBJECT, outBytes);
+					JdwpCommandPacket.SF_THIS_OBJECT, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 
 			DataInputStream replyData = replyPacket.dataInStream();
 			ObjectReference result = ObjectReferenceImpl.readObjectRefWithTag(
 					this, replyData);
+			if (cache != null) {
+				synchronized (this) {
+					fThisObjectCache = cache;
+					fThisObject = result;
+				}
+			}
 			return result;
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,19 +10,20 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpID;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpThreadID;
 import org.eclipse.osgi.util.NLS;
@@ -67,9 +68,160 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 	/** JDWP Tag. */
 	protected static final byte tag = JdwpID.THREAD_TAG;
 
+	/**
+	 * Maximum number of threads whose state is requested in one batch, so
+	 * that a batch completes within the request timeout.
+	 */
+	private static final int STATE_BATCH_SIZE = 128;
+
+	/**
+	 * The status, suspend count and name of a thread, retrieved for many
+	 * threads at once.
+	 *
+	 * @see ThreadReferenceImpl#states(List)
+	 */
+	public static final class State {
+		private final int fStatus;
+		private final boolean fSuspended;
+		private final int fSuspendCount;
+		private final String fName;
+
+		State(int status, boolean suspended, int suspendCount, String name) {
+			fStatus = status;
+			fSuspended = suspended;
+			fSuspendCount = suspendCount;
+			fName = name;
+		}
+
+		/**
+		 * @return Returns the thread's status, see
+		 *         {@link ThreadReference#status()}.
+		 */
+		public int status() {
+			return fStatus;
+		}
+
+		/**
+		 * @return Returns whether the thread is suspended.
+		 */
+		public boolean isSuspended() {
+			return fSuspended;
+		}
+
+		/**
+		 * @return Returns the number of pending suspends for the thread.
+		 */
+		public int suspendCount() {
+			return fSuspendCount;
+		}
+
+		/**
+		 * @return Returns the name of the thread.
+		 */
+		public String name() {
+			return fName;
+		}
+	}
+
+	/**
+	 * What a thread answered while it was suspended. A cache belongs to an
+	 * epoch of the virtual machine and of the thread, and is discarded when
+	 * either changes. Values are only cached once the thread is known to be
+	 * suspended, since a suspended thread stays suspended until one of the
+	 * commands that change the epochs is sent.
+	 *
+	 * @see VirtualMachineImpl#setSuspendCacheEnabled(boolean)
+	 */
+	static final class SuspendCache {
+		final int fVMEpoch;
+		final int fEpoch;
+		/** Whether the thread is known to be suspended. */
+		volatile boolean fSuspended;
+		/** The thread's status, or <code>null</code> if unknown. */
+		volatile Integer fStatus;
+		/** The thread's name, or <code>null</code> if unknown. */
+		volatile String fName;
+		/** The monitors owned by the thread, or <code>null</code> if unknown. */
+		volatile List<ObjectReference> fOwnedMonitors;
+		/** The number of frames, or -1 if unknown. */
+		private int fFrameCount = -1;
+		/** The frames retrieved so far, by index, once the count is known. */
+		private StackFrame[] fFrames;
+
+		SuspendCache(int vmEpoch, int epoch) {
+			fVMEpoch = vmEpoch;
+			fEpoch = epoch;
+		}
+
+		synchronized int getFrameCount() {
+			return fFrameCount;
+		}
+
+		synchronized void setFrameCount(int count) {
+			if (fFrameCount != count) {
+				fFrameCount = count;
+				fFrames = null;
+			}
+			fSuspended = true;
+		}
+
+		/**
+		 * @return Returns the frames in the given range, or <code>null</code>
+		 *         if some are not cached.
+		 */
+		synchronized List<StackFrame> getFrames(int start, int length) {
+			if (fFrames == null) {
+				return null;
+			}
+			int end = length == -1 ? fFrames.length : start + length;
+			if (start < 0 || length < -1 || end > fFrames.length) {
+				return null;
+			}
+			List<StackFrame> frames = new ArrayList<>(end - start);
+			for (int i = start; i < end; i++) {
+				if (fFrames[i] == null) {
+					return null;
+				}
+				frames.add(fFrames[i]);
+			}
+			return frames;
+		}
+
+		/**
+		 * Caches the frames retrieved from the given index. All frames down
+		 * to the bottom of the stack were retrieved if the length is -1.
+		 */
+		synchronized void putFrames(int start, int length, List<StackFrame> frames) {
+			if (length == -1) {
+				setFrameCount(start + frames.size());
+			}
+			if (fFrameCount < 0 || start + frames.size() > fFrameCount) {
+				return;
+			}
+			if (fFrames == null) {
+				fFrames = new StackFrame[fFrameCount];
+			}
+			for (int i = 0; i < frames.size(); i++) {
+				fFrames[start + i] = frames.get(i);
+			}
+			fSuspended = true;
+		}
+	}
+
 	/** Is thread currently at a breakpoint? */
 	private boolean fIsAtBreakpoint = false;
 
+	/**
+	 * Incremented after each command that may have resumed this thread or
+	 * changed its stack.
+	 */
+	private final AtomicInteger fResumeEpoch = new AtomicInteger();
+
+	/**
+	 * What this thread answered in the current epochs, or <code>null</code>.
+	 */
+	private volatile SuspendCache fSuspendCache;
+
 	/**
 	 * The cached thread group. A thread's thread group cannot be changed.
 	 */
@@ -96,6 +248,52 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 		fIsAtBreakpoint = false;
 	}
 
+	/**
+	 * @return Returns the cache of what this thread answers while it is
+	 *         suspended, or <code>null</code> if caching is disabled. The
+	 *         epochs are read before any command is sent, so that a value
+	 *         retrieved while the thread is being resumed is cached in a
+	 *         cache that is already discarded.
+	 */
+	SuspendCache suspendCache() {
+		VirtualMachineImpl vm = virtualMachineImpl();
+		if (!vm.isSuspendCacheEnabled()) {
+			return null;
+		}
+		int vmEpoch = vm.resumeEpoch();
+		int epoch = fResumeEpoch.get();
+		SuspendCache cache = fSuspendCache;
+		if (cache == null || cache.fVMEpoch != vmEpoch || cache.fEpoch != epoch) {
+			cache = new SuspendCache(vmEpoch, epoch);
+			fSuspendCache = cache;
+		}
+		return cache;
+	}
+
+	/**
+	 * Discards what this thread cached while it was suspended, after a
+	 * command that may have resumed it or changed its stack.
+	 */
+	void resetSuspendCache() {
+		fResumeEpoch.incrementAndGet();
+	}
+
+	/**
+	 * Discards what was cached while threads were suspended, after a method
+	 * was invoked in this thread. Invocations that are not single threaded
+	 * resume all threads.
+	 *
+	 * @param singleThreaded
+	 *            whether only this thread was resumed by the invocation
+	 */
+	void invocationComplete(boolean singleThreaded) {
+		if (singleThreaded) {
+			resetSuspendCache();
+		} else {
+			virtualMachineImpl().resetSuspendCaches();
+		}
+	}
+
 	/**
 	 * @returns Value tag.
 	 */
@@ -152,8 +350,7 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 					JDIMessages.ThreadReferenceImpl_vm_read_only);
 		}
 		initJdwpRequest();
-		ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
-		DataOutputStream dataOutStream = new DataOutputStream(byteOutStream);
+		JdwpPacketWriter dataOutStream = JdwpPacketWriter.acquire();
 		try {
 			write(this, dataOutStream);
 			if (value != null) {
@@ -163,7 +360,7 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 				ValueImpl.writeNullWithTag(this, dataOutStream);
 			}
 			JdwpReplyPacket reply = requestVM(
-					JdwpCommandPacket.TR_FORCE_EARLY_RETURN, byteOutStream);
+					JdwpCommandPacket.TR_FORCE_EARLY_RETURN, dataOutStream);
 			switch (reply.errorCode()) {
 			case JdwpReplyPacket.INVALID_THREAD:
 				throw new ObjectCollectedException(
@@ -194,6 +391,7 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
 		} finally {
+			resetSuspendCache();
 			handledJdwpRequest();
 		}
 	}
@@ -212,7 +410,13 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 	 */
 	@Override
 	public int frameCount() throws IncompatibleThreadStateException {
-		// Note that this information should not be cached.
+		SuspendCache cache = suspendCache();
+		if (cache != null) {
+			int count = cache.getFrameCount();
+			if (count >= 0) {
+				return count;
+			}
+		}
 		initJdwpRequest();
 		try {
 			JdwpReplyPacket replyPacket = requestVM(
@@ -228,6 +432,9 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 
 			DataInputStream replyData = replyPacket.dataInStream();
 			int result = readInt("frame count", replyData); //$NON-NLS-1$
+			if (cache != null) {
+				cache.setFrameCount(result);
+			}
 			return result;
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
@@ -251,17 +458,22 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 	@Override
 	public List<StackFrame> frames(int start, int length) throws IndexOutOfBoundsException,
 			IncompatibleThreadStateException {
-		// Note that this information should not be cached.
+		SuspendCache cache = suspendCache();
+		if (cache != null) {
+			List<StackFrame> frames = cache.getFrames(start, length);
+			if (frames != null) {
+				return frames;
+			}
+		}
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			writeInt(start, "start", outData); //$NON-NLS-1$
 			writeInt(length, "length", outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.TR_FRAMES, outBytes);
+					JdwpCommandPacket.TR_FRAMES, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_THREAD:
 				throw new ObjectCollectedException();
@@ -285,6 +497,9 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 				}
 				frames.add(frame);
 			}
+			if (cache != null && frames.size() == nrOfElements) {
+				cache.putFrames(start, length, frames);
+			}
 			return frames;
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
@@ -321,7 +536,10 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 	 */
 	@Override
 	public boolean isSuspended() {
-		// Note that this information should not be cached.
+		SuspendCache cache = suspendCache();
+		if (cache != null && cache.fSuspended) {
+			return true;
+		}
 		initJdwpRequest();
 		try {
 			JdwpReplyPacket replyPacket = requestVM(
@@ -337,6 +555,9 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 			int suspendStatus = readInt(
 					"suspend status", suspendStatusStrings(), replyData); //$NON-NLS-1$
 			boolean result = suspendStatus == SUSPEND_STATUS_SUSPENDED;
+			if (cache != null && result) {
+				cache.fSuspended = true;
+			}
 			return result;
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
@@ -351,6 +572,16 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 	 */
 	@Override
 	public String name() {
+		SuspendCache cache = suspendCache();
+		if (cache != null) {
+			if (cache.fName != null) {
+				return cache.fName;
+			}
+			// the name may change while the thread runs
+			if (!cache.fSuspended) {
+				cache = null;
+			}
+		}
 		initJdwpRequest();
 		try {
 			JdwpReplyPacket replyPacket = requestVM(JdwpCommandPacket.TR_NAME,
@@ -361,7 +592,11 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 			}
 			defaultReplyErrorHandler(replyPacket.errorCode());
 			DataInputStream replyData = replyPacket.dataInStream();
-			return readString("name", replyData); //$NON-NLS-1$
+			String result = readString("name", replyData); //$NON-NLS-1$
+			if (cache != null) {
+				cache.fName = result;
+			}
+			return result;
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
 			return null;
@@ -378,7 +613,13 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 		if (!virtualMachine().canGetOwnedMonitorInfo()) {
 			throw new UnsupportedOperationException();
 		}
-		// Note that this information should not be cached.
+		SuspendCache cache = suspendCache();
+		if (cache != null) {
+			List<ObjectReference> monitors = cache.fOwnedMonitors;
+			if (monitors != null) {
+				return new ArrayList<>(monitors);
+			}
+		}
 		initJdwpRequest();
 		try {
 			JdwpReplyPacket replyPacket = requestVM(
@@ -399,6 +640,10 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 				result.add(ObjectReferenceImpl.readObjectRefWithTag(this,
 						replyData));
 			}
+			if (cache != null) {
+				cache.fSuspended = true;
+				cache.fOwnedMonitors = new ArrayList<>(result);
+			}
 			return result;
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
@@ -472,6 +717,7 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 			defaultReplyErrorHandler(replyPacket.errorCode());
 			resetEventFlags();
 		} finally {
+			resetSuspendCache();
 			handledJdwpRequest();
 		}
 	}
@@ -481,7 +727,13 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 	 */
 	@Override
 	public int status() {
-		// Note that this information should not be cached.
+		SuspendCache cache = suspendCache();
+		if (cache != null) {
+			Integer status = cache.fStatus;
+			if (status != null) {
+				return status.intValue();
+			}
+		}
 		initJdwpRequest();
 		try {
 			JdwpReplyPacket replyPacket = requestVM(
@@ -496,24 +748,14 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 			DataInputStream replyData = replyPacket.dataInStream();
 			int threadStatus = readInt(
 					"thread status", threadStatusMap(), replyData); //$NON-NLS-1$
-			readInt("suspend status", suspendStatusStrings(), replyData); //$NON-NLS-1$
-			switch (threadStatus) {
-			case JDWP_THREAD_STATUS_ZOMBIE:
-				return THREAD_STATUS_ZOMBIE;
-			case JDWP_THREAD_STATUS_RUNNING:
-				return THREAD_STATUS_RUNNING;
-			case JDWP_THREAD_STATUS_SLEEPING:
-				return THREAD_STATUS_SLEEPING;
-			case JDWP_THREAD_STATUS_MONITOR:
-				return THREAD_STATUS_MONITOR;
-			case JDWP_THREAD_STATUS_WAIT:
-				return THREAD_STATUS_WAIT;
-			case -1: // see bug 30816
-				return THREAD_STATUS_UNKNOWN;
+			int suspendStatus = readInt(
+					"suspend status", suspendStatusStrings(), replyData); //$NON-NLS-1$
+			int result = threadStatus(threadStatus);
+			if (cache != null && suspendStatus == SUSPEND_STATUS_SUSPENDED) {
+				cache.fSuspended = true;
+				cache.fStatus = Integer.valueOf(result);
 			}
-			throw new InternalException(
-					JDIMessages.ThreadReferenceImpl_Unknown_thread_status_received___6
-							+ threadStatus);
+			return result;
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
 			return 0;
@@ -522,6 +764,172 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 		}
 	}
 
+	/**
+	 * @return Returns the thread status for the given JDWP thread status.
+	 */
+	private static int threadStatus(int jdwpThreadStatus) {
+		switch (jdwpThreadStatus) {
+		case JDWP_THREAD_STATUS_ZOMBIE:
+			return THREAD_STATUS_ZOMBIE;
+		case JDWP_THREAD_STATUS_RUNNING:
+			return THREAD_STATUS_RUNNING;
+		case JDWP_THREAD_STATUS_SLEEPING:
+			return THREAD_STATUS_SLEEPING;
+		case JDWP_THREAD_STATUS_MONITOR:
+			return THREAD_STATUS_MONITOR;
+		case JDWP_THREAD_STATUS_WAIT:
+			return THREAD_STATUS_WAIT;
+		case -1: // see bug 30816
+			return THREAD_STATUS_UNKNOWN;
+		}
+		throw new InternalException(
+				JDIMessages.ThreadReferenceImpl_Unknown_thread_status_received___6
+						+ jdwpThreadStatus);
+	}
+
+	/**
+	 * Retrieves the status, suspend count and name of the given threads of
+	 * this thread's virtual machine. The requests for all threads are sent
+	 * back to back, by batches, before waiting for their replies, so that the
+	 * states of many threads are retrieved in a few round trips instead of
+	 * three per thread.
+	 *
+	 * @param threads
+	 *            threads of the virtual machine of this thread
+	 * @return Returns the state of each thread, in the order of the threads,
+	 *         with <code>null</code> entries for the threads that are no
+	 *         longer valid.
+	 */
+	public State[] states(List<? extends ThreadReference> threads) {
+		State[] states = new State[threads.size()];
+		initJdwpRequest();
+		try {
+			for (int start = 0; start < states.length; start += STATE_BATCH_SIZE) {
+				int count = Math.min(STATE_BATCH_SIZE, states.length - start);
+				int[] commands = new int[count * 3];
+				JdwpPacketWriter[] outData = new JdwpPacketWriter[count * 3];
+				SuspendCache[] caches = new SuspendCache[count];
+				checkVM(threads, start, count);
+				for (int i = 0; i < count; i++) {
+					ThreadReferenceImpl thread = (ThreadReferenceImpl) threads.get(start + i);
+					caches[i] = thread.suspendCache();
+					commands[3 * i] = JdwpCommandPacket.TR_STATUS;
+					commands[3 * i + 1] = JdwpCommandPacket.TR_SUSPEND_COUNT;
+					commands[3 * i + 2] = JdwpCommandPacket.TR_NAME;
+					for (int j = 3 * i; j < 3 * i + 3; j++) {
+						outData[j] = JdwpPacketWriter.acquire();
+						thread.write(this, outData[j]);
+					}
+				}
+				JdwpReplyPacket[] replies = requestVM(commands, outData);
+				for (int i = 0; i < count; i++) {
+					State state = readState(replies[3 * i],
+							replies[3 * i + 1], replies[3 * i + 2]);
+					states[start + i] = state;
+					// the name is read after the status, once the thread is
+					// known to be suspended
+					if (caches[i] != null && state != null && state.isSuspended()) {
+						caches[i].fSuspended = true;
+						caches[i].fStatus = Integer.valueOf(state.status());
+						caches[i].fName = state.name();
+					}
+				}
+			}
+			return states;
+		} catch (IOException e) {
+			defaultIOExceptionHandler(e);
+			return states;
+		} finally {
+			handledJdwpRequest();
+		}
+	}
+
+	/**
+	 * Retrieves the suspend counts of the given threads of this thread's
+	 * virtual machine, sending the requests by batches like
+	 * {@link #states(List)}, but with one request per thread.
+	 *
+	 * @param threads
+	 *            threads of the virtual machine of this thread
+	 * @return Returns the suspend count of each thread, in the order of the
+	 *         threads, with -1 for the threads that are no longer valid.
+	 */
+	public int[] suspendCounts(List<? extends ThreadReference> threads) {
+		int[] suspendCounts = new int[threads.size()];
+		Arrays.fill(suspendCounts, -1);
+		initJdwpRequest();
+		try {
+			for (int start = 0; start < suspendCounts.length; start += STATE_BATCH_SIZE) {
+				int count = Math.min(STATE_BATCH_SIZE, suspendCounts.length - start);
+				int[] commands = new int[count];
+				JdwpPacketWriter[] outData = new JdwpPacketWriter[count];
+				checkVM(threads, start, count);
+				for (int i = 0; i < count; i++) {
+					ThreadReferenceImpl thread = (ThreadReferenceImpl) threads.get(start + i);
+					commands[i] = JdwpCommandPacket.TR_SUSPEND_COUNT;
+					outData[i] = JdwpPacketWriter.acquire();
+					thread.write(this, outData[i]);
+				}
+				JdwpReplyPacket[] replies = requestVM(commands, outData);
+				for (int i = 0; i < count; i++) {
+					switch (replies[i].errorCode()) {
+					case JdwpReplyPacket.INVALID_THREAD:
+					case JdwpReplyPacket.INVALID_OBJECT:
+						continue;
+					}
+					defaultReplyErrorHandler(replies[i].errorCode());
+					suspendCounts[start + i] = readInt(
+							"suspend count", replies[i].dataInStream()); //$NON-NLS-1$
+				}
+			}
+			return suspendCounts;
+		} catch (IOException e) {
+			defaultIOExceptionHandler(e);
+			return suspendCounts;
+		} finally {
+			handledJdwpRequest();
+		}
+	}
+
+	/**
+	 * Checks that the given threads belong to the virtual machine of this
+	 * thread, before any writer is acquired for their requests.
+	 */
+	private void checkVM(List<? extends ThreadReference> threads, int start, int count) {
+		for (int i = start; i < start + count; i++) {
+			checkVM(threads.get(i));
+		}
+	}
+
+	/**
+	 * @return Returns the state read from the replies of the status, suspend
+	 *         count and name commands of a thread, or <code>null</code> if the
+	 *         thread is no longer valid.
+	 */
+	private State readState(JdwpReplyPacket statusReply,
+			JdwpReplyPacket suspendCountReply, JdwpReplyPacket nameReply)
+			throws IOException {
+		if (statusReply.errorCode() == JdwpReplyPacket.INVALID_THREAD
+				|| suspendCountReply.errorCode() == JdwpReplyPacket.INVALID_THREAD
+				|| nameReply.errorCode() == JdwpReplyPacket.INVALID_THREAD
+				|| statusReply.errorCode() == JdwpReplyPacket.INVALID_OBJECT) {
+			return null;
+		}
+		defaultReplyErrorHandler(statusReply.errorCode());
+		defaultReplyErrorHandler(suspendCountReply.errorCode());
+		defaultReplyErrorHandler(nameReply.errorCode());
+		DataInputStream replyData = statusReply.dataInStream();
+		int threadStatus = readInt(
+				"thread status", threadStatusMap(), replyData); //$NON-NLS-1$
+		int suspendStatus = readInt(
+				"suspend status", suspendStatusStrings(), replyData); //$NON-NLS-1$
+		int suspendCount = readInt(
+				"suspend count", suspendCountReply.dataInStream()); //$NON-NLS-1$
+		String name = readString("name", nameReply.dataInStream()); //$NON-NLS-1$
+		return new State(threadStatus(threadStatus),
+				suspendStatus == SUSPEND_STATUS_SUSPENDED, suspendCount, name);
+	}
+
 	/**
 	 * Stops this thread with an asynchronous exception.
 	 *
@@ -534,13 +942,12 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			throwableImpl.write(this, outData);
 
 			JdwpReplyPacket replyPacket = requestVM(JdwpCommandPacket.TR_STOP,
-					outBytes);
+					outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_THREAD:
 				throw new ObjectCollectedException();
@@ -552,6 +959,7 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 		} catch (IOException e) {
 			defaultIOExceptionHandler(e);
 		} finally {
+			resetSuspendCache();
 			handledJdwpRequest();
 		}
 	}
@@ -660,15 +1068,14 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 		// Note that this information should not be cached.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			write(this, outData);
 			valueImpl.writeWithTag(this, outData);
 			writeBoolean(triggerFinallyAndSynchronized,
 					"trigger finaly+sync", outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.HCR_DO_RETURN, outBytes);
+					JdwpCommandPacket.HCR_DO_RETURN, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_THREAD:
 				throw new ObjectCollectedException();
@@ -682,6 +1089,7 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 			defaultIOExceptionHandler(e);
 			return false;
 		} finally {
+			resetSuspendCache();
 			handledJdwpRequest();
 		}
 	}
@@ -804,12 +1212,11 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			frame.writeWithThread(frame, outData);
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.SF_POP_FRAME, outBytes);
+					JdwpCommandPacket.SF_POP_FRAME, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_THREAD:
 				throw new InvalidStackFrameException();
@@ -828,6 +1235,7 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl implements	ThreadRe
 		} catch (IOException ioe) {
 			defaultIOExceptionHandler(ioe);
 		} finally {
+			resetSuspendCache();
 			handledJdwpRequest();
 		}
 	}
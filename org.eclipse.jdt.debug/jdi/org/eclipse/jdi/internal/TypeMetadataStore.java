@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
+
+/**
+ * On-disk store of type metadata that does not depend on a debug session,
+ * like line tables, local variable tables, source names and source debug
+ * extensions. The metadata is kept as the data of the JDWP replies which
+ * returned it, so that it can be read by the code that reads the replies.
+ * <p>
+ * Types are identified by their signature, the target VM they were loaded
+ * in and a fingerprint of their class file (see {@link ReferenceTypeImpl}).
+ * The store is a single file of appended records, one per type, which is
+ * memory mapped when the store is opened; a later record for a type replaces
+ * the earlier ones. Records are decoded the first time a type is looked up,
+ * and the metadata gathered during the session is appended by
+ * {@link #flush(boolean)}.
+ * </p>
+ */
+public class TypeMetadataStore {
+
+	private static final String FILE_NAME = "typemetadata.bin"; //$NON-NLS-1$
+	private static final int MAGIC = 0x4A444D53; // JDMS
+	private static final int VERSION = 3;
+	private static final int HEADER_SIZE = 8;
+
+	/** A store file larger than this is discarded when opened. */
+	private static final long MAX_FILE_SIZE = 128L * 1024 * 1024;
+
+	/**
+	 * Metadata of one type: reply data keyed by command and, for method
+	 * commands, method name and signature.
+	 */
+	public static final class TypeMetadata {
+		private final Map<String, byte[]> fReplies;
+		/** Number of replies stored, and number written to the store file. */
+		private int fModifications;
+		private int fWrittenModifications;
+
+		TypeMetadata(Map<String, byte[]> replies) {
+			fReplies = replies;
+		}
+
+		private static String entryKey(int command, MethodImpl method) {
+			if (method == null) {
+				return Integer.toString(command);
+			}
+			return command + ":" + method.name() + method.signature(); //$NON-NLS-1$
+		}
+
+		/**
+		 * @return Returns the stored reply to the given command, or
+		 *         <code>null</code> if there is none.
+		 */
+		public synchronized JdwpReplyPacket reply(int command, MethodImpl method) {
+			byte[] bytes = fReplies.get(entryKey(command, method));
+			if (bytes == null) {
+				return null;
+			}
+			JdwpReplyPacket reply = new JdwpReplyPacket();
+			reply.setErrorCode((short) (((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF)));
+			byte[] data = new byte[bytes.length - 2];
+			System.arraycopy(bytes, 2, data, 0, data.length);
+			reply.setData(data);
+			return reply;
+		}
+
+		/**
+		 * Stores the given reply to the given command. Only successful replies
+		 * and replies telling that the information is absent are stored.
+		 */
+		public synchronized void setReply(int command, MethodImpl method, JdwpReplyPacket reply) {
+			short errorCode = reply.errorCode();
+			if (errorCode != JdwpReplyPacket.NONE && errorCode != JdwpReplyPacket.ABSENT_INFORMATION) {
+				return;
+			}
+			byte[] data = reply.data();
+			int length = data == null ? 0 : data.length;
+			byte[] bytes = new byte[length + 2];
+			bytes[0] = (byte) (errorCode >>> 8);
+			bytes[1] = (byte) errorCode;
+			if (length > 0) {
+				System.arraycopy(data, 0, bytes, 2, length);
+			}
+			fReplies.put(entryKey(command, method), bytes);
+			fModifications++;
+		}
+
+		private boolean isModified() {
+			return fModifications != fWrittenModifications;
+		}
+	}
+
+	private final File fFile;
+
+	/** The content of the file when the store was opened. */
+	private ByteBuffer fMappedRecords;
+
+	/** Offsets of the latest record of each type in {@link #fMappedRecords}. */
+	private final Map<String, Integer> fRecordOffsets = new HashMap<>();
+
+	/** Whether the file exists but is not a store of this version. */
+	private boolean fInvalidFile;
+
+	/** Metadata of the types looked up so far. */
+	private final Map<String, TypeMetadata> fTypes = new HashMap<>();
+
+	private TypeMetadataStore(File file) {
+		fFile = file;
+	}
+
+	/**
+	 * Opens the store in the given directory, creating the directory if
+	 * needed.
+	 *
+	 * @return the store, or <code>null</code> if it cannot be opened
+	 */
+	public static TypeMetadataStore open(File directory) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			return null;
+		}
+		TypeMetadataStore store = new TypeMetadataStore(new File(directory, FILE_NAME));
+		try {
+			store.load();
+		} catch (IOException e) {
+			// start with an empty store
+			store.fMappedRecords = null;
+			store.fRecordOffsets.clear();
+		}
+		return store;
+	}
+
+	/**
+	 * Maps the store file and indexes its records.
+	 */
+	private void load() throws IOException {
+		if (!fFile.isFile()) {
+			return;
+		}
+		if (fFile.length() > MAX_FILE_SIZE) {
+			fFile.delete();
+			return;
+		}
+		try (RandomAccessFile file = new RandomAccessFile(fFile, "r"); //$NON-NLS-1$
+				FileChannel channel = file.getChannel()) {
+			// check the header before mapping the file, an invalid file is
+			// truncated by the next write, which fails on some platforms
+			// while the file is mapped
+			if (file.length() < HEADER_SIZE || file.readInt() != MAGIC || file.readInt() != VERSION) {
+				fInvalidFile = true;
+				return;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.position(HEADER_SIZE);
+			try {
+				// record: int length, key, entries
+				while (buffer.remaining() >= 4) {
+					int length = buffer.getInt();
+					if (length < 0 || length > buffer.remaining()) {
+						// truncated record, e.g. after a crash
+						break;
+					}
+					int start = buffer.position();
+					fRecordOffsets.put(readString(buffer), Integer.valueOf(start));
+					buffer.position(start + length);
+				}
+			} catch (BufferUnderflowException e) {
+				// ignore the malformed tail
+			}
+			fMappedRecords = buffer;
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xFFFF;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Returns the metadata of the type with the given key, which is empty if
+	 * nothing is known about the type yet.
+	 *
+	 * @param typeKey
+	 *            signature of the type, name and version of its VM and
+	 *            fingerprint of its class file
+	 * @return the metadata of the type
+	 */
+	public synchronized TypeMetadata get(String typeKey) {
+		TypeMetadata metadata = fTypes.get(typeKey);
+		if (metadata == null) {
+			Map<String, byte[]> replies = new HashMap<>();
+			Integer offset = fRecordOffsets.get(typeKey);
+			if (offset != null) {
+				try {
+					ByteBuffer buffer = fMappedRecords.duplicate();
+					buffer.position(offset.intValue());
+					readString(buffer);
+					int count = buffer.getInt();
+					for (int i = 0; i < count; i++) {
+						String entryKey = readString(buffer);
+						byte[] bytes = new byte[buffer.getInt()];
+						buffer.get(bytes);
+						replies.put(entryKey, bytes);
+					}
+				} catch (RuntimeException e) {
+					// malformed record, ignore it
+					replies.clear();
+				}
+			}
+			metadata = new TypeMetadata(replies);
+			fTypes.put(typeKey, metadata);
+		}
+		return metadata;
+	}
+
+	/**
+	 * Appends the metadata gathered since the last flush to the store file.
+	 * Metadata that cannot be written, because another process is writing
+	 * the store or the write fails, is written by the next flush.
+	 *
+	 * @param release
+	 *            whether the metadata held in memory can be released, because
+	 *            it is not used by any type anymore; metadata that is not
+	 *            written yet is kept
+	 */
+	public synchronized void flush(boolean release) {
+		List<byte[]> records = new ArrayList<>();
+		Map<TypeMetadata, Integer> written = new HashMap<>();
+		try {
+			for (Map.Entry<String, TypeMetadata> entry : fTypes.entrySet()) {
+				TypeMetadata metadata = entry.getValue();
+				synchronized (metadata) {
+					if (!metadata.isModified()) {
+						continue;
+					}
+					written.put(metadata, Integer.valueOf(metadata.fModifications));
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					DataOutputStream out = new DataOutputStream(bytes);
+					out.writeInt(0); // length, set below
+					writeString(out, entry.getKey());
+					out.writeInt(metadata.fReplies.size());
+					for (Map.Entry<String, byte[]> reply : metadata.fReplies.entrySet()) {
+						writeString(out, reply.getKey());
+						out.writeInt(reply.getValue().length);
+						out.write(reply.getValue());
+					}
+					byte[] record = bytes.toByteArray();
+					ByteBuffer.wrap(record).putInt(record.length - 4);
+					records.add(record);
+				}
+			}
+			if (!records.isEmpty() && write(records)) {
+				for (Map.Entry<TypeMetadata, Integer> entry : written.entrySet()) {
+					TypeMetadata metadata = entry.getKey();
+					synchronized (metadata) {
+						// replies stored meanwhile are written by the next flush
+						metadata.fWrittenModifications = entry.getValue().intValue();
+					}
+				}
+			}
+		} catch (IOException e) {
+			// the store is only a cache, the records are written by the next
+			// flush
+		}
+		if (release) {
+			for (Iterator<TypeMetadata> types = fTypes.values().iterator(); types.hasNext();) {
+				TypeMetadata metadata = types.next();
+				synchronized (metadata) {
+					if (!metadata.isModified()) {
+						types.remove();
+					}
+				}
+			}
+			fRecordOffsets.clear();
+			fMappedRecords = null;
+			try {
+				load();
+			} catch (IOException e) {
+				fRecordOffsets.clear();
+			}
+		}
+	}
+
+	/**
+	 * Appends the given records to the store file.
+	 *
+	 * @return whether the records were written, <code>false</code> if
+	 *         another process or store is writing the file
+	 */
+	private boolean write(List<byte[]> records) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(fFile, "rw"); //$NON-NLS-1$
+				FileChannel channel = file.getChannel();
+				FileLock lock = tryLock(channel)) {
+			if (lock == null) {
+				// another process is writing the store
+				return false;
+			}
+			if (fInvalidFile || channel.size() < HEADER_SIZE) {
+				// the file is not mapped, see load()
+				fInvalidFile = false;
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).putInt(VERSION).flip();
+				channel.truncate(0);
+				channel.write(header, 0);
+			}
+			long position = channel.size();
+			for (byte[] record : records) {
+				ByteBuffer buffer = ByteBuffer.wrap(record);
+				while (buffer.hasRemaining()) {
+					position += channel.write(buffer, position);
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the lock of the given store file, or <code>null</code> if it
+	 * is held by another process or another store of this process.
+	 */
+	private static FileLock tryLock(FileChannel channel) throws IOException {
+		try {
+			return channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			return null;
+		}
+	}
+}
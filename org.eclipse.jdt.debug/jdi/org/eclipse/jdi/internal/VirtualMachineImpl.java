@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,9 +10,7 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -22,6 +20,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jdi.Bootstrap;
 import org.eclipse.jdi.internal.connect.PacketReceiveManager;
@@ -29,8 +28,10 @@ import org.eclipse.jdi.internal.connect.PacketSendManager;
 import org.eclipse.jdi.internal.event.EventQueueImpl;
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
 import org.eclipse.jdi.internal.jdwp.JdwpObjectID;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReferenceTypeID;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
+import org.eclipse.jdi.internal.request.ClassPrepareRequestImpl;
 import org.eclipse.jdi.internal.request.EventRequestManagerImpl;
 import org.eclipse.osgi.util.NLS;
 
@@ -93,8 +94,37 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 	 * optional: their only purpose is to speed up the debugger by being able to
 	 * use the stored results of JDWP calls.
 	 */
-	private ValueCache fCachedReftypes = new ValueCache();
-	private ValueCache fCachedObjects = new ValueCache();
+	private final MirrorCache<ReferenceTypeImpl> fCachedReftypes = new MirrorCache<>();
+	private final MirrorCache<ObjectReferenceImpl> fCachedObjects = new MirrorCache<>();
+
+	/**
+	 * Store of type metadata kept across debug sessions, or <code>null</code>.
+	 */
+	private final TypeMetadataStore fTypeMetadataStore;
+
+	/**
+	 * Index of the loaded types, or <code>null</code> if it has not been
+	 * requested.
+	 */
+	private volatile LoadedClassIndex fLoadedClassIndex;
+	private final Object fLoadedClassIndexLock = new Object();
+
+	/**
+	 * Whether the index of the loaded types may be created.
+	 */
+	private volatile boolean fLoadedClassIndexEnabled = true;
+
+	/**
+	 * Whether threads cache what they answer while they are suspended.
+	 */
+	private volatile boolean fSuspendCacheEnabled = false;
+
+	/**
+	 * Incremented after each command that may have resumed all threads or
+	 * changed their stacks, which discards what threads cached while they were
+	 * suspended.
+	 */
+	private final AtomicInteger fResumeEpoch = new AtomicInteger();
 
 	/** The following are the stored results of JDWP calls. */
 	private String fVersionDescription = null; // Text information on the VM
@@ -166,8 +196,10 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 		super("VirtualMachine"); //$NON-NLS-1$
 		fEventReqMgr = new EventRequestManagerImpl(this);
 		fEventQueue = new EventQueueImpl(this);
-		fRequestTimeout = ((VirtualMachineManagerImpl) Bootstrap
-				.virtualMachineManager()).getGlobalRequestTimeout();
+		VirtualMachineManagerImpl manager = (VirtualMachineManagerImpl) Bootstrap
+				.virtualMachineManager();
+		fRequestTimeout = manager.getGlobalRequestTimeout();
+		fTypeMetadataStore = manager.typeMetadataStore();
 
 		fPacketReceiveManager = new PacketReceiveManager(connection, this);
 		Thread receiveThread = new Thread(fPacketReceiveManager,
@@ -219,25 +251,137 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 		return fFrameIDSize;
 	}
 
+	/**
+	 * @return Returns the store of type metadata kept across debug sessions,
+	 *         or <code>null</code> if there is none.
+	 */
+	TypeMetadataStore typeMetadataStore() {
+		return fTypeMetadataStore;
+	}
+
+	/**
+	 * Returns the index of the types loaded in this virtual machine, creating
+	 * it on the first call. Creating the index requests class prepare events
+	 * for all types and retrieves all loaded classes once; the index is then
+	 * kept current from the class prepare and class unload events read from
+	 * the event queue.
+	 *
+	 * @return Returns the index of the loaded types, or <code>null</code> if
+	 *         the index is disabled, see
+	 *         {@link #setLoadedClassIndexEnabled(boolean)}.
+	 */
+	public LoadedClassIndex loadedClassIndex() {
+		LoadedClassIndex index = fLoadedClassIndex;
+		if (index != null || !fLoadedClassIndexEnabled) {
+			return index;
+		}
+		synchronized (fLoadedClassIndexLock) {
+			if (fLoadedClassIndex == null) {
+				index = new LoadedClassIndex(this);
+				// publish the index first, so that no event is missed while
+				// it is seeded
+				fLoadedClassIndex = index;
+				ClassPrepareRequestImpl request = null;
+				try {
+					request = eventRequestManagerImpl().enableInternalClassPrepareEvent();
+					index.seed();
+				} catch (RuntimeException e) {
+					// the index is created again on the next call, with a
+					// new request
+					fLoadedClassIndex = null;
+					if (request != null) {
+						try {
+							request.disable();
+						} catch (RuntimeException e2) {
+							// the VM is probably disconnected
+						}
+					}
+					throw e;
+				}
+			}
+			return fLoadedClassIndex;
+		}
+	}
+
+	/**
+	 * Sets whether the index of the loaded types may be created. The index
+	 * costs a class prepare event for each type loaded by this virtual
+	 * machine. Disabling the index does not discard an index that has already
+	 * been created.
+	 *
+	 * @param enabled
+	 *            whether the index of the loaded types may be created
+	 */
+	public void setLoadedClassIndexEnabled(boolean enabled) {
+		fLoadedClassIndexEnabled = enabled;
+	}
+
+	/**
+	 * Sets whether threads cache their frames, frame count, status, name and
+	 * owned monitors while they are suspended. Cached values are discarded
+	 * when a thread is resumed, when its frames are popped, when it is forced
+	 * to return early and when a method is invoked in it.
+	 *
+	 * @param enabled
+	 *            whether threads cache what they answer while suspended
+	 */
+	public void setSuspendCacheEnabled(boolean enabled) {
+		fSuspendCacheEnabled = enabled;
+	}
+
+	/**
+	 * @return Returns whether threads cache what they answer while they are
+	 *         suspended.
+	 */
+	public boolean isSuspendCacheEnabled() {
+		return fSuspendCacheEnabled;
+	}
+
+	/**
+	 * @return Returns the number of commands that may have resumed all
+	 *         threads so far.
+	 */
+	int resumeEpoch() {
+		return fResumeEpoch.get();
+	}
+
+	/**
+	 * Discards what all threads cached while they were suspended.
+	 */
+	void resetSuspendCaches() {
+		fResumeEpoch.incrementAndGet();
+	}
+
+	/**
+	 * Adds a type for which a class prepare event has been received to the
+	 * index of loaded types.
+	 */
+	public void addPreparedRefType(ReferenceTypeImpl refType) {
+		LoadedClassIndex index = fLoadedClassIndex;
+		if (index != null && refType != null) {
+			index.classPrepared(refType);
+		}
+	}
+
 	/**
 	 * @return Returns cached mirror object, or null if method is not in cache.
 	 */
 	public ReferenceTypeImpl getCachedMirror(JdwpReferenceTypeID ID) {
-		return (ReferenceTypeImpl) fCachedReftypes.get(ID);
+		return fCachedReftypes.get(ID.value());
 	}
 
 	/**
 	 * @return Returns cached mirror object, or null if method is not in cache.
 	 */
 	public ObjectReferenceImpl getCachedMirror(JdwpObjectID ID) {
-		return (ObjectReferenceImpl) fCachedObjects.get(ID);
+		return fCachedObjects.get(ID.value());
 	}
 
 	/**
 	 * Adds mirror object to cache.
 	 */
 	public void addCachedMirror(ReferenceTypeImpl mirror) {
-		fCachedReftypes.put(mirror.getRefTypeID(), mirror);
+		fCachedReftypes.put(mirror.getRefTypeID().value(), mirror);
 		// TBD: It is now yet possible to only ask for unload events for
 		// classes that we know of due to a limitation in the J9 VM.
 		// eventRequestManagerImpl().enableInternalClasUnloadEvent(mirror);
@@ -247,7 +391,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 	 * Adds mirror object to cache.
 	 */
 	public void addCachedMirror(ObjectReferenceImpl mirror) {
-		fCachedObjects.put(mirror.getObjectID(), mirror);
+		fCachedObjects.put(mirror.getObjectID().value(), mirror);
 	}
 
 	/**
@@ -255,9 +399,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 	 */
 	public void flushStoredJdwpResults() {
 		// All known classes also become invalid.
-		Iterator<Object> iter = fCachedReftypes.values().iterator();
-		while (iter.hasNext()) {
-			ReferenceTypeImpl refType = (ReferenceTypeImpl) iter.next();
+		for (ReferenceTypeImpl refType : fCachedReftypes.values()) {
 			refType.flushStoredJdwpResults();
 		}
 
@@ -272,6 +414,11 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 	 * it.
 	 */
 	public final void removeKnownRefType(String signature) {
+		LoadedClassIndex index = fLoadedClassIndex;
+		if (index != null) {
+			index.classUnloaded(signature);
+		}
+
 		List<ReferenceType> refTypeList = classesBySignature(signature);
 		if (refTypeList.isEmpty())
 			return;
@@ -282,7 +429,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 		if (refTypeList.size() == 1) {
 			ReferenceTypeImpl refType = (ReferenceTypeImpl) refTypeList.get(0);
 			refType.flushStoredJdwpResults();
-			fCachedReftypes.remove(refType.getRefTypeID());
+			fCachedReftypes.remove(refType.getRefTypeID().value());
 			return;
 		}
 
@@ -300,7 +447,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 			if (!prepared) {
 				refType.flushStoredJdwpResults();
 				iter.remove();
-				fCachedReftypes.remove(refType.getRefTypeID());
+				fCachedReftypes.remove(refType.getRefTypeID().value());
 			}
 		}
 	}
@@ -405,7 +552,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 	/**
 	 * @return Returns an iterator over all cached classes.
 	 */
-	protected final Iterator<Object> allCachedRefTypes() {
+	protected final Iterator<ReferenceTypeImpl> allCachedRefTypes() {
 		return fCachedReftypes.values().iterator();
 	}
 
@@ -645,12 +792,11 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 		// Note that this information should not be cached.
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeString(signature, "signature", outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.VM_CLASSES_BY_SIGNATURE, outBytes);
+					JdwpCommandPacket.VM_CLASSES_BY_SIGNATURE, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 			DataInputStream replyData = replyPacket.dataInStream();
 			int nrOfElements = readInt("elements", replyData); //$NON-NLS-1$
@@ -729,10 +875,9 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 	public void exit(int exitCode) {
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeInt(exitCode, "exit code", outData); //$NON-NLS-1$
-			requestVM(JdwpCommandPacket.VM_EXIT, outBytes);
+			requestVM(JdwpCommandPacket.VM_EXIT, outData);
 			disconnectVM();
 		} catch (VMDisconnectedException e) {
 			// The VM can exit before we receive the reply.
@@ -815,12 +960,11 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 	public StringReference mirrorOf(String value) {
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeString(value, "string value", outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.VM_CREATE_STRING, outBytes);
+					JdwpCommandPacket.VM_CREATE_STRING, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 
 			DataInputStream replyData = replyPacket.dataInStream();
@@ -869,6 +1013,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 			JdwpReplyPacket replyPacket = requestVM(JdwpCommandPacket.VM_RESUME);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 		} finally {
+			resetSuspendCaches();
 			handledJdwpRequest();
 		}
 	}
@@ -1130,8 +1275,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeInt(names.length, "length", outData); //$NON-NLS-1$
 			for (int i = 0; i < names.length; i++) {
 				signatures[i] = TypeImpl.classNameToSignature(names[i]);
@@ -1139,7 +1283,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 			}
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.HCR_CLASSES_HAVE_CHANGED, outBytes);
+					JdwpCommandPacket.HCR_CLASSES_HAVE_CHANGED, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 			DataInputStream replyData = replyPacket.dataInStream();
 
@@ -1159,6 +1303,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 			defaultIOExceptionHandler(e);
 			return 0;
 		} finally {
+			resetSuspendCaches();
 			handledJdwpRequest();
 		}
 	}
@@ -1254,8 +1399,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeInt(typesToBytes.size(), "classes", outData); //$NON-NLS-1$
 
 			Set<? extends ReferenceType> types = typesToBytes.keySet();
@@ -1268,14 +1412,14 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 				for (byte b : bytes) {
 					writeByte(b, "classByte", outData); //$NON-NLS-1$
 				}
-				fCachedReftypes.remove(type.getRefTypeID()); // flush local
+				fCachedReftypes.remove(type.getRefTypeID().value()); // flush local
 																// cache of
 																// redefined
 																// types
 			}
 
 			JdwpReplyPacket reply = requestVM(
-					JdwpCommandPacket.VM_REDEFINE_CLASSES, outBytes);
+					JdwpCommandPacket.VM_REDEFINE_CLASSES, outData);
 			switch (reply.errorCode()) {
 			case JdwpReplyPacket.UNSUPPORTED_VERSION:
 				throw new UnsupportedClassVersionError();
@@ -1312,6 +1456,7 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 			defaultIOExceptionHandler(ioe);
 			return;
 		} finally {
+			resetSuspendCaches();
 			handledJdwpRequest();
 		}
 	}
@@ -1410,12 +1555,11 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 		}
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeString(stratum, "stratum ID", outData); //$NON-NLS-1$
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.VM_SET_DEFAULT_STRATUM, outBytes);
+					JdwpCommandPacket.VM_SET_DEFAULT_STRATUM, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 
 		} catch (IOException e) {
@@ -1449,15 +1593,14 @@ public class VirtualMachineImpl extends MirrorImpl implements VirtualMachine,
 			throw new UnsupportedOperationException(JDIMessages.ReferenceTypeImpl_27);
 		}
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeInt(size, "size", outData); //$NON-NLS-1$
 			for (int i = 0; i < size; i++) {
 				((ReferenceTypeImpl) refTypes.get(i)).getRefTypeID().write(
 						outData);
 			}
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.VM_INSTANCE_COUNTS, outBytes);
+					JdwpCommandPacket.VM_INSTANCE_COUNTS, outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.INVALID_CLASS:
 			case JdwpReplyPacket.INVALID_OBJECT:
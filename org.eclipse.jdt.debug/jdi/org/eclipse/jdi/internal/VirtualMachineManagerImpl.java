@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -57,6 +58,10 @@ public class VirtualMachineManagerImpl implements VirtualMachineManager {
 	private boolean fVerbose = false;
 	/** Name of verbose file. */
 	private String fVerboseFile = null;
+	/** Directory of the type metadata store, null if there is no store. */
+	private String fMetadataCacheDirectory = null;
+	/** The type metadata store, if it has been opened. */
+	private TypeMetadataStore fTypeMetadataStore = null;
 
 	/**
 	 * Creates new VirtualMachineManagerImpl.
@@ -127,6 +132,11 @@ public class VirtualMachineManagerImpl implements VirtualMachineManager {
 			} catch (MissingResourceException e) {
 			}
 
+			try {
+				fMetadataCacheDirectory = prefs.getString("Metadata.cache"); //$NON-NLS-1$
+			} catch (MissingResourceException e) {
+			}
+
 		} catch (IOException e) {
 		}
 
@@ -155,6 +165,36 @@ public class VirtualMachineManagerImpl implements VirtualMachineManager {
 		return JDIDebugModel.DEF_REQUEST_TIMEOUT;
 	}
 
+	/**
+	 * Sets the directory of the store in which type metadata is kept across
+	 * debug sessions. The store is used by VMs connected afterwards.
+	 *
+	 * @param directory
+	 *            the directory, or <code>null</code> to not use a store
+	 */
+	public synchronized void setMetadataCacheDirectory(File directory) {
+		if (fTypeMetadataStore != null) {
+			fTypeMetadataStore.flush(fConnectedVMs.isEmpty());
+			fTypeMetadataStore = null;
+		}
+		fMetadataCacheDirectory = directory == null ? null : directory.getPath();
+	}
+
+	/**
+	 * @return Returns the type metadata store, or <code>null</code> if no
+	 *         store is used.
+	 */
+	synchronized TypeMetadataStore typeMetadataStore() {
+		if (fTypeMetadataStore == null && fMetadataCacheDirectory != null
+				&& fMetadataCacheDirectory.length() > 0) {
+			fTypeMetadataStore = TypeMetadataStore.open(new File(fMetadataCacheDirectory));
+			if (fTypeMetadataStore == null) {
+				fMetadataCacheDirectory = null;
+			}
+		}
+		return fTypeMetadataStore;
+	}
+
 	/**
 	 * Adds a VM to the connected VM list.
 	 */
@@ -167,6 +207,13 @@ public class VirtualMachineManagerImpl implements VirtualMachineManager {
 	 */
 	public void removeConnectedVM(VirtualMachineImpl vm) {
 		fConnectedVMs.remove(vm);
+		TypeMetadataStore store;
+		synchronized (this) {
+			store = fTypeMetadataStore;
+		}
+		if (store != null) {
+			store.flush(fConnectedVMs.isEmpty());
+		}
 	}
 
 	/* (non-Javadoc)
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -25,6 +25,8 @@ public class ConnectMessages extends NLS {
 	public static String SocketAttachingConnectorImpl_Port_4;
 	public static String SocketAttachingConnectorImpl_1;
 	public static String SocketAttachingConnectorImpl_2;
+	public static String SocketAttachingConnectorImpl_3;
+	public static String SocketAttachingConnectorImpl_4;
 	public static String SocketAttachingConnectorImpl_Attaches_by_socket_to_other_VMs_5;
 	public static String SocketAttachingConnectorImpl_Connection_argument_is_not_of_the_right_type_6;
 	public static String SocketAttachingConnectorImpl_Necessary_connection_argument_is_null_7;
@@ -57,6 +59,10 @@ public class ConnectMessages extends NLS {
 
 	public static String SocketListeningConnectorImpl_Limit_incoming_connections;
 
+	public static String SocketListeningConnectorImpl_Channel;
+
+	public static String SocketListeningConnectorImpl_Use_NIO_socket_channel;
+
 	public static String SocketListeningConnectorImpl_ListeningConnector_Socket_Port;
 	public static String SocketRawLaunchingConnectorImpl_Raw_command_to_start_the_debugged_application_VM_1;
 	public static String SocketRawLaunchingConnectorImpl_Command_2;
@@ -74,6 +80,7 @@ public class ConnectMessages extends NLS {
 	public static String PacketReceiveManager_Got__0__from_Virtual_Machine_1;
 	public static String PacketReceiveManager_Got__0__from_Virtual_Machine___1__1;
 	public static String PacketReceiveManager_0;
+	public static String PacketReceiveManager_1;
 	public static String SocketTransportService_0;
 	public static String SocketTransportService_1;
 
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal.connect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hash map from primitive <code>int</code> keys to objects, using open
+ * addressing with linear probing. Avoids boxing the JDWP packet ids used as
+ * keys.
+ * <p>
+ * This class is not thread safe, clients must synchronize access.
+ * </p>
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public class IntHashMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] fKeys;
+	private Object[] fValues;
+	private int fSize;
+
+	public IntHashMap() {
+		fKeys = new int[MIN_CAPACITY];
+		fValues = new Object[MIN_CAPACITY];
+	}
+
+	/**
+	 * Returns the index of the slot for the given key, which is either the slot
+	 * holding the key or the empty slot where it would be inserted.
+	 */
+	private static int indexOf(int[] keys, Object[] values, int key) {
+		int mask = keys.length - 1;
+		int index = mix(key) & mask;
+		while (values[index] != null && keys[index] != key) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the value associated with the given key, or <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		return (V) fValues[indexOf(fKeys, fValues, key)];
+	}
+
+	/**
+	 * Associates the given non-<code>null</code> value with the given key.
+	 *
+	 * @return the previous value associated with the key, or <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		int index = indexOf(fKeys, fValues, key);
+		Object previous = fValues[index];
+		fKeys[index] = key;
+		fValues[index] = value;
+		if (previous == null && ++fSize > (fKeys.length >> 1)) {
+			rehash(fKeys.length << 1);
+		}
+		return (V) previous;
+	}
+
+	/**
+	 * Removes the mapping for the given key.
+	 *
+	 * @return the removed value, or <code>null</code> if there was no mapping
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int mask = fKeys.length - 1;
+		int index = indexOf(fKeys, fValues, key);
+		Object previous = fValues[index];
+		if (previous == null) {
+			return null;
+		}
+		fValues[index] = null;
+		fSize--;
+		// shift back following entries of the probe sequence
+		int next = (index + 1) & mask;
+		while (fValues[next] != null) {
+			int ideal = mix(fKeys[next]) & mask;
+			if (((next - ideal) & mask) >= ((next - index) & mask)) {
+				fKeys[index] = fKeys[next];
+				fValues[index] = fValues[next];
+				fValues[next] = null;
+				index = next;
+			}
+			next = (next + 1) & mask;
+		}
+		return (V) previous;
+	}
+
+	/**
+	 * @return the number of mappings
+	 */
+	public int size() {
+		return fSize;
+	}
+
+	/**
+	 * @return whether there are no mappings
+	 */
+	public boolean isEmpty() {
+		return fSize == 0;
+	}
+
+	/**
+	 * Removes all mappings and returns the values that were mapped.
+	 *
+	 * @return the removed values
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> clear() {
+		List<V> values = new ArrayList<>(fSize);
+		for (Object value : fValues) {
+			if (value != null) {
+				values.add((V) value);
+			}
+		}
+		fKeys = new int[MIN_CAPACITY];
+		fValues = new Object[MIN_CAPACITY];
+		fSize = 0;
+		return values;
+	}
+
+	private void rehash(int capacity) {
+		int[] keys = new int[capacity];
+		Object[] values = new Object[capacity];
+		for (int i = 0; i < fValues.length; i++) {
+			if (fValues[i] != null) {
+				int index = indexOf(keys, values, fKeys[i]);
+				keys[index] = fKeys[i];
+				values[index] = fValues[i];
+			}
+		}
+		fKeys = keys;
+		fValues = values;
+	}
+}
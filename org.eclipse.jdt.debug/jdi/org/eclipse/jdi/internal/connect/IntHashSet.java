@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal.connect;
+
+/**
+ * A set of primitive <code>int</code> values.
+ * <p>
+ * This class is not thread safe, clients must synchronize access.
+ * </p>
+ */
+public class IntHashSet {
+
+	private final IntHashMap<Boolean> fMap = new IntHashMap<>();
+
+	/**
+	 * Adds the given value to this set.
+	 *
+	 * @return whether the value was not yet contained in this set
+	 */
+	public boolean add(int value) {
+		return fMap.put(value, Boolean.TRUE) == null;
+	}
+
+	/**
+	 * Removes the given value from this set.
+	 *
+	 * @return whether the value was contained in this set
+	 */
+	public boolean remove(int value) {
+		return fMap.remove(value) != null;
+	}
+
+	/**
+	 * @return whether the given value is contained in this set
+	 */
+	public boolean contains(int value) {
+		return fMap.get(value) != null;
+	}
+
+	/**
+	 * @return whether this set is empty
+	 */
+	public boolean isEmpty() {
+		return fMap.isEmpty();
+	}
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal.connect;
+
+import java.io.IOException;
+
+/**
+ * Implemented by the connections of the socket transport, which can write
+ * several packets with a single write to the socket.
+ * <p>
+ * {@link PacketSendManager} writes the packets queued at once with
+ * {@link #writePackets(byte[][], int)} when the connection implements this
+ * interface, and one by one through
+ * {@link com.sun.jdi.connect.spi.Connection#writePacket(byte[])} otherwise,
+ * since the connection service provider interface has no batch operation.
+ * </p>
+ */
+interface PacketBatchWriter {
+
+	/**
+	 * Writes the first <code>count</code> packets of the given array to the
+	 * connection, as if they were written one by one with
+	 * {@link com.sun.jdi.connect.spi.Connection#writePacket(byte[])}.
+	 *
+	 * @param packets
+	 *            the packets to write, each one a complete JDWP packet
+	 * @param count
+	 *            the number of packets to write
+	 * @throws IOException
+	 *             if the connection is closed or the write fails
+	 */
+	void writePackets(byte[][] packets, int count) throws IOException;
+}
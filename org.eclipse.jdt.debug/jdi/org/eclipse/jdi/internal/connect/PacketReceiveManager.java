@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,9 +12,14 @@ package org.eclipse.jdi.internal.connect;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdi.TimeoutException;
 import org.eclipse.jdi.internal.VirtualMachineImpl;
@@ -40,17 +45,27 @@ public class PacketReceiveManager extends PacketManager {
 	/** Generic timeout value for infinite timeout. */
 	public static final int TIMEOUT_INFINITE = -1;
 
+	/**
+	 * Expires the reply futures of asynchronous requests that are not
+	 * answered in time. Shared by all virtual machines, created on first use.
+	 */
+	private static ScheduledThreadPoolExecutor fgReplyExpirer;
+
 	/** List of Command packets received from Virtual Machine. */
 	private LinkedList<JdwpCommandPacket> fCommandPackets;
 
-	/** List of Reply packets received from Virtual Machine. */
-	private LinkedList<JdwpReplyPacket> fReplyPackets;
+	/**
+	 * Table of reply futures keyed by packet id. A future is added either by
+	 * the thread waiting for a reply or, if the reply arrives first, by the
+	 * receiving thread. Also used as lock for {@link #fTimedOutPackets}.
+	 */
+	private IntHashMap<CompletableFuture<JdwpReplyPacket>> fReplies;
 
 	/**
-	 * List of Packets that have timed out already. Maintained so that responses
+	 * Ids of packets that have timed out already. Maintained so that responses
 	 * can be discarded if/when they are received.
 	 */
-	private ArrayList<Integer> fTimedOutPackets;
+	private IntHashSet fTimedOutPackets;
 
 	private VirtualMachineImpl fVM;
 
@@ -61,8 +76,8 @@ public class PacketReceiveManager extends PacketManager {
 		super(connection);
 		fVM = vmImpl;
 		fCommandPackets = new LinkedList<>();
-		fReplyPackets = new LinkedList<>();
-		fTimedOutPackets = new ArrayList<>();
+		fReplies = new IntHashMap<>();
+		fTimedOutPackets = new IntHashSet();
 	}
 
 	@Override
@@ -71,8 +86,15 @@ public class PacketReceiveManager extends PacketManager {
 		synchronized (fCommandPackets) {
 			fCommandPackets.notifyAll();
 		}
-		synchronized (fReplyPackets) {
-			fReplyPackets.notifyAll();
+		List<CompletableFuture<JdwpReplyPacket>> pending;
+		synchronized (fReplies) {
+			pending = fReplies.clear();
+		}
+		// wake up each waiting thread, it will observe the disconnection
+		VMDisconnectedException disconnected = new VMDisconnectedException(
+				ConnectMessages.PacketReceiveManager_Got_IOException_from_Virtual_Machine_2);
+		for (CompletableFuture<JdwpReplyPacket> future : pending) {
+			future.completeExceptionally(disconnected);
 		}
 	}
 
@@ -148,37 +170,56 @@ public class PacketReceiveManager extends PacketManager {
 	 * @return Returns a specified Reply Packet from the Virtual Machine.
 	 */
 	public JdwpReplyPacket getReply(int id, long timeToWait) {
+		return getReply(id, replyFuture(id), timeToWait);
+	}
+
+	/**
+	 * Waits for the given reply future, which must have been obtained from
+	 * {@link #getReplyFuture(JdwpCommandPacket)} for the packet with the given
+	 * id.
+	 *
+	 * @return Returns a specified Reply Packet from the Virtual Machine.
+	 */
+	public JdwpReplyPacket getReply(int id, CompletableFuture<JdwpReplyPacket> future, long timeToWait) {
 		JdwpReplyPacket packet = null;
 		long remainingTime = timeToWait;
-		synchronized (fReplyPackets) {
-			final long timeBeforeWait = System.currentTimeMillis();
-			// Wait until reply is available.
-			while (!VMIsDisconnected() && remainingTime > 0) {
-				packet = removeReplyPacket(id);
-				if (packet != null) {
-					break;
-				}
-				try {
-					waitForPacketAvailable(remainingTime, fReplyPackets);
-				}
-				// if the remote VM is interrupted DO NOT drop the connection -
-				// see bug 171075
-				// just stop waiting for the reply and treat it as a timeout
-				catch (InterruptedException e) {
-					if (JDIDebugOptions.DEBUG) {
-						JDIDebugOptions.trace(null, "Interrupt observed while waiting for packet: " + id, e); //$NON-NLS-1$
-					}
-					// Do not stop waiting on interrupt, this causes
-					// sporadic TimeoutException's without timeout
-					// break;
+		final long timeBeforeWait = System.currentTimeMillis();
+		// Wait until reply is available.
+		while (!VMIsDisconnected() && remainingTime > 0) {
+			try {
+				packet = future.get(remainingTime, TimeUnit.MILLISECONDS);
+				break;
+			} catch (java.util.concurrent.TimeoutException e) {
+				break;
+			} catch (ExecutionException e) {
+				// disconnected while waiting
+				break;
+			}
+			// if the remote VM is interrupted DO NOT drop the connection -
+			// see bug 171075
+			// just stop waiting for the reply and treat it as a timeout
+			catch (InterruptedException e) {
+				if (JDIDebugOptions.DEBUG) {
+					JDIDebugOptions.trace(null, "Interrupt observed while waiting for packet: " + id, e); //$NON-NLS-1$
 				}
-				long waitedTime = System.currentTimeMillis() - timeBeforeWait;
-				remainingTime = timeToWait - waitedTime;
+				// Do not stop waiting on interrupt, this causes
+				// sporadic TimeoutException's without timeout
+				// break;
 			}
+			long waitedTime = System.currentTimeMillis() - timeBeforeWait;
+			remainingTime = timeToWait - waitedTime;
 		}
-		if (packet == null) {
-			synchronized (fReplyPackets) {
-				packet = removeReplyPacket(id);
+		synchronized (fReplies) {
+			if (fReplies.get(id) == future) {
+				fReplies.remove(id);
+			}
+			if (packet == null) {
+				// the reply may have arrived just after we stopped waiting
+				if (future.isDone() && !future.isCompletedExceptionally()) {
+					packet = future.getNow(null);
+				} else if (!VMIsDisconnected()) {
+					fTimedOutPackets.add(id);
+				}
 			}
 		}
 		// Check for an IO Exception.
@@ -187,9 +228,6 @@ public class PacketReceiveManager extends PacketManager {
 					ConnectMessages.PacketReceiveManager_Got_IOException_from_Virtual_Machine_2);
 		// Check for a timeout.
 		if (packet == null) {
-			synchronized (fTimedOutPackets) {
-				fTimedOutPackets.add(new Integer(id));
-			}
 			throw new TimeoutException(NLS.bind(
 					ConnectMessages.PacketReceiveManager_0, new String[] { id
 							+ "" })); //$NON-NLS-1$
@@ -197,6 +235,114 @@ public class PacketReceiveManager extends PacketManager {
 		return packet;
 	}
 
+	/**
+	 * Returns the future that is completed with the reply to the given command
+	 * packet. Registering the future before the packet is sent allows to send
+	 * further packets before waiting for the reply. A reply that arrives before
+	 * anybody waits for it completes the future and is not retained
+	 * otherwise.
+	 *
+	 * @param commandPacket
+	 *            the command packet
+	 * @return the reply future
+	 */
+	public CompletableFuture<JdwpReplyPacket> getReplyFuture(JdwpCommandPacket commandPacket) {
+		return replyFuture(commandPacket.getId());
+	}
+
+	/**
+	 * Returns the future that is completed with the reply to the given command
+	 * packet, for a request whose reply is not waited for with
+	 * {@link #getReply(int, CompletableFuture, long)}. If the reply has not
+	 * arrived within the given time, the future is removed and completed
+	 * exceptionally with a {@link TimeoutException}, and the reply is
+	 * discarded if it arrives later.
+	 *
+	 * @param commandPacket
+	 *            the command packet
+	 * @param timeout
+	 *            the time to wait for the reply, in milliseconds
+	 * @return the reply future
+	 */
+	public CompletableFuture<JdwpReplyPacket> getReplyFuture(JdwpCommandPacket commandPacket, long timeout) {
+		final int id = commandPacket.getId();
+		final CompletableFuture<JdwpReplyPacket> future = replyFuture(id);
+		if (!future.isDone()) {
+			final ScheduledFuture<?> expiry = replyExpirer().schedule(
+					() -> expireReply(id, future), timeout, TimeUnit.MILLISECONDS);
+			future.whenComplete((reply, e) -> expiry.cancel(false));
+		}
+		return future;
+	}
+
+	/**
+	 * Forgets the reply future of a command packet that could not be sent.
+	 *
+	 * @param commandPacket
+	 *            the command packet
+	 */
+	public void discardReplyFuture(JdwpCommandPacket commandPacket) {
+		synchronized (fReplies) {
+			fReplies.remove(commandPacket.getId());
+		}
+	}
+
+	/**
+	 * Removes the given future if the reply to the packet with the given id
+	 * has not arrived yet, and completes it with a timeout.
+	 */
+	private void expireReply(int id, CompletableFuture<JdwpReplyPacket> future) {
+		synchronized (fReplies) {
+			if (fReplies.get(id) != future) {
+				return;
+			}
+			fReplies.remove(id);
+			fTimedOutPackets.add(id);
+		}
+		future.completeExceptionally(new TimeoutException(NLS.bind(
+				ConnectMessages.PacketReceiveManager_0, new String[] { id
+						+ "" }))); //$NON-NLS-1$
+	}
+
+	private static synchronized ScheduledThreadPoolExecutor replyExpirer() {
+		if (fgReplyExpirer == null) {
+			fgReplyExpirer = new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread = new Thread(runnable, ConnectMessages.PacketReceiveManager_1);
+				thread.setDaemon(true);
+				return thread;
+			});
+			fgReplyExpirer.setRemoveOnCancelPolicy(true);
+		}
+		return fgReplyExpirer;
+	}
+
+	/**
+	 * Returns the future that is completed with the reply to the packet with
+	 * the given id, creating it if needed. Once the virtual machine is
+	 * disconnected, the future is not registered and completes
+	 * exceptionally.
+	 *
+	 * @param id
+	 *            the id of the command packet
+	 * @return the reply future
+	 */
+	private CompletableFuture<JdwpReplyPacket> replyFuture(int id) {
+		synchronized (fReplies) {
+			if (VMIsDisconnected()) {
+				CompletableFuture<JdwpReplyPacket> future = new CompletableFuture<>();
+				future.completeExceptionally(new VMDisconnectedException(
+						ConnectMessages.PacketReceiveManager_Got_IOException_from_Virtual_Machine_2));
+				return future;
+			}
+			CompletableFuture<JdwpReplyPacket> future = fReplies.get(id);
+			if (future == null) {
+				future = new CompletableFuture<>();
+				fReplies.put(id, future);
+			}
+			return future;
+		}
+	}
+
 	/**
 	 * @return Returns a specified Reply Packet from the Virtual Machine.
 	 */
@@ -233,21 +379,6 @@ public class PacketReceiveManager extends PacketManager {
 		return null;
 	}
 
-	/**
-	 * @return Returns a specified reply packet from the reply packet list.
-	 */
-	private JdwpReplyPacket removeReplyPacket(int id) {
-		ListIterator<JdwpReplyPacket> iter = fReplyPackets.listIterator();
-		while (iter.hasNext()) {
-			JdwpReplyPacket packet = iter.next();
-			if (packet.getId() == id) {
-				iter.remove();
-				return packet;
-			}
-		}
-		return null;
-	}
-
 	/**
 	 * Add a command packet to the command packet list.
 	 */
@@ -269,26 +400,33 @@ public class PacketReceiveManager extends PacketManager {
 	 * @return whether the request for the given packet has already timed out
 	 */
 	private boolean isTimedOut(JdwpPacket packet) {
-		synchronized (fTimedOutPackets) {
+		synchronized (fReplies) {
 			if (fTimedOutPackets.isEmpty()) {
 				return false;
 			}
-			Integer id = new Integer(packet.getId());
-			return fTimedOutPackets.remove(id);
+			return fTimedOutPackets.remove(packet.getId());
 		}
 	}
 
 	/**
-	 * Add a reply packet to the reply packet list.
+	 * Completes the reply future of the given reply packet, only waking up the
+	 * thread waiting for this reply.
 	 */
 	private void addReplyPacket(JdwpReplyPacket packet) {
-		if (isTimedOut(packet)) {
-			return; // already timed out. No need to keep this one
-		}
-		synchronized (fReplyPackets) {
-			fReplyPackets.add(packet);
-			fReplyPackets.notifyAll();
+		int id = packet.getId();
+		CompletableFuture<JdwpReplyPacket> future;
+		synchronized (fReplies) {
+			if (fTimedOutPackets.remove(id)) {
+				return; // already timed out. No need to keep this one
+			}
+			future = fReplies.remove(id);
+			if (future == null) {
+				// nobody is waiting yet, keep the completed future
+				fReplies.put(id, CompletableFuture.completedFuture(packet));
+				return;
+			}
 		}
+		future.complete(packet);
 	}
 
 	/**
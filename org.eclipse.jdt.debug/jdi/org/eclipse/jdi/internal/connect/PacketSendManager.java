@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,7 +12,8 @@ package org.eclipse.jdi.internal.connect;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
 import org.eclipse.jdi.internal.jdwp.JdwpPacket;
 import org.eclipse.osgi.util.NLS;
@@ -23,18 +24,35 @@ import com.sun.jdi.connect.spi.Connection;
 /**
  * This class implements a thread that sends available packets to the Virtual
  * Machine.
- *
+ * <p>
+ * All packets queued when the thread wakes up are written in one go, with a
+ * single gathering write if the connection supports it. The queue is bounded:
+ * when {@link #MAX_QUEUED_PACKETS} packets are waiting, senders block until
+ * the thread has caught up.
+ * </p>
  */
 public class PacketSendManager extends PacketManager {
-	/** List of packets to be sent to Virtual Machine */
-	private LinkedList<JdwpPacket> fOutgoingPackets;
+	/** Maximal number of packets waiting to be sent. */
+	public static final int MAX_QUEUED_PACKETS = 1024;
+
+	/** Maximal number of packets written at once. */
+	private static final int MAX_BATCH_SIZE = 128;
+
+	/** Queue of packets to be sent to Virtual Machine */
+	private final ArrayDeque<JdwpPacket> fOutgoingPackets;
+
+	/** Packets taken from the queue by the send thread. */
+	private final JdwpPacket[] fBatch = new JdwpPacket[MAX_BATCH_SIZE];
+
+	/** Bytes of the packets in {@link #fBatch}. */
+	private final byte[][] fBatchBytes = new byte[MAX_BATCH_SIZE][];
 
 	/**
 	 * Create a new thread that send packets to the Virtual Machine.
 	 */
 	public PacketSendManager(Connection connection) {
 		super(connection);
-		fOutgoingPackets = new LinkedList<>();
+		fOutgoingPackets = new ArrayDeque<>();
 	}
 
 	@Override
@@ -70,6 +88,44 @@ public class PacketSendManager extends PacketManager {
 	 * Add a packet to be sent to the Virtual Machine.
 	 */
 	public void sendPacket(JdwpPacket packet) {
+		checkConnected();
+
+		boolean interrupted = false;
+		synchronized (fOutgoingPackets) {
+			// Wait until there is room in the queue. If the waiting thread is
+			// interrupted, the packet is queued anyway rather than lost.
+			while (fOutgoingPackets.size() >= MAX_QUEUED_PACKETS && !interrupted) {
+				try {
+					fOutgoingPackets.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+				checkConnected();
+			}
+			// Add packet to list of packets to send.
+			fOutgoingPackets.add(packet);
+			// Notify PacketSendThread that data is available.
+			fOutgoingPackets.notifyAll();
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return Returns the number of packets waiting to be sent.
+	 */
+	public int getQueueDepth() {
+		synchronized (fOutgoingPackets) {
+			return fOutgoingPackets.size();
+		}
+	}
+
+	/**
+	 * Throws a {@link VMDisconnectedException} if the connection to the
+	 * Virtual Machine has been closed.
+	 */
+	private void checkConnected() {
 		if (VMIsDisconnected()) {
 			String message;
 			if (getDisconnectException() == null) {
@@ -89,13 +145,6 @@ public class PacketSendManager extends PacketManager {
 			}
 			throw new VMDisconnectedException(message);
 		}
-
-		synchronized (fOutgoingPackets) {
-			// Add packet to list of packets to send.
-			fOutgoingPackets.add(packet);
-			// Notify PacketSendThread that data is available.
-			fOutgoingPackets.notifyAll();
-		}
 	}
 
 	/**
@@ -103,22 +152,44 @@ public class PacketSendManager extends PacketManager {
 	 */
 	private void sendAvailablePackets() throws InterruptedException,
 			IOException {
-		LinkedList<JdwpPacket> packetsToSend = new LinkedList<>();
+		int count = 0;
 		synchronized (fOutgoingPackets) {
-			while (fOutgoingPackets.size() == 0) {
+			while (fOutgoingPackets.isEmpty()) {
 				fOutgoingPackets.wait();
 			}
-			packetsToSend.addAll(fOutgoingPackets);
-			fOutgoingPackets.clear();
+			while (count < MAX_BATCH_SIZE && !fOutgoingPackets.isEmpty()) {
+				fBatch[count++] = fOutgoingPackets.poll();
+			}
+			// Wake up senders waiting for room in the queue.
+			fOutgoingPackets.notifyAll();
 		}
 
-		// Put available packets on Output Stream.
-		while (packetsToSend.size() > 0) {
-			// Note that only JdwpPackets are added to the list, so a
-			// ClassCastException can't occur.
-			JdwpPacket packet = packetsToSend.removeFirst();
-			byte[] bytes = packet.getPacketAsBytes();
-			getConnection().writePacket(bytes);
+		try {
+			for (int i = 0; i < count; i++) {
+				fBatchBytes[i] = fBatch[i].getPacketAsBytes();
+			}
+			Connection connection = getConnection();
+			if (connection instanceof PacketBatchWriter) {
+				((PacketBatchWriter) connection).writePackets(fBatchBytes, count);
+			} else {
+				for (int i = 0; i < count; i++) {
+					// connections of other transports may write the whole
+					// array, which can be larger than a pooled packet
+					byte[] bytes = fBatchBytes[i];
+					int length = fBatch[i].getLength();
+					if (bytes.length > length) {
+						bytes = Arrays.copyOf(bytes, length);
+					}
+					connection.writePacket(bytes);
+				}
+			}
+		} finally {
+			for (int i = 0; i < count; i++) {
+				// the bytes have been written, the buffers can be reused
+				fBatch[i].releaseDataWriter();
+				fBatch[i] = null;
+				fBatchBytes[i] = null;
+			}
 		}
 	}
 }
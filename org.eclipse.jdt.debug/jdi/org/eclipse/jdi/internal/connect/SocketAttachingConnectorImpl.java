@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -68,6 +68,12 @@ public class SocketAttachingConnectorImpl extends ConnectorImpl implements
 		timeoutArg.setValue(0); // by default wait forever
 		arguments.put(timeoutArg.name(), timeoutArg);
 
+		// Channel
+		BooleanArgumentImpl channelArg = new BooleanArgumentImpl(
+				"channel", ConnectMessages.SocketAttachingConnectorImpl_3, ConnectMessages.SocketAttachingConnectorImpl_4, false); //$NON-NLS-1$
+		channelArg.setValue(false);
+		arguments.put(channelArg.name(), channelArg);
+
 		return arguments;
 	}
 
@@ -124,6 +130,24 @@ public class SocketAttachingConnectorImpl extends ConnectorImpl implements
 		}
 	}
 
+	/**
+	 * Returns whether the connection is built on top of a NIO socket channel.
+	 * The argument is not kept in a field, so that concurrent attaches do not
+	 * share it.
+	 */
+	private boolean useChannel(Map<String,? extends Connector.Argument> connectionArgs)
+			throws IllegalConnectorArgumentsException {
+		String attribute = "channel"; //$NON-NLS-1$
+		try {
+			Connector.BooleanArgument channelArg = (BooleanArgument) connectionArgs.get(attribute);
+			return channelArg != null && channelArg.value() != null && channelArg.booleanValue();
+		} catch (ClassCastException e) {
+			throw new IllegalConnectorArgumentsException(
+					ConnectMessages.SocketAttachingConnectorImpl_Connection_argument_is_not_of_the_right_type_6,
+					attribute);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see com.sun.jdi.connect.AttachingConnector#attach(java.util.Map)
 	 */
@@ -131,10 +155,10 @@ public class SocketAttachingConnectorImpl extends ConnectorImpl implements
 	public VirtualMachine attach(Map<String,? extends Connector.Argument> connectionArgs) throws IOException,
 			IllegalConnectorArgumentsException {
 		getConnectionArguments(connectionArgs);
+		boolean useChannel = useChannel(connectionArgs);
 		Connection connection = null;
 		try {
-			connection = ((SocketTransportImpl) fTransport).attach(fHostname,
-					fPort, fTimeout, 0);
+			connection = ((SocketTransportImpl) fTransport).attach(fHostname, fPort, fTimeout, 0, useChannel);
 		} catch (IllegalArgumentException e) {
 			List<String> args = new ArrayList<>();
 			args.add("hostname"); //$NON-NLS-1$
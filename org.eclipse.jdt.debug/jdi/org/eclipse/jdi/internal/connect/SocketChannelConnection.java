@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal.connect;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import com.sun.jdi.connect.spi.ClosedConnectionException;
+import com.sun.jdi.connect.spi.Connection;
+
+/**
+ * A {@link Connection} that reads and writes JDWP packets through a blocking
+ * {@link SocketChannel}.
+ * <p>
+ * Incoming bytes are read in bulk into a reusable direct buffer and packets
+ * are framed out of it, so that a single channel read usually delivers several
+ * small replies and large replies are copied only once into the returned
+ * array. Outgoing packets can be written with a single gathering write, see
+ * {@link #writePackets(byte[][], int)}.
+ * </p>
+ */
+public class SocketChannelConnection extends Connection implements PacketBatchWriter {
+
+	/** Minimal size of a JDWP packet (header only). */
+	private static final int MIN_PACKET_SIZE = 11;
+
+	/** Size of the reusable read buffer. */
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private SocketChannel fChannel;
+
+	/**
+	 * Buffer holding bytes read from the channel which have not been framed
+	 * yet. Kept in 'read' mode (flipped) between calls to
+	 * {@link #readPacket()}.
+	 */
+	private final ByteBuffer fReadBuffer;
+
+	/** Lock guarding the read side of the channel. */
+	private final Object fReadLock = new Object();
+
+	/** Lock guarding the write side of the channel. */
+	private final Object fWriteLock = new Object();
+
+	SocketChannelConnection(SocketChannel channel) {
+		fChannel = channel;
+		fReadBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		fReadBuffer.flip();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.sun.jdi.connect.spi.Connection#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (fChannel == null)
+			return;
+
+		fChannel.close();
+		fChannel = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.sun.jdi.connect.spi.Connection#isOpen()
+	 */
+	@Override
+	public synchronized boolean isOpen() {
+		return fChannel != null;
+	}
+
+	/**
+	 * Returns the underlying channel.
+	 *
+	 * @return the channel
+	 * @throws ClosedConnectionException
+	 *             if this connection has been closed
+	 */
+	private synchronized SocketChannel getChannel() throws ClosedConnectionException {
+		if (fChannel == null) {
+			throw new ClosedConnectionException();
+		}
+		return fChannel;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.sun.jdi.connect.spi.Connection#readPacket()
+	 */
+	@Override
+	public byte[] readPacket() throws IOException {
+		SocketChannel channel = getChannel();
+		synchronized (fReadLock) {
+			fill(channel, 4);
+			int packetLength = fReadBuffer.getInt(fReadBuffer.position());
+			if (packetLength < MIN_PACKET_SIZE) {
+				throw new IOException("JDWP Packet under 11 bytes"); //$NON-NLS-1$
+			}
+
+			byte[] packet = new byte[packetLength];
+			int buffered = Math.min(fReadBuffer.remaining(), packetLength);
+			fReadBuffer.get(packet, 0, buffered);
+			if (buffered < packetLength) {
+				// the rest of the packet is read straight into the result
+				// array, without passing through the read buffer
+				ByteBuffer rest = ByteBuffer.wrap(packet, buffered, packetLength - buffered);
+				while (rest.hasRemaining()) {
+					if (channel.read(rest) < 0) {
+						throw new ClosedConnectionException();
+					}
+				}
+			}
+			return packet;
+		}
+	}
+
+	/**
+	 * Reads from the channel until at least <code>count</code> bytes are
+	 * available in the read buffer.
+	 *
+	 * @param channel
+	 *            the channel to read from
+	 * @param count
+	 *            the number of bytes required
+	 * @throws IOException
+	 *             if the channel is closed or cannot be read
+	 */
+	private void fill(SocketChannel channel, int count) throws IOException {
+		if (fReadBuffer.remaining() >= count) {
+			return;
+		}
+		fReadBuffer.compact();
+		try {
+			while (fReadBuffer.position() < count) {
+				if (channel.read(fReadBuffer) < 0) {
+					throw new ClosedConnectionException();
+				}
+			}
+		} catch (ClosedConnectionException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new ClosedConnectionException();
+		} finally {
+			fReadBuffer.flip();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.sun.jdi.connect.spi.Connection#writePacket(byte[])
+	 */
+	@Override
+	public void writePacket(byte[] packet) throws IOException {
+		writePackets(new byte[][] { packet }, 1);
+	}
+
+	/**
+	 * Writes the first <code>count</code> packets of the given array to the
+	 * channel using a single gathering write.
+	 *
+	 * @see org.eclipse.jdi.internal.connect.PacketBatchWriter#writePackets(byte[][], int)
+	 */
+	@Override
+	public void writePackets(byte[][] packets, int count) throws IOException {
+		ByteBuffer[] buffers = new ByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			byte[] packet = packets[i];
+			buffers[i] = ByteBuffer.wrap(packet, 0, checkPacket(packet));
+		}
+		SocketChannel channel = getChannel();
+		synchronized (fWriteLock) {
+			long remaining = 0;
+			for (ByteBuffer buffer : buffers) {
+				remaining += buffer.remaining();
+			}
+			while (remaining > 0) {
+				remaining -= channel.write(buffers);
+			}
+		}
+	}
+
+	/**
+	 * Validates the given packet and returns the number of bytes to send.
+	 *
+	 * @param packet
+	 *            the packet
+	 * @return the length specified in the packet header
+	 */
+	private int checkPacket(byte[] packet) {
+		if (packet == null) {
+			throw new IllegalArgumentException(
+					"Invalid JDWP Packet, packet cannot be null"); //$NON-NLS-1$
+		}
+		if (packet.length < MIN_PACKET_SIZE) {
+			throw new IllegalArgumentException(
+					"Invalid JDWP Packet, must be at least 11 bytes. PacketSize:" + packet.length); //$NON-NLS-1$
+		}
+		int packetSize = ((packet[0] & 0xFF) << 24) + ((packet[1] & 0xFF) << 16)
+				+ ((packet[2] & 0xFF) << 8) + (packet[3] & 0xFF);
+		if (packetSize < MIN_PACKET_SIZE) {
+			throw new IllegalArgumentException(
+					"Invalid JDWP Packet, must be at least 11 bytes. PacketSize:" + packetSize); //$NON-NLS-1$
+		}
+		if (packetSize > packet.length) {
+			throw new IllegalArgumentException(
+					"Invalid JDWP packet: Specified length is greater than actual length"); //$NON-NLS-1$
+		}
+		// packet.length can be > packetSize. Sending too much will cause
+		// errors on the other side
+		return packetSize;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,7 +20,7 @@ import java.net.Socket;
 import com.sun.jdi.connect.spi.ClosedConnectionException;
 import com.sun.jdi.connect.spi.Connection;
 
-public class SocketConnection extends Connection {
+public class SocketConnection extends Connection implements PacketBatchWriter {
 
 	// for attaching connector
 	private Socket fSocket;
@@ -106,6 +106,72 @@ public class SocketConnection extends Connection {
 		if (!isOpen()) {
 			throw new ClosedConnectionException();
 		}
+		int packetSize = checkPacket(packet);
+
+		OutputStream stream = null;
+		synchronized (this) {
+			if (!isOpen()) {
+				throw new ClosedConnectionException();
+			}
+			stream = fOutput;
+		}
+
+		synchronized (stream) {
+			// packet.length can be > packetSize. Sending too much will cause
+			// errors on the other side
+			stream.write(packet, 0, packetSize);
+		}
+	}
+
+	/**
+	 * Writes the first <code>count</code> packets of the given array with a
+	 * single write to the socket stream, by copying them into one array.
+	 *
+	 * @see org.eclipse.jdi.internal.connect.PacketBatchWriter#writePackets(byte[][], int)
+	 */
+	@Override
+	public void writePackets(byte[][] packets, int count) throws IOException {
+		if (count == 1) {
+			writePacket(packets[0]);
+			return;
+		}
+		if (!isOpen()) {
+			throw new ClosedConnectionException();
+		}
+		int[] packetSizes = new int[count];
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			packetSizes[i] = checkPacket(packets[i]);
+			total += packetSizes[i];
+		}
+		byte[] bytes = new byte[total];
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(packets[i], 0, bytes, offset, packetSizes[i]);
+			offset += packetSizes[i];
+		}
+
+		OutputStream stream = null;
+		synchronized (this) {
+			if (!isOpen()) {
+				throw new ClosedConnectionException();
+			}
+			stream = fOutput;
+		}
+
+		synchronized (stream) {
+			stream.write(bytes, 0, total);
+		}
+	}
+
+	/**
+	 * Validates the given packet and returns the number of bytes to send.
+	 *
+	 * @param packet
+	 *            the packet
+	 * @return the length specified in the packet header
+	 */
+	private int checkPacket(byte[] packet) {
 		if (packet == null) {
 			throw new IllegalArgumentException(
 					"Invalid JDWP Packet, packet cannot be null"); //$NON-NLS-1$
@@ -125,20 +191,7 @@ public class SocketConnection extends Connection {
 			throw new IllegalArgumentException(
 					"Invalid JDWP packet: Specified length is greater than actual length"); //$NON-NLS-1$
 		}
-
-		OutputStream stream = null;
-		synchronized (this) {
-			if (!isOpen()) {
-				throw new ClosedConnectionException();
-			}
-			stream = fOutput;
-		}
-
-		synchronized (stream) {
-			// packet.length can be > packetSize. Sending too much will cause
-			// errors on the other side
-			stream.write(packet, 0, packetSize);
-		}
+		return packetSize;
 	}
 
 	private int getPacketLength(byte[] packet) {
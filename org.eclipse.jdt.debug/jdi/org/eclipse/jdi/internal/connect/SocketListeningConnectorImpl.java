@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -23,6 +23,7 @@ import com.sun.jdi.VirtualMachine;
 import com.sun.jdi.connect.Connector;
 import com.sun.jdi.connect.IllegalConnectorArgumentsException;
 import com.sun.jdi.connect.ListeningConnector;
+import com.sun.jdi.connect.spi.Connection;
 
 public class SocketListeningConnectorImpl extends ConnectorImpl implements ListeningConnector {
 	/** Port to which is attached. */
@@ -65,6 +66,12 @@ public class SocketListeningConnectorImpl extends ConnectorImpl implements Liste
 		intArg.setValue(1);  // mimics previous behaviour, allowing a single connection
 		arguments.put(intArg.name(), intArg);
 
+		// Channel
+		BooleanArgumentImpl channelArg = new BooleanArgumentImpl(
+				"channel", ConnectMessages.SocketListeningConnectorImpl_Use_NIO_socket_channel, ConnectMessages.SocketListeningConnectorImpl_Channel, false); //$NON-NLS-1$
+		channelArg.setValue(false);
+		arguments.put(channelArg.name(), channelArg);
+
 		return arguments;
 	}
 
@@ -124,8 +131,26 @@ public class SocketListeningConnectorImpl extends ConnectorImpl implements Liste
 		}
 	}
 
+	/**
+	 * Returns whether the accepted connections are built on top of NIO socket
+	 * channels.
+	 */
+	private boolean useChannel(Map<String, ? extends Connector.Argument> connectionArgs) throws IllegalConnectorArgumentsException {
+		String attribute = "channel"; //$NON-NLS-1$
+		try {
+			BooleanArgument channelArg = (BooleanArgument) connectionArgs.get(attribute);
+			return channelArg != null && channelArg.value() != null && channelArg.booleanValue();
+		} catch (ClassCastException e) {
+			throw new IllegalConnectorArgumentsException(
+					ConnectMessages.SocketListeningConnectorImpl_Connection_argument_is_not_of_the_right_type_6,
+					attribute);
+		}
+	}
+
 	/**
 	 * Listens for one or more connections initiated by target VMs.
+	 * The connections are built on top of NIO socket channels if the
+	 * <code>channel</code> argument is set.
 	 *
 	 * @return Returns the address at which the connector is listening for a
 	 *         connection.
@@ -133,9 +158,10 @@ public class SocketListeningConnectorImpl extends ConnectorImpl implements Liste
 	@Override
 	public String startListening(Map<String, ? extends Connector.Argument> connectionArgs) throws IOException, IllegalConnectorArgumentsException {
 		getConnectionArguments(connectionArgs);
+		boolean useChannel = useChannel(connectionArgs);
 		String result = null;
 		try {
-			result = ((SocketTransportImpl) fTransport).startListening(fPort);
+			result = ((SocketTransportImpl) fTransport).startListening(fPort, useChannel);
 		} catch (IllegalArgumentException e) {
 			throw new IllegalConnectorArgumentsException(
 					ConnectMessages.SocketListeningConnectorImpl_ListeningConnector_Socket_Port,
@@ -160,8 +186,7 @@ public class SocketListeningConnectorImpl extends ConnectorImpl implements Liste
 	@Override
 	public VirtualMachine accept(Map<String, ? extends Connector.Argument> connectionArgs) throws IOException, IllegalConnectorArgumentsException {
 		getConnectionArguments(connectionArgs);
-		SocketConnection connection = (SocketConnection) ((SocketTransportImpl) fTransport)
-				.accept(fTimeout, 0);
+		Connection connection = ((SocketTransportImpl) fTransport).accept(fTimeout, 0);
 		return establishedConnection(connection);
 	}
 
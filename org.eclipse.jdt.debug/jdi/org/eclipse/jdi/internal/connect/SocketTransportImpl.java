@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -43,11 +43,36 @@ public class SocketTransportImpl implements Transport {
 
 	public Connection attach(String hostname, int port, long attachTimeout,
 			long handshakeTimeout) throws IOException {
-		return service.attach(hostname, port, attachTimeout, handshakeTimeout);
+		return attach(hostname, port, attachTimeout, handshakeTimeout, false);
+	}
+
+	/**
+	 * Attaches to the given host and port. The transport is shared by the
+	 * attaches of its connector, so the kind of connection is chosen for each
+	 * attach.
+	 *
+	 * @param useChannels
+	 *            whether the connection is built on top of a NIO socket
+	 *            channel
+	 */
+	public Connection attach(String hostname, int port, long attachTimeout,
+			long handshakeTimeout, boolean useChannels) throws IOException {
+		return service.attach(hostname, port, attachTimeout, handshakeTimeout, useChannels);
 	}
 
 	public String startListening(int port) throws IOException {
-		fListenKey = service.startListening(port + ""); //$NON-NLS-1$
+		return startListening(port, false);
+	}
+
+	/**
+	 * Starts listening at the given port.
+	 *
+	 * @param useChannels
+	 *            whether the accepted connections are built on top of NIO
+	 *            socket channels
+	 */
+	public String startListening(int port, boolean useChannels) throws IOException {
+		fListenKey = service.startListening(port + "", useChannels); //$NON-NLS-1$
 		return fListenKey.address();
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,9 +18,12 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Arrays;
 
 import org.eclipse.jdi.TimeoutException;
@@ -77,6 +80,42 @@ public class SocketTransportService extends TransportService {
 	// for listening or accepting connectors
 	private ServerSocket fServerSocket;
 
+	/**
+	 * Whether connections attached or listened for through the transport
+	 * service interface are created on top of NIO socket channels
+	 * ({@link SocketChannelConnection}) rather than socket streams
+	 * ({@link SocketConnection}). The connectors choose per connection.
+	 */
+	private final boolean fUseChannels;
+
+	/**
+	 * Constructs a transport service which creates stream based connections.
+	 */
+	public SocketTransportService() {
+		this(false);
+	}
+
+	/**
+	 * Constructs a transport service.
+	 *
+	 * @param useChannels
+	 *            whether connections should be created on top of NIO socket
+	 *            channels
+	 */
+	public SocketTransportService(boolean useChannels) {
+		fUseChannels = useChannels;
+	}
+
+	/**
+	 * Returns whether connections are created on top of NIO socket channels
+	 * by default.
+	 *
+	 * @return whether NIO socket channels are used by default
+	 */
+	public boolean usesChannels() {
+		return fUseChannels;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -99,9 +138,29 @@ public class SocketTransportService extends TransportService {
 		} catch (SocketTimeoutException e) {
 			throw new TransportTimeoutException();
 		}
+		return createConnection(socket, handshakeTimeout);
+	}
+
+	/**
+	 * Performs the handshake on the given connected socket and wraps it into
+	 * a connection.
+	 *
+	 * @param socket
+	 *            the connected socket
+	 * @param handshakeTimeout
+	 *            the handshake timeout
+	 * @return the new connection
+	 * @throws IOException
+	 *             if the handshake fails
+	 */
+	Connection createConnection(Socket socket, long handshakeTimeout) throws IOException {
 		InputStream input = socket.getInputStream();
 		OutputStream output = socket.getOutputStream();
 		performHandshake(input, output, handshakeTimeout);
+		SocketChannel channel = socket.getChannel();
+		if (channel != null) {
+			return new SocketChannelConnection(channel);
+		}
 		return new SocketConnection(socket, input, output);
 	}
 
@@ -124,11 +183,30 @@ public class SocketTransportService extends TransportService {
 			port = Integer.parseInt(strings[0]);
 		}
 
-		return attach(host, port, attachTimeout, handshakeTimeout);
+		return attach(host, port, attachTimeout, handshakeTimeout, fUseChannels);
 	}
 
+	/**
+	 * Attaches to the given host and port.
+	 *
+	 * @param host
+	 *            the host name
+	 * @param port
+	 *            the port number
+	 * @param attachTimeout
+	 *            the attach timeout, or 0 to wait forever
+	 * @param handshakeTimeout
+	 *            the handshake timeout
+	 * @param useChannels
+	 *            whether the connection is built on top of a NIO socket
+	 *            channel
+	 * @return the new connection
+	 * @throws IOException
+	 *             if the attach fails
+	 */
 	public Connection attach(final String host, final int port,
-			long attachTimeout, final long handshakeTimeout) throws IOException {
+			long attachTimeout, final long handshakeTimeout,
+			final boolean useChannels) throws IOException {
 		if (attachTimeout > 0) {
 			if (attachTimeout > Integer.MAX_VALUE) {
 				attachTimeout = Integer.MAX_VALUE; // approx 25 days!
@@ -136,16 +214,18 @@ public class SocketTransportService extends TransportService {
 		}
 
 		final IOException[] ex = new IOException[1];
-		final SocketConnection[] result = new SocketConnection[1];
+		final Connection[] result = new Connection[1];
 		Thread attachThread = new Thread(new Runnable() {
 			@Override
 			public void run() {
 				try {
-					Socket socket = new Socket(host, port);
-					InputStream input = socket.getInputStream();
-					OutputStream output = socket.getOutputStream();
-					performHandshake(input, output, handshakeTimeout);
-					result[0] = new SocketConnection(socket, input, output);
+					Socket socket;
+					if (useChannels) {
+						socket = SocketChannel.open(new InetSocketAddress(host, port)).socket();
+					} else {
+						socket = new Socket(host, port);
+					}
+					result[0] = createConnection(socket, handshakeTimeout);
 				} catch (IOException e) {
 					ex[0] = e;
 				}
@@ -276,6 +356,23 @@ public class SocketTransportService extends TransportService {
 	 */
 	@Override
 	public ListenKey startListening(String address) throws IOException {
+		return startListening(address, fUseChannels);
+	}
+
+	/**
+	 * Starts listening at the given address.
+	 *
+	 * @param address
+	 *            the address, in the form <code>host:port</code> or
+	 *            <code>port</code>
+	 * @param useChannels
+	 *            whether the accepted connections are built on top of NIO
+	 *            socket channels
+	 * @return the listen key
+	 * @throws IOException
+	 *             if the server socket cannot be opened
+	 */
+	public ListenKey startListening(String address, boolean useChannels) throws IOException {
 		String host = null;
 		int port = -1;
 		if (address != null) {
@@ -297,7 +394,15 @@ public class SocketTransportService extends TransportService {
 			host = "localhost"; //$NON-NLS-1$
 		}
 
-		fServerSocket = new ServerSocket(port);
+		if (useChannels) {
+			// sockets accepted from a channel backed server socket have a
+			// channel as well
+			ServerSocketChannel serverChannel = ServerSocketChannel.open();
+			serverChannel.socket().bind(new InetSocketAddress(port));
+			fServerSocket = serverChannel.socket();
+		} else {
+			fServerSocket = new ServerSocket(port);
+		}
 		port = fServerSocket.getLocalPort();
 		ListenKey listenKey = new SocketListenKey(host + ":" + port); //$NON-NLS-1$
 		return listenKey;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -131,8 +131,12 @@ public abstract class JdwpID {
 	 * Reads ID.
 	 */
 	public void read(DataInputStream inStream) throws IOException {
-		fValue = 0;
 		int size = getSize();
+		if (inStream instanceof JdwpPacketReader) {
+			fValue = ((JdwpPacketReader) inStream).getId(size);
+			return;
+		}
+		fValue = 0;
 		for (int i = 0; i < size; i++) {
 			int b = inStream.readUnsignedByte(); // Note that the byte must be
 													// treated as unsigned.
@@ -145,6 +149,10 @@ public abstract class JdwpID {
 	 */
 	public void write(DataOutputStream outStream) throws IOException {
 		int size = getSize();
+		if (outStream instanceof JdwpPacketWriter) {
+			((JdwpPacketWriter) outStream).writeId(fValue, size);
+			return;
+		}
 		for (int i = size - 1; i >= 0; i--) {
 			byte b = (byte) (fValue >>> 8 * i); // Note that >>> must be used
 												// because fValue must be
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,11 +10,11 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal.jdwp;
 
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 
 /**
  * This class implements the corresponding Java Debug Wire Protocol (JDWP)
@@ -33,6 +33,21 @@ public abstract class JdwpPacket {
 	protected int fId = 0;
 	protected byte fFlags = 0;
 	protected byte[] fDataBuf = null;
+	/**
+	 * Writer holding the data of a packet to be sent, or <code>null</code>.
+	 * Once the packet has been written to the connection, the writer is
+	 * returned to its pool and this field is cleared.
+	 */
+	private JdwpPacketWriter fDataWriter = null;
+	/** Length of the data held by {@link #fDataWriter}. */
+	private int fWriterDataLength = 0;
+	/**
+	 * Bytes of a received packet, or <code>null</code>. The data is read from
+	 * these bytes and only copied when {@link #data()} is called.
+	 */
+	private byte[] fPacketBytes = null;
+	/** Length of the packet held by {@link #fPacketBytes}. */
+	private int fPacketLength = 0;
 
 	/**
 	 * Set Id.
@@ -73,33 +88,86 @@ public abstract class JdwpPacket {
 	 * @return Returns length of data in packet.
 	 */
 	public int getDataLength() {
-		return fDataBuf == null ? 0 : fDataBuf.length;
+		if (fDataBuf != null) {
+			return fDataBuf.length;
+		}
+		if (fPacketBytes != null) {
+			return fPacketLength - MIN_PACKET_LENGTH;
+		}
+		return fWriterDataLength;
 	}
 
 	/**
 	 * @return Returns data of packet.
 	 */
-	public byte[] data() {
+	public synchronized byte[] data() {
+		if (fDataWriter != null) {
+			// the writer's buffer may be being written to the connection, it
+			// is released by the send manager only
+			if (fDataBuf == null && fWriterDataLength > 0) {
+				fDataBuf = fDataWriter.toDataArray();
+			}
+		} else if (fPacketBytes != null) {
+			if (fPacketLength > MIN_PACKET_LENGTH) {
+				fDataBuf = Arrays.copyOfRange(fPacketBytes, MIN_PACKET_LENGTH, fPacketLength);
+			}
+			fPacketBytes = null;
+		}
 		return fDataBuf;
 	}
 
 	/**
+	 * Returns a stream with the data of this packet. For a received packet,
+	 * the stream is a {@link JdwpPacketReader} reading the packet bytes in
+	 * place.
+	 *
 	 * @return Returns DataInputStream with reply data, or an empty stream if
 	 *         there is none.
 	 */
-	public DataInputStream dataInStream() {
-		if (fDataBuf != null) {
-			return new DataInputStream(new ByteArrayInputStream(fDataBuf));
+	public synchronized DataInputStream dataInStream() {
+		if (fPacketBytes != null) {
+			return new JdwpPacketReader(fPacketBytes, MIN_PACKET_LENGTH, fPacketLength - MIN_PACKET_LENGTH);
+		}
+		byte[] data = data();
+		if (data != null) {
+			return new JdwpPacketReader(data, 0, data.length);
 		}
 
-		return new DataInputStream(new ByteArrayInputStream(new byte[0]));
+		return new JdwpPacketReader(new byte[0], 0, 0);
 	}
 
 	/**
 	 * Assigns data to packet.
 	 */
-	public void setData(byte[] data) {
+	public synchronized void setData(byte[] data) {
 		fDataBuf = data;
+		fPacketBytes = null;
+	}
+
+	/**
+	 * Assigns the data written to the given writer to this packet. The packet
+	 * takes over the writer, which must not be used anymore by the caller.
+	 */
+	public synchronized void setData(JdwpPacketWriter writer) {
+		fDataBuf = null;
+		fPacketBytes = null;
+		fDataWriter = writer;
+		fWriterDataLength = writer.dataLength();
+	}
+
+	/**
+	 * Returns the data writer of this packet to its pool. To be called once
+	 * the bytes returned by {@link #getPacketAsBytes()} have been written to
+	 * the connection, after which they must not be used anymore. The data is
+	 * copied out of the writer first, so that the packet can still be read,
+	 * e.g. for tracing, after it has been sent.
+	 */
+	public synchronized void releaseDataWriter() {
+		if (fDataWriter != null) {
+			data();
+			fDataWriter.release();
+			fDataWriter = null;
+		}
 	}
 
 	/**
@@ -146,21 +214,37 @@ public abstract class JdwpPacket {
 		packet.setId(id);
 		packet.setFlags(flags);
 
-		// Read specific header fields and data.
-		int index = 9;
-		index += packet.readSpecificHeaderFields(bytes, 9);
-		if (packetLength - MIN_PACKET_LENGTH > 0) {
-			packet.fDataBuf = new byte[packetLength - MIN_PACKET_LENGTH];
-			System.arraycopy(bytes, index, packet.fDataBuf, 0,
-					packet.fDataBuf.length);
+		// Read specific header fields, the data is kept in the packet bytes.
+		packet.readSpecificHeaderFields(bytes, 9);
+		if (packetLength > bytes.length) {
+			throw new IOException("JDWP packet shorter than specified length"); //$NON-NLS-1$
 		}
+		packet.fPacketBytes = bytes;
+		packet.fPacketLength = Math.max(packetLength, MIN_PACKET_LENGTH);
 
 		return packet;
 	}
 
-	public byte[] getPacketAsBytes() throws IOException {
+	/**
+	 * Returns the bytes of this packet. If the data of this packet has been
+	 * written with a {@link JdwpPacketWriter}, the header is written in place
+	 * and the writer's buffer is returned without copying. In that case the
+	 * returned array may be larger than the packet, whose actual length is
+	 * given by the header and by {@link #getLength()}; it must be copied to
+	 * that length before it is handed to a connection that is not known to
+	 * honor the header.
+	 *
+	 * @return the bytes of this packet
+	 */
+	public synchronized byte[] getPacketAsBytes() throws IOException {
 		int len = getLength();
-		byte[] bytes = new byte[len];
+		byte[] bytes;
+		if (fDataWriter != null) {
+			bytes = fDataWriter.buffer();
+		} else {
+			data();
+			bytes = new byte[len];
+		}
 
 		// convert len to bytes
 		bytes[0] = (byte) (len >>> 24);
@@ -182,7 +266,7 @@ public abstract class JdwpPacket {
 		int index = 9;
 		index += writeSpecificHeaderFields(bytes, index);
 
-		if (index < len && fDataBuf != null) {
+		if (index < len && fDataWriter == null && fDataBuf != null) {
 			// copy data
 			System.arraycopy(fDataBuf, 0, bytes, index, fDataBuf.length);
 		}
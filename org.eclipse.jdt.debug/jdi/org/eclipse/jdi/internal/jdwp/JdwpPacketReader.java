@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal.jdwp;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A data input stream that decodes the data of a received JDWP packet
+ * straight from the packet bytes.
+ * <p>
+ * Besides the usual {@link DataInputStream} methods, this reader offers
+ * <code>get</code> methods which read from the underlying {@link ByteBuffer}
+ * without going through the stream, and are used by the mirror readers when
+ * they are given a reader of this type. Both ways of reading share the same
+ * position and can be mixed.
+ * </p>
+ */
+public final class JdwpPacketReader extends DataInputStream {
+
+	/**
+	 * Unsynchronized input stream over a byte buffer.
+	 */
+	private static final class BufferInput extends InputStream {
+		final ByteBuffer fBuffer;
+
+		BufferInput(ByteBuffer buffer) {
+			fBuffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return fBuffer.hasRemaining() ? fBuffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			int remaining = fBuffer.remaining();
+			if (remaining == 0) {
+				return -1;
+			}
+			int count = Math.min(len, remaining);
+			fBuffer.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			int count = (int) Math.max(0, Math.min(n, fBuffer.remaining()));
+			fBuffer.position(fBuffer.position() + count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return fBuffer.remaining();
+		}
+	}
+
+	private final ByteBuffer fBuffer;
+
+	/**
+	 * Creates a reader for the given range of bytes. The bytes are not copied.
+	 *
+	 * @param bytes
+	 *            the bytes to read from
+	 * @param offset
+	 *            the offset of the first byte to read
+	 * @param length
+	 *            the number of bytes that can be read
+	 */
+	public JdwpPacketReader(byte[] bytes, int offset, int length) {
+		this(new BufferInput(ByteBuffer.wrap(bytes, offset, length)));
+	}
+
+	private JdwpPacketReader(BufferInput input) {
+		super(input);
+		fBuffer = input.fBuffer;
+	}
+
+	/**
+	 * @return Returns the next byte.
+	 */
+	public byte getByte() throws EOFException {
+		try {
+			return fBuffer.get();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * @return Returns the next short.
+	 */
+	public short getShort() throws EOFException {
+		try {
+			return fBuffer.getShort();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * @return Returns the next int.
+	 */
+	public int getInt() throws EOFException {
+		try {
+			return fBuffer.getInt();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * @return Returns the next long.
+	 */
+	public long getLong() throws EOFException {
+		try {
+			return fBuffer.getLong();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * Reads an unsigned id of the given size, most significant byte first.
+	 *
+	 * @param size
+	 *            the size of the id in bytes
+	 * @return Returns the value of the id.
+	 */
+	public long getId(int size) throws EOFException {
+		switch (size) {
+		case 8:
+			return getLong();
+		case 4:
+			return getInt() & 0xFFFFFFFFL;
+		default:
+			if (fBuffer.remaining() < size) {
+				throw new EOFException();
+			}
+			long value = 0;
+			for (int i = 0; i < size; i++) {
+				value = value << 8 | (fBuffer.get() & 0xFF);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Reads a JDWP string, see {@link JdwpString#read(DataInputStream)}.
+	 * Strings that only consist of single byte characters, like almost all
+	 * class signatures, are decoded without going through the UTF decoder.
+	 *
+	 * @return Returns the string.
+	 */
+	public String getString() throws java.io.IOException {
+		int utfSize = getInt();
+		if (utfSize < 0 || fBuffer.remaining() < utfSize) {
+			throw new EOFException();
+		}
+		byte[] bytes = fBuffer.array();
+		int offset = fBuffer.arrayOffset() + fBuffer.position();
+		fBuffer.position(fBuffer.position() + utfSize);
+		int end = offset + utfSize;
+		for (int i = offset; i < end; i++) {
+			if ((bytes[i] & 0xFF) >= 0xC0) {
+				return JdwpString.decode(bytes, offset, utfSize);
+			}
+		}
+		// bytes below 0xC0 stand for themselves
+		return new String(bytes, offset, utfSize, StandardCharsets.ISO_8859_1);
+	}
+}
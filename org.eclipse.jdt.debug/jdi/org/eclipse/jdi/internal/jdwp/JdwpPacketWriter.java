@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdi.internal.jdwp;
+
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A data output stream that serializes the data of a JDWP command packet
+ * directly into the buffer that is handed to the connection.
+ * <p>
+ * The buffer reserves room for the packet header, so that the packet can be
+ * sent without copying its data (see {@link JdwpPacket#getPacketAsBytes()}).
+ * Writers are pooled: they are obtained with {@link #acquire()} and given back
+ * by the packet once it has been written to the connection. A writer that is
+ * never passed to a packet, e.g. because an exception occurred while writing
+ * the data, is simply garbage collected.
+ * </p>
+ */
+public final class JdwpPacketWriter extends DataOutputStream {
+
+	/** Maximal number of writers kept in the pool. */
+	private static final int MAX_POOLED_WRITERS = 16;
+
+	/**
+	 * Buffers that have grown beyond this capacity are not pooled, to avoid
+	 * keeping large buffers alive.
+	 */
+	private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	/** Pool of available writers. */
+	private static final ArrayDeque<JdwpPacketWriter> fgPool = new ArrayDeque<>(MAX_POOLED_WRITERS);
+
+	/**
+	 * Unsynchronized growable byte buffer. The first
+	 * {@link JdwpPacket#MIN_PACKET_LENGTH} bytes are reserved for the header.
+	 */
+	private static final class PacketBuffer extends OutputStream {
+		byte[] fBytes = new byte[INITIAL_CAPACITY];
+		int fCount = JdwpPacket.MIN_PACKET_LENGTH;
+
+		void ensureCapacity(int additional) {
+			int required = fCount + additional;
+			if (required > fBytes.length) {
+				fBytes = Arrays.copyOf(fBytes, Math.max(required, fBytes.length << 1));
+			}
+		}
+
+		@Override
+		public void write(int b) {
+			ensureCapacity(1);
+			fBytes[fCount++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			ensureCapacity(len);
+			System.arraycopy(b, off, fBytes, fCount, len);
+			fCount += len;
+		}
+	}
+
+	private final PacketBuffer fBuffer;
+
+	private JdwpPacketWriter(PacketBuffer buffer) {
+		super(buffer);
+		fBuffer = buffer;
+	}
+
+	/**
+	 * Returns an empty writer, taken from the pool if possible.
+	 *
+	 * @return an empty writer
+	 */
+	public static JdwpPacketWriter acquire() {
+		JdwpPacketWriter writer;
+		synchronized (fgPool) {
+			writer = fgPool.poll();
+		}
+		if (writer == null) {
+			writer = new JdwpPacketWriter(new PacketBuffer());
+		}
+		return writer;
+	}
+
+	/**
+	 * Returns this writer to the pool. The writer and its buffer must not be
+	 * used anymore by the caller.
+	 */
+	void release() {
+		if (fBuffer.fBytes.length > MAX_POOLED_CAPACITY) {
+			return;
+		}
+		fBuffer.fCount = JdwpPacket.MIN_PACKET_LENGTH;
+		written = 0;
+		synchronized (fgPool) {
+			if (fgPool.size() < MAX_POOLED_WRITERS) {
+				fgPool.add(this);
+			}
+		}
+	}
+
+	/**
+	 * @return Returns the number of data bytes written so far.
+	 */
+	public int dataLength() {
+		return fBuffer.fCount - JdwpPacket.MIN_PACKET_LENGTH;
+	}
+
+	/**
+	 * Returns the buffer holding the packet, with room for the header in the
+	 * first {@link JdwpPacket#MIN_PACKET_LENGTH} bytes. The buffer may be
+	 * larger than the packet.
+	 *
+	 * @return the packet buffer
+	 */
+	byte[] buffer() {
+		return fBuffer.fBytes;
+	}
+
+	/**
+	 * Returns a copy of the data written so far. Writers are meant for the
+	 * data of packets only: data that is not sent to the virtual machine is
+	 * better encoded with a {@link java.io.ByteArrayOutputStream}, since a
+	 * writer that is not passed to a packet is not given back to the pool.
+	 *
+	 * @return the data
+	 */
+	public byte[] toDataArray() {
+		return Arrays.copyOfRange(fBuffer.fBytes, JdwpPacket.MIN_PACKET_LENGTH, fBuffer.fCount);
+	}
+
+	/**
+	 * Writes the lowest <code>size</code> bytes of the given id value, most
+	 * significant byte first.
+	 *
+	 * @param value
+	 *            the id value
+	 * @param size
+	 *            the size of the id in bytes
+	 */
+	void writeId(long value, int size) {
+		PacketBuffer buffer = fBuffer;
+		buffer.ensureCapacity(size);
+		byte[] bytes = buffer.fBytes;
+		int index = buffer.fCount;
+		for (int i = size - 1; i >= 0; i--) {
+			bytes[index++] = (byte) (value >>> 8 * i);
+		}
+		buffer.fCount = index;
+		written += size;
+	}
+
+	/**
+	 * Writes the given string as JDWP string: its modified UTF-8 length as an
+	 * int followed by the encoded characters.
+	 *
+	 * @param str
+	 *            the string
+	 */
+	void writeString(String str) {
+		PacketBuffer buffer = fBuffer;
+		int length = str.length();
+		// reserve the worst case, then fix up the length
+		buffer.ensureCapacity(4 + 3 * length);
+		byte[] bytes = buffer.fBytes;
+		int start = buffer.fCount;
+		int index = start + 4;
+		for (int i = 0; i < length; i++) {
+			int charValue = str.charAt(i);
+			if (charValue > 0 && charValue <= 127) {
+				bytes[index++] = (byte) charValue;
+			} else if (charValue <= 2047) {
+				bytes[index++] = (byte) (0xc0 | (0x1f & (charValue >> 6)));
+				bytes[index++] = (byte) (0x80 | (0x3f & charValue));
+			} else {
+				bytes[index++] = (byte) (0xe0 | (0x0f & (charValue >> 12)));
+				bytes[index++] = (byte) (0x80 | (0x3f & (charValue >> 6)));
+				bytes[index++] = (byte) (0x80 | (0x3f & charValue));
+			}
+		}
+		int utfCount = index - start - 4;
+		bytes[start] = (byte) (utfCount >>> 24);
+		bytes[start + 1] = (byte) (utfCount >>> 16);
+		bytes[start + 2] = (byte) (utfCount >>> 8);
+		bytes[start + 3] = (byte) utfCount;
+		buffer.fCount = index;
+		written += index - start;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -26,17 +26,33 @@ public class JdwpString {
 	 * not just 2. This code was based on the OTI Retysin source for readUTF.
 	 */
 	public static String read(DataInputStream in) throws IOException {
+		if (in instanceof JdwpPacketReader) {
+			return ((JdwpPacketReader) in).getString();
+		}
 		int utfSize = in.readInt();
 		byte utfBytes[] = new byte[utfSize];
 		in.readFully(utfBytes);
+		return decode(utfBytes, 0, utfSize);
+	}
+
+	/**
+	 * Decodes the given range of UTF bytes.
+	 */
+	static String decode(byte[] utfBytes, int offset, int utfSize)
+			throws UTFDataFormatException {
+		int end = offset + utfSize;
 		/* Guess at buffer size */
-		StringBuffer strBuffer = new StringBuffer(utfSize / 3 * 2);
-		for (int i = 0; i < utfSize;) {
+		StringBuilder strBuffer = new StringBuilder(utfSize / 3 * 2);
+		for (int i = offset; i < end;) {
 			int a = utfBytes[i] & 0xFF;
 			if ((a >> 4) < 12) {
 				strBuffer.append((char) a);
 				i++;
 			} else {
+				if (i + 1 >= end) {
+					throw new UTFDataFormatException(
+							JDWPMessages.JdwpString_Input_does_not_match_UTF_Specification_3);
+				}
 				int b = utfBytes[i + 1] & 0xFF;
 				if ((a >> 4) < 14) {
 					if ((b & 0xBF) == 0) {
@@ -46,6 +62,10 @@ public class JdwpString {
 					strBuffer.append((char) (((a & 0x1F) << 6) | (b & 0x3F)));
 					i += 2;
 				} else {
+					if (i + 2 >= end) {
+						throw new UTFDataFormatException(
+								JDWPMessages.JdwpString_Input_does_not_match_UTF_Specification_3);
+					}
 					int c = utfBytes[i + 2] & 0xFF;
 					if ((a & 0xEF) > 0) {
 						if (((b & 0xBF) == 0) || ((c & 0xBF) == 0)) {
@@ -74,6 +94,10 @@ public class JdwpString {
 		if (str == null)
 			throw new NullPointerException(
 					JDWPMessages.JdwpString_str_is_null_4);
+		if (out instanceof JdwpPacketWriter) {
+			((JdwpPacketWriter) out).writeString(str);
+			return;
+		}
 		int utfCount = 0;
 		for (int i = 0; i < str.length(); i++) {
 			int charValue = str.charAt(i);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal.request;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -28,6 +27,7 @@ import org.eclipse.jdi.internal.ThreadReferenceImpl;
 import org.eclipse.jdi.internal.VirtualMachineImpl;
 import org.eclipse.jdi.internal.event.EventImpl;
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 
 import com.sun.jdi.InternalException;
@@ -211,14 +211,13 @@ public abstract class EventRequestImpl extends MirrorImpl implements
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeByte(eventKind(),
 					"event kind", EventImpl.eventKindMap(), outData); //$NON-NLS-1$
 			fRequestID.write(this, outData);
 
 			JdwpReplyPacket replyPacket = requestVM(JdwpCommandPacket.ER_CLEAR,
-					outBytes);
+					outData);
 			switch (replyPacket.errorCode()) {
 			case JdwpReplyPacket.NOT_FOUND:
 				throw new InvalidRequestStateException();
@@ -245,8 +244,7 @@ public abstract class EventRequestImpl extends MirrorImpl implements
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeByte(eventKind(),
 					"event kind", EventImpl.eventKindMap(), outData); //$NON-NLS-1$
 			writeByte(
@@ -256,7 +254,7 @@ public abstract class EventRequestImpl extends MirrorImpl implements
 			writeModifiers(outData);
 
 			JdwpReplyPacket replyPacket = requestVM(JdwpCommandPacket.ER_SET,
-					outBytes);
+					outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 			DataInputStream replyData = replyPacket.dataInStream();
 			fRequestID = RequestID.read(this, replyData);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,10 +13,9 @@ package org.eclipse.jdi.internal.request;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jdi.internal.FieldImpl;
 import org.eclipse.jdi.internal.LocationImpl;
@@ -24,23 +23,7 @@ import org.eclipse.jdi.internal.MirrorImpl;
 import org.eclipse.jdi.internal.ReferenceTypeImpl;
 import org.eclipse.jdi.internal.ThreadReferenceImpl;
 import org.eclipse.jdi.internal.VirtualMachineImpl;
-import org.eclipse.jdi.internal.event.AccessWatchpointEventImpl;
-import org.eclipse.jdi.internal.event.BreakpointEventImpl;
-import org.eclipse.jdi.internal.event.ClassPrepareEventImpl;
-import org.eclipse.jdi.internal.event.ClassUnloadEventImpl;
 import org.eclipse.jdi.internal.event.EventImpl;
-import org.eclipse.jdi.internal.event.ExceptionEventImpl;
-import org.eclipse.jdi.internal.event.MethodEntryEventImpl;
-import org.eclipse.jdi.internal.event.MethodExitEventImpl;
-import org.eclipse.jdi.internal.event.ModificationWatchpointEventImpl;
-import org.eclipse.jdi.internal.event.MonitorContendedEnterEventImpl;
-import org.eclipse.jdi.internal.event.MonitorContendedEnteredEventImpl;
-import org.eclipse.jdi.internal.event.MonitorWaitEventImpl;
-import org.eclipse.jdi.internal.event.MonitorWaitedEventImpl;
-import org.eclipse.jdi.internal.event.StepEventImpl;
-import org.eclipse.jdi.internal.event.ThreadDeathEventImpl;
-import org.eclipse.jdi.internal.event.ThreadStartEventImpl;
-import org.eclipse.jdi.internal.event.VMDeathEventImpl;
 import org.eclipse.osgi.util.NLS;
 
 import com.sun.jdi.Field;
@@ -80,11 +63,9 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
 	private static class EventRequestType<RT extends EventRequest> {
 
 		private ArrayList<RT> requests;
-		private Hashtable<RequestID, RT> enabledrequests;
 
 		private EventRequestType() {
 			requests= new ArrayList<>();
-			enabledrequests= new Hashtable<>();
 		}
 
 		public List<RT> getUnmodifiableList() {
@@ -93,7 +74,6 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
 
 		public void clear() {
 			requests.clear();
-			enabledrequests.clear();
 		}
 	}
 
@@ -114,6 +94,13 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
 	private EventRequestType<MonitorWaitedRequest> MONITOR_WAITED_TYPE= new EventRequestType<>();
 	private EventRequestType<MonitorWaitRequest> MONITOR_WAIT_TYPE= new EventRequestType<>();
 
+	/**
+	 * Enabled requests of all kinds, keyed by the request ID assigned by the
+	 * VM, which is unique among all requests. Events are routed with a single
+	 * lookup, while requests are enabled and disabled concurrently.
+	 */
+	private final ConcurrentHashMap<RequestID, EventRequestImpl> fEnabledRequests = new ConcurrentHashMap<>();
+
 	/**
 	 * Creates new EventRequestManager.
 	 */
@@ -311,9 +298,11 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
 	 * Enables class prepare requests for all loaded classes.  This is
 	 * necessary for current versions of the KVM to function correctly.
 	 * This method is only called when the remote VM is determined to be
-	 * the KVM.
+	 * the KVM, and when the index of loaded types is created.
+	 *
+	 * @return Returns the enabled request.
 	 */
-	public void enableInternalClassPrepareEvent() {
+	public ClassPrepareRequestImpl enableInternalClassPrepareEvent() {
 		// Note that these requests are not stored in the set of outstanding requests because
 		// they must be invisible from outside.
 		ClassPrepareRequestImpl requestPrepare =
@@ -322,6 +311,7 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
 		requestPrepare.setSuspendPolicy(EventRequest.SUSPEND_NONE);
 
 		requestPrepare.enable();
+		return requestPrepare;
 	}
 
 	/**
@@ -344,11 +334,8 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
 	 * Checks if a steprequest is for the given thread is already enabled.
 	 */
 	boolean existsEnabledStepRequest(ThreadReferenceImpl threadImpl) {
-		Enumeration<StepRequest> enumeration = STEP_TYPE.enabledrequests.elements();
-		StepRequestImpl step;
-		while (enumeration.hasMoreElements()) {
-			step = (StepRequestImpl)enumeration.nextElement();
-			if (step.thread() == threadImpl)
+		for (EventRequestImpl req : fEnabledRequests.values()) {
+			if (req instanceof StepRequestImpl && ((StepRequestImpl) req).thread() == threadImpl)
 				return true;
 		}
 		return false;
@@ -360,6 +347,12 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
 	@Override
 	public void deleteAllBreakpoints() {
 		EventRequestImpl.clearAllBreakpoints(this);
+		for (BreakpointRequest req : BREAKPOINT_TYPE.requests) {
+			RequestID id = ((EventRequestImpl) req).requestID();
+			if (id != null) {
+				fEnabledRequests.remove(id, req);
+			}
+		}
 		BREAKPOINT_TYPE.clear();
 	}
 
@@ -372,7 +365,7 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
 		type.requests.remove(req);
 		RequestID id = req.requestID();
 		if(id != null) {
-			type.enabledrequests.remove(id);
+			fEnabledRequests.remove(id, req);
 		}
 	}
 
@@ -562,39 +555,13 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
     	return MONITOR_WAITED_TYPE.getUnmodifiableList();
     }
 
+	/**
+	 * Removes the mapping of the request ID of the given request.
+	 */
 	public void removeRequestIDMapping(EventRequestImpl req) {
-		if (req instanceof AccessWatchpointRequestImpl) {
-			ACCESS_WATCHPOINT_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof BreakpointRequestImpl) {
-			BREAKPOINT_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof ClassPrepareRequestImpl) {
-			CLASS_PREPARE_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof ClassUnloadRequestImpl) {
-			CLASS_UNLOAD_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof ExceptionRequestImpl) {
-			EXCEPTION_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof MethodEntryRequestImpl) {
-			METHOD_ENTRY_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof MethodExitRequestImpl) {
-			METHOD_EXIT_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof ModificationWatchpointRequestImpl) {
-			MODIFICATION_WATCHPOINT_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof StepRequestImpl) {
-			STEP_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof ThreadDeathRequestImpl) {
-			THREAD_DEATH_TYPE.enabledrequests.remove(req.requestID());
-		} else if (req instanceof ThreadStartRequestImpl) {
-			THREAD_START_TYPE.enabledrequests.remove(req.requestID());
-		} else if(req instanceof MonitorContendedEnterRequestImpl) {
-			MONITOR_CONTENDED_ENTER_TYPE.enabledrequests.remove(req.requestID());
-		} else if(req instanceof MonitorContendedEnteredRequestImpl) {
-			MONITOR_CONTENDED_ENTERED_TYPE.enabledrequests.remove(req.requestID());
-		} else if(req instanceof MonitorWaitRequestImpl) {
-			MONITOR_WAIT_TYPE.enabledrequests.remove(req.requestID());
-		} else if(req instanceof MonitorWaitedRequestImpl) {
-			MONITOR_WAITED_TYPE.enabledrequests.remove(req.requestID());
-		} else if(req instanceof VMDeathRequestImpl) {
-			VM_DEATH_TYPE.enabledrequests.remove(req.requestID());
+		RequestID id = req.requestID();
+		if (id != null) {
+			fEnabledRequests.remove(id, req);
 		}
 	}
 
@@ -602,78 +569,13 @@ public class EventRequestManagerImpl extends MirrorImpl implements EventRequestM
 	 * Maps a request ID to requests.
 	 */
 	public void addRequestIDMapping(EventRequestImpl req) {
-		if (req instanceof AccessWatchpointRequestImpl) {
-			ACCESS_WATCHPOINT_TYPE.enabledrequests.put(req.requestID(), (AccessWatchpointRequestImpl) req);
-		} else if (req instanceof BreakpointRequestImpl) {
-			BREAKPOINT_TYPE.enabledrequests.put(req.requestID(), (BreakpointRequestImpl)req);
-		} else if (req instanceof ClassPrepareRequestImpl) {
-			CLASS_PREPARE_TYPE.enabledrequests.put(req.requestID(), (ClassPrepareRequestImpl)req);
-		} else if (req instanceof ClassUnloadRequestImpl) {
-			CLASS_UNLOAD_TYPE.enabledrequests.put(req.requestID(), (ClassUnloadRequestImpl)req);
-		} else if (req instanceof ExceptionRequestImpl) {
-			EXCEPTION_TYPE.enabledrequests.put(req.requestID(), (ExceptionRequestImpl)req);
-		} else if (req instanceof MethodEntryRequestImpl) {
-			METHOD_ENTRY_TYPE.enabledrequests.put(req.requestID(), (MethodEntryRequestImpl)req);
-		} else if (req instanceof MethodExitRequestImpl) {
-			METHOD_EXIT_TYPE.enabledrequests.put(req.requestID(), (MethodExitRequestImpl)req);
-		} else if (req instanceof ModificationWatchpointRequestImpl) {
-			MODIFICATION_WATCHPOINT_TYPE.enabledrequests.put(req.requestID(), (ModificationWatchpointRequestImpl)req);
-		} else if (req instanceof StepRequestImpl) {
-			STEP_TYPE.enabledrequests.put(req.requestID(), (StepRequestImpl)req);
-		} else if (req instanceof ThreadDeathRequestImpl) {
-			THREAD_DEATH_TYPE.enabledrequests.put(req.requestID(), (ThreadDeathRequestImpl)req);
-		} else if (req instanceof ThreadStartRequestImpl) {
-			THREAD_START_TYPE.enabledrequests.put(req.requestID(), (ThreadStartRequestImpl)req);
-		} else if(req instanceof MonitorWaitRequestImpl) {
-			MONITOR_WAIT_TYPE.enabledrequests.put(req.requestID(), (MonitorWaitRequestImpl)req);
-		} else if(req instanceof MonitorWaitedRequestImpl) {
-			MONITOR_WAITED_TYPE.enabledrequests.put(req.requestID(), (MonitorWaitedRequestImpl)req);
-		} else if(req instanceof MonitorContendedEnterRequestImpl) {
-			MONITOR_CONTENDED_ENTER_TYPE.enabledrequests.put(req.requestID(), (MonitorContendedEnterRequestImpl)req);
-		} else if(req instanceof MonitorContendedEnteredRequestImpl) {
-			MONITOR_CONTENDED_ENTERED_TYPE.enabledrequests.put(req.requestID(), (MonitorContendedEnteredRequestImpl)req);
-		} else if(req instanceof VMDeathRequestImpl) {
-			VM_DEATH_TYPE.enabledrequests.put(req.requestID(), (VMDeathRequest) req);
-		}
+		fEnabledRequests.put(req.requestID(), req);
 	}
 
 	/**
 	 * Find Request that matches event.
 	 */
 	public EventRequest findRequest(EventImpl event) {
-		if (event instanceof AccessWatchpointEventImpl) {
-			return ACCESS_WATCHPOINT_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof BreakpointEventImpl) {
-			return BREAKPOINT_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof ClassPrepareEventImpl) {
-			return CLASS_PREPARE_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof ClassUnloadEventImpl) {
-			return CLASS_UNLOAD_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof ExceptionEventImpl) {
-			return EXCEPTION_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof MethodEntryEventImpl) {
-			return METHOD_ENTRY_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof MethodExitEventImpl) {
-			return METHOD_EXIT_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof ModificationWatchpointEventImpl) {
-			return MODIFICATION_WATCHPOINT_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof StepEventImpl) {
-			return STEP_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof ThreadDeathEventImpl) {
-			return THREAD_DEATH_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof ThreadStartEventImpl) {
-			return THREAD_START_TYPE.enabledrequests.get(event.requestID());
-		} else if (event instanceof VMDeathEventImpl) {
-			return VM_DEATH_TYPE.enabledrequests.get(event.requestID());
-		} else if(event instanceof MonitorWaitEventImpl) {
-			return MONITOR_WAIT_TYPE.enabledrequests.get(event.requestID());
-		} else if(event instanceof MonitorWaitedEventImpl) {
-			return MONITOR_WAITED_TYPE.enabledrequests.get(event.requestID());
-		} else if(event instanceof MonitorContendedEnterEventImpl) {
-			return MONITOR_CONTENDED_ENTER_TYPE.enabledrequests.get(event.requestID());
-		} else if(event instanceof MonitorContendedEnteredEventImpl) {
-			return MONITOR_CONTENDED_ENTERED_TYPE.enabledrequests.get(event.requestID());
-		}
-		throw new InternalError(RequestMessages.EventRequestManagerImpl_Got_event_of_unknown_type_2);
+		return fEnabledRequests.get(event.requestID());
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,14 +10,13 @@
  *******************************************************************************/
 package org.eclipse.jdi.internal.request;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 
 import org.eclipse.jdi.internal.VirtualMachineImpl;
 import org.eclipse.jdi.internal.event.EventImpl;
 import org.eclipse.jdi.internal.jdwp.JdwpCommandPacket;
+import org.eclipse.jdi.internal.jdwp.JdwpPacketWriter;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 
 /**
@@ -52,8 +51,7 @@ public class ReenterStepRequestImpl extends StepRequestImpl implements
 
 		initJdwpRequest();
 		try {
-			ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
-			DataOutputStream outData = new DataOutputStream(outBytes);
+			JdwpPacketWriter outData = JdwpPacketWriter.acquire();
 			writeByte(eventKind(),
 					"event kind", EventImpl.eventKindMap(), outData); // Always 01 for Step event. //$NON-NLS-1$
 			writeByte(suspendPolicyJDWP(), "suspend policy", outData); //$NON-NLS-1$
@@ -61,7 +59,7 @@ public class ReenterStepRequestImpl extends StepRequestImpl implements
 			writeModifiers(outData);
 
 			JdwpReplyPacket replyPacket = requestVM(
-					JdwpCommandPacket.HCR_REENTER_ON_EXIT, outBytes);
+					JdwpCommandPacket.HCR_REENTER_ON_EXIT, outData);
 			defaultReplyErrorHandler(replyPacket.errorCode());
 			DataInputStream replyData = replyPacket.dataInStream();
 			fRequestID = RequestID.read(this, replyData);
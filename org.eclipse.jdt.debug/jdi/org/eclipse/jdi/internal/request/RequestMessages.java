@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2009 IBM Corporation and others.
+ *  Copyright (c) 2000, 2018 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -21,7 +21,6 @@ public class RequestMessages extends NLS {
 	public static String EventRequestImpl_Invalid_step_size_encountered___4;
 	public static String EventRequestImpl_Invalid_step_depth_encountered___5;
 	public static String EventRequestManagerImpl_EventRequest_type_of__0__is_unknown_1;
-	public static String EventRequestManagerImpl_Got_event_of_unknown_type_2;
 
 	static {
 		// load message values from bundle file
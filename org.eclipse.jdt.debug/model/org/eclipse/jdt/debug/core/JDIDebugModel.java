@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -38,6 +38,7 @@ import org.eclipse.jdt.internal.debug.core.breakpoints.JavaMethodEntryBreakpoint
 import org.eclipse.jdt.internal.debug.core.breakpoints.JavaPatternBreakpoint;
 import org.eclipse.jdt.internal.debug.core.breakpoints.JavaStratumLineBreakpoint;
 import org.eclipse.jdt.internal.debug.core.breakpoints.JavaTargetPatternBreakpoint;
+import org.eclipse.jdt.internal.debug.core.breakpoints.JavaTracepoint;
 import org.eclipse.jdt.internal.debug.core.breakpoints.JavaWatchpoint;
 import org.eclipse.jdt.internal.debug.core.model.JDIDebugTarget;
 import org.osgi.service.prefs.BackingStoreException;
@@ -342,6 +343,66 @@ public class JDIDebugModel {
 				charStart, charEnd, hitCount, register, attributes);
 	}
 
+	/**
+	 * Creates and returns a tracepoint in the type with the given name, at the
+	 * given line number. A tracepoint is a line breakpoint that never suspends
+	 * execution: each time it is hit, the values of the given local variables
+	 * and fields are appended to the given trace file, or written to the
+	 * console of the launch, and the thread is resumed right away. The marker
+	 * associated with the tracepoint will be created on the specified
+	 * resource.
+	 *
+	 * @param resource
+	 *            the resource on which to create the associated breakpoint
+	 *            marker
+	 * @param typeName
+	 *            the fully qualified name of the type the tracepoint is to be
+	 *            installed in, as for
+	 *            {@link #createLineBreakpoint(IResource, String, int, int, int, int, boolean, Map)}
+	 * @param lineNumber
+	 *            the lineNumber on which the tracepoint is set - line numbers
+	 *            are 1 based, associated with the source file in which the
+	 *            tracepoint is set
+	 * @param charStart
+	 *            the first character index associated with the tracepoint, or
+	 *            -1 if unspecified, in the source file in which the tracepoint
+	 *            is set
+	 * @param charEnd
+	 *            the last character index associated with the tracepoint, or -1
+	 *            if unspecified, in the source file in which the tracepoint is
+	 *            set
+	 * @param variables
+	 *            the names of the local variables visible at the line, or of
+	 *            the fields of the type, whose values are recorded
+	 * @param traceFile
+	 *            the path of the file the hits are appended to, or
+	 *            <code>null</code> to write them to the console of the launch
+	 * @param register
+	 *            whether to add this tracepoint to the breakpoint manager
+	 * @param attributes
+	 *            a map of client defined attributes that should be assigned to
+	 *            the underlying breakpoint marker on creation, or
+	 *            <code>null</code> if none.
+	 * @return a tracepoint
+	 * @exception CoreException
+	 *                If this method fails. Reasons include:
+	 *                <ul>
+	 *                <li>Failure creating underlying marker. The exception's
+	 *                status contains the underlying exception responsible for
+	 *                the failure.</li>
+	 *                </ul>
+	 * @since 3.12
+	 */
+	public static IJavaLineBreakpoint createTracepoint(IResource resource,
+			String typeName, int lineNumber, int charStart, int charEnd,
+			String[] variables, String traceFile, boolean register,
+			Map<String, Object> attributes) throws CoreException {
+		if (attributes == null)
+			attributes = new HashMap<>(10);
+		return new JavaTracepoint(resource, typeName, lineNumber, charStart,
+				charEnd, variables, traceFile, register, attributes);
+	}
+
 	/**
 	 * Creates and returns a pattern breakpoint for the given resource at the
 	 * given line number, which is installed in all classes whose fully
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.debug.core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.debug.core.DebugEvent;
+import org.eclipse.debug.core.DebugPlugin;
+
+/**
+ * Merges the debug events fired by the elements of a debug target in a short
+ * time window into one debug event set. Only create, terminate and change
+ * events are delayed, other events flush the pending ones and are fired right
+ * away. Events are fired while holding the lock of the coalescer, so that
+ * they are fired in the order they were added.
+ * <p>
+ * Pending events are fired when no event has been added for
+ * {@link #QUIET_PERIOD} milliseconds, or at the latest {@link #MAX_LATENCY}
+ * milliseconds after the first of them was added. Equal change events of the
+ * same element are only fired once per batch.
+ * </p>
+ *
+ * @see JDIDebugPlugin#PREF_COALESCE_DEBUG_EVENTS
+ * @see EventDispatcher#fire(DebugEvent[])
+ */
+class DebugEventCoalescer {
+
+	/**
+	 * Time without new events after which pending events are fired, in
+	 * milliseconds.
+	 */
+	static final long QUIET_PERIOD = 50;
+
+	/**
+	 * Maximum time events are delayed, in milliseconds.
+	 */
+	static final long MAX_LATENCY = 250;
+
+	/**
+	 * Pending events, in the order they were added.
+	 */
+	private List<DebugEvent> fPending = new ArrayList<>();
+
+	/**
+	 * Time the first pending event and the last one were added.
+	 */
+	private long fFirstAdded;
+	private long fLastAdded;
+
+	/**
+	 * Whether events are fired right away, once the coalescer is disposed.
+	 */
+	private boolean fDisposed;
+
+	private final Job fFireJob = new Job("JDI Debug Event Coalescing") { //$NON-NLS-1$
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			long delay;
+			synchronized (DebugEventCoalescer.this) {
+				long now = System.currentTimeMillis();
+				delay = Math.min(fLastAdded + QUIET_PERIOD, fFirstAdded + MAX_LATENCY) - now;
+				if (delay <= 0) {
+					flush();
+				}
+			}
+			if (delay > 0) {
+				schedule(delay);
+			}
+			return Status.OK_STATUS;
+		}
+	};
+
+	DebugEventCoalescer() {
+		fFireJob.setSystem(true);
+	}
+
+	/**
+	 * Returns whether the given event can be delayed.
+	 */
+	private static boolean isCoalescable(DebugEvent event) {
+		switch (event.getKind()) {
+			case DebugEvent.CREATE:
+			case DebugEvent.TERMINATE:
+			case DebugEvent.CHANGE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Fires the given events, after the pending ones. The events are added to
+	 * the pending events if they can all be delayed.
+	 *
+	 * @param events
+	 *            the events to fire
+	 */
+	synchronized void fire(DebugEvent[] events) {
+		boolean delay = !fDisposed;
+		for (int i = 0; delay && i < events.length; i++) {
+			delay = isCoalescable(events[i]);
+		}
+		if (!delay) {
+			flush();
+			fireDebugEventSet(events);
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (fPending.isEmpty()) {
+			fFirstAdded = now;
+			fFireJob.schedule(QUIET_PERIOD);
+		}
+		fLastAdded = now;
+		for (DebugEvent event : events) {
+			fPending.add(event);
+		}
+	}
+
+	/**
+	 * Fires the pending events.
+	 */
+	synchronized void flush() {
+		if (fPending.isEmpty()) {
+			return;
+		}
+		List<DebugEvent> pending = fPending;
+		fPending = new ArrayList<>();
+		List<DebugEvent> events = new ArrayList<>(pending.size());
+		// details of the change events of each element
+		Map<Object, List<Integer>> changes = new IdentityHashMap<>();
+		for (DebugEvent event : pending) {
+			if (event.getKind() == DebugEvent.CHANGE) {
+				List<Integer> details = changes.computeIfAbsent(event.getSource(), source -> new ArrayList<>(1));
+				Integer detail = Integer.valueOf(event.getDetail());
+				if (details.contains(detail)) {
+					continue;
+				}
+				details.add(detail);
+			}
+			events.add(event);
+		}
+		fireDebugEventSet(events.toArray(new DebugEvent[events.size()]));
+	}
+
+	/**
+	 * Fires the pending events. Events added afterwards are fired right away.
+	 */
+	synchronized void dispose() {
+		flush();
+		fDisposed = true;
+	}
+
+	private static void fireDebugEventSet(DebugEvent[] events) {
+		DebugPlugin plugin = DebugPlugin.getDefault();
+		if (plugin != null) { // check that not in the process of shutting down
+			plugin.fireDebugEventSet(events);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,15 +10,17 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.debug.core;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.debug.core.DebugEvent;
@@ -27,12 +29,17 @@ import org.eclipse.debug.core.DebugPlugin;
 import org.eclipse.jdt.debug.core.IJavaLineBreakpoint;
 import org.eclipse.jdt.internal.debug.core.model.JDIDebugTarget;
 
+import com.sun.jdi.ThreadReference;
 import com.sun.jdi.VMDisconnectedException;
 import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.event.ClassPrepareEvent;
 import com.sun.jdi.event.Event;
 import com.sun.jdi.event.EventIterator;
 import com.sun.jdi.event.EventQueue;
 import com.sun.jdi.event.EventSet;
+import com.sun.jdi.event.LocatableEvent;
+import com.sun.jdi.event.ThreadDeathEvent;
+import com.sun.jdi.event.ThreadStartEvent;
 import com.sun.jdi.event.VMDeathEvent;
 import com.sun.jdi.event.VMDisconnectEvent;
 import com.sun.jdi.event.VMStartEvent;
@@ -55,6 +62,12 @@ import com.sun.jdi.request.EventRequest;
  * only resumed in if all event handlers agree that the thread should be
  * resumed.
  * </p>
+ * <p>
+ * Event sets that require expression evaluation are dispatched by a bounded
+ * pool of jobs, so that the events of different threads are processed in
+ * parallel while the event sets of each thread are processed in order. Events
+ * of the life cycle of the VM are dispatched after all preceding event sets.
+ * </p>
  */
 
 public class EventDispatcher implements Runnable {
@@ -68,9 +81,10 @@ public class EventDispatcher implements Runnable {
 	private volatile boolean fShutdown;
 	/**
 	 * Table of event listeners. Table is a mapping of <code>EventRequest</code>
-	 * to <code>IJDIEventListener</code>.
+	 * to <code>IJDIEventListener</code>. Listeners are added and removed while
+	 * events are dispatched.
 	 */
-	private HashMap<EventRequest, IJDIEventListener> fEventHandlers;
+	private ConcurrentHashMap<EventRequest, IJDIEventListener> fEventHandlers;
 
 	/**
 	 * Queue of debug model events to fire, created when processing events on
@@ -78,6 +92,41 @@ public class EventDispatcher implements Runnable {
 	 */
 	private Map<EventSet, List<DebugEvent>> fSetToQueue = new HashMap<>();
 
+	/**
+	 * Merges the debug events fired for event sets, or <code>null</code> if
+	 * they are fired as they come.
+	 */
+	private final DebugEventCoalescer fCoalescer;
+
+	/**
+	 * Maximum number of jobs dispatching event sets that require the
+	 * evaluation of expressions, like conditional breakpoint hits.
+	 */
+	private static final int MAX_WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Queues of the event sets dispatched by worker jobs, keyed by thread
+	 * reference. Also the lock guarding the queues and the worker count.
+	 */
+	private final Map<Object, ThreadQueue> fThreadQueues = new HashMap<>();
+
+	/**
+	 * Thread queues with event sets and no worker dispatching them.
+	 */
+	private final ArrayDeque<ThreadQueue> fReadyQueues = new ArrayDeque<>();
+
+	/**
+	 * Number of worker jobs scheduled or running.
+	 */
+	private int fWorkerCount;
+
+	/**
+	 * Number of jobs dispatching an event set that occurred in a thread while
+	 * a worker dispatched an event set of that thread, see
+	 * {@link #schedule(EventSet)}.
+	 */
+	private int fNestedJobCount;
+
 	/**
 	 * Constructs a new event dispatcher listening for events originating from
 	 * the specified debug target's underlying VM.
@@ -86,9 +135,15 @@ public class EventDispatcher implements Runnable {
 	 *            the target this event dispatcher belongs to
 	 */
 	public EventDispatcher(JDIDebugTarget target) {
-		fEventHandlers = new HashMap<>(10);
+		fEventHandlers = new ConcurrentHashMap<>(16);
 		fTarget = target;
 		fShutdown = false;
+		boolean coalesce = Platform.getPreferencesService().getBoolean(
+				JDIDebugPlugin.getUniqueIdentifier(),
+				JDIDebugPlugin.PREF_COALESCE_DEBUG_EVENTS,
+				false,
+				null);
+		fCoalescer = coalesce ? new DebugEventCoalescer() : null;
 	}
 
 	/**
@@ -118,7 +173,9 @@ public class EventDispatcher implements Runnable {
 		boolean vote = false;
 		boolean resume = true;
 		int index = -1;
-		List<Event> deferredEvents = null;
+		Event[] deferredEvents = null;
+		IJDIEventListener[] deferredListeners = null;
+		int deferredCount = 0;
 		while (iter.hasNext()) {
 			index++;
 			if (isShutdown()) {
@@ -129,7 +186,7 @@ public class EventDispatcher implements Runnable {
 				continue;
 			}
 			// Dispatch events to registered listeners, if any
-			IJDIEventListener listener = fEventHandlers.get(event.request());
+			IJDIEventListener listener = getListener(event);
 			listeners[index] = listener;
 			if (listener != null) {
 				if (listener instanceof IJavaLineBreakpoint) {
@@ -139,9 +196,11 @@ public class EventDispatcher implements Runnable {
 					try {
 						if (((IJavaLineBreakpoint) listener).isConditionEnabled()) {
 							if (deferredEvents == null) {
-								deferredEvents = new ArrayList<>(5);
+								deferredEvents = new Event[listeners.length];
+								deferredListeners = new IJDIEventListener[listeners.length];
 							}
-							deferredEvents.add(event);
+							deferredEvents[deferredCount] = event;
+							deferredListeners[deferredCount++] = listener;
 							continue;
 						}
 					} catch (CoreException exception) {
@@ -167,26 +226,14 @@ public class EventDispatcher implements Runnable {
 			}
 		}
 
-		// process deferred conditional breakpoint events
-		if (deferredEvents != null) {
-			Iterator<Event> deferredIter = deferredEvents.iterator();
-			while (deferredIter.hasNext()) {
-				if (isShutdown()) {
-					return;
-				}
-				Event event = deferredIter.next();
-				if (event == null) {
-					continue;
-				}
-				// Dispatch events to registered listeners, if any
-				IJDIEventListener listener = fEventHandlers
-						.get(event.request());
-				if (listener != null) {
-					vote = true;
-					resume = listener.handleEvent(event, fTarget, !resume, eventSet) && resume;
-					continue;
-				}
+		// process deferred conditional breakpoint events, with the listeners
+		// looked up above
+		for (int i = 0; i < deferredCount; i++) {
+			if (isShutdown()) {
+				return;
 			}
+			vote = true;
+			resume = deferredListeners[i].handleEvent(deferredEvents[i], fTarget, !resume, eventSet) && resume;
 		}
 
 		// notify handlers of the end result
@@ -227,7 +274,7 @@ public class EventDispatcher implements Runnable {
 			if (event == null) {
 				continue;
 			}
-			IJDIEventListener listener = fEventHandlers.get(event.request());
+			IJDIEventListener listener = getListener(event);
 			if (listener instanceof IJavaLineBreakpoint) {
 				try {
 					if (((IJavaLineBreakpoint) listener).isConditionEnabled()) {
@@ -242,6 +289,15 @@ public class EventDispatcher implements Runnable {
 		return false;
 	}
 
+	/**
+	 * Returns the listener registered for the request of the given event, or
+	 * <code>null</code> if none.
+	 */
+	private IJDIEventListener getListener(Event event) {
+		EventRequest request = event.request();
+		return request == null ? null : fEventHandlers.get(request);
+	}
+
 	/** @noreference public for test purposes */
 	public abstract class AbstractDispatchJob extends Job {
 		protected AbstractDispatchJob(String name) {
@@ -264,6 +320,206 @@ public class EventDispatcher implements Runnable {
 		}
 	}
 
+	/**
+	 * Event sets of one thread that are dispatched by the worker jobs, in the
+	 * order they were received.
+	 */
+	private static final class ThreadQueue {
+		final Object fThread;
+		final ArrayDeque<EventSet> fEventSets = new ArrayDeque<>(2);
+		/**
+		 * Whether a worker is dispatching an event set of this thread.
+		 */
+		boolean fRunning;
+
+		ThreadQueue(Object thread) {
+			fThread = thread;
+		}
+	}
+
+	/**
+	 * Dispatches the event sets of the thread queues that are ready, until
+	 * there are none left.
+	 */
+	private class DispatchWorker extends AbstractDispatchJob {
+		DispatchWorker() {
+			super("JDI Event Dispatch"); //$NON-NLS-1$
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			ThreadQueue queue = null;
+			EventSet eventSet = null;
+			while (true) {
+				synchronized (fThreadQueues) {
+					if (queue != null) {
+						queue.fRunning = false;
+						if (queue.fEventSets.isEmpty()) {
+							fThreadQueues.remove(queue.fThread);
+						} else {
+							fReadyQueues.addLast(queue);
+						}
+					}
+					queue = fReadyQueues.pollFirst();
+					if (queue == null || isShutdown()) {
+						fWorkerCount--;
+						fThreadQueues.notifyAll();
+						return Status.OK_STATUS;
+					}
+					queue.fRunning = true;
+					eventSet = queue.fEventSets.removeFirst();
+				}
+				try {
+					dispatch(eventSet);
+				} catch (RuntimeException e) {
+					JDIDebugPlugin.log(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the thread in which the events of the given event set occurred,
+	 * or <code>null</code> if not associated with a thread.
+	 *
+	 * @param eventSet
+	 *            event set
+	 * @return the thread of the event set or <code>null</code>
+	 */
+	private static ThreadReference getThread(EventSet eventSet) {
+		EventIterator iter = eventSet.eventIterator();
+		while (iter.hasNext()) {
+			Event event = iter.nextEvent();
+			if (event instanceof LocatableEvent) {
+				return ((LocatableEvent) event).thread();
+			} else if (event instanceof ClassPrepareEvent) {
+				return ((ClassPrepareEvent) event).thread();
+			} else if (event instanceof ThreadStartEvent) {
+				return ((ThreadStartEvent) event).thread();
+			} else if (event instanceof ThreadDeathEvent) {
+				return ((ThreadDeathEvent) event).thread();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the given event set contains an event of the life cycle
+	 * of the VM, which is dispatched after all the event sets received before
+	 * it.
+	 */
+	private static boolean isVMEventSet(EventSet eventSet) {
+		EventIterator iter = eventSet.eventIterator();
+		while (iter.hasNext()) {
+			Event event = iter.nextEvent();
+			if (event instanceof VMStartEvent || event instanceof VMDeathEvent || event instanceof VMDisconnectEvent) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Dispatches the given event set in a job, independently of the worker
+	 * jobs. The job is counted with the workers, so that
+	 * {@link #awaitWorkers()} waits for it as well.
+	 */
+	private void scheduleDispatchJob(final EventSet eventSet) {
+		Job job = new AbstractDispatchJob("JDI Expression Evaluation Event Dispatch") { //$NON-NLS-1$
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					dispatch(eventSet);
+				} finally {
+					synchronized (fThreadQueues) {
+						fNestedJobCount--;
+						fThreadQueues.notifyAll();
+					}
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		synchronized (fThreadQueues) {
+			fNestedJobCount++;
+		}
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	/**
+	 * Dispatches the given event set received from the event queue.
+	 * <p>
+	 * Event sets that require the evaluation of an expression are dispatched
+	 * by a bounded number of worker jobs, one event set of a thread at a time
+	 * and in the order they were received. Later event sets of a thread that
+	 * still has event sets waiting for a worker are queued behind them. Other
+	 * event sets are dispatched by the thread reading the event queue.
+	 * </p>
+	 * <p>
+	 * An event set that occurs in a thread while a worker dispatches an event
+	 * set of that thread, for instance when the evaluation of a breakpoint
+	 * condition hits a breakpoint, must not wait for that worker (bug 269231).
+	 * It is dispatched right away, in its own job if it requires an
+	 * evaluation. Such jobs are not bounded, since each one is started on
+	 * behalf of a worker or job blocked in an evaluation, but they are
+	 * awaited like the workers.
+	 * </p>
+	 *
+	 * @param eventSet
+	 *            events to dispatch
+	 */
+	private void schedule(EventSet eventSet) {
+		if (isVMEventSet(eventSet)) {
+			awaitWorkers();
+			dispatch(eventSet);
+			return;
+		}
+		boolean evaluation = requiresExpressionEvaluation(eventSet);
+		Object thread = getThread(eventSet);
+		if (thread == null) {
+			thread = eventSet;
+		}
+		synchronized (fThreadQueues) {
+			ThreadQueue queue = fThreadQueues.get(thread);
+			if (queue == null ? evaluation : !queue.fRunning) {
+				if (queue == null) {
+					queue = new ThreadQueue(thread);
+					fThreadQueues.put(thread, queue);
+					fReadyQueues.addLast(queue);
+				}
+				queue.fEventSets.addLast(eventSet);
+				if (fWorkerCount < MAX_WORKERS && fWorkerCount < fReadyQueues.size()) {
+					fWorkerCount++;
+					new DispatchWorker().schedule();
+				}
+				return;
+			}
+		}
+		if (evaluation) {
+			scheduleDispatchJob(eventSet);
+		} else {
+			dispatch(eventSet);
+		}
+	}
+
+	/**
+	 * Waits until the worker jobs have dispatched all queued event sets, and
+	 * the jobs dispatching nested event sets are done.
+	 */
+	private void awaitWorkers() {
+		synchronized (fThreadQueues) {
+			while ((fWorkerCount > 0 || fNestedJobCount > 0) && !isShutdown()) {
+				try {
+					fThreadQueues.wait(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
 	/**
 	 * Continuously reads events that are coming from the event queue, until
 	 * this event dispatcher is shutdown. A debug target starts a thread on this
@@ -287,20 +543,7 @@ public class EventDispatcher implements Runnable {
 					}
 
 					if (eventSet != null) {
-						if (!requiresExpressionEvaluation(eventSet)) {
-							dispatch(eventSet);
-						} else {
-							// 269231 always evaluate expressions in a separate job to avoid deadlocks
-							Job job = new AbstractDispatchJob("JDI Expression Evaluation Event Dispatch") { //$NON-NLS-1$
-								@Override
-								protected IStatus run(IProgressMonitor monitor) {
-									dispatch(eventSet);
-									return Status.OK_STATUS;
-								}
-							};
-							job.setSystem(true);
-							job.schedule();
-						}
+						schedule(eventSet);
 					}
 				} catch (InterruptedException e) {
 					break;
@@ -317,6 +560,9 @@ public class EventDispatcher implements Runnable {
 	public void shutdown() {
 		fShutdown = true;
 		Job.getJobManager().cancel(this);
+		if (fCoalescer != null) {
+			fCoalescer.dispose();
+		}
 	}
 
 	/**
@@ -341,7 +587,9 @@ public class EventDispatcher implements Runnable {
 	 */
 	public void addJDIEventListener(IJDIEventListener listener,
 			EventRequest request) {
-		fEventHandlers.put(request, listener);
+		if (request != null && listener != null) {
+			fEventHandlers.put(request, listener);
+		}
 	}
 
 	/**
@@ -355,7 +603,9 @@ public class EventDispatcher implements Runnable {
 	 *            the event request to de-register
 	 */
 	public void removeJDIEventListener(IJDIEventListener listener, EventRequest request) {
-		fEventHandlers.remove(request);
+		if (request != null) {
+			fEventHandlers.remove(request);
+		}
 	}
 
 	/**
@@ -391,7 +641,25 @@ public class EventDispatcher implements Runnable {
 				list = fSetToQueue.remove(set);
 			}
 			if (list != null) {
-				DebugEvent[] events = list.toArray(new DebugEvent[list.size()]);
+				fire(list.toArray(new DebugEvent[list.size()]));
+			}
+		}
+	}
+
+	/**
+	 * Fires the given debug events. When debug events are coalesced, the
+	 * events are fired after the pending ones and create, terminate and change
+	 * events may be delayed, see {@link JDIDebugPlugin#PREF_COALESCE_DEBUG_EVENTS}.
+	 *
+	 * @param events
+	 *            the events to fire
+	 */
+	public void fire(DebugEvent[] events) {
+		if (fCoalescer != null) {
+			fCoalescer.fire(events);
+		} else {
+			DebugPlugin plugin = DebugPlugin.getDefault();
+			if (plugin != null) { // check that not in the process of shutting down
 				plugin.fireDebugEventSet(events);
 			}
 		}
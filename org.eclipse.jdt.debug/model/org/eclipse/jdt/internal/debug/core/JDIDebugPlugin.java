@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.debug.core;
 
+import java.io.File;
+
 import org.eclipse.core.resources.ISaveContext;
 import org.eclipse.core.resources.ISaveParticipant;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -29,6 +31,7 @@ import org.eclipse.debug.core.DebugPlugin;
 import org.eclipse.debug.core.ILaunchManager;
 import org.eclipse.debug.core.model.IDebugTarget;
 import org.eclipse.jdi.Bootstrap;
+import org.eclipse.jdi.internal.VirtualMachineManagerImpl;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.dom.Message;
 import org.eclipse.jdt.debug.core.IJavaBreakpoint;
@@ -41,6 +44,7 @@ import org.eclipse.jdt.debug.core.IJavaType;
 import org.eclipse.jdt.debug.core.JDIDebugModel;
 import org.eclipse.jdt.debug.eval.IAstEvaluationEngine;
 import org.eclipse.jdt.internal.debug.core.breakpoints.BreakpointListenerManager;
+import org.eclipse.jdt.internal.debug.core.breakpoints.CompiledConditionCache;
 import org.eclipse.jdt.internal.debug.core.hcr.JavaHotCodeReplaceManager;
 import org.eclipse.jdt.internal.debug.core.model.JDIDebugTarget;
 import org.eclipse.jdt.internal.debug.core.model.JDIThread;
@@ -107,6 +111,76 @@ public class JDIDebugPlugin extends Plugin implements IEclipsePreferences.IPrefe
 	public static final String PREF_ALL_INSTANCES_MAX_COUNT = JDIDebugPlugin
 			.getUniqueIdentifier() + ".all_instances_max_count"; //$NON-NLS-1$
 
+	/**
+	 * Boolean preference controlling if the create, terminate and change debug
+	 * events fired by the elements of a debug target, like the creation and
+	 * termination of threads while processing bursts of JDI events, are merged
+	 * into fewer debug event sets.
+	 *
+	 * @since 3.12
+	 */
+	public static final String PREF_COALESCE_DEBUG_EVENTS = JDIDebugPlugin
+			.getUniqueIdentifier() + ".coalesce_debug_events"; //$NON-NLS-1$
+
+	/**
+	 * Boolean preference controlling if the model threads of a debug target
+	 * are only created for the threads that suspend or are looked up, rather
+	 * than for all threads of the virtual machine. Other threads are only
+	 * recorded by identifier, and each request for the threads of the debug
+	 * target creates the model threads of a page of them. Suspending and
+	 * refreshing the debug target do not create model threads.
+	 *
+	 * @since 3.12
+	 */
+	public static final String PREF_LAZY_THREADS = JDIDebugPlugin
+			.getUniqueIdentifier() + ".lazy_threads"; //$NON-NLS-1$
+
+	/**
+	 * Integer preference determining the number of stack frames retrieved at
+	 * once from a suspended thread. The top frames are retrieved on suspend,
+	 * the frames below when asked for.
+	 *
+	 * @since 3.12
+	 */
+	public static final String PREF_STACK_FRAME_PAGE_SIZE = JDIDebugPlugin
+			.getUniqueIdentifier() + ".stack_frame_page_size"; //$NON-NLS-1$
+
+	/**
+	 * Boolean preference controlling if the threads of a virtual machine
+	 * cache their frames, frame count, status, name and owned monitors while
+	 * they are suspended, rather than asking the virtual machine each time.
+	 * The cached values are discarded when a thread is resumed, when its
+	 * frames are popped, when it is forced to return early and when a method
+	 * is invoked in it.
+	 *
+	 * @since 3.12
+	 */
+	public static final String PREF_SUSPEND_CACHE = JDIDebugPlugin
+			.getUniqueIdentifier() + ".suspend_cache"; //$NON-NLS-1$
+
+	/**
+	 * Boolean preference controlling if the loaded types of a virtual machine
+	 * are looked up in an index kept current from class prepare events, rather
+	 * than by retrieving all loaded classes. The index requests a class
+	 * prepare event for every type loaded by the virtual machine.
+	 *
+	 * @since 3.12
+	 */
+	public static final String PREF_LOADED_CLASS_INDEX = JDIDebugPlugin
+			.getUniqueIdentifier() + ".loaded_class_index"; //$NON-NLS-1$
+
+	/**
+	 * Boolean preference controlling if the line tables, local variable
+	 * tables and source names of the types of the Java runtime of a virtual
+	 * machine are kept in a store in the state location of this plug-in, and
+	 * read from it by later debug sessions instead of being retrieved from the
+	 * virtual machine again.
+	 *
+	 * @since 3.12
+	 */
+	public static final String PREF_TYPE_METADATA_CACHE = JDIDebugPlugin
+			.getUniqueIdentifier() + ".type_metadata_cache"; //$NON-NLS-1$
+
 	/**
 	 * Extension point for java logical structures.
 	 *
@@ -314,6 +388,37 @@ public class JDIDebugPlugin extends Plugin implements IEclipsePreferences.IPrefe
 		if(node != null) {
 			node.addPreferenceChangeListener(this);
 		}
+		if (isTypeMetadataCacheEnabled()) {
+			updateTypeMetadataCache();
+		}
+	}
+
+	/**
+	 * Returns whether the type metadata of the Java runtimes is kept across
+	 * debug sessions, see {@link #PREF_TYPE_METADATA_CACHE}.
+	 */
+	private static boolean isTypeMetadataCacheEnabled() {
+		return Platform.getPreferencesService().getBoolean(
+				getUniqueIdentifier(),
+				PREF_TYPE_METADATA_CACHE,
+				false,
+				null);
+	}
+
+	/**
+	 * Sets the directory of the type metadata store of the JDI
+	 * implementation according to {@link #PREF_TYPE_METADATA_CACHE}. The
+	 * store is used by the virtual machines connected afterwards.
+	 */
+	private void updateTypeMetadataCache() {
+		VirtualMachineManager manager = Bootstrap.virtualMachineManager();
+		if (manager instanceof VirtualMachineManagerImpl) {
+			File directory = null;
+			if (isTypeMetadataCacheEnabled()) {
+				directory = getStateLocation().append("typemetadata").toFile(); //$NON-NLS-1$
+			}
+			((VirtualMachineManagerImpl) manager).setMetadataCacheDirectory(directory);
+		}
 	}
 
 	/**
@@ -349,6 +454,7 @@ public class JDIDebugPlugin extends Plugin implements IEclipsePreferences.IPrefe
 				node.removePreferenceChangeListener(this);
 			}
 			JavaHotCodeReplaceManager.getDefault().shutdown();
+			CompiledConditionCache.shutdown();
 			ILaunchManager launchManager = DebugPlugin.getDefault()
 					.getLaunchManager();
 			IDebugTarget[] targets = launchManager.getDebugTargets();
@@ -382,6 +488,8 @@ public class JDIDebugPlugin extends Plugin implements IEclipsePreferences.IPrefe
 					((IJavaDebugTarget) target).setRequestTimeout(value);
 				}
 			}
+		} else if (event.getKey().equals(PREF_TYPE_METADATA_CACHE)) {
+			updateTypeMetadataCache();
 		}
 	}
 
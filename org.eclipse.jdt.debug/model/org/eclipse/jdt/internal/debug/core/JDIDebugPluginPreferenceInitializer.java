@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2016 IBM Corporation and others.
+ * Copyright (c) 2004, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -42,6 +42,12 @@ public class JDIDebugPluginPreferenceInitializer extends
 		node.putBoolean(JDIDebugPlugin.PREF_SHOW_REFERENCES_IN_VAR_VIEW, false);
 		node.putInt(JDIDebugPlugin.PREF_ALL_REFERENCES_MAX_COUNT, 100);
 		node.putInt(JDIDebugPlugin.PREF_ALL_INSTANCES_MAX_COUNT, 100);
+		node.putBoolean(JDIDebugPlugin.PREF_COALESCE_DEBUG_EVENTS, false);
+		node.putBoolean(JDIDebugPlugin.PREF_LAZY_THREADS, false);
+		node.putInt(JDIDebugPlugin.PREF_STACK_FRAME_PAGE_SIZE, 32);
+		node.putBoolean(JDIDebugPlugin.PREF_SUSPEND_CACHE, false);
+		node.putBoolean(JDIDebugPlugin.PREF_LOADED_CLASS_INDEX, true);
+		node.putBoolean(JDIDebugPlugin.PREF_TYPE_METADATA_CACHE, false);
 		node.putBoolean(JDIDebugModel.PREF_FILTER_BREAKPOINTS_FROM_UNRELATED_SOURCES, true);
 		node.putBoolean(JDIDebugModel.PREF_SHOW_STEP_RESULT, true);
 	}
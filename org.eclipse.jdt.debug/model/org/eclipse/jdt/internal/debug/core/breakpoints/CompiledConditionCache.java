@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.debug.core.breakpoints;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.eclipse.debug.core.DebugException;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.debug.core.IJavaStackFrame;
+import org.eclipse.jdt.debug.eval.IAstEvaluationEngine;
+import org.eclipse.jdt.debug.eval.ICompiledExpression;
+import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
+import org.eclipse.jdt.internal.debug.eval.ast.engine.ASTEvaluationEngine;
+import org.eclipse.jdt.internal.debug.eval.ast.engine.EvaluationSourceGenerator;
+
+import com.sun.jdi.Location;
+
+/**
+ * Cache of the compiled conditions of breakpoints, shared by all threads and
+ * debug targets. A condition is compiled in the context of a location, from the
+ * source of the project, so the compiled expression only depends on the
+ * condition, the declaring type and line of the location, and the project and
+ * its compiler options.
+ * <p>
+ * Threads hitting a breakpoint whose condition is not compiled yet wait for
+ * the first of them to compile it. Conditions can also be compiled when a
+ * breakpoint is installed, before any thread hits it (see
+ * {@link ConditionPrecompiler}). Entries are discarded when the compilation
+ * unit of their declaring type or the classpath of their project changes.
+ * </p>
+ */
+public class CompiledConditionCache implements IElementChangedListener {
+
+	/**
+	 * Maximum number of compiled conditions kept.
+	 */
+	private static final int MAX_ENTRIES = 512;
+
+	private static CompiledConditionCache fgDefault;
+
+	/**
+	 * The context a condition is compiled in.
+	 */
+	private static final class Key {
+		final String fCondition;
+		final String fTypeName;
+		final int fLineNumber;
+		final boolean fStatic;
+		final IJavaProject fProject;
+		final Map<String, String> fOptions;
+		final int fHashCode;
+
+		Key(String condition, String typeName, int lineNumber, boolean isStatic,
+				IJavaProject project, Map<String, String> options) {
+			fCondition = condition;
+			fTypeName = typeName;
+			fLineNumber = lineNumber;
+			fStatic = isStatic;
+			fProject = project;
+			fOptions = options;
+			int hashCode = condition.hashCode();
+			hashCode = 31 * hashCode + typeName.hashCode();
+			hashCode = 31 * hashCode + lineNumber;
+			hashCode = 31 * hashCode + (isStatic ? 1 : 0);
+			hashCode = 31 * hashCode + project.hashCode();
+			fHashCode = 31 * hashCode + options.hashCode();
+		}
+
+		/**
+		 * Returns the name of the top level type enclosing the declaring type.
+		 */
+		String getTopLevelTypeName() {
+			int index = fTypeName.indexOf('$');
+			return index < 0 ? fTypeName : fTypeName.substring(0, index);
+		}
+
+		@Override
+		public int hashCode() {
+			return fHashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) obj;
+			return fHashCode == key.fHashCode && fLineNumber == key.fLineNumber
+					&& fStatic == key.fStatic
+					&& fCondition.equals(key.fCondition)
+					&& fTypeName.equals(key.fTypeName)
+					&& fProject.equals(key.fProject)
+					&& fOptions.equals(key.fOptions);
+		}
+	}
+
+	/**
+	 * Compiled conditions, least recently used first. A condition being
+	 * compiled is represented by a task that is not done.
+	 */
+	private final Map<Key, FutureTask<ICompiledExpression>> fExpressions = new LinkedHashMap<Key, FutureTask<ICompiledExpression>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<ICompiledExpression>> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private CompiledConditionCache() {
+		JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+	}
+
+	/**
+	 * Returns the cache shared by all breakpoints.
+	 */
+	public static synchronized CompiledConditionCache getDefault() {
+		if (fgDefault == null) {
+			fgDefault = new CompiledConditionCache();
+		}
+		return fgDefault;
+	}
+
+	/**
+	 * Discards the cache, if any.
+	 */
+	public static synchronized void shutdown() {
+		if (fgDefault != null) {
+			JavaCore.removeElementChangedListener(fgDefault);
+			fgDefault = null;
+		}
+	}
+
+	/**
+	 * Returns the given condition compiled in the context of the given stack
+	 * frame, compiling it with the given engine if it is not cached.
+	 *
+	 * @param condition
+	 *            the condition to compile
+	 * @param frame
+	 *            the frame the condition is evaluated in
+	 * @param engine
+	 *            the evaluation engine of the project the condition is
+	 *            compiled in
+	 * @return the compiled condition, which may have errors
+	 * @throws DebugException
+	 *             if the location of the frame cannot be retrieved
+	 */
+	public ICompiledExpression getCompiledExpression(final String condition,
+			final IJavaStackFrame frame, final IAstEvaluationEngine engine)
+			throws DebugException {
+		IJavaProject project = engine.getJavaProject();
+		Key key = new Key(condition, frame.getReferenceType().getName(),
+				frame.getLineNumber(), frame.isStatic(), project,
+				EvaluationSourceGenerator.getCompilerOptions(project));
+		ICompiledExpression expression = compile(key, () -> engine.getCompiledExpression(condition, frame));
+		if (expression == null) {
+			expression = engine.getCompiledExpression(condition, frame);
+		}
+		return expression;
+	}
+
+	/**
+	 * Compiles the given condition for the frames at the given location, so
+	 * that it is cached when a thread reaches the location. Does nothing if
+	 * the condition is already compiled, waits if it is being compiled.
+	 * Nothing is cached if the local variables of the location are not
+	 * available or the condition reads a local variable other than an
+	 * argument, whose visibility is only known in a frame; the condition is
+	 * then compiled on the first hit.
+	 *
+	 * @param condition
+	 *            the condition to compile
+	 * @param location
+	 *            a location the condition will be evaluated at
+	 * @param engine
+	 *            the evaluation engine of the project the condition is
+	 *            compiled in
+	 */
+	void precompile(final String condition, final Location location,
+			final ASTEvaluationEngine engine) {
+		IJavaProject project = engine.getJavaProject();
+		Key key = new Key(condition, location.declaringType().name(),
+				location.lineNumber(), location.method().isStatic(), project,
+				EvaluationSourceGenerator.getCompilerOptions(project));
+		compile(key, () -> engine.getCompiledExpression(condition, location));
+	}
+
+	/**
+	 * Returns the compiled condition for the given key. The condition is
+	 * compiled by the first thread that needs it, other threads wait for the
+	 * result.
+	 *
+	 * @return the compiled condition, or <code>null</code> if the compilation
+	 *         failed unexpectedly or the thread was interrupted
+	 */
+	private ICompiledExpression compile(Key key, Callable<ICompiledExpression> compiler) {
+		FutureTask<ICompiledExpression> task;
+		synchronized (fExpressions) {
+			task = fExpressions.get(key);
+			if (task == null) {
+				task = new FutureTask<>(compiler);
+				fExpressions.put(key, task);
+			}
+		}
+		// does nothing if the task is already running or done
+		task.run();
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			// do not keep the failure
+			synchronized (fExpressions) {
+				if (fExpressions.get(key) == task) {
+					fExpressions.remove(key);
+				}
+			}
+			if (!(e.getCause() instanceof DebugException)) {
+				JDIDebugPlugin.log(e.getCause());
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Discards the compiled conditions that depend on changed compilation
+	 * units or classpaths.
+	 */
+	@Override
+	public void elementChanged(ElementChangedEvent event) {
+		processDelta(event.getDelta());
+	}
+
+	private void processDelta(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+		switch (element.getElementType()) {
+			case IJavaElement.JAVA_PROJECT:
+				if (delta.getKind() == IJavaElementDelta.REMOVED
+						|| (delta.getFlags() & (IJavaElementDelta.F_CLASSPATH_CHANGED
+								| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED
+								| IJavaElementDelta.F_CLOSED)) != 0) {
+					discard((IJavaProject) element, null);
+					return;
+				}
+				break;
+			case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+				if ((delta.getFlags() & (IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED
+						| IJavaElementDelta.F_REMOVED_FROM_CLASSPATH)) != 0) {
+					discard(element.getJavaProject(), null);
+					return;
+				}
+				break;
+			case IJavaElement.COMPILATION_UNIT:
+				ICompilationUnit unit = (ICompilationUnit) element;
+				if (!unit.isWorkingCopy()) {
+					String name = unit.getElementName();
+					int index = name.lastIndexOf('.');
+					if (index > 0) {
+						name = name.substring(0, index);
+					}
+					String packageName = ((IPackageFragment) unit.getParent()).getElementName();
+					discard(unit.getJavaProject(), packageName.isEmpty() ? name : packageName + '.' + name);
+				}
+				return;
+			default:
+				break;
+		}
+		for (IJavaElementDelta child : delta.getAffectedChildren()) {
+			processDelta(child);
+		}
+	}
+
+	/**
+	 * Discards the compiled conditions of the given project, or only those of
+	 * the types enclosed by the given top level type if not <code>null</code>.
+	 */
+	private void discard(IJavaProject project, String topLevelTypeName) {
+		synchronized (fExpressions) {
+			Iterator<Key> keys = fExpressions.keySet().iterator();
+			while (keys.hasNext()) {
+				Key key = keys.next();
+				if (key.fProject.equals(project)
+						&& (topLevelTypeName == null || topLevelTypeName.equals(key.getTopLevelTypeName()))) {
+					keys.remove();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.debug.core.breakpoints;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.debug.eval.IAstEvaluationEngine;
+import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
+import org.eclipse.jdt.internal.debug.core.model.JDIDebugTarget;
+import org.eclipse.jdt.internal.debug.eval.ast.engine.ASTEvaluationEngine;
+
+import com.sun.jdi.Location;
+import com.sun.jdi.VMDisconnectedException;
+
+/**
+ * Compiles the conditions of line breakpoints in the background when their
+ * requests are created, so that the first hit of a conditional breakpoint does
+ * not wait for the compilation. Compiled conditions are put in the
+ * {@link CompiledConditionCache}; a thread hitting the breakpoint while its
+ * condition is being compiled waits for the result rather than compiling it
+ * again.
+ * <p>
+ * Conditions are compiled in the project of the resource of the breakpoint.
+ * When a hit resolves another project, the condition is compiled on the hit as
+ * before.
+ * </p>
+ */
+class ConditionPrecompiler {
+
+	/**
+	 * A condition to compile.
+	 */
+	private static final class Request {
+		final JavaLineBreakpoint fBreakpoint;
+		final JDIDebugTarget fTarget;
+		final Location fLocation;
+
+		Request(JavaLineBreakpoint breakpoint, JDIDebugTarget target, Location location) {
+			fBreakpoint = breakpoint;
+			fTarget = target;
+			fLocation = location;
+		}
+	}
+
+	private static ConditionPrecompiler fgDefault;
+
+	private final Queue<Request> fRequests = new ArrayDeque<>();
+
+	private final Job fCompileJob = new Job("Breakpoint Condition Compiler") { //$NON-NLS-1$
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			Request request;
+			while (!monitor.isCanceled() && (request = nextRequest()) != null) {
+				compile(request);
+			}
+			return Status.OK_STATUS;
+		}
+	};
+
+	private ConditionPrecompiler() {
+		fCompileJob.setSystem(true);
+		fCompileJob.setPriority(Job.SHORT);
+	}
+
+	/**
+	 * Returns the precompiler shared by all breakpoints.
+	 */
+	static synchronized ConditionPrecompiler getDefault() {
+		if (fgDefault == null) {
+			fgDefault = new ConditionPrecompiler();
+		}
+		return fgDefault;
+	}
+
+	/**
+	 * Queues the compilation of the condition of the given breakpoint at the
+	 * given location.
+	 */
+	void schedule(JavaLineBreakpoint breakpoint, JDIDebugTarget target, Location location) {
+		synchronized (fRequests) {
+			fRequests.add(new Request(breakpoint, target, location));
+		}
+		fCompileJob.schedule();
+	}
+
+	private Request nextRequest() {
+		synchronized (fRequests) {
+			return fRequests.poll();
+		}
+	}
+
+	private void compile(Request request) {
+		JavaLineBreakpoint breakpoint = request.fBreakpoint;
+		if (!request.fTarget.isAvailable()) {
+			return;
+		}
+		try {
+			// the condition may have changed since the request was queued
+			String condition = breakpoint.getCondition();
+			if (condition == null || !breakpoint.isConditionEnabled()) {
+				return;
+			}
+			IResource resource = breakpoint.ensureMarker().getResource();
+			IJavaProject project = JavaCore.create(resource.getProject());
+			if (project == null || !project.exists()) {
+				return;
+			}
+			IAstEvaluationEngine engine = request.fTarget.getEvaluationEngine(project);
+			if (engine instanceof ASTEvaluationEngine) {
+				CompiledConditionCache.getDefault().precompile(condition,
+						request.fLocation, (ASTEvaluationEngine) engine);
+			}
+		} catch (CoreException e) {
+			// the breakpoint has been deleted
+		} catch (VMDisconnectedException e) {
+			// the target is gone
+		} catch (RuntimeException e) {
+			JDIDebugPlugin.log(e);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2017 IBM Corporation and others.
+ * Copyright (c) 2009, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -225,12 +225,9 @@ public class ConditionalBreakpointHandler implements IJavaBreakpointListener {
 					// If no engine is available, suspend
 					return SUSPEND;
 				}
-				ICompiledExpression expression = lineBreakpoint
-						.getExpression(thread);
-				if (expression == null) {
-					expression = engine.getCompiledExpression(condition, frame);
-					lineBreakpoint.setExpression(thread, expression);
-				}
+				ICompiledExpression expression = CompiledConditionCache
+						.getDefault().getCompiledExpression(condition, frame,
+								engine);
 				if (expression.hasErrors()) {
 					fireConditionHasErrors(lineBreakpoint,
 							getMessages(expression));
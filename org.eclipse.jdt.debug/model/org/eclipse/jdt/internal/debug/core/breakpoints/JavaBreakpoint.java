@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -618,22 +618,10 @@ public abstract class JavaBreakpoint extends Breakpoint implements IJavaBreakpoi
 		if (referenceTypeName == null || enclosingTypeName == null) {
 			return;
 		}
-		// create request to listen to class loads
-		if (referenceTypeName.indexOf('$') == -1) {
-			registerRequest(
-					target.createClassPrepareRequest(enclosingTypeName), target);
-			// register to ensure we hear about local and anonymous inner
-			// classes
-			registerRequest(
-					target.createClassPrepareRequest(enclosingTypeName + "$*"), target); //$NON-NLS-1$
-		} else {
-			registerRequest(
-					target.createClassPrepareRequest(referenceTypeName), target);
-			// register to ensure we hear about local and anonymous inner
-			// classes
-			registerRequest(target.createClassPrepareRequest(enclosingTypeName
-					+ "$*", referenceTypeName), target); //$NON-NLS-1$
-		}
+		// listen to class loads, including local and anonymous inner classes,
+		// through the class prepare requests shared by the breakpoints of the
+		// target
+		target.getClassPrepareMultiplexer().addListener(this, referenceTypeName);
 
 		// create breakpoint requests for each class currently loaded
 		List<ReferenceType> classes = target.jdiClassesByName(referenceTypeName);
@@ -768,6 +756,7 @@ public abstract class JavaBreakpoint extends Breakpoint implements IJavaBreakpoi
 	 * target.
 	 */
 	protected void removeRequests(final JDIDebugTarget target) throws CoreException {
+		target.getClassPrepareMultiplexer().removeListener(this);
 		// removing was previously done is a workspace runnable, but that is
 		// not possible since it can be a resource callback (marker deletion)
 		// that causes a breakpoint to be removed
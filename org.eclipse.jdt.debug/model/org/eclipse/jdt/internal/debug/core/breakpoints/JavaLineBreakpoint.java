@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -96,13 +96,6 @@ public class JavaLineBreakpoint extends JavaBreakpoint implements
 	 * Maps suspended threads to the suspend event that suspended them
 	 */
 	private Map<IJavaThread, ICompiledExpression> fSuspendEvents = new HashMap<>();
-	/**
-	 * The map of cached compiled expressions (ICompiledExpression) for this
-	 * breakpoint, keyed by thread. This value must be cleared every time the
-	 * breakpoint is added to a target.
-	 */
-	private Map<IJavaThread, ICompiledExpression> fCompiledExpressions = new HashMap<>();
-
 	/**
 	 * Cache of projects for stack frames to avoid repetitive project resolution
 	 * on conditional breakpoints.
@@ -217,12 +210,11 @@ public class JavaLineBreakpoint extends JavaBreakpoint implements
 	}
 
 	/**
-	 * Removes all compiled expressions which are currently being cached for
-	 * threads in the given target.
+	 * Removes the projects which are currently being cached for stack frames
+	 * in the given target. Compiled conditions are cached in the
+	 * {@link CompiledConditionCache}, which is shared by all targets.
 	 */
 	protected void clearCachedExpressionFor(JDIDebugTarget target) {
-		removeCachedThreads(fCompiledExpressions, target);
-
 		// clean up cached projects for stack frames
 		synchronized (fProjectsByFrame) {
 			Set<IJavaStackFrame> frames = fProjectsByFrame.keySet();
@@ -304,6 +296,12 @@ public class JavaLineBreakpoint extends JavaBreakpoint implements
 			requests[i] = createLineBreakpointRequest(location, target);
 			i++;
 		}
+		if (supportsCondition() && isConditionEnabled() && getCondition() != null) {
+			// compile the condition before the first hit
+			for (Location location : locations) {
+				ConditionPrecompiler.getDefault().schedule(this, target, location);
+			}
+		}
 		return requests;
 	}
 
@@ -495,8 +493,6 @@ public class JavaLineBreakpoint extends JavaBreakpoint implements
 	 */
 	@Override
 	public void setCondition(String condition) throws CoreException {
-		// Clear the cached compiled expressions
-		fCompiledExpressions.clear();
 		fConditionValues.clear();
 		fSuspendEvents.clear();
 		if (condition != null && condition.trim().length() == 0) {
@@ -559,7 +555,6 @@ public class JavaLineBreakpoint extends JavaBreakpoint implements
 	@Override
 	protected void cleanupForThreadTermination(JDIThread thread) {
 		fSuspendEvents.remove(thread);
-		fCompiledExpressions.remove(thread);
 		super.cleanupForThreadTermination(thread);
 	}
 
@@ -607,31 +602,6 @@ public class JavaLineBreakpoint extends JavaBreakpoint implements
 		}
 	}
 
-	/**
-	 * Returns existing compiled expression for the given thread or
-	 * <code>null</code>.
-	 *
-	 * @param thread
-	 *            thread the breakpoint was hit in
-	 * @return compiled expression or <code>null</code>
-	 */
-	protected ICompiledExpression getExpression(IJavaThread thread) {
-		return fCompiledExpressions.get(thread);
-	}
-
-	/**
-	 * Sets the compiled expression for a thread.
-	 *
-	 * @param thread
-	 *            thread the breakpoint was hit in
-	 * @param expression
-	 *            associated compiled expression
-	 */
-	protected void setExpression(IJavaThread thread,
-			ICompiledExpression expression) {
-		fCompiledExpressions.put(thread, expression);
-	}
-
 	/**
 	 * Sets the current result value of the conditional expression evaluation
 	 * for this breakpoint in the given target, and returns the previous value
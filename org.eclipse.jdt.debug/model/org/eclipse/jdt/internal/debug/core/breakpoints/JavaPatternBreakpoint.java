@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.debug.core.breakpoints;
 
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -211,21 +210,14 @@ public class JavaPatternBreakpoint extends JavaLineBreakpoint implements
 		}
 		List<ReferenceType> classes = null;
 		try {
-			classes = vm.allClasses();
+			classes = target.getLoadedClasses(referenceTypeName);
 		} catch (RuntimeException e) {
 			target.targetRequestFailed(
 					JDIDebugBreakpointMessages.JavaPatternBreakpoint_0, e);
 		}
 		if (classes != null) {
-			Iterator<ReferenceType> iter = classes.iterator();
-			String typeName = null;
-			ReferenceType type = null;
-			while (iter.hasNext()) {
-				type = iter.next();
-				typeName = type.name();
-				if (typeName != null && typeName.startsWith(referenceTypeName)) {
-					createRequest(target, type);
-				}
+			for (ReferenceType type : classes) {
+				createRequest(target, type);
 			}
 		}
 	}
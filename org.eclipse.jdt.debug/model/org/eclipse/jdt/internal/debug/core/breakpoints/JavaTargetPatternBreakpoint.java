@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -112,14 +112,10 @@ public class JavaTargetPatternBreakpoint extends JavaLineBreakpoint implements
 		// create breakpoint requests for each class currently loaded
 		VirtualMachine vm = target.getVM();
 		if (vm != null) {
-			List<ReferenceType> classes = vm.allClasses();
+			List<ReferenceType> classes = target.getLoadedClasses(referenceTypeName);
 			if (classes != null) {
-				String typeName = null;
 				for(ReferenceType type : classes) {
-					typeName = type.name();
-					if (typeName != null && typeName.startsWith(referenceTypeName)) {
-						createRequest(target, type);
-					}
+					createRequest(target, type);
 				}
 			}
 		} else {
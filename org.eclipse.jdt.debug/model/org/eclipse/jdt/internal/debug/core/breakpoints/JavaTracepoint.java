@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.debug.core.breakpoints;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.debug.core.DebugException;
+import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
+import org.eclipse.jdt.internal.debug.core.model.JDIDebugTarget;
+import org.eclipse.jdt.internal.debug.core.model.JDIThread;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.Field;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.LocalVariable;
+import com.sun.jdi.Location;
+import com.sun.jdi.Method;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.Value;
+import com.sun.jdi.event.Event;
+import com.sun.jdi.event.EventSet;
+import com.sun.jdi.event.LocatableEvent;
+import com.sun.jdi.request.EventRequest;
+
+/**
+ * A line breakpoint that never suspends: each hit records the values of a
+ * declared set of local variables and fields to a trace file, or to the
+ * console of the launch when no file is set, and the thread is resumed right
+ * away.
+ * <p>
+ * Unlike a logging condition, a hit does not evaluate an expression, does not
+ * update the state of the {@link JDIThread} and does not fire debug events.
+ * The locals are read with a single request for the top stack frame, fields
+ * of <code>this</code> with a single request for the receiver. The values
+ * are formatted and written by a background job (see {@link TracepointSink}),
+ * once the thread has been resumed. Java breakpoint listeners are not
+ * notified of hits, and tracepoints do not support conditions.
+ * </p>
+ *
+ * @see org.eclipse.jdt.debug.core.JDIDebugModel#createTracepoint(IResource,
+ *      String, int, int, int, String[], String, boolean, Map)
+ */
+public class JavaTracepoint extends JavaLineBreakpoint {
+
+	public static final String JAVA_TRACEPOINT = "org.eclipse.jdt.debug.javaTracepointMarker"; //$NON-NLS-1$
+
+	/**
+	 * Breakpoint attribute storing the names of the local variables and fields
+	 * to record, separated by commas (value
+	 * <code>"org.eclipse.jdt.debug.core.traceVariables"</code>). This
+	 * attribute is stored as a <code>String</code>.
+	 */
+	protected static final String TRACE_VARIABLES = "org.eclipse.jdt.debug.core.traceVariables"; //$NON-NLS-1$
+
+	/**
+	 * Breakpoint attribute storing the path of the file hits are appended to
+	 * (value <code>"org.eclipse.jdt.debug.core.traceFile"</code>). This
+	 * attribute is stored as a <code>String</code>.
+	 */
+	protected static final String TRACE_FILE = "org.eclipse.jdt.debug.core.traceFile"; //$NON-NLS-1$
+
+	/**
+	 * Variables to record at a location: the locals visible at the location
+	 * and the fields of the declaring type, each with the name it was
+	 * declared with.
+	 */
+	private static final class TraceVariables {
+		final List<LocalVariable> fLocals = new ArrayList<>();
+		final List<Field> fInstanceFields = new ArrayList<>();
+		final List<Field> fStaticFields = new ArrayList<>();
+		/**
+		 * Declared names, in order, mapped to the local variable or field.
+		 */
+		final List<Object> fVariables = new ArrayList<>();
+		final List<String> fNames = new ArrayList<>();
+	}
+
+	/**
+	 * Variables resolved for the locations hit so far. Cleared when the
+	 * tracepoint is added to or removed from a target.
+	 */
+	private final Map<Location, TraceVariables> fTraceVariables = new ConcurrentHashMap<>();
+
+	private String[] fVariableNames;
+
+	public JavaTracepoint() {
+	}
+
+	/**
+	 * Creates a tracepoint in the type with the given name, at the given line
+	 * number.
+	 *
+	 * @param variables
+	 *            names of the local variables and fields to record
+	 * @param traceFile
+	 *            path of the file to append the hits to, or <code>null</code>
+	 *            to write them to the console of the launch
+	 * @see JavaLineBreakpoint#JavaLineBreakpoint(IResource, String, int, int,
+	 *      int, int, boolean, Map)
+	 */
+	public JavaTracepoint(IResource resource, String typeName, int lineNumber,
+			int charStart, int charEnd, String[] variables, String traceFile,
+			boolean add, Map<String, Object> attributes) throws DebugException {
+		super(resource, typeName, lineNumber, charStart, charEnd, 0, add,
+				addTraceAttributes(attributes, variables, traceFile), JAVA_TRACEPOINT);
+	}
+
+	private static Map<String, Object> addTraceAttributes(Map<String, Object> attributes,
+			String[] variables, String traceFile) {
+		attributes.put(TRACE_VARIABLES, String.join(",", variables)); //$NON-NLS-1$
+		if (traceFile != null) {
+			attributes.put(TRACE_FILE, traceFile);
+		}
+		return attributes;
+	}
+
+	/**
+	 * Returns the type of marker associated with Java tracepoints
+	 */
+	public static String getMarkerType() {
+		return JAVA_TRACEPOINT;
+	}
+
+	/**
+	 * Returns the names of the local variables and fields this tracepoint
+	 * records.
+	 */
+	public synchronized String[] getVariables() throws CoreException {
+		if (fVariableNames == null) {
+			String variables = ensureMarker().getAttribute(TRACE_VARIABLES, ""); //$NON-NLS-1$
+			List<String> names = new ArrayList<>();
+			for (String name : variables.split(",")) { //$NON-NLS-1$
+				name = name.trim();
+				if (name.length() > 0) {
+					names.add(name);
+				}
+			}
+			fVariableNames = names.toArray(new String[names.size()]);
+		}
+		return fVariableNames;
+	}
+
+	/**
+	 * Sets the names of the local variables and fields this tracepoint
+	 * records.
+	 */
+	public void setVariables(String[] variables) throws CoreException {
+		synchronized (this) {
+			fVariableNames = null;
+		}
+		fTraceVariables.clear();
+		setAttributes(new String[] { TRACE_VARIABLES }, new Object[] { String.join(",", variables) }); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the path of the file hits are appended to, or <code>null</code>
+	 * if they are written to the console of the launch.
+	 */
+	public String getTraceFile() throws CoreException {
+		return ensureMarker().getAttribute(TRACE_FILE, null);
+	}
+
+	/**
+	 * Sets the path of the file hits are appended to, or <code>null</code> to
+	 * write them to the console of the launch.
+	 */
+	public void setTraceFile(String traceFile) throws CoreException {
+		setAttributes(new String[] { TRACE_FILE }, new Object[] { traceFile });
+	}
+
+	@Override
+	public void addToTarget(JDIDebugTarget target) throws CoreException {
+		fTraceVariables.clear();
+		super.addToTarget(target);
+	}
+
+	@Override
+	public void removeFromTarget(JDIDebugTarget target) throws CoreException {
+		fTraceVariables.clear();
+		super.removeFromTarget(target);
+	}
+
+	/**
+	 * Tracepoints only suspend the thread of the event, for the time it takes
+	 * to read the values.
+	 */
+	@Override
+	protected int getJDISuspendPolicy() throws CoreException {
+		return EventRequest.SUSPEND_EVENT_THREAD;
+	}
+
+	@Override
+	public boolean supportsCondition() {
+		return false;
+	}
+
+	@Override
+	public boolean isConditionEnabled() throws CoreException {
+		return false;
+	}
+
+	/**
+	 * Records the hit from the underlying thread of the event, so that no
+	 * model thread is created for a thread that only hits tracepoints.
+	 */
+	@Override
+	public boolean handleEvent(Event event, JDIDebugTarget target,
+			boolean suspendVote, EventSet eventSet) {
+		if (!(event instanceof LocatableEvent)) {
+			return super.handleEvent(event, target, suspendVote, eventSet);
+		}
+		JDIThread thread = target.lookupThread(((LocatableEvent) event).thread());
+		if (thread != null && thread.isIgnoringBreakpoints()) {
+			return true;
+		}
+		expireHitCount(event);
+		recordHit((LocatableEvent) event, target);
+		return true;
+	}
+
+	/**
+	 * Records the values of the variables and votes to resume.
+	 */
+	@Override
+	public boolean handleBreakpointEvent(Event event, JDIThread thread,
+			boolean suspendVote) {
+		expireHitCount(event);
+		recordHit((LocatableEvent) event, thread.getJavaDebugTarget());
+		return true;
+	}
+
+	/**
+	 * Reads the values of the variables in the thread of the given event and
+	 * hands them to the sink.
+	 */
+	private void recordHit(LocatableEvent locatableEvent, JDIDebugTarget target) {
+		try {
+			Location location = locatableEvent.location();
+			TracepointSink.Hit hit = new TracepointSink.Hit(System.currentTimeMillis(),
+					target.getLaunch(), location, locatableEvent.thread());
+			readValues(hit);
+			TracepointSink.getDefault().write(getTraceFile(), hit);
+		} catch (VMDisconnectedException e) {
+			// the target is gone
+		} catch (CoreException e) {
+			JDIDebugPlugin.log(e);
+		} catch (RuntimeException e) {
+			JDIDebugPlugin.log(e);
+		}
+	}
+
+	/**
+	 * The thread was not suspended by this tracepoint, there is nothing to
+	 * complete.
+	 */
+	@Override
+	public void eventSetComplete(Event event, JDIDebugTarget target,
+			boolean suspend, EventSet eventSet) {
+		if (!(event instanceof LocatableEvent)) {
+			super.eventSetComplete(event, target, suspend, eventSet);
+		}
+	}
+
+	/**
+	 * Reads the values of the variables in the top frame of the thread of the
+	 * given hit, with one request per kind of variable, and adds them to the
+	 * hit. Only the mirrors of the values are read, they are formatted by the
+	 * sink.
+	 */
+	private void readValues(TracepointSink.Hit hit) throws CoreException {
+		ThreadReference thread = hit.fThread;
+		Location location = hit.fLocation;
+		Map<LocalVariable, Value> localValues = Collections.emptyMap();
+		Map<Field, Value> instanceValues = Collections.emptyMap();
+		Map<Field, Value> staticValues = Collections.emptyMap();
+		TraceVariables variables;
+		try {
+			StackFrame frame = thread.frame(0);
+			variables = fTraceVariables.get(location);
+			if (variables == null) {
+				variables = resolveVariables(frame);
+				fTraceVariables.put(location, variables);
+			}
+			if (!variables.fLocals.isEmpty()) {
+				localValues = frame.getValues(variables.fLocals);
+			}
+			if (!variables.fInstanceFields.isEmpty()) {
+				ObjectReference receiver = frame.thisObject();
+				if (receiver != null) {
+					instanceValues = receiver.getValues(variables.fInstanceFields);
+				}
+			}
+			if (!variables.fStaticFields.isEmpty()) {
+				staticValues = location.declaringType().getValues(variables.fStaticFields);
+			}
+		} catch (IncompatibleThreadStateException e) {
+			return;
+		}
+		for (int i = 0; i < variables.fVariables.size(); i++) {
+			Object variable = variables.fVariables.get(i);
+			Value value;
+			if (variable instanceof LocalVariable) {
+				value = localValues.get(variable);
+			} else if (((Field) variable).isStatic()) {
+				value = staticValues.get(variable);
+			} else {
+				value = instanceValues.get(variable);
+			}
+			hit.fNames.add(variables.fNames.get(i));
+			hit.fValues.add(value);
+		}
+	}
+
+	/**
+	 * Resolves the declared names to the locals visible in the given frame,
+	 * or else to fields of the declaring type. Names that resolve to neither
+	 * are ignored. Visibility only depends on the location of the frame, so
+	 * the result is valid for every hit at that location.
+	 */
+	private TraceVariables resolveVariables(StackFrame frame) throws CoreException {
+		TraceVariables variables = new TraceVariables();
+		Location location = frame.location();
+		Method method = location.method();
+		ReferenceType type = location.declaringType();
+		for (String name : getVariables()) {
+			Object variable = null;
+			try {
+				for (LocalVariable local : method.variablesByName(name)) {
+					if (local.isVisible(frame)) {
+						variable = local;
+						variables.fLocals.add(local);
+						break;
+					}
+				}
+			} catch (AbsentInformationException e) {
+				// no local variable information, look for a field
+			}
+			if (variable == null) {
+				Field field = type.fieldByName(name);
+				if (field != null && (field.isStatic() || !method.isStatic())) {
+					variable = field;
+					(field.isStatic() ? variables.fStaticFields : variables.fInstanceFields).add(field);
+				}
+			}
+			if (variable != null) {
+				variables.fVariables.add(variable);
+				variables.fNames.add(name);
+			}
+		}
+		return variables;
+	}
+}
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.debug.core.breakpoints;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.debug.core.ILaunch;
+import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.ArrayReference;
+import com.sun.jdi.Location;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.StringReference;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.Value;
+
+/**
+ * Writes the hits of tracepoints. Hits are queued by the thread handling the
+ * events, with the mirrors of the recorded values, and formatted and written
+ * by a background job, one line per hit, to the trace file of the tracepoint
+ * or to the console of the launch.
+ * <p>
+ * The debug UI writes the hits to the console of the launch, see
+ * {@link #setConsoleWriter(ConsoleWriter)}. Without a console writer, hits are
+ * appended to the file <code>tracepoints.log</code> in the state location of
+ * the plug-in.
+ * </p>
+ *
+ * @see JavaTracepoint
+ */
+public class TracepointSink {
+
+	/**
+	 * Writes the hits of the tracepoints without trace file to the console
+	 * of their launch.
+	 */
+	public interface ConsoleWriter {
+
+		/**
+		 * Writes the given text, made of complete lines, to the console of
+		 * the given launch. Called by a background job.
+		 *
+		 * @param launch
+		 *            the launch of the hits
+		 * @param text
+		 *            the text to write
+		 */
+		void write(ILaunch launch, String text);
+	}
+
+	/**
+	 * A tracepoint hit: where and when it happened, and the names and values of
+	 * the variables.
+	 */
+	static final class Hit {
+		final long fTime;
+		final ILaunch fLaunch;
+		final Location fLocation;
+		final ThreadReference fThread;
+		final List<String> fNames = new ArrayList<>();
+		final List<Value> fValues = new ArrayList<>();
+
+		Hit(long time, ILaunch launch, Location location, ThreadReference thread) {
+			fTime = time;
+			fLaunch = launch;
+			fLocation = location;
+			fThread = thread;
+		}
+	}
+
+	private static final String LOG_FILE_NAME = "tracepoints.log"; //$NON-NLS-1$
+
+	private static TracepointSink fgDefault;
+
+	private static volatile ConsoleWriter fgConsoleWriter;
+
+	/**
+	 * Hits to write, by trace file or, for the hits written to the console, by
+	 * launch.
+	 */
+	private Map<Object, List<Hit>> fPending = new LinkedHashMap<>();
+
+	private final Job fWriteJob = new Job("Tracepoint Writer") { //$NON-NLS-1$
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			Map<Object, List<Hit>> pending;
+			synchronized (TracepointSink.this) {
+				pending = fPending;
+				fPending = new LinkedHashMap<>();
+			}
+			for (Map.Entry<Object, List<Hit>> entry : pending.entrySet()) {
+				write(entry.getKey(), entry.getValue());
+			}
+			return Status.OK_STATUS;
+		}
+	};
+
+	private TracepointSink() {
+		fWriteJob.setSystem(true);
+	}
+
+	/**
+	 * Returns the sink shared by all tracepoints.
+	 */
+	static synchronized TracepointSink getDefault() {
+		if (fgDefault == null) {
+			fgDefault = new TracepointSink();
+		}
+		return fgDefault;
+	}
+
+	/**
+	 * Sets the writer of the hits of the tracepoints without trace file.
+	 *
+	 * @param writer
+	 *            the console writer, or <code>null</code> to append the hits
+	 *            to the log file of the plug-in
+	 */
+	public static void setConsoleWriter(ConsoleWriter writer) {
+		fgConsoleWriter = writer;
+	}
+
+	/**
+	 * Queues a hit to be written to the given trace file.
+	 *
+	 * @param traceFile
+	 *            the path of the file to append the hit to, or
+	 *            <code>null</code> for the console of the launch
+	 * @param hit
+	 *            the hit to write
+	 */
+	void write(String traceFile, Hit hit) {
+		Object key = traceFile != null ? traceFile : hit.fLaunch;
+		synchronized (this) {
+			List<Hit> hits = fPending.get(key);
+			if (hits == null) {
+				hits = new ArrayList<>();
+				fPending.put(key, hits);
+			}
+			hits.add(hit);
+		}
+		fWriteJob.schedule();
+	}
+
+	/**
+	 * Writes the given hits to the given trace file, or to the console of the
+	 * given launch.
+	 */
+	private void write(Object destination, List<Hit> hits) {
+		StringBuilder buffer = new StringBuilder();
+		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS"); //$NON-NLS-1$
+		for (Hit hit : hits) {
+			append(buffer, hit, format);
+			buffer.append(System.lineSeparator());
+		}
+		String traceFile;
+		if (destination instanceof String) {
+			traceFile = (String) destination;
+		} else {
+			ConsoleWriter writer = fgConsoleWriter;
+			if (writer != null) {
+				writer.write((ILaunch) destination, buffer.toString());
+				return;
+			}
+			traceFile = JDIDebugPlugin.getDefault().getStateLocation().append(LOG_FILE_NAME).toOSString();
+		}
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(traceFile, true), StandardCharsets.UTF_8)) {
+			writer.write(buffer.toString());
+		} catch (IOException e) {
+			JDIDebugPlugin.log(e);
+		}
+	}
+
+	/**
+	 * Appends a line like
+	 * <code>12:00:00.000 Type.java:10 [main] i=1, s="text", o=Type (id=12)</code>
+	 */
+	private static void append(StringBuilder buffer, Hit hit, SimpleDateFormat format) {
+		buffer.append(format.format(new Date(hit.fTime))).append(' ');
+		String sourceName;
+		try {
+			sourceName = hit.fLocation.sourceName();
+		} catch (AbsentInformationException e) {
+			sourceName = hit.fLocation.declaringType().name();
+		} catch (RuntimeException e) {
+			// the type has been unloaded
+			sourceName = "?"; //$NON-NLS-1$
+		}
+		buffer.append(sourceName).append(':').append(hit.fLocation.lineNumber());
+		String threadName;
+		try {
+			threadName = hit.fThread.name();
+		} catch (RuntimeException e) {
+			// the thread is gone
+			threadName = "?"; //$NON-NLS-1$
+		}
+		buffer.append(" [").append(threadName).append(']'); //$NON-NLS-1$
+		for (int i = 0; i < hit.fNames.size(); i++) {
+			buffer.append(i == 0 ? " " : ", "); //$NON-NLS-1$ //$NON-NLS-2$
+			buffer.append(hit.fNames.get(i)).append('=').append(format(hit.fValues.get(i)));
+		}
+	}
+
+	/**
+	 * Returns a description of the given value, like the Variables view shows
+	 * it. Values that have been collected since the hit are described as such.
+	 */
+	private static String format(Value value) {
+		if (value == null) {
+			return "null"; //$NON-NLS-1$
+		}
+		try {
+			if (value instanceof StringReference) {
+				return '"' + ((StringReference) value).value() + '"';
+			}
+			if (value instanceof ArrayReference) {
+				ArrayReference array = (ArrayReference) value;
+				String typeName = array.referenceType().name();
+				int bracket = typeName.indexOf('[');
+				return typeName.substring(0, bracket + 1) + array.length()
+						+ typeName.substring(bracket + 1) + " (id=" + array.uniqueID() + ')'; //$NON-NLS-1$
+			}
+			if (value instanceof ObjectReference) {
+				ObjectReference object = (ObjectReference) value;
+				return object.referenceType().name() + " (id=" + object.uniqueID() + ')'; //$NON-NLS-1$
+			}
+		} catch (ObjectCollectedException e) {
+			return "<collected>"; //$NON-NLS-1$
+		} catch (VMDisconnectedException e) {
+			return "<disconnected>"; //$NON-NLS-1$
+		}
+		return value.toString();
+	}
+}
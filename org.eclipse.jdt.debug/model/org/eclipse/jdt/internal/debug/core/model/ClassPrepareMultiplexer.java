@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2018 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.debug.core.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.internal.debug.core.IJDIEventListener;
+import org.eclipse.jdt.internal.debug.core.JDIDebugPlugin;
+
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.event.ClassPrepareEvent;
+import com.sun.jdi.event.Event;
+import com.sun.jdi.event.EventSet;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+
+/**
+ * Shares class prepare requests between the listeners waiting for types to be
+ * loaded in a debug target, typically breakpoints waiting to be installed.
+ * <p>
+ * A class prepare request can only match one pattern, so listeners are
+ * grouped by top level type: the types enclosed by a top level type, including
+ * local and anonymous types, are all matched by the same two requests, one for
+ * the top level type itself and one for its nested types. However many
+ * listeners wait for the types of a top level type, the virtual machine checks
+ * two filters on each class load, instead of two or three per listener. The
+ * listeners of a prepared type are found from the name of its top level type.
+ * </p>
+ *
+ * @see JDIDebugTarget#getClassPrepareMultiplexer()
+ */
+public class ClassPrepareMultiplexer implements IJDIEventListener {
+
+	/**
+	 * The requests matching the types of a top level type, and the listeners
+	 * waiting for these types.
+	 */
+	private static final class TopLevelType {
+		final EventRequest[] fRequests;
+		/**
+		 * Listeners mapped to the name of the type they wait for.
+		 */
+		final Map<IJDIEventListener, String> fListeners = new LinkedHashMap<>(2);
+
+		TopLevelType(EventRequest[] requests) {
+			fRequests = requests;
+		}
+	}
+
+	private final JDIDebugTarget fTarget;
+
+	/**
+	 * Top level types by name.
+	 */
+	private final Map<String, TopLevelType> fTypes = new HashMap<>();
+
+	/**
+	 * Names of the top level types listeners are registered with.
+	 */
+	private final Map<IJDIEventListener, String> fTopLevelTypeNames = new HashMap<>();
+
+	ClassPrepareMultiplexer(JDIDebugTarget target) {
+		fTarget = target;
+	}
+
+	/**
+	 * Returns the name of the top level type enclosing the type with the
+	 * given name.
+	 */
+	private static String getTopLevelTypeName(String typeName) {
+		int index = typeName.indexOf('$');
+		return index < 0 ? typeName : typeName.substring(0, index);
+	}
+
+	/**
+	 * Registers a listener to be notified when the type with the given name,
+	 * or one of its local or anonymous types, is prepared. A listener waits for
+	 * at most one type, registering it again replaces the type it waits for.
+	 * The events are delivered to the listener as if it had created its own
+	 * class prepare requests.
+	 *
+	 * @param listener
+	 *            the listener to notify
+	 * @param typeName
+	 *            the fully qualified name of the type to wait for
+	 * @exception CoreException
+	 *                if unable to create the requests
+	 */
+	public void addListener(IJDIEventListener listener, String typeName) throws CoreException {
+		removeListener(listener);
+		String topLevelTypeName = getTopLevelTypeName(typeName);
+		synchronized (this) {
+			TopLevelType type = fTypes.get(topLevelTypeName);
+			if (type == null) {
+				EventRequest[] requests = new EventRequest[] {
+						fTarget.createClassPrepareRequest(topLevelTypeName),
+						fTarget.createClassPrepareRequest(topLevelTypeName + "$*") }; //$NON-NLS-1$
+				type = new TopLevelType(requests);
+				fTypes.put(topLevelTypeName, type);
+				for (EventRequest request : requests) {
+					fTarget.addJDIEventListener(this, request);
+				}
+			}
+			type.fListeners.put(listener, typeName);
+			fTopLevelTypeNames.put(listener, topLevelTypeName);
+		}
+	}
+
+	/**
+	 * Unregisters the given listener. The requests of a top level type are
+	 * deleted when its last listener is removed.
+	 *
+	 * @param listener
+	 *            the listener to remove
+	 */
+	public void removeListener(IJDIEventListener listener) {
+		EventRequest[] requests = null;
+		synchronized (this) {
+			String topLevelTypeName = fTopLevelTypeNames.remove(listener);
+			if (topLevelTypeName == null) {
+				return;
+			}
+			TopLevelType type = fTypes.get(topLevelTypeName);
+			type.fListeners.remove(listener);
+			if (type.fListeners.isEmpty()) {
+				fTypes.remove(topLevelTypeName);
+				requests = type.fRequests;
+			}
+		}
+		if (requests != null) {
+			deleteRequests(requests);
+		}
+	}
+
+	private void deleteRequests(EventRequest[] requests) {
+		for (EventRequest request : requests) {
+			fTarget.removeJDIEventListener(this, request);
+			try {
+				EventRequestManager manager = fTarget.getEventRequestManager();
+				if (fTarget.isAvailable() && manager != null) {
+					manager.deleteEventRequest(request);
+				}
+			} catch (VMDisconnectedException e) {
+				// the requests are gone with the virtual machine
+			} catch (RuntimeException e) {
+				JDIDebugPlugin.log(e);
+			}
+		}
+	}
+
+	/**
+	 * Forgets all listeners, when the target terminates or disconnects.
+	 */
+	synchronized void dispose() {
+		fTypes.clear();
+		fTopLevelTypeNames.clear();
+	}
+
+	/**
+	 * Returns the listeners waiting for the given prepared type.
+	 */
+	private synchronized List<IJDIEventListener> getListeners(String typeName) {
+		String topLevelTypeName = getTopLevelTypeName(typeName);
+		TopLevelType type = fTypes.get(topLevelTypeName);
+		if (type == null) {
+			return null;
+		}
+		boolean nested = typeName.length() > topLevelTypeName.length();
+		List<IJDIEventListener> listeners = new ArrayList<>(type.fListeners.size());
+		for (Map.Entry<IJDIEventListener, String> entry : type.fListeners.entrySet()) {
+			// a listener waiting for a nested type is not interested in the
+			// top level type
+			if (nested || entry.getValue().indexOf('$') < 0) {
+				listeners.add(entry.getKey());
+			}
+		}
+		return listeners;
+	}
+
+	/**
+	 * Delivers the event to the listeners waiting for the prepared type.
+	 *
+	 * @return whether all the listeners vote to resume
+	 */
+	@Override
+	public boolean handleEvent(Event event, JDIDebugTarget target, boolean suspendVote, EventSet eventSet) {
+		List<IJDIEventListener> listeners = getListeners(((ClassPrepareEvent) event).referenceType().name());
+		if (listeners == null) {
+			return true;
+		}
+		boolean resume = true;
+		for (IJDIEventListener listener : listeners) {
+			resume &= listener.handleEvent(event, target, !resume || suspendVote, eventSet);
+		}
+		return resume;
+	}
+
+	@Override
+	public void eventSetComplete(Event event, JDIDebugTarget target, boolean suspend, EventSet eventSet) {
+		List<IJDIEventListener> listeners = getListeners(((ClassPrepareEvent) event).referenceType().name());
+		if (listeners == null) {
+			return;
+		}
+		for (IJDIEventListener listener : listeners) {
+			listener.eventSetComplete(event, target, suspend, eventSet);
+		}
+	}
+}
@@ -115,6 +115,25 @@ public abstract class JDIDebugElement extends DebugElement implements
 		}
 	}
 
+	/**
+	 * Fires the given debug event through the event dispatcher of the debug
+	 * target, so that it is ordered with the events fired when dispatching
+	 * event sets and merged with them when debug events are coalesced.
+	 *
+	 * @param event
+	 *            the event to fire
+	 */
+	@Override
+	public void fireEvent(DebugEvent event) {
+		EventDispatcher dispatcher = ((JDIDebugTarget) getDebugTarget())
+				.getEventDispatcher();
+		if (dispatcher != null) {
+			dispatcher.fire(new DebugEvent[] { event });
+		} else {
+			super.fireEvent(event);
+		}
+	}
+
 	/**
 	 * Fires a debug event marking the SUSPEND of this element with the
 	 * associated detail.
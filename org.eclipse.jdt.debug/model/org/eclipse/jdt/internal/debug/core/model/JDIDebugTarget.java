@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2017 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ package org.eclipse.jdt.internal.debug.core.model;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -24,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
@@ -64,6 +66,8 @@ import org.eclipse.debug.core.model.ISuspendResume;
 import org.eclipse.debug.core.model.ITerminate;
 import org.eclipse.debug.core.model.IThread;
 import org.eclipse.jdi.TimeoutException;
+import org.eclipse.jdi.internal.LoadedClassIndex;
+import org.eclipse.jdi.internal.ThreadReferenceImpl;
 import org.eclipse.jdi.internal.VirtualMachineImpl;
 import org.eclipse.jdi.internal.jdwp.JdwpReplyPacket;
 import org.eclipse.jdt.core.IClasspathEntry;
@@ -82,7 +86,6 @@ import org.eclipse.jdt.core.search.TypeNameMatchRequestor;
 import org.eclipse.jdt.debug.core.IJavaBreakpoint;
 import org.eclipse.jdt.debug.core.IJavaDebugTarget;
 import org.eclipse.jdt.debug.core.IJavaHotCodeReplaceListener;
-import org.eclipse.jdt.debug.core.IJavaThread;
 import org.eclipse.jdt.debug.core.IJavaThreadGroup;
 import org.eclipse.jdt.debug.core.IJavaType;
 import org.eclipse.jdt.debug.core.IJavaValue;
@@ -125,13 +128,49 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		IDebugEventSetListener {
 
 	/**
-	 * Threads contained in this debug target. When a thread starts it is added
-	 * to the list. When a thread ends it is removed from the list.
+	 * Threads contained in this debug target, by unique identifier of their
+	 * underlying thread. When a thread starts it is added to the map. When a
+	 * thread ends it is removed from the map. Changes to the map are
+	 * synchronized on the map, lookups are not.
 	 *
-	 * TODO investigate making this a synchronized collection, to remove all this copying
-	 * @see #getThreadIterator()
+	 * @see #findThread(ThreadReference)
 	 */
-	private ArrayList<JDIThread> fThreads;
+	private final Map<Long, JDIThread> fThreads = new ConcurrentHashMap<>();
+
+	/**
+	 * The threads of this target in the order they were added, iterated
+	 * without copying, or <code>null</code> if threads were added or removed
+	 * since the array was built. The array is never modified.
+	 *
+	 * @see #getThreadSnapshot()
+	 */
+	private volatile JDIThread[] fThreadSnapshot = new JDIThread[0];
+
+	/**
+	 * The threads of this target in the order they were added, from which
+	 * the thread snapshot is built. Guarded by the thread map.
+	 */
+	private final Set<JDIThread> fOrderedThreads = new LinkedHashSet<>();
+
+	/**
+	 * Whether model threads are only created for the threads that need one,
+	 * see {@link JDIDebugPlugin#PREF_LAZY_THREADS}.
+	 */
+	private boolean fLazyThreads;
+
+	/**
+	 * In lazy mode, the threads of the virtual machine that have no model
+	 * thread yet, by unique identifier. A model thread is created when the
+	 * thread is looked up with {@link #findThread(ThreadReference)}, and for
+	 * a page of them each time the threads of this target are requested.
+	 */
+	private final Map<Long, ThreadReference> fPendingThreads = new ConcurrentHashMap<>();
+
+	/**
+	 * In lazy mode, the maximum number of pending threads whose model
+	 * threads are created by one request for the threads of this target.
+	 */
+	private static final int PENDING_THREADS_PAGE_SIZE = 100;
 
 	/**
 	 * List of thread groups in this target.
@@ -211,6 +250,11 @@ public class JDIDebugTarget extends JDIDebugElement implements
 	 */
 	private ThreadStartHandler fThreadStartHandler = null;
 
+	/**
+	 * The class prepare requests shared by breakpoints
+	 */
+	private final ClassPrepareMultiplexer fClassPrepareMultiplexer = new ClassPrepareMultiplexer(this);
+
 	/**
 	 * Whether this VM is suspended.
 	 */
@@ -233,9 +277,10 @@ public class JDIDebugTarget extends JDIDebugElement implements
 
 	/**
 	 * Evaluation engine cache by Java project. Engines are disposed when this
-	 * target terminates.
+	 * target terminates. Access is synchronized on the map, as engines are
+	 * requested by event dispatch workers and condition precompilation.
 	 */
-	private HashMap<IJavaProject, IAstEvaluationEngine> fEngines;
+	private final HashMap<IJavaProject, IAstEvaluationEngine> fEngines = new HashMap<>(2);
 
 	/**
 	 * List of step filters - each string is a pattern/fully qualified name of a
@@ -360,7 +405,6 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		setName(name);
 		prepareBreakpointsSearchScope();
 		setBreakpoints(new ArrayList<IBreakpoint>(5));
-		setThreadList(new ArrayList<JDIThread>(5));
 		fGroups = new ArrayList<>(5);
 		setOutOfSynchTypes(new ArrayList<String>(0));
 		setHCROccurred(false);
@@ -437,32 +481,71 @@ public class JDIDebugTarget extends JDIDebugElement implements
 	}
 
 	/**
-	 * Returns an iterator over the collection of threads. The returned iterator
-	 * is made on a copy of the thread list so that it is thread safe. This
-	 * method should always be used instead of getThreadList().iterator()
+	 * Returns the threads of this target in the order they were added. The
+	 * array is shared and must not be modified; it is only rebuilt when threads
+	 * were added or removed since the last call, so iterating the threads does
+	 * not copy them on each event.
+	 *
+	 * @return the threads of this target
+	 */
+	private JDIThread[] getThreadSnapshot() {
+		JDIThread[] threads = fThreadSnapshot;
+		if (threads != null) {
+			return threads;
+		}
+		synchronized (fThreads) {
+			threads = fThreadSnapshot;
+			if (threads == null) {
+				threads = fOrderedThreads.toArray(new JDIThread[fOrderedThreads.size()]);
+				fThreadSnapshot = threads;
+			}
+			return threads;
+		}
+	}
+
+	/**
+	 * Returns an iterator over the threads of this target, made on the thread
+	 * snapshot so that it is thread safe.
 	 *
 	 * @return an iterator over the collection of threads
 	 */
 	private Iterator<JDIThread> getThreadIterator() {
-		List<JDIThread> threadList;
+		return Arrays.asList(getThreadSnapshot()).iterator();
+	}
+
+	/**
+	 * Adds the given thread to this target, unless a thread is already
+	 * registered for the same underlying thread.
+	 *
+	 * @param thread
+	 *            the thread to add
+	 * @return the thread registered for the underlying thread
+	 */
+	private JDIThread addThread(JDIThread thread) {
 		synchronized (fThreads) {
-			//TODO investigate making fThreads be a synchronized collection, to remove all this copying
-			threadList = new ArrayList<>(fThreads);
+			JDIThread existing = fThreads.putIfAbsent(thread.getUnderlyingThread().uniqueID(), thread);
+			if (existing != null) {
+				return existing;
+			}
+			fOrderedThreads.add(thread);
+			fThreadSnapshot = null;
+			return thread;
 		}
-		return threadList.iterator();
 	}
 
 	/**
-	 * Sets the list of threads contained in this debug target. Set to an empty
-	 * collection on creation. Threads are added and removed as they start and
-	 * end. On termination this collection is set to the immutable singleton
-	 * empty list.
+	 * Removes the given thread from this target.
 	 *
-	 * @param threads
-	 *            empty list
+	 * @param thread
+	 *            the thread to remove
 	 */
-	private void setThreadList(ArrayList<JDIThread> threads) {
-		fThreads = threads;
+	private void removeThread(JDIThread thread) {
+		synchronized (fThreads) {
+			if (fThreads.remove(thread.getUnderlyingThread().uniqueID(), thread)) {
+				fOrderedThreads.remove(thread);
+				fThreadSnapshot = null;
+			}
+		}
 	}
 
 	/**
@@ -506,10 +589,9 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		}
 		// If any threads have resumed since thread collection was initialized,
 		// update their status (avoid concurrent modification - use
-		// #getThreads())
-		IThread[] threads = getThreads();
-		for (IThread thread2 : threads) {
-			JDIThread thread = (JDIThread) thread2;
+		// #getThreadSnapshot())
+		JDIThread[] threads = getThreadSnapshot();
+		for (JDIThread thread : threads) {
 			if (thread.isSuspended()) {
 				try {
 					boolean suspended = thread.getUnderlyingThread()
@@ -540,6 +622,24 @@ public class JDIDebugTarget extends JDIDebugElement implements
 				JDIDebugModel.PREF_REQUEST_TIMEOUT,
 				JDIDebugModel.DEF_REQUEST_TIMEOUT,
 				null));
+		fLazyThreads = Platform.getPreferencesService().getBoolean(
+				JDIDebugPlugin.getUniqueIdentifier(),
+				JDIDebugPlugin.PREF_LAZY_THREADS,
+				false,
+				null);
+		VirtualMachine vm = getVM();
+		if (vm instanceof VirtualMachineImpl) {
+			((VirtualMachineImpl) vm).setSuspendCacheEnabled(Platform.getPreferencesService().getBoolean(
+					JDIDebugPlugin.getUniqueIdentifier(),
+					JDIDebugPlugin.PREF_SUSPEND_CACHE,
+					false,
+					null));
+			((VirtualMachineImpl) vm).setLoadedClassIndexEnabled(Platform.getPreferencesService().getBoolean(
+					JDIDebugPlugin.getUniqueIdentifier(),
+					JDIDebugPlugin.PREF_LOADED_CLASS_INDEX,
+					true,
+					null));
+		}
 		initializeRequests();
 		initializeState();
 		initializeBreakpoints();
@@ -587,7 +687,12 @@ public class JDIDebugTarget extends JDIDebugElement implements
 			if (threads != null) {
 				Iterator<ThreadReference> initialThreads = threads.iterator();
 				while (initialThreads.hasNext()) {
-					createThread(initialThreads.next());
+					ThreadReference thread = initialThreads.next();
+					if (fLazyThreads) {
+						addPendingThread(thread);
+					} else {
+						createThread(thread);
+					}
 				}
 			}
 		}
@@ -640,13 +745,81 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		if (isDisconnected()) {
 			return null;
 		}
-		synchronized (fThreads) {
-			fThreads.add(jdiThread);
+		JDIThread registered = addThread(jdiThread);
+		if (registered != jdiThread) {
+			// the thread was added while this one was created
+			return registered;
 		}
 		jdiThread.fireCreationEvent();
 		return jdiThread;
 	}
 
+	/**
+	 * Records a thread of the virtual machine without creating its model
+	 * thread, in lazy mode.
+	 *
+	 * @param thread
+	 *            underlying thread
+	 */
+	private void addPendingThread(ThreadReference thread) {
+		if (thread != null && lookupThread(thread) == null) {
+			fPendingThreads.put(thread.uniqueID(), thread);
+		}
+	}
+
+	/**
+	 * Creates the model thread of a thread recorded in lazy mode, if it still
+	 * has none. The model thread is created outside of the lock on the
+	 * pending threads, and only registered if the thread did not die
+	 * meanwhile.
+	 *
+	 * @param thread
+	 *            underlying thread
+	 * @return the model thread, or <code>null</code> if the thread is not
+	 *         recorded or is already collected
+	 */
+	private JDIThread materializeThread(ThreadReference thread) {
+		Long id = Long.valueOf(thread.uniqueID());
+		if (!fPendingThreads.containsKey(id)) {
+			return lookupThread(thread);
+		}
+		JDIThread jdiThread = newThread(thread);
+		if (jdiThread == null || isDisconnected()) {
+			return null;
+		}
+		JDIThread registered;
+		// synchronized with thread death, so that a thread dying while its
+		// model thread is created is not registered
+		synchronized (fPendingThreads) {
+			if (fPendingThreads.remove(id) == null) {
+				// died, or materialized by another thread
+				return lookupThread(thread);
+			}
+			registered = addThread(jdiThread);
+		}
+		if (registered == jdiThread) {
+			jdiThread.fireCreationEvent();
+		}
+		return registered;
+	}
+
+	/**
+	 * Creates the model threads of a page of the threads recorded in lazy
+	 * mode, so that the threads of this target are listed a page at a time
+	 * rather than all at once.
+	 */
+	private void materializePendingThreads() {
+		if (fLazyThreads && !fPendingThreads.isEmpty()) {
+			int count = 0;
+			for (ThreadReference thread : fPendingThreads.values()) {
+				if (count++ == PENDING_THREADS_PAGE_SIZE) {
+					break;
+				}
+				materializeThread(thread);
+			}
+		}
+	}
+
 	/**
 	 * Factory method for creating new threads. Creates and returns a new thread
 	 * object for the underlying thread reference, or <code>null</code> if none
@@ -666,13 +839,16 @@ public class JDIDebugTarget extends JDIDebugElement implements
 	}
 
 	/**
+	 * In lazy mode, the model threads of a page of the threads that have none
+	 * are created first, each request lists more of them.
+	 *
 	 * @see IDebugTarget#getThreads()
 	 */
 	@Override
 	public IThread[] getThreads() {
-		synchronized (fThreads) {
-			return fThreads.toArray(new IThread[0]);
-		}
+		materializePendingThreads();
+		JDIThread[] threads = getThreadSnapshot();
+		return Arrays.copyOf(threads, threads.length, IThread[].class);
 	}
 
 	/**
@@ -708,9 +884,9 @@ public class JDIDebugTarget extends JDIDebugElement implements
 	public boolean canSuspend() {
 		if (isAvailable()) {
 			// allow suspend when one or more threads are currently running
-			IThread[] threads = getThreads();
-			for (IThread thread : threads) {
-				if (((JDIThread) thread).canSuspend()) {
+			JDIThread[] threads = getThreadSnapshot();
+			for (JDIThread thread : threads) {
+				if (thread.canSuspend()) {
 					return true;
 				}
 			}
@@ -910,6 +1086,43 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		return fVirtualMachine;
 	}
 
+	/**
+	 * Returns the types loaded in the underlying VM whose names start with the
+	 * given prefix. When the VM is provided by the Eclipse JDI implementation
+	 * and its index of loaded types is enabled, the types are looked up in the
+	 * index, instead of retrieving all loaded classes from the VM.
+	 *
+	 * @param namePrefix
+	 *            prefix of the fully qualified type names, the empty string
+	 *            matches all types
+	 * @return the matching types, or <code>null</code> if
+	 *         disconnected/terminated
+	 */
+	public List<ReferenceType> getLoadedClasses(String namePrefix) {
+		VirtualMachine vm = getVM();
+		if (vm == null) {
+			return null;
+		}
+		if (vm instanceof VirtualMachineImpl) {
+			LoadedClassIndex index = ((VirtualMachineImpl) vm).loadedClassIndex();
+			if (index != null) {
+				return index.classesByNamePrefix(namePrefix);
+			}
+		}
+		List<ReferenceType> classes = vm.allClasses();
+		if (classes == null || namePrefix.isEmpty()) {
+			return classes;
+		}
+		List<ReferenceType> matches = new ArrayList<>();
+		for (ReferenceType type : classes) {
+			String typeName = type.name();
+			if (typeName != null && typeName.startsWith(namePrefix)) {
+				matches.add(type);
+			}
+		}
+		return matches;
+	}
+
 	/**
 	 * Sets the underlying VM associated with this debug target. Set on
 	 * creation.
@@ -1035,19 +1248,37 @@ public class JDIDebugTarget extends JDIDebugElement implements
 
 	/**
 	 * Finds and returns the JDI thread for the associated thread reference, or
-	 * <code>null</code> if not found.
+	 * <code>null</code> if not found. In lazy mode, the model thread of a
+	 * thread that has none yet is created.
 	 *
 	 * @param the
 	 *            underlying thread reference
 	 * @return the associated model thread
 	 */
 	public JDIThread findThread(ThreadReference tr) {
-		Iterator<JDIThread> iter = getThreadIterator();
-		while (iter.hasNext()) {
-			JDIThread thread = iter.next();
-			if (thread.getUnderlyingThread().equals(tr)) {
-				return thread;
-			}
+		JDIThread thread = lookupThread(tr);
+		if (thread == null && tr != null && fLazyThreads) {
+			thread = materializeThread(tr);
+		}
+		return thread;
+	}
+
+	/**
+	 * Returns the existing model thread for the given thread reference, or
+	 * <code>null</code> if none. Unlike {@link #findThread(ThreadReference)},
+	 * no model thread is created in lazy mode.
+	 *
+	 * @param tr
+	 *            the underlying thread reference
+	 * @return the existing model thread or <code>null</code>
+	 */
+	public JDIThread lookupThread(ThreadReference tr) {
+		if (tr == null) {
+			return null;
+		}
+		JDIThread thread = fThreads.get(tr.uniqueID());
+		if (thread != null && thread.getUnderlyingThread().equals(tr)) {
+			return thread;
 		}
 		return null;
 	}
@@ -1698,14 +1929,16 @@ public class JDIDebugTarget extends JDIDebugElement implements
 	@Override
 	public void suspend() throws DebugException {
 		if (isSuspended()) {
-			IThread[] threads = getThreads();
-			for (IThread thread : threads) {
-				((JDIThread) thread).suspend();
+			JDIThread[] threads = getThreadSnapshot();
+			for (JDIThread thread : threads) {
+				thread.suspend();
 			}
 			return;
 		}
 		try {
 			VirtualMachine vm = getVM();
+			// the threads without model thread are suspended with the
+			// virtual machine, and have nothing to prepare or notify
 			prepareThreadsForClientSuspend();
 			if (vm != null) {
 				vm.suspend();
@@ -1752,12 +1985,141 @@ public class JDIDebugTarget extends JDIDebugElement implements
 	 * Notifies threads that they have been resumed
 	 */
 	protected void resumeThreads() throws DebugException {
-		Iterator<JDIThread> threads = getThreadIterator();
-		while (threads.hasNext()) {
-			threads.next().resumedByVM();
+		JDIThread[] threads = getThreadSnapshot();
+		int[] suspendCounts = getSuspendCounts(threads);
+		for (int i = 0; i < threads.length; i++) {
+			if (suspendCounts != null) {
+				threads[i].resumedByVM(suspendCounts[i]);
+			} else {
+				threads[i].resumedByVM();
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the suspend counts of the underlying threads of the given
+	 * threads in a few round trips, rather than with one request per thread.
+	 *
+	 * @param threads
+	 *            model threads of this target
+	 * @return the suspend count of each thread, -1 for the threads that are
+	 *         no longer valid, or <code>null</code> if the suspend counts
+	 *         cannot be retrieved at once
+	 */
+	private int[] getSuspendCounts(JDIThread[] threads) {
+		List<ThreadReference> references = getUnderlyingThreads(threads);
+		if (references == null) {
+			return null;
+		}
+		try {
+			return ((ThreadReferenceImpl) references.get(0)).suspendCounts(references);
+		} catch (VMDisconnectedException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// the threads are queried one by one
+			logError(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Retrieves the state of the underlying threads of the given threads in a
+	 * few round trips, rather than with one request per thread and
+	 * property.
+	 *
+	 * @param threads
+	 *            model threads of this target
+	 * @return the state of each thread, <code>null</code> for the threads
+	 *         that are no longer valid, or <code>null</code> if the states
+	 *         cannot be retrieved at once
+	 */
+	private ThreadReferenceImpl.State[] getThreadStates(JDIThread[] threads) {
+		return getThreadStates(getUnderlyingThreads(threads));
+	}
+
+	/**
+	 * Retrieves the state of the given threads in a few round trips.
+	 *
+	 * @param references
+	 *            threads of the virtual machine, or <code>null</code>
+	 * @return the state of each thread, <code>null</code> for the threads
+	 *         that are no longer valid, or <code>null</code> if the states
+	 *         cannot be retrieved at once
+	 */
+	private ThreadReferenceImpl.State[] getThreadStates(List<ThreadReference> references) {
+		if (references == null || references.isEmpty()) {
+			return null;
+		}
+		try {
+			return ((ThreadReferenceImpl) references.get(0)).states(references);
+		} catch (VMDisconnectedException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// the threads are queried one by one
+			logError(e);
+			return null;
 		}
 	}
 
+	/**
+	 * Returns the number of threads recorded in lazy mode that are running,
+	 * without creating their model threads.
+	 */
+	private int countRunningPendingThreads() {
+		if (!fLazyThreads || fPendingThreads.isEmpty()) {
+			return 0;
+		}
+		List<ThreadReference> references = new ArrayList<>(fPendingThreads.values());
+		boolean batched = true;
+		for (ThreadReference reference : references) {
+			if (!(reference instanceof ThreadReferenceImpl)) {
+				batched = false;
+				break;
+			}
+		}
+		int running = 0;
+		ThreadReferenceImpl.State[] states = batched ? getThreadStates(references) : null;
+		if (states != null) {
+			for (ThreadReferenceImpl.State state : states) {
+				if (state != null && !state.isSuspended()) {
+					running++;
+				}
+			}
+			return running;
+		}
+		for (ThreadReference reference : references) {
+			try {
+				if (!reference.isSuspended()) {
+					running++;
+				}
+			} catch (VMDisconnectedException e) {
+				return running;
+			} catch (ObjectCollectedException e) {
+				// the thread is gone, its death event forgets it
+			}
+		}
+		return running;
+	}
+
+	/**
+	 * Returns the underlying threads of the given threads, or
+	 * <code>null</code> if there are none or they cannot be queried at once.
+	 */
+	private List<ThreadReference> getUnderlyingThreads(JDIThread[] threads) {
+		if (threads.length == 0) {
+			return null;
+		}
+		List<ThreadReference> references = new ArrayList<>(threads.length);
+		for (JDIThread thread : threads) {
+			ThreadReference reference = thread.getUnderlyingThread();
+			if (!(reference instanceof ThreadReferenceImpl)) {
+				return null;
+			}
+			references.add(reference);
+		}
+		return references;
+	}
+
 	/**
 	 * Notifies this VM to update its state in preparation for a suspend.
 	 *
@@ -1884,7 +2246,7 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		removeAllBreakpoints();
 		DebugPlugin.getDefault().getBreakpointManager().enableTriggerPoints(null, true);
 		fOutOfSynchTypes.clear();
-		if (fEngines != null) {
+		synchronized (fEngines) {
 			Iterator<IAstEvaluationEngine> engines = fEngines.values().iterator();
 			while (engines.hasNext()) {
 				IAstEvaluationEngine engine = engines
@@ -1895,6 +2257,7 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		}
 		fVirtualMachine = null;
 		setThreadStartHandler(null);
+		fClassPrepareMultiplexer.dispose();
 		setEventDispatcher(null);
 		setStepFilters(new String[0]);
 		fHCRListeners.clear();
@@ -1915,7 +2278,10 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		}
 		synchronized (fThreads) {
 			fThreads.clear();
+			fOrderedThreads.clear();
+			fThreadSnapshot = null;
 		}
+		fPendingThreads.clear();
 	}
 
 	/**
@@ -1979,9 +2345,8 @@ public class JDIDebugTarget extends JDIDebugElement implements
 	 */
 	@Override
 	public IJavaVariable findVariable(String varName) throws DebugException {
-		IThread[] threads = getThreads();
-		for (IThread thread2 : threads) {
-			IJavaThread thread = (IJavaThread) thread2;
+		JDIThread[] threads = getThreadSnapshot();
+		for (JDIThread thread : threads) {
 			IJavaVariable var = thread.findVariable(varName);
 			if (var != null) {
 				return var;
@@ -2349,8 +2714,13 @@ public class JDIDebugTarget extends JDIDebugElement implements
 			} catch (TimeoutException e) {
 				// continue - attempt to create the thread
 			}
-			JDIThread jdiThread = findThread(thread);
+			JDIThread jdiThread = lookupThread(thread);
 			if (jdiThread == null) {
+				if (fLazyThreads) {
+					// the model thread is created when needed
+					addPendingThread(thread);
+					return true;
+				}
 				jdiThread = createThread(thread);
 				if (jdiThread == null) {
 					return false;
@@ -2438,14 +2808,18 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		public boolean handleEvent(Event event, JDIDebugTarget target,
 				boolean suspendVote, EventSet eventSet) {
 			ThreadReference ref = ((ThreadDeathEvent) event).thread();
-			JDIThread thread = findThread(ref);
+			if (ref == null) {
+				return true;
+			}
+			synchronized (fPendingThreads) {
+				fPendingThreads.remove(ref.uniqueID());
+			}
+			JDIThread thread = lookupThread(ref);
 			if (thread == null) {
-				thread = target.findThread(ref);
+				thread = target.lookupThread(ref);
 			}
 			if (thread != null) {
-				synchronized (fThreads) {
-					fThreads.remove(thread);
-				}
+				removeThread(thread);
 				thread.terminated();
 			}
 			return true;
@@ -2525,6 +2899,16 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		fThreadStartHandler = threadStartHandler;
 	}
 
+	/**
+	 * Returns the class prepare requests shared by the breakpoints of this
+	 * target.
+	 *
+	 * @return the class prepare multiplexer of this target
+	 */
+	public ClassPrepareMultiplexer getClassPrepareMultiplexer() {
+		return fClassPrepareMultiplexer;
+	}
+
 	/**
 	 * Java debug targets do not support storage retrieval.
 	 *
@@ -2754,7 +3138,7 @@ public class JDIDebugTarget extends JDIDebugElement implements
 	 */
 	@Override
 	public boolean hasThreads() {
-		return fThreads.size() > 0;
+		return !fThreads.isEmpty() || !fPendingThreads.isEmpty();
 	}
 
 	/**
@@ -2807,16 +3191,15 @@ public class JDIDebugTarget extends JDIDebugElement implements
 	 * @return evaluation engine
 	 */
 	public IAstEvaluationEngine getEvaluationEngine(IJavaProject project) {
-		if (fEngines == null) {
-			fEngines = new HashMap<>(2);
-		}
-		IAstEvaluationEngine engine = fEngines
-				.get(project);
-		if (engine == null) {
-			engine = EvaluationManager.newAstEvaluationEngine(project, this);
-			fEngines.put(project, engine);
+		synchronized (fEngines) {
+			IAstEvaluationEngine engine = fEngines
+					.get(project);
+			if (engine == null) {
+				engine = EvaluationManager.newAstEvaluationEngine(project, this);
+				fEngines.put(project, engine);
+			}
+			return engine;
 		}
-		return engine;
 	}
 
 	/**
@@ -3186,13 +3569,23 @@ public class JDIDebugTarget extends JDIDebugElement implements
 		List<JDIThread> toSuspend = new ArrayList<>();
 		List<JDIThread> toResume = new ArrayList<>();
 		List<JDIThread> toRefresh = new ArrayList<>();
-		Iterator<JDIThread> iterator = getThreadIterator();
-		while (iterator.hasNext()) {
-			JDIThread thread = iterator.next();
+		JDIThread[] threads = getThreadSnapshot();
+		ThreadReferenceImpl.State[] states = getThreadStates(threads);
+		for (int i = 0; i < threads.length; i++) {
+			JDIThread thread = threads[i];
 			boolean modelSuspended = thread.isSuspended();
-			ThreadReference reference = thread.getUnderlyingThread();
 			try {
-				boolean realSuspended = reference.isSuspended();
+				boolean realSuspended;
+				if (states != null) {
+					if (states[i] == null) {
+						// the thread is gone, its death event removes it
+						continue;
+					}
+					realSuspended = states[i].isSuspended();
+					thread.setPreviousName(states[i].name());
+				} else {
+					realSuspended = thread.getUnderlyingThread().isSuspended();
+				}
 				if (realSuspended) {
 					if (modelSuspended) {
 						// Even if the model is suspended, it might be in a
@@ -3216,6 +3609,9 @@ public class JDIDebugTarget extends JDIDebugElement implements
 				requestFailed(e.getMessage(), e);
 			}
 		}
+		// the threads without model thread only count for the state of this
+		// target, their model threads read their state when created
+		running += countRunningPendingThreads();
 		// if the entire target changed state/fire events at target level, else
 		// fire thread events
 		boolean targetLevelEvent = false;
@@ -3230,6 +3626,7 @@ public class JDIDebugTarget extends JDIDebugElement implements
 				targetLevelEvent = true;
 			}
 		}
+		Iterator<JDIThread> iterator;
 		if (targetLevelEvent) {
 			iterator = toSuspend.iterator();
 			while (iterator.hasNext()) {
@@ -3258,24 +3655,33 @@ public class JDIDebugTarget extends JDIDebugElement implements
 				fireResumeEvent(DebugEvent.CLIENT_REQUEST);
 			}
 		} else {
+			// fire the changes of all threads as one event set
+			List<DebugEvent> events = new ArrayList<>(toSuspend.size()
+					+ toResume.size() + toRefresh.size());
 			iterator = toSuspend.iterator();
 			while (iterator.hasNext()) {
 				JDIThread thread = iterator.next();
 				thread.preserveStackFrames();
 				thread.setRunning(false);
-				thread.fireSuspendEvent(DebugEvent.CLIENT_REQUEST);
+				incrementSuspendCount(DebugEvent.CLIENT_REQUEST);
+				events.add(new DebugEvent(thread, DebugEvent.SUSPEND, DebugEvent.CLIENT_REQUEST));
 			}
 			iterator = toResume.iterator();
 			while (iterator.hasNext()) {
 				JDIThread thread = iterator.next();
 				thread.setRunning(true);
-				thread.fireResumeEvent(DebugEvent.CLIENT_REQUEST);
+				events.add(new DebugEvent(thread, DebugEvent.RESUME, DebugEvent.CLIENT_REQUEST));
 			}
 			iterator = toRefresh.iterator();
 			while (iterator.hasNext()) {
 				JDIThread thread = iterator.next();
 				thread.preserveStackFrames();
-				thread.fireSuspendEvent(DebugEvent.CLIENT_REQUEST);
+				incrementSuspendCount(DebugEvent.CLIENT_REQUEST);
+				events.add(new DebugEvent(thread, DebugEvent.SUSPEND, DebugEvent.CLIENT_REQUEST));
+			}
+			if (!events.isEmpty()) {
+				DebugPlugin.getDefault().fireDebugEventSet(
+						events.toArray(new DebugEvent[events.size()]));
 			}
 		}
 
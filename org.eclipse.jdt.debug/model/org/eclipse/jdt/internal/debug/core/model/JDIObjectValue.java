@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.debug.core.DebugException;
 import org.eclipse.jdi.internal.InterfaceTypeImpl;
@@ -292,6 +293,56 @@ public class JDIObjectValue extends JDIValue implements IJavaObject {
 		return null;
 	}
 
+	/**
+	 * Returns the values of the fields of this object with the given names
+	 * and declaring type signatures, read in one request to the target.
+	 *
+	 * @param names
+	 *            the names of the fields
+	 * @param declaringTypeSignatures
+	 *            the signatures of the types declaring the fields, in the
+	 *            same order as the names
+	 * @return the values of the fields, in the same order as the names,
+	 *         <code>null</code> for the fields that do not exist
+	 * @throws DebugException
+	 *             if the values cannot be retrieved
+	 */
+	public IJavaValue[] getFieldValues(String[] names,
+			String[] declaringTypeSignatures) throws DebugException {
+		IJavaValue[] values = new IJavaValue[names.length];
+		ReferenceType ref = getUnderlyingReferenceType();
+		try {
+			Field[] fields = new Field[names.length];
+			List<Field> found = new ArrayList<>(names.length);
+			for (Field field : ref.allFields()) {
+				for (int i = 0; i < names.length; i++) {
+					if (fields[i] == null && names[i].equals(field.name())
+							&& declaringTypeSignatures[i].equals(field
+									.declaringType().signature())) {
+						fields[i] = field;
+						found.add(field);
+					}
+				}
+			}
+			if (!found.isEmpty()) {
+				Map<Field, Value> underlyingValues = getUnderlyingObject().getValues(found);
+				for (int i = 0; i < names.length; i++) {
+					if (fields[i] != null) {
+						values[i] = JDIValue.createValue(
+								(JDIDebugTarget) getDebugTarget(),
+								underlyingValues.get(fields[i]));
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			targetRequestFailed(
+					MessageFormat.format(
+							JDIDebugModelMessages.JDIObjectValue_exception_retrieving_field,
+							e.toString()), e);
+		}
+		return values;
+	}
+
 	/**
 	 * Returns a variable representing the field in this object with the given
 	 * name, or <code>null</code> if there is no field with the given name, or
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.debug.core.DebugException;
 import org.eclipse.jdt.core.Signature;
@@ -120,6 +121,48 @@ public abstract class JDIReferenceType extends JDIType implements
 		return null;
 	}
 
+	/**
+	 * Returns the values of the static fields of this type with the given
+	 * names, read in one request to the target.
+	 *
+	 * @param names
+	 *            the names of the static fields
+	 * @return the values of the fields, in the same order as the names,
+	 *         <code>null</code> for the fields that do not exist
+	 * @throws DebugException
+	 *             if the values cannot be retrieved
+	 */
+	public IJavaValue[] getStaticFieldValues(String[] names) throws DebugException {
+		IJavaValue[] values = new IJavaValue[names.length];
+		try {
+			ReferenceType type = (ReferenceType) getUnderlyingType();
+			Field[] fields = new Field[names.length];
+			List<Field> found = new ArrayList<>(names.length);
+			for (int i = 0; i < names.length; i++) {
+				Field field = type.fieldByName(names[i]);
+				if (field != null && field.isStatic()) {
+					fields[i] = field;
+					found.add(field);
+				}
+			}
+			if (!found.isEmpty()) {
+				Map<Field, Value> underlyingValues = type.getValues(found);
+				for (int i = 0; i < names.length; i++) {
+					if (fields[i] != null) {
+						values[i] = JDIValue.createValue(getJavaDebugTarget(),
+								underlyingValues.get(fields[i]));
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			targetRequestFailed(
+					MessageFormat.format(
+							JDIDebugModelMessages.JDIVariable_exception_retrieving,
+							e.toString()), e);
+		}
+		return values;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
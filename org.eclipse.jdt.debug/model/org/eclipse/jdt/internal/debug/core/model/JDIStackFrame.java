@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,10 +12,13 @@
 package org.eclipse.jdt.internal.debug.core.model;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.core.runtime.IStatus;
@@ -63,6 +66,7 @@ import com.sun.jdi.ObjectReference;
 import com.sun.jdi.ReferenceType;
 import com.sun.jdi.StackFrame;
 import com.sun.jdi.Type;
+import com.sun.jdi.Value;
 import com.sun.jdi.VirtualMachine;
 
 /**
@@ -253,11 +257,12 @@ public class JDIStackFrame extends JDIDebugElement implements IJavaStackFrame {
 			if (!exists() || isObsolete() || !getThread().canStepReturn()) {
 				return false;
 			}
-			List<IJavaStackFrame> frames = ((JDIThread) getThread())
-					.computeStackFrames();
+			// the frames down to the one below this frame
+			JDIThread thread = (JDIThread) getThread();
+			List<IJavaStackFrame> frames = thread.computeTopStackFrames(
+					thread.getFrameCount() - getDepth() + 1);
 			if (frames != null && !frames.isEmpty()) {
-				boolean bottomFrame = this
-						.equals(frames.get(frames.size() - 1));
+				boolean bottomFrame = getDepth() == 0;
 				boolean aboveObsoleteFrame = false;
 				if (!bottomFrame) {
 					int index = frames.indexOf(this);
@@ -684,12 +689,13 @@ public class JDIStackFrame extends JDIDebugElement implements IJavaStackFrame {
 			if (jdkSupport || j9Support) {
 				// Also ensure that this frame and no frames above this
 				// frame are native. Unable to pop native stack frames.
-				List<IJavaStackFrame> frames = thread.computeStackFrames();
+				// the frames down to the one below this frame
+				List<IJavaStackFrame> frames = thread.computeTopStackFrames(
+						thread.getFrameCount() - getDepth() + 1);
 				if (jdkSupport) {
 					// JDK 1.4 VMs are currently unable to pop the bottom
 					// stack frame.
-					if ((frames.size() > 0)
-							&& frames.get(frames.size() - 1) == this) {
+					if (getDepth() == 0) {
 						return false;
 					}
 				}
@@ -1136,6 +1142,16 @@ public class JDIStackFrame extends JDIDebugElement implements IJavaStackFrame {
 		}
 	}
 
+	/**
+	 * Returns this frame's depth in the call stack, 0 for the bottom of the
+	 * stack, or -1 if this frame is invalid.
+	 */
+	int getDepth() {
+		synchronized (fThread) {
+			return fDepth;
+		}
+	}
+
 	/**
 	 * @see ITerminate#canTerminate()
 	 */
@@ -1240,6 +1256,53 @@ public class JDIStackFrame extends JDIDebugElement implements IJavaStackFrame {
 		return locals;
 	}
 
+	/**
+	 * Returns the values of the visible local variables with the given names,
+	 * read in one request to the target. Names that are not visible are
+	 * ignored.
+	 *
+	 * @param names
+	 *            the names of the local variables to read
+	 * @return the values of the local variables, by name
+	 * @exception DebugException
+	 *                if this method fails. Reasons include:
+	 *                <ul>
+	 *                <li>Failure communicating with the VM. The
+	 *                DebugException's status code contains the underlying
+	 *                exception responsible for the failure.</li>
+	 *                </ul>
+	 */
+	public Map<String, IJavaValue> getLocalValues(Collection<String> names) throws DebugException {
+		synchronized (fThread) {
+			Map<String, IJavaValue> values = new HashMap<>(names.size());
+			if (!isSuspended()) {
+				return values;
+			}
+			List<LocalVariable> locals = new ArrayList<>(names.size());
+			for (LocalVariable local : getUnderlyingVisibleVariables()) {
+				if (names.contains(local.name())) {
+					locals.add(local);
+				}
+			}
+			if (locals.isEmpty()) {
+				return values;
+			}
+			try {
+				Map<LocalVariable, Value> underlyingValues = getUnderlyingStackFrame().getValues(locals);
+				for (Map.Entry<LocalVariable, Value> entry : underlyingValues.entrySet()) {
+					values.put(entry.getKey().name(), JDIValue.createValue(
+							(JDIDebugTarget) getDebugTarget(), entry.getValue()));
+				}
+			} catch (RuntimeException e) {
+				targetRequestFailed(
+						MessageFormat.format(
+								JDIDebugModelMessages.JDIVariable_exception_retrieving,
+								e.toString()), e);
+			}
+			return values;
+		}
+	}
+
 	/**
 	 * @see IJavaStackFrame#getThis()
 	 */
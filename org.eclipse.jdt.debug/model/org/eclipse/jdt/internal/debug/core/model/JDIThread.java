@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2017 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,8 +15,10 @@ package org.eclipse.jdt.internal.debug.core.model;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.eclipse.core.runtime.CoreException;
@@ -129,9 +131,21 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 	 */
 	private String fPreviousName;
 	/**
-	 * Collection of stack frames
+	 * Collection of stack frames, the top frames of the stack retrieved so
+	 * far
 	 */
 	private List<IJavaStackFrame> fStackFrames;
+	/**
+	 * Number of frames on the stack when the stack frames were last computed,
+	 * or -1 if not computed.
+	 */
+	private int fFrameCount = -1;
+	/**
+	 * Stack frames of a previous suspend below the frames retrieved so far, by
+	 * depth from the bottom of the stack. They are re-used when the frames at
+	 * their depth are retrieved.
+	 */
+	private Map<Integer, JDIStackFrame> fUnboundFrames = new HashMap<>();
 	/**
 	 * Underlying thread group, cached on first access.
 	 */
@@ -601,6 +615,29 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 		return list.toArray(new IStackFrame[list.size()]);
 	}
 
+	/**
+	 * Returns a range of this thread's stack frames, only retrieving the
+	 * frames of the stack down to the end of the range.
+	 *
+	 * @param index
+	 *            index of the first frame, 0 for the top frame
+	 * @param length
+	 *            maximum number of frames
+	 * @return the frames in the range, fewer if the stack is not as deep
+	 * @throws DebugException
+	 *             if an exception occurs retrieving frames
+	 * @since 3.12
+	 */
+	public synchronized IStackFrame[] getStackFrames(int index, int length)
+			throws DebugException {
+		List<IJavaStackFrame> list = computeTopStackFrames(index + length);
+		if (index >= list.size()) {
+			return new IStackFrame[0];
+		}
+		List<IJavaStackFrame> range = list.subList(index, Math.min(index + length, list.size()));
+		return range.toArray(new IStackFrame[range.size()]);
+	}
+
 	/**
 	 * @see #computeStackFrames()
 	 *
@@ -613,49 +650,36 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 	 */
 	protected synchronized List<IJavaStackFrame> computeStackFrames(boolean refreshChildren)
 			throws DebugException {
+		return computeStackFrames(refreshChildren, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Computes at least the given number of top stack frames, or all frames if
+	 * the stack is not as deep. Frames are retrieved from the VM by pages, see
+	 * {@link JDIDebugPlugin#PREF_STACK_FRAME_PAGE_SIZE}, so that the frames
+	 * at the bottom of a deep stack are only retrieved when asked for.
+	 *
+	 * @param refreshChildren
+	 *            whether or not this method should request new stack frames
+	 *            from the VM
+	 * @param count
+	 *            the number of top frames needed
+	 * @return the list of stack frames retrieved so far
+	 * @throws DebugException
+	 *             if an exception occurs retrieving frames
+	 */
+	private List<IJavaStackFrame> computeStackFrames(boolean refreshChildren, int count)
+			throws DebugException {
 		if (isSuspended()) {
 			if (isTerminated()) {
 				fStackFrames.clear();
-			} else if (refreshChildren) {
-				List<StackFrame> frames = getUnderlyingFrames();
-				int oldSize = fStackFrames.size();
-				if (oldSize > 0) {
-					((JDIStackFrame) fStackFrames.get(0)).setIsTop(false);
-				}
-				int newSize = frames.size();
-				int discard = oldSize - newSize; // number of old frames to
-													// discard, if any
-				for (int i = 0; i < discard; i++) {
-					JDIStackFrame invalid = (JDIStackFrame) fStackFrames
-							.remove(0);
-					invalid.bind(null, -1);
-				}
-				int newFrames = newSize - oldSize; // number of frames to
-													// create, if any
-				int depth = oldSize;
-				for (int i = newFrames - 1; i >= 0; i--) {
-					fStackFrames.add(0, new JDIStackFrame(this,
-							frames.get(i), depth));
-					depth++;
-				}
-				int numToRebind = Math.min(newSize, oldSize); // number of
-																// frames to
-																// attempt to
-																// re-bind
-				int offset = newSize - 1;
-				for (depth = 0; depth < numToRebind; depth++) {
-					JDIStackFrame oldFrame = (JDIStackFrame) fStackFrames
-							.get(offset);
-					StackFrame frame = frames.get(offset);
-					JDIStackFrame newFrame = oldFrame.bind(frame, depth);
-					if (newFrame != oldFrame) {
-						fStackFrames.set(offset, newFrame);
-					}
-					offset--;
-				}
-				if (newSize > 0) {
-					((JDIStackFrame) fStackFrames.get(0)).setIsTop(true);
+				fUnboundFrames.clear();
+				fFrameCount = -1;
+			} else {
+				if (refreshChildren) {
+					unbindStackFrames(getUnderlyingFrameCount());
 				}
+				retrieveStackFrames(count);
 			}
 			fRefreshChildren = false;
 		} else {
@@ -664,6 +688,93 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 		return fStackFrames;
 	}
 
+	/**
+	 * Moves the stack frames of the previous suspend to the unbound frames,
+	 * to be re-bound to the frames at their depth when these are retrieved.
+	 * Frames deeper than the new stack are invalidated.
+	 *
+	 * @param frameCount
+	 *            the number of frames on the stack
+	 */
+	private void unbindStackFrames(int frameCount) {
+		for (IJavaStackFrame stackFrame : fStackFrames) {
+			JDIStackFrame frame = (JDIStackFrame) stackFrame;
+			frame.setIsTop(false);
+			frame.setUnderlyingStackFrame(null);
+			fUnboundFrames.put(frame.getDepth(), frame);
+		}
+		fStackFrames.clear();
+		Iterator<Map.Entry<Integer, JDIStackFrame>> frames = fUnboundFrames.entrySet().iterator();
+		while (frames.hasNext()) {
+			Map.Entry<Integer, JDIStackFrame> entry = frames.next();
+			if (entry.getKey() >= frameCount) {
+				entry.getValue().bind(null, -1);
+				frames.remove();
+			}
+		}
+		fFrameCount = frameCount;
+	}
+
+	/**
+	 * Retrieves the top stack frames down to the given number of frames, by
+	 * pages, re-binding the unbound frames at their depth.
+	 *
+	 * @param count
+	 *            the number of top frames needed
+	 * @throws DebugException
+	 *             if an exception occurs retrieving frames
+	 */
+	private void retrieveStackFrames(int count) throws DebugException {
+		int size = fStackFrames.size();
+		int needed = Math.min(count, fFrameCount) - size;
+		if (needed <= 0) {
+			return;
+		}
+		int length = Math.min(Math.max(needed, getStackFramePageSize()), fFrameCount - size);
+		List<StackFrame> frames = getUnderlyingFrames(size, length);
+		for (int i = 0; i < frames.size(); i++) {
+			// frames are identified by their depth from the bottom of the stack
+			int depth = fFrameCount - 1 - (size + i);
+			JDIStackFrame oldFrame = fUnboundFrames.remove(depth);
+			if (oldFrame == null) {
+				fStackFrames.add(new JDIStackFrame(this, frames.get(i), depth));
+			} else {
+				fStackFrames.add(oldFrame.bind(frames.get(i), depth));
+			}
+		}
+		if (size == 0 && !fStackFrames.isEmpty()) {
+			((JDIStackFrame) fStackFrames.get(0)).setIsTop(true);
+		}
+	}
+
+	/**
+	 * Returns the number of frames retrieved at once.
+	 */
+	private static int getStackFramePageSize() {
+		return Math.max(1, Platform.getPreferencesService().getInt(
+				JDIDebugPlugin.getUniqueIdentifier(),
+				JDIDebugPlugin.PREF_STACK_FRAME_PAGE_SIZE, 32, null));
+	}
+
+	/**
+	 * Returns at least the given number of this thread's top stack frames,
+	 * computing them if required, or all frames if the stack is not as deep.
+	 * Unlike {@link #computeStackFrames()}, the frames below are not retrieved
+	 * from a deep stack.
+	 *
+	 * @param count
+	 *            the number of top frames needed
+	 * @return list of <code>IJavaStackFrame</code>
+	 * @exception DebugException
+	 *                if this method fails
+	 * @see #computeStackFrames()
+	 * @since 3.12
+	 */
+	public synchronized List<IJavaStackFrame> computeTopStackFrames(int count)
+			throws DebugException {
+		return computeStackFrames(fRefreshChildren, count);
+	}
+
 	/**
 	 * Returns this thread's current stack frames as a list, computing them if
 	 * required. Returns an empty collection if this thread is not currently
@@ -713,7 +824,7 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 		return computeStackFrames(true);
 	}
 
-	private List<StackFrame> getUnderlyingFrames() throws DebugException {
+	private List<StackFrame> getUnderlyingFrames(int start, int length) throws DebugException {
 		if (!isSuspended()) {
 			// Checking isSuspended here eliminates a race condition in resume
 			// between the time stack frames are preserved and the time the
@@ -723,7 +834,7 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 					null, IJavaThread.ERR_THREAD_NOT_SUSPENDED);
 		}
 		try {
-			return fThread.frames();
+			return fThread.frames(start, length);
 		} catch (IncompatibleThreadStateException e) {
 			requestFailed(
 					JDIDebugModelMessages.JDIThread_Unable_to_retrieve_stack_frame___thread_not_suspended__1,
@@ -1292,9 +1403,10 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 		setInvokingMethod(false);
 		setRunning(false);
 		setRequestTimeout(restoreTimeout);
-		// update preserved stack frames
+		// update preserved stack frames, the frames below are updated when
+		// retrieved
 		try {
-			computeStackFrames();
+			computeTopStackFrames(1);
 		} catch (DebugException e) {
 			logError(e);
 		}
@@ -1330,6 +1442,19 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 		return fPreviousName;
 	}
 
+	/**
+	 * Sets the name of the underlying thread, as retrieved with the state of
+	 * other threads. The name is answered when it cannot be retrieved anymore.
+	 *
+	 * @param name
+	 *            the name of the underlying thread
+	 */
+	void setPreviousName(String name) {
+		if (name != null) {
+			fPreviousName = name;
+		}
+	}
+
 	/**
 	 * Returns the priority from the underlying {@link ReferenceType}, failing
 	 * that the backing {@link Value} for the underlying {@link ThreadReference}
@@ -1377,7 +1502,7 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 	 */
 	@Override
 	public synchronized IStackFrame getTopStackFrame() throws DebugException {
-		List<IJavaStackFrame> c = computeStackFrames();
+		List<IJavaStackFrame> c = computeTopStackFrames(1);
 		if (c.isEmpty()) {
 			return null;
 		}
@@ -1756,6 +1881,8 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 	 */
 	protected synchronized void disposeStackFrames() {
 		fStackFrames.clear();
+		fUnboundFrames.clear();
+		fFrameCount = -1;
 		fRefreshChildren = true;
 	}
 
@@ -2067,6 +2194,19 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 	 *             if an exception occurs
 	 */
 	protected synchronized void resumedByVM() throws DebugException {
+		resumedByVM(-1);
+	}
+
+	/**
+	 * Notifies this thread that is about to be resumed due to a VM resume.
+	 *
+	 * @param suspendCount
+	 *            the suspend count of the underlying thread, retrieved with
+	 *            the suspend counts of other threads, or -1 if unknown
+	 * @throws DebugException
+	 *             if an exception occurs
+	 */
+	protected synchronized void resumedByVM(int suspendCount) throws DebugException {
 		fClientSuspendRequest = false;
 		setRunning(true);
 		clearStepReturnResult();
@@ -2077,8 +2217,10 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 		// is no greater than 1. @see Bugs 23328 and 27622
 		ThreadReference thread = fThread;
 		try {
-			while (thread.suspendCount() > 1) {
-				thread.resume();
+			if (suspendCount < 0 || suspendCount > 1) {
+				while (thread.suspendCount() > 1) {
+					thread.resume();
+				}
 			}
 		} catch (ObjectCollectedException e) {
 		} catch (VMDisconnectedException e) {
@@ -2439,7 +2581,7 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 				setOriginalStepKind(getStepKind());
 				Location location = top.getUnderlyingStackFrame().location();
 				setOriginalStepLocation(location);
-				setOriginalStepStackDepth(computeStackFrames().size());
+				setOriginalStepStackDepth(getFrameCount());
 				setStepRequest(createStepRequest());
 				setPendingStepHandler(this);
 				addJDIEventListener(this, getStepRequest());
@@ -2547,11 +2689,11 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 						fCurrentMethodEntryRequest = null;
 					}
 					fStepResultCandidate = null;
-					List<IJavaStackFrame> frames = computeStackFrames();
+					List<IJavaStackFrame> frames = computeTopStackFrames(1);
 					int frameCount = 0;
 					StackFrame currentFrame = null;
 					if (!frames.isEmpty()) {
-						frameCount = frames.size();
+						frameCount = getFrameCount();
 						currentFrame = ((JDIStackFrame) frames.get(0)).getUnderlyingStackFrame();
 					} else {
 						// can happen, e.g. when step filters are active.
@@ -3596,6 +3738,12 @@ public class JDIThread extends JDIDebugElement implements IJavaThread {
 	 */
 	@Override
 	public int getFrameCount() throws DebugException {
+		synchronized (this) {
+			// known since the stack frames were computed
+			if (!fRefreshChildren && fFrameCount >= 0 && isSuspended()) {
+				return fFrameCount;
+			}
+		}
 		return getUnderlyingFrameCount();
 	}
 
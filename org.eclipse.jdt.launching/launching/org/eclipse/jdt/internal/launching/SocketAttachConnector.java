@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2018 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -133,6 +133,12 @@ public class SocketAttachConnector implements IVMConnector {
             param.setValue(timeoutString);
         }
 
+		String channelString = arguments.get("channel"); //$NON-NLS-1$
+		if (channelString != null) {
+			param = map.get("channel"); //$NON-NLS-1$
+			param.setValue(channelString);
+		}
+
 		ILaunchConfiguration configuration = launch.getLaunchConfiguration();
 		boolean allowTerminate = false;
 		if (configuration != null) {